@@ -0,0 +1,74 @@
+package uk.gov.dwp.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseRequest;
+
+/**
+ * Orders per second through the per-order path against the same orders sent as one batch.
+ * Both gateways charge one round-trip per call, so the batch saves 2 * (batchSize - 1) round-trips.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+@OperationsPerInvocation(BatchBenchmark.BATCH_SIZE)
+public class BatchBenchmark {
+
+    static final int BATCH_SIZE = 64;
+
+    @Param({"0", "20000"})
+    public long gatewayLatencyNanos;
+
+    private TicketService ticketService;
+    private final List<PurchaseRequest> batch = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        LatencyTicketPaymentService payments = new LatencyTicketPaymentService(gatewayLatencyNanos);
+        LatencySeatReservationService reservations = new LatencySeatReservationService(gatewayLatencyNanos);
+        ticketService = new TicketServiceImpl(payments, reservations, payments, reservations);
+        String[] shapes = {"1A", "2A2C", "2A1I", "1A1C1I", "2C"};
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(new PurchaseRequest(1000 + i, Orders.parse(shapes[i % shapes.length])));
+        }
+    }
+
+    @Benchmark
+    public void perOrder() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            PurchaseRequest request = batch.get(i);
+            try {
+                ticketService.purchaseTickets(request.getAccountId(), request.getTicketTypeRequests());
+            } catch (RuntimeException rejected) {
+                // the child-only shape is rejected on both paths.
+            }
+        }
+    }
+
+    @Benchmark
+    public Object batched() {
+        return ticketService.purchaseTicketsBatch(batch);
+    }
+}
@@ -0,0 +1,64 @@
+package uk.gov.dwp.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ * Many threads purchasing through one shared service and one pair of gateways.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ContentionBenchmark {
+
+    @Param({"0", "20000"})
+    public long gatewayLatencyNanos;
+
+    private TicketService ticketService;
+    private final TicketTypeRequest[] order = Orders.parse("2A2C1I");
+    private final AtomicLong accounts = new AtomicLong();
+
+    @State(Scope.Thread)
+    public static class Account {
+        long accountId;
+
+        @Setup
+        public void setUp(ContentionBenchmark benchmark) {
+            accountId = benchmark.accounts.incrementAndGet();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        ticketService = new TicketServiceImpl(new LatencyTicketPaymentService(gatewayLatencyNanos),
+                new LatencySeatReservationService(gatewayLatencyNanos));
+    }
+
+    @Benchmark
+    public void purchase(Account account) {
+        ticketService.purchaseTickets(account.accountId, order);
+    }
+}
@@ -0,0 +1,122 @@
+package uk.gov.dwp.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.PurchaseListener;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.eventlog.PurchaseEventLog;
+import uk.gov.dwp.uc.pairtest.eventlog.RollingFileSink;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Cost on the purchasing thread of logging each purchase: nothing, the event log writing to a rolling file, and
+ * printing seats and price synchronously as the original implementation did (to a discarding stream, so this is the
+ * cheapest printing can ever be). Run with -prof gc: the event log should report gc.alloc.rate.norm of ~0 B/op.
+ * Purchasing flat out outruns any disk, so most events are dropped; the count is printed at the end of the run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventLogBenchmark {
+
+    private final TicketTypeRequest[] order = {
+        new TicketTypeRequest(Type.ADULT, 2),
+        new TicketTypeRequest(Type.CHILD, 2),
+        new TicketTypeRequest(Type.INFANT, 1)
+    };
+
+    private Path directory;
+    private PurchaseEventLog eventLog;
+    private TicketService unlogged;
+    private TicketService logged;
+    private TicketService printed;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("event-log-benchmark");
+        eventLog = new PurchaseEventLog(new RollingFileSink(directory.resolve("purchases.log"), 64 << 20, 2),
+                1 << 16, PurchaseEventLog.Level.INFO, 1);
+        unlogged = service(PurchaseListener.NONE);
+        logged = service(eventLog);
+        printed = service(new Printing(new PrintStream(OutputStream.nullOutputStream())));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        eventLog.close();
+        long logged = eventLog.getDropped() + eventLog.getWritten();
+        if (logged > 0) System.out.println("event log dropped " + eventLog.getDropped() + " of " + logged);
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    private static TicketService service(PurchaseListener listener) {
+        return TicketServiceImpl.builder().ticketPaymentService(new LatencyTicketPaymentService(0))
+                .seatReservationService(new LatencySeatReservationService(0)).purchaseListener(listener).build();
+    }
+
+    @Benchmark
+    public void unlogged() {
+        unlogged.purchaseTickets(1001, order);
+    }
+
+    @Benchmark
+    public void eventLog() {
+        logged.purchaseTickets(1001, order);
+    }
+
+    @Benchmark
+    public void printed() {
+        printed.purchaseTickets(1001, order);
+    }
+
+    // the original println calls, moved into a listener.
+    private static class Printing implements PurchaseListener {
+        private final PrintStream out;
+
+        Printing(PrintStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void purchased(long accountId, int adults, int children, int infants, int seats, int price) {
+            out.println("Number of seats: " + seats);
+            out.println("Price: " + price);
+        }
+
+        @Override
+        public void rejected(long accountId, int adults, int children, int infants, InvalidPurchaseException.Reason reason) {
+        }
+
+        @Override
+        public void failed(long accountId, int adults, int children, int infants, int seats, int price) {
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package uk.gov.dwp.benchmark;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.SplittableRandom;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.gov.dwp.uc.pairtest.hold.HoldExpiryWheel;
+
+/**
+ * Placing one hold and cancelling another with a given number of holds outstanding, on the timing wheel and on a
+ * ScheduledThreadPoolExecutor with one task per hold, cancelled tasks removed. Each operation places a hold that
+ * expires in 1 second to 15 minutes and cancels one placed earlier, picked at random, so the count stays put. The
+ * clock is stopped and nothing expires during the run. Scores are per hold and cancel pair.
+ *
+ * See HoldExpirySimulation for how close to their time holds expire.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class HoldExpiryBenchmark {
+
+    private static final long minTtl = 1_000;
+    private static final long maxTtl = 15 * 60_000;
+
+    @State(Scope.Benchmark)
+    public static class Wheel {
+        @Param({"1000000", "10000000"})
+        public int outstanding;
+
+        HoldExpiryWheel wheel;
+        long[] handles;
+        final SplittableRandom random = new SplittableRandom(42);
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Clock stopped = Clock.fixed(Instant.parse("2026-10-18T18:00:00Z"), ZoneOffset.UTC);
+            wheel = new HoldExpiryWheel(stopped, 1, outstanding + 1, 1, (tag, seats) -> { });
+            handles = new long[outstanding];
+            for (int i = 0; i < outstanding; i++) handles[i] = wheel.hold(1, 2, random.nextLong(minTtl, maxTtl));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Executor {
+        @Param({"1000000", "10000000"})
+        public int outstanding;
+
+        ScheduledThreadPoolExecutor executor;
+        ScheduledFuture<?>[] handles;
+        final SplittableRandom random = new SplittableRandom(42);
+        final Runnable release = () -> { };
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            executor = new ScheduledThreadPoolExecutor(1);
+            executor.setRemoveOnCancelPolicy(true);
+            handles = new ScheduledFuture<?>[outstanding];
+            for (int i = 0; i < outstanding; i++) {
+                handles[i] = executor.schedule(release, random.nextLong(minTtl, maxTtl), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            executor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public int wheel(Wheel state) {
+        int i = state.random.nextInt(state.outstanding);
+        int seats = state.wheel.cancel(state.handles[i]);
+        state.handles[i] = state.wheel.hold(1, 2, state.random.nextLong(minTtl, maxTtl));
+        return seats;
+    }
+
+    @Benchmark
+    public boolean executor(Executor state) {
+        int i = state.random.nextInt(state.outstanding);
+        boolean cancelled = state.handles[i].cancel(false);
+        state.handles[i] = state.executor.schedule(state.release, state.random.nextLong(minTtl, maxTtl), TimeUnit.MILLISECONDS);
+        return cancelled;
+    }
+}
@@ -0,0 +1,56 @@
+package uk.gov.dwp.benchmark;
+
+import java.time.Clock;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import uk.gov.dwp.uc.pairtest.hold.HoldExpiryWheel;
+import uk.gov.dwp.uc.pairtest.metrics.LatencyHistogram;
+
+/**
+ * How close to their time holds expire with ten million outstanding. Ten million holds of one seat are placed with
+ * expiries spread evenly over the next 30 seconds, with the wheel's ticker turning every millisecond on the system
+ * clock, and left until all have expired. Each hold is tagged with its expiry time, so the release of each batch says
+ * how late its holds were.
+ *
+ * Not a JMH benchmark, run it from the jmh test classpath with room for the holds:
+ * {@code mvn -P jmh test-compile && java -Xmx3g -cp target/test-classes:target/classes uk.gov.dwp.benchmark.HoldExpirySimulation}
+ */
+public final class HoldExpirySimulation {
+
+    private static final int holds = 10_000_000;
+    private static final long spreadMillis = 30_000;
+
+    private HoldExpirySimulation() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Clock clock = Clock.systemUTC();
+        LatencyHistogram lateness = new LatencyHistogram();
+        long[] early = new long[1];
+        HoldExpiryWheel wheel = new HoldExpiryWheel(clock, 1, holds, 1, (deadline, seats) -> {
+            long late = clock.millis() - deadline;
+            if (late < 0) early[0] += seats;
+            for (int i = 0; i < seats; i++) lateness.record(TimeUnit.MILLISECONDS.toNanos(Math.max(0, late)));
+        });
+
+        wheel.start();
+        SplittableRandom random = new SplittableRandom(42);
+        long started = System.nanoTime();
+        for (int i = 0; i < holds; i++) {
+            long ttl = 1_000 + random.nextLong(spreadMillis);
+            // the tag is the expiry time, a hold placed late in the loop expires later.
+            if (wheel.hold(clock.millis() + ttl, 1, ttl) < 0) throw new IllegalStateException("wheel full");
+        }
+        long placed = System.nanoTime() - started;
+        System.out.printf("placed %,d holds in %.2fs, %.0f ns per hold%n", holds, placed / 1e9, (double) placed / holds);
+
+        while (wheel.getOutstanding() > 0) Thread.sleep(100);
+        wheel.close();
+
+        LatencyHistogram.Snapshot snapshot = lateness.snapshot();
+        System.out.printf("expired %,d in %,d releases, %d early%n", wheel.getExpired(), wheel.getReleaseBatches(), early[0]);
+        System.out.printf("lateness ms: p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n", snapshot.getP50Nanos() / 1e6,
+                snapshot.getP99Nanos() / 1e6, snapshot.getP999Nanos() / 1e6, snapshot.getMaxNanos() / 1e6);
+    }
+}
@@ -0,0 +1,88 @@
+package uk.gov.dwp.benchmark;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseRequest;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseResult;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Copy of the original list based TicketServiceImpl, kept as the baseline for benchmark comparisons.
+ */
+public class LegacyTicketServiceImpl implements TicketService {
+
+    private final TicketPaymentService ticketPaymentService;
+    private final SeatReservationService seatReservationService;
+    private final int adultPrice = 20;
+    private final int childPrice = 10;
+
+    public LegacyTicketServiceImpl(TicketPaymentService ticketPaymentService, SeatReservationService seatReservationService) {
+        this.ticketPaymentService = ticketPaymentService;
+        this.seatReservationService = seatReservationService;
+    }
+
+    @Override
+    public void purchaseTickets(long accountId, TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException {
+        List<TicketTypeRequest> ticketRequestList = new LinkedList<TicketTypeRequest>();
+        for(int i = 0; i < ticketTypeRequests.length; i++){
+            ticketRequestList.add(ticketTypeRequests[i]);
+        }
+        LegacyTicketOrder order = new LegacyTicketOrder(accountId, ticketRequestList);
+        validateTicketOrder(order);
+        int totalSeats = calculateNumberOfSeats(order);
+        int totalPrice = calculatePrice(order);
+        ticketPaymentService.makePayment(order.getAccountId(), totalPrice);
+        seatReservationService.reserveSeat(order.getAccountId(), totalSeats);
+    }
+
+    @Override
+    public PurchaseResult purchaseTickets(String idempotencyKey, long accountId, TicketTypeRequest... ticketTypeRequests) {
+        throw new UnsupportedOperationException("the original implementation had no idempotency keys");
+    }
+
+    @Override
+    public List<PurchaseResult> purchaseTicketsBatch(List<PurchaseRequest> purchaseRequests) {
+        throw new UnsupportedOperationException("the original implementation had no batch path");
+    }
+
+    private int calculateNumberOfSeats(LegacyTicketOrder order) {
+        int seats = numberOfTicketType(order, Type.ADULT) + numberOfTicketType(order, Type.CHILD);
+        System.out.println("Number of seats: " + seats);
+        order.setNumberOfSeats(seats);
+        return seats;
+    }
+
+    private int calculatePrice(LegacyTicketOrder order) {
+        int price = numberOfTicketType(order, Type.ADULT) * adultPrice + numberOfTicketType(order, Type.CHILD) * childPrice;
+        System.out.println("Price: " + price);
+        order.setPrice(price);
+        return price;
+    }
+
+    private int numberOfTicketType(LegacyTicketOrder order, TicketTypeRequest.Type type) {
+        int count = 0;
+        Iterator<TicketTypeRequest> it = order.getTickets().iterator();
+        while(it.hasNext()){
+            TicketTypeRequest ttr = it.next();
+            if (ttr.getTicketType() == type) count += ttr.getNoOfTickets();
+        }
+        return count;
+    }
+
+    private void validateTicketOrder(LegacyTicketOrder order) throws InvalidPurchaseException {
+        int adults = numberOfTicketType(order, Type.ADULT);
+        int children = numberOfTicketType(order, Type.CHILD);
+        int infants = numberOfTicketType(order, Type.INFANT);
+        if (adults + children + infants > 20) throw new InvalidPurchaseException(InvalidPurchaseException.tooManyTickets);
+        if((children > 0 || infants > 0) && adults == 0) throw new InvalidPurchaseException(InvalidPurchaseException.notAtLeastOneAdult);
+        if(adults < infants) throw new InvalidPurchaseException(InvalidPurchaseException.notEnoughAdults);
+        if(order.getAccountId() < 1) throw new InvalidPurchaseException(InvalidPurchaseException.invalidAccountId);
+    }
+}
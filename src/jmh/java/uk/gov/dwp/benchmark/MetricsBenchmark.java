@@ -0,0 +1,102 @@
+package uk.gov.dwp.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.metrics.LatencyHistogram;
+import uk.gov.dwp.uc.pairtest.metrics.PurchaseMetrics;
+
+/**
+ * Cost of metrics on a purchase, with instant gateways (the worst case, since nothing hides it) and with 20us ones,
+ * and of recording one latency on its own. A measured purchase reads the clock four times, so compare against clock
+ * as well. recordContended has four threads recording into one histogram, which is what its stripes are for; compare
+ * it with record. Run with -prof gc: every benchmark should report gc.alloc.rate.norm of ~0 B/op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    @Param({"0", "20000"})
+    private long gatewayNanos;
+
+    private TicketService unmeasured;
+    private TicketService measured;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    private final TicketTypeRequest[] order = {
+        new TicketTypeRequest(Type.ADULT, 2),
+        new TicketTypeRequest(Type.CHILD, 2),
+        new TicketTypeRequest(Type.INFANT, 1)
+    };
+
+    private long latency = 1;
+
+    @Setup
+    public void setUp() {
+        LatencyTicketPaymentService payment = new LatencyTicketPaymentService(gatewayNanos);
+        LatencySeatReservationService reservation = new LatencySeatReservationService(gatewayNanos);
+        unmeasured = new TicketServiceImpl(payment, reservation);
+        measured = TicketServiceImpl.builder().ticketPaymentService(payment).seatReservationService(reservation)
+                .purchaseMetrics(new PurchaseMetrics()).build();
+    }
+
+    @Benchmark
+    public void unmeasured() {
+        unmeasured.purchaseTickets(1001, order);
+    }
+
+    @Benchmark
+    public void measured() {
+        measured.purchaseTickets(1001, order);
+    }
+
+    @Benchmark
+    public long clock() {
+        return System.nanoTime();
+    }
+
+    @Benchmark
+    public void record() {
+        // walk through the buckets rather than hitting one.
+        latency = latency * 31 & 0xFFFFF;
+        histogram.record(latency);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended(Latency latency) {
+        histogram.record(latency.next());
+    }
+
+    @State(Scope.Thread)
+    public static class Latency {
+        private long latency = 1;
+
+        long next() {
+            latency = latency * 31 & 0xFFFFF;
+            return latency;
+        }
+    }
+}
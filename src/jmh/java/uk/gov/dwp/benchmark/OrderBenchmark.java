@@ -0,0 +1,60 @@
+package uk.gov.dwp.benchmark;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.gov.dwp.uc.pairtest.domain.TicketOrder;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+
+/**
+ * Cost of building one order of 2 adults, 2 children and 1 infant. Run with -prof gc and compare
+ * gc.alloc.rate.norm: the list based order allocates its requests, list nodes and order object, the packed order
+ * built from shared requests allocates the order object alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderBenchmark {
+
+    private long accountId = 1001;
+    private int adults = 2;
+    private int children = 2;
+    private int infants = 1;
+
+    @Benchmark
+    public LegacyTicketOrder legacy() {
+        List<TicketTypeRequest> tickets = new LinkedList<TicketTypeRequest>();
+        tickets.add(new TicketTypeRequest(Type.ADULT, adults));
+        tickets.add(new TicketTypeRequest(Type.CHILD, children));
+        tickets.add(new TicketTypeRequest(Type.INFANT, infants));
+        LegacyTicketOrder order = new LegacyTicketOrder(accountId, tickets);
+        order.setNumberOfSeats(adults + children);
+        return order;
+    }
+
+    @Benchmark
+    public TicketOrder packed() {
+        return TicketOrder.of(accountId, TicketTypeRequest.of(Type.ADULT, adults), TicketTypeRequest.of(Type.CHILD, children),
+                TicketTypeRequest.of(Type.INFANT, infants));
+    }
+
+    @Benchmark
+    public TicketOrder builder() {
+        return TicketOrder.builder(accountId).adults(adults).children(children).infants(infants).build();
+    }
+}
@@ -0,0 +1,129 @@
+package uk.gov.dwp.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.pricing.PriceTable;
+import uk.gov.dwp.uc.pairtest.pricing.PricingEngine;
+import uk.gov.dwp.uc.pairtest.shape.OrderShapeCache;
+
+/**
+ * Purchases through the service with and without the order shape cache, with gateways that return at once so the
+ * validation, seat and price work is what is measured. Orders are drawn from every valid shape of up to 20 tickets,
+ * either uniformly or Zipf (s = 1) distributed with the common family shapes first, and the prices have an evening
+ * band so the price table is not flat. Scores are per order.
+ *
+ * The hit rate is printed at the end of each trial of the cached benchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderShapeCacheBenchmark {
+
+    private static final int orders = 1024;
+    private static final String[] common = {"2A", "2A2C", "1A", "2A1C", "1A1I", "2A1C1I", "1A1C", "2A3C"};
+
+    @Param({"zipf", "uniform"})
+    public String shapes;
+
+    private final int[] adults = new int[orders];
+    private final int[] children = new int[orders];
+    private final int[] infants = new int[orders];
+    private OrderShapeCache cache;
+    private TicketServiceImpl uncachedService;
+    private TicketServiceImpl cachedService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<int[]> valid = validShapes();
+        SplittableRandom random = new SplittableRandom(42);
+        double[] cumulative = new double[valid.size()];
+        double sum = 0;
+        for (int i = 0; i < cumulative.length; i++) cumulative[i] = sum += "zipf".equals(shapes) ? 1.0 / (i + 1) : 1.0;
+        for (int i = 0; i < orders; i++) {
+            double u = random.nextDouble() * sum;
+            int shape = 0;
+            while (shape < cumulative.length - 1 && cumulative[shape] < u) shape++;
+            adults[i] = valid.get(shape)[0];
+            children[i] = valid.get(shape)[1];
+            infants[i] = valid.get(shape)[2];
+        }
+        PriceTable prices = PriceTable.compile(Arrays.asList("ADULT=20", "CHILD=10", "ADULT@17:00-23:00=25"));
+        cache = new OrderShapeCache(1024);
+        uncachedService = TicketServiceImpl.builder().ticketPaymentService(new LatencyTicketPaymentService(0))
+                .seatReservationService(new LatencySeatReservationService(0)).pricingEngine(new PricingEngine(prices)).build();
+        cachedService = TicketServiceImpl.builder().ticketPaymentService(new LatencyTicketPaymentService(0))
+                .seatReservationService(new LatencySeatReservationService(0)).pricingEngine(new PricingEngine(prices))
+                .orderShapeCache(cache).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        if (cache.getHits() + cache.getMisses() == 0) return;
+        System.out.printf("%n%s shapes: hit rate %.4f (%d hits, %d misses, %d invalidations)%n", shapes, cache.getHitRate(),
+                cache.getHits(), cache.getMisses(), cache.getInvalidations());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(orders)
+    public long uncached() {
+        long paid = 0;
+        for (int i = 0; i < orders; i++) paid += uncachedService.purchaseCounts(1001, adults[i], children[i], infants[i]);
+        return paid;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(orders)
+    public long cached() {
+        long paid = 0;
+        for (int i = 0; i < orders; i++) paid += cachedService.purchaseCounts(1001, adults[i], children[i], infants[i]);
+        return paid;
+    }
+
+    // the common shapes in order of popularity, then every other valid order of up to 20 tickets.
+    private static List<int[]> validShapes() {
+        List<int[]> valid = new ArrayList<int[]>();
+        List<String> seen = new ArrayList<String>();
+        for (String shape : common) {
+            int[] counts = {0, 0, 0};
+            for (TicketTypeRequest request : Orders.parse(shape)) {
+                counts[request.getTicketType().ordinal()] += request.getNoOfTickets();
+            }
+            valid.add(counts);
+            seen.add(counts[0] + "/" + counts[1] + "/" + counts[2]);
+        }
+        for (int a = 1; a <= 20; a++) {
+            for (int c = 0; a + c <= 20; c++) {
+                for (int i = 0; i <= a && a + c + i <= 20; i++) {
+                    if (!seen.contains(a + "/" + c + "/" + i)) valid.add(new int[] {a, c, i});
+                }
+            }
+        }
+        return valid;
+    }
+}
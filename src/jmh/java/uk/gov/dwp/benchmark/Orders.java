@@ -0,0 +1,40 @@
+package uk.gov.dwp.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+
+/**
+ * Builds benchmark orders from a short shape string, e.g. "2A2C1I" is two adults, two children and one infant.
+ */
+final class Orders {
+
+    private Orders() {
+    }
+
+    static TicketTypeRequest[] parse(String shape) {
+        List<TicketTypeRequest> requests = new ArrayList<>();
+        int count = 0;
+        for (int i = 0; i < shape.length(); i++) {
+            char c = shape.charAt(i);
+            if (Character.isDigit(c)) {
+                count = count * 10 + (c - '0');
+                continue;
+            }
+            requests.add(new TicketTypeRequest(type(c), count));
+            count = 0;
+        }
+        return requests.toArray(new TicketTypeRequest[0]);
+    }
+
+    private static Type type(char c) {
+        switch (c) {
+            case 'A': return Type.ADULT;
+            case 'C': return Type.CHILD;
+            case 'I': return Type.INFANT;
+            default: throw new IllegalArgumentException("Unknown ticket type in order shape: " + c);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package uk.gov.dwp.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.gov.dwp.uc.pairtest.pricing.PriceTable;
+import uk.gov.dwp.uc.pairtest.pricing.PricingEngine;
+
+/**
+ * Price of a 2 adult, 2 child, 1 infant order: hardcoded constants against the pricing engine, with and without
+ * time-of-day bands.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PricingBenchmark {
+
+    private final int adultPrice = 20;
+    private final int childPrice = 10;
+
+    private int adults = 2;
+    private int children = 2;
+    private int infants = 1;
+
+    private final PricingEngine flat = new PricingEngine(PriceTable.DEFAULT);
+    private final PricingEngine banded = new PricingEngine(PriceTable.compile(Arrays.asList(
+            "ADULT=20", "CHILD=10", "ADULT@17:00-23:00=25", "CHILD@09:00-12:00=8")));
+
+    @Benchmark
+    public int hardcoded() {
+        return adults * adultPrice + children * childPrice;
+    }
+
+    @Benchmark
+    public int flatTable() {
+        return PriceTable.total(flat.currentPrices(), adults, children, infants);
+    }
+
+    @Benchmark
+    public int timeBandedTable() {
+        return PriceTable.total(banded.currentPrices(), adults, children, infants);
+    }
+}
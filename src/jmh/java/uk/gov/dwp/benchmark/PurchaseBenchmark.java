@@ -0,0 +1,55 @@
+package uk.gov.dwp.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ * Valid orders of different sizes and type mixes against gateways with a configurable latency.
+ * SampleTime mode reports the p99 alongside the average.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PurchaseBenchmark {
+
+    @Param({"1A", "2A2C", "2A2C2I", "1A1C1I", "10A5C5I", "20A"})
+    public String shape;
+
+    @Param({"0", "20000"})
+    public long gatewayLatencyNanos;
+
+    private TicketService ticketService;
+    private TicketTypeRequest[] order;
+
+    @Setup
+    public void setUp() {
+        ticketService = new TicketServiceImpl(new LatencyTicketPaymentService(gatewayLatencyNanos),
+                new LatencySeatReservationService(gatewayLatencyNanos));
+        order = Orders.parse(shape);
+    }
+
+    @Benchmark
+    public void purchase() {
+        ticketService.purchaseTickets(1001, order);
+    }
+}
@@ -0,0 +1,87 @@
+package uk.gov.dwp.benchmark;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.history.AccountPurchaseHistory;
+
+/**
+ * The per-account purchase history with millions of accounts active within the day, each already holding a few
+ * purchases: recording a purchase against a random account, reading an account's total, and the cost the cap adds to
+ * a purchase with instant gateways. Accounts are picked at random, so nearly every call misses the cache, the table
+ * being 96MB for one million accounts and 384MB for four million (100 bytes an account).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class PurchaseHistoryBenchmark {
+
+    @Param({"1000000", "4000000"})
+    private int accounts;
+
+    private static final TicketPaymentService noPayment = new LatencyTicketPaymentService(0);
+    private static final SeatReservationService noReservation = new LatencySeatReservationService(0);
+
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final TicketServiceImpl uncapped = new TicketServiceImpl(noPayment, noReservation);
+    private AccountPurchaseHistory history;
+    private TicketServiceImpl capped;
+
+    @Setup
+    public void setUp() {
+        // a cap no account reaches in the run, every purchase is recorded.
+        history = new AccountPurchaseHistory(1000, Duration.ofDays(1), accounts);
+        for (int round = 0; round < 4; round++) {
+            for (long account = 1; account <= accounts; account++) history.tryRecord(account, 1);
+        }
+        capped = TicketServiceImpl.builder().ticketPaymentService(noPayment).seatReservationService(noReservation)
+                .purchaseHistory(history).build();
+        System.out.printf("%n%,d accounts, %,d bytes, %.1f bytes an account%n", accounts, history.getTableBytes(),
+                (double) history.getTableBytes() / accounts);
+    }
+
+    private long nextAccount() {
+        return 1 + random.nextInt(accounts);
+    }
+
+    @Benchmark
+    public boolean tryRecord() {
+        return history.tryRecord(nextAccount(), 1);
+    }
+
+    @Benchmark
+    public int ticketsInWindow() {
+        return history.ticketsInWindow(nextAccount());
+    }
+
+    @Benchmark
+    public long uncapped() {
+        return uncapped.purchaseCounts(nextAccount(), 2, 1, 0);
+    }
+
+    @Benchmark
+    public long capped() {
+        return capped.purchaseCounts(nextAccount(), 2, 1, 0);
+    }
+}
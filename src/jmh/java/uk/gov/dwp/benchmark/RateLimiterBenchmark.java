@@ -0,0 +1,98 @@
+package uk.gov.dwp.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.ratelimit.AccountRateLimiter;
+
+/**
+ * Overhead of the per-account rate limiter on a purchase with instant gateways, and the cost of turning away an
+ * account whose bucket is empty. The difference between unlimited and limited is the nanoseconds added to every call.
+ * With a thousand accounts the table stays in cache; with a million (a 32MB table) each call is a cache miss.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RateLimiterBenchmark {
+
+    @Param({"1000", "1000000"})
+    private int accounts;
+
+    private static final TicketPaymentService noPayment = new LatencyTicketPaymentService(0);
+    private static final SeatReservationService noReservation = new LatencySeatReservationService(0);
+
+    private final TicketService unlimited = new TicketServiceImpl(noPayment, noReservation);
+    private TicketService limited;
+    private AccountRateLimiter exhausted;
+    private TicketService rejecting;
+
+    private final TicketTypeRequest[] order = {
+        new TicketTypeRequest(Type.ADULT, 2),
+        new TicketTypeRequest(Type.CHILD, 2),
+        new TicketTypeRequest(Type.INFANT, 1)
+    };
+
+    private long account;
+
+    @Setup
+    public void setUp() {
+        limited = TicketServiceImpl.builder().ticketPaymentService(noPayment).seatReservationService(noReservation)
+                .rateLimiter(new AccountRateLimiter(1000, 1_000_000, accounts)).build();
+        exhausted = new AccountRateLimiter(1, 1, accounts);
+        rejecting = TicketServiceImpl.builder().ticketPaymentService(noPayment).seatReservationService(noReservation)
+                .rateLimiter(exhausted).build();
+    }
+
+    private long nextAccount() {
+        account = account == accounts ? 1 : account + 1;
+        return account;
+    }
+
+    @Benchmark
+    public void unlimited() {
+        unlimited.purchaseTickets(nextAccount(), order);
+    }
+
+    @Benchmark
+    public void limited() {
+        limited.purchaseTickets(nextAccount(), order);
+    }
+
+    @Benchmark
+    public boolean tryAcquire() {
+        return exhausted.tryAcquire(nextAccount());
+    }
+
+    @Benchmark
+    public Object rejected() {
+        try {
+            rejecting.purchaseTickets(1001, order);
+            return null;
+        } catch (InvalidPurchaseException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package uk.gov.dwp.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * One benchmark per InvalidPurchaseException rule, measuring the cost of turning an order away.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RejectionBenchmark {
+
+    @Param({"tooManyTickets", "notAtLeastOneAdult", "notEnoughAdults", "invalidAccountId"})
+    public String rule;
+
+    private TicketService ticketService;
+    private TicketTypeRequest[] order;
+    private long accountId;
+
+    @Setup
+    public void setUp() {
+        ticketService = new TicketServiceImpl(new LatencyTicketPaymentService(0), new LatencySeatReservationService(0));
+        accountId = 1001;
+        switch (rule) {
+            case "tooManyTickets": order = Orders.parse("21A"); break;
+            case "notAtLeastOneAdult": order = Orders.parse("2C"); break;
+            case "notEnoughAdults": order = Orders.parse("1A2I"); break;
+            case "invalidAccountId": order = Orders.parse("1A"); accountId = 0; break;
+            default: throw new IllegalArgumentException(rule);
+        }
+    }
+
+    @Benchmark
+    public Object reject() {
+        try {
+            ticketService.purchaseTickets(accountId, order);
+            throw new IllegalStateException("order was not rejected: " + rule);
+        } catch (InvalidPurchaseException e) {
+            return e;
+        }
+    }
+}
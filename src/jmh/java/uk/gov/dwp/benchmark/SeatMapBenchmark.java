@@ -0,0 +1,123 @@
+package uk.gov.dwp.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.gov.dwp.uc.pairtest.inventory.SeatAllocation;
+import uk.gov.dwp.uc.pairtest.inventory.SeatMap;
+
+/**
+ * Allocating and releasing seats for a group of five on a 100 row, 500 seat a row auditorium that was filled by groups
+ * of one to eight and then had random groups leave until it was as full as occupancy. Close to full, few rows have a
+ * free block of five and the search falls through to splitting the group. The seat by seat scan under a lock makes
+ * the same choice of block without bitsets, and when there is none simply takes the first free seats.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SeatMapBenchmark {
+
+    private static final int rows = 100;
+    private static final int seatsPerRow = 500;
+    private static final int group = 5;
+
+    @Param({"0.5", "0.9", "0.99"})
+    public double occupancy;
+
+    private SeatMap seatMap;
+    private SeatByLock seatByLock;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        seatMap = new SeatMap(rows, seatsPerRow);
+        List<SeatAllocation> allocations = new ArrayList<SeatAllocation>();
+        for (SeatAllocation allocation; (allocation = seatMap.allocate(1 + random.nextInt(8))) != null; ) allocations.add(allocation);
+        Collections.shuffle(allocations, random);
+        for (int i = 0; seatMap.available() < rows * seatsPerRow * (1 - occupancy); i++) seatMap.release(allocations.get(i));
+
+        seatByLock = new SeatByLock();
+        for (int row = 0; row < rows; row++) {
+            for (int seat = 0; seat < seatsPerRow; seat++) seatByLock.taken[row][seat] = seatMap.isTaken(row, seat);
+        }
+    }
+
+    @Benchmark
+    public SeatAllocation bitsets() {
+        SeatAllocation allocation = seatMap.allocate(group);
+        seatMap.release(allocation);
+        return allocation;
+    }
+
+    @Benchmark
+    public int[] seatBySeat() {
+        int[] seats = seatByLock.allocate(group);
+        seatByLock.release(seats);
+        return seats;
+    }
+
+    // the tightest block that fits in the first row with one, else the first free seats, looking at one seat at a time.
+    private static final class SeatByLock {
+        final boolean[][] taken = new boolean[rows][seatsPerRow];
+
+        synchronized int[] allocate(int count) {
+            for (int row = 0; row < rows; row++) {
+                int best = -1;
+                int bestLength = Integer.MAX_VALUE;
+                for (int seat = 0, run = 0; seat <= seatsPerRow; seat++) {
+                    if (seat < seatsPerRow && !taken[row][seat]) {
+                        run++;
+                    } else {
+                        if (run >= count && run < bestLength) {
+                            best = seat - run;
+                            bestLength = run;
+                        }
+                        run = 0;
+                    }
+                }
+                if (best >= 0) return take(row * seatsPerRow + best, count);
+            }
+            int[] seats = new int[count];
+            int found = 0;
+            for (int row = 0; row < rows && found < count; row++) {
+                for (int seat = 0; seat < seatsPerRow && found < count; seat++) {
+                    if (!taken[row][seat]) seats[found++] = row * seatsPerRow + seat;
+                }
+            }
+            if (found < count) return null;
+            for (int seat : seats) taken[seat / seatsPerRow][seat % seatsPerRow] = true;
+            return seats;
+        }
+
+        synchronized void release(int[] seats) {
+            for (int seat : seats) taken[seat / seatsPerRow][seat % seatsPerRow] = false;
+        }
+
+        private int[] take(int first, int count) {
+            int[] seats = new int[count];
+            for (int i = 0; i < count; i++) {
+                seats[i] = first + i;
+                taken[seats[i] / seatsPerRow][seats[i] % seatsPerRow] = true;
+            }
+            return seats;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package uk.gov.dwp.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.settlement.DeferredTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.settlement.PendingPayments;
+
+/**
+ * Gateway calls a second with and without deferred settlement, for the same stream of orders. Ten minutes of orders
+ * at a steady rate are run through the ticket service in simulated time, with the window closed every windowSeconds
+ * of simulated time and after at most 100,000 payments. Accounts are drawn from 100,000 either uniformly or with a
+ * Zipf (s = 1) skew, where a few accounts (agencies, schools, repeat customers) make most of the orders; what
+ * deferral saves is the orders an account makes within one window beyond its first. One order in fifty is refunded.
+ * At 10,000 orders a second the payment cap closes the window every 10 seconds, however long it was set to.
+ *
+ * Not a JMH benchmark, run it from the jmh test classpath:
+ * {@code mvn -P jmh test-compile && java -cp target/test-classes:target/classes uk.gov.dwp.benchmark.SettlementSimulation}
+ */
+public final class SettlementSimulation {
+
+    private static final int accounts = 100_000;
+    private static final int simulatedSeconds = 600;
+    private static final int maxAuthorisations = 100_000;
+
+    private SettlementSimulation() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] ordersPerSecond = {100, 1_000, 10_000};
+        int[] windowSeconds = {1, 10, 60};
+        System.out.printf("%-8s %8s %7s %10s %14s %14s %10s%n", "accounts", "orders/s", "window", "orders", "calls/s now",
+                "calls/s after", "reduction");
+        for (boolean zipf : new boolean[] {false, true}) {
+            for (int rate : ordersPerSecond) {
+                for (int window : windowSeconds) {
+                    long[] calls = run(zipf, rate, window);
+                    System.out.printf("%-8s %8d %6ds %10d %14.1f %14.1f %9.1f%%%n", zipf ? "zipf" : "uniform", rate, window,
+                            (long) rate * simulatedSeconds, (double) calls[0] / simulatedSeconds,
+                            (double) calls[1] / simulatedSeconds, 100.0 * (calls[0] - calls[1]) / calls[0]);
+                }
+            }
+        }
+    }
+
+    // gateway calls taking each payment and refund as it happens, and deferred.
+    private static long[] run(boolean zipf, int rate, int windowSeconds) throws Exception {
+        Path file = Files.createTempFile("pending-payments", ".tbl");
+        SplittableRandom random = new SplittableRandom(42);
+        double[] cumulative = zipf ? zipf(accounts) : null;
+        TicketTypeRequest[] order = {TicketTypeRequest.of(Type.ADULT, 2), TicketTypeRequest.of(Type.CHILD, 1)};
+        int price = 2 * 20 + 10;
+        long immediate = 0;
+        LatencyTicketPaymentService gateway = new LatencyTicketPaymentService(0);
+        try (PendingPayments pending = new PendingPayments(file, accounts);
+                DeferredTicketPaymentService deferred = new DeferredTicketPaymentService(gateway, pending, maxAuthorisations, 0)) {
+            TicketServiceImpl ts = new TicketServiceImpl(deferred, new LatencySeatReservationService(0));
+            for (int second = 0; second < simulatedSeconds; second++) {
+                for (int i = 0; i < rate; i++) {
+                    long accountId = 1 + (zipf ? account(cumulative, random.nextDouble()) : random.nextInt(accounts));
+                    ts.purchaseTickets(accountId, order);
+                    immediate++;
+                    if (random.nextInt(50) == 0) {
+                        deferred.refund(accountId, price);
+                        immediate++;
+                    }
+                }
+                if ((second + 1) % windowSeconds == 0) deferred.settle();
+            }
+            deferred.settle();
+            return new long[] {immediate, deferred.getGatewayCalls()};
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static double[] zipf(int n) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) cumulative[i] = sum += 1.0 / (i + 1);
+        for (int i = 0; i < n; i++) cumulative[i] /= sum;
+        return cumulative;
+    }
+
+    private static int account(double[] cumulative, double u) {
+        int index = Arrays.binarySearch(cumulative, u);
+        return Math.min(cumulative.length - 1, index >= 0 ? index : -index - 1);
+    }
+}
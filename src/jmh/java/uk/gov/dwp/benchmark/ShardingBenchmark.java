@@ -0,0 +1,97 @@
+package uk.gov.dwp.benchmark;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.ShardedTicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ * Orders per millisecond for a burst of orders across many accounts, with the same number of threads either taking
+ * one global lock around each purchase, the way callers kept an account's purchases apart before, or running the
+ * purchases on account shards. With instant gateways (0 latency) a purchase costs less than handing it to a shard and
+ * waking the shard's thread, and more shards are woken more often, so sharded throughput falls as shards are added;
+ * when the gateways wait (100us latency) it rises with shards, past the core count, while the global lock stays flat.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShardingBenchmark {
+
+    private static final int orders = 1000;
+
+    @Param({"1", "2", "4", "8"})
+    public int shards;
+
+    @Param({"0", "100000"})
+    public long gatewayLatencyNanos;
+
+    private final TicketTypeRequest[] order = Orders.parse("2A2C1I");
+    private final ReentrantLock globalLock = new ReentrantLock();
+    private final CompletableFuture<?>[] futures = new CompletableFuture<?>[orders];
+    private TicketService ticketService;
+    private ShardedTicketServiceImpl sharded;
+    private ExecutorService pool;
+
+    @Setup
+    public void setUp() {
+        ticketService = new TicketServiceImpl(new LatencyTicketPaymentService(gatewayLatencyNanos),
+                new LatencySeatReservationService(gatewayLatencyNanos));
+        sharded = new ShardedTicketServiceImpl(ticketService, shards, orders);
+        pool = Executors.newFixedThreadPool(shards);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sharded.close();
+        pool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(orders)
+    public void globalLock() {
+        for (int i = 0; i < orders; i++) {
+            long accountId = 1 + i;
+            futures[i] = CompletableFuture.runAsync(() -> {
+                globalLock.lock();
+                try {
+                    ticketService.purchaseTickets(accountId, order);
+                } finally {
+                    globalLock.unlock();
+                }
+            }, pool);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(orders)
+    public void sharded() {
+        for (int i = 0; i < orders; i++) futures[i] = sharded.purchaseTickets(1 + i, order);
+        CompletableFuture.allOf(futures).join();
+    }
+}
@@ -0,0 +1,75 @@
+package uk.gov.dwp.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+
+/**
+ * Compares the single pass tally against the original list based implementation.
+ * Run with -prof gc: the tally path should report gc.alloc.rate.norm of ~0 B/op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TallyBenchmark {
+
+    private static final TicketPaymentService noPayment = new LatencyTicketPaymentService(0);
+    private static final SeatReservationService noReservation = new LatencySeatReservationService(0);
+
+    private final TicketService legacy = new LegacyTicketServiceImpl(noPayment, noReservation);
+    private final TicketService tally = new TicketServiceImpl(noPayment, noReservation);
+
+    private final TicketTypeRequest[] order = {
+        new TicketTypeRequest(Type.ADULT, 2),
+        new TicketTypeRequest(Type.CHILD, 2),
+        new TicketTypeRequest(Type.INFANT, 1)
+    };
+
+    private PrintStream stdout;
+
+    @Setup
+    public void silenceStdout() {
+        // the legacy path still prints on every call, keep that cost but not the terminal.
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void restoreStdout() {
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public void legacy() {
+        legacy.purchaseTickets(1001, order);
+    }
+
+    @Benchmark
+    public void tally() {
+        tally.purchaseTickets(1001, order);
+    }
+}
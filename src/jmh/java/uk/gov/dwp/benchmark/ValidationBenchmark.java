@@ -0,0 +1,74 @@
+package uk.gov.dwp.benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.gov.dwp.uc.pairtest.validation.RuleSet;
+
+/**
+ * The original four hardcoded checks against the compiled default rule set, over a mix of valid and invalid orders
+ * in random order so the branch predictor cannot learn the answers. Each sums what its checks return, the first
+ * broken rule or the broken rules' bits, so neither pays for a branch on the answer. Scores are per order.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidationBenchmark {
+
+    private static final int orders = 1024;
+
+    private final long[] accountIds = new long[orders];
+    private final int[] adults = new int[orders];
+    private final int[] children = new int[orders];
+    private final int[] infants = new int[orders];
+    private final RuleSet rules = RuleSet.DEFAULT;
+
+    public ValidationBenchmark() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < orders; i++) {
+            accountIds[i] = random.nextInt(10) == 0 ? 0 : 1001;
+            adults[i] = random.nextInt(12);
+            children[i] = random.nextInt(8);
+            infants[i] = random.nextInt(6);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(orders)
+    public long hardcoded() {
+        long invalid = 0;
+        for (int i = 0; i < orders; i++) invalid += hardcoded(accountIds[i], adults[i], children[i], infants[i]);
+        return invalid;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(orders)
+    public long compiled() {
+        long invalid = 0;
+        for (int i = 0; i < orders; i++) invalid += rules.check(accountIds[i], adults[i], children[i], infants[i]);
+        return invalid;
+    }
+
+    // the checks from TicketServiceImpl before the rules were configurable, returning instead of throwing.
+    private static int hardcoded(long accountId, int adults, int children, int infants) {
+        if (adults + children + infants > 20) return 1;
+        if ((children > 0 || infants > 0) && adults == 0) return 2;
+        if (adults < infants) return 3;
+        if (accountId < 1) return 4;
+        return 0;
+    }
+}
@@ -0,0 +1,96 @@
+package uk.gov.dwp.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.wire.PurchaseRequestFlyweight;
+import uk.gov.dwp.uc.pairtest.wire.WirePurchaseHandler;
+
+/**
+ * An order of 2 adults, 2 children and 1 infant arriving as JSON, parsed with Jackson into TicketTypeRequests, against
+ * the same order arriving in the binary format and read in place. The decode pair reads the order only; the purchase
+ * pair also buys it and encodes the answer. Run with -prof gc: the binary path should allocate nothing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WireBenchmark {
+
+    private final TicketServiceImpl ticketService = new TicketServiceImpl(new LatencyTicketPaymentService(0),
+            new LatencySeatReservationService(0));
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final byte[] json = ("{\"accountId\":1001,\"tickets\":[{\"type\":\"ADULT\",\"noOfTickets\":2},"
+            + "{\"type\":\"CHILD\",\"noOfTickets\":2},{\"type\":\"INFANT\",\"noOfTickets\":1}]}").getBytes(StandardCharsets.UTF_8);
+
+    private final WirePurchaseHandler handler = new WirePurchaseHandler(ticketService);
+    private final PurchaseRequestFlyweight request = new PurchaseRequestFlyweight();
+    private final ByteBuffer binary = ByteBuffer.allocateDirect(64);
+    private final ByteBuffer out = ByteBuffer.allocateDirect(WirePurchaseHandler.maxResultLength);
+
+    public WireBenchmark() {
+        request.wrapForEncode(binary, 0).accountId(1001).adults(2).children(2).infants(1);
+        binary.limit(request.encodedLength());
+    }
+
+    @Benchmark
+    public int jsonDecode() throws IOException {
+        TicketTypeRequest[] requests = parse(mapper.readTree(json));
+        return requests.length;
+    }
+
+    @Benchmark
+    public int binaryDecode() {
+        request.wrap(binary, 0);
+        return request.adults() + request.children() + request.infants();
+    }
+
+    @Benchmark
+    public byte[] jsonPurchase() throws IOException {
+        JsonNode order = mapper.readTree(json);
+        long accountId = order.get("accountId").asLong();
+        ticketService.purchaseTickets(accountId, parse(order));
+        ObjectNode answer = mapper.createObjectNode();
+        answer.put("accountId", accountId);
+        answer.put("outcome", "PURCHASED");
+        return mapper.writeValueAsBytes(answer);
+    }
+
+    @Benchmark
+    public int binaryPurchase() {
+        handler.handle(binary.position(0), out.clear());
+        return out.position();
+    }
+
+    private static TicketTypeRequest[] parse(JsonNode order) {
+        JsonNode tickets = order.get("tickets");
+        TicketTypeRequest[] requests = new TicketTypeRequest[tickets.size()];
+        for (int i = 0; i < requests.length; i++) {
+            JsonNode ticket = tickets.get(i);
+            requests[i] = new TicketTypeRequest(TicketTypeRequest.Type.valueOf(ticket.get("type").asText()), ticket.get("noOfTickets").asInt());
+        }
+        return requests;
+    }
+}
@@ -0,0 +1,10 @@
+package thirdparty.paymentgateway;
+
+public interface BatchTicketPaymentService {
+
+    /**
+     * Takes payment for the first {@code count} accounts in a single call. Amounts line up with account ids by index.
+     */
+    void makePayments(long[] accountIds, int[] totalAmountsToPay, int count);
+
+}
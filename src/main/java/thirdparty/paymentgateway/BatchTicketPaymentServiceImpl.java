@@ -0,0 +1,10 @@
+package thirdparty.paymentgateway;
+
+public class BatchTicketPaymentServiceImpl implements BatchTicketPaymentService {
+
+    @Override
+    public void makePayments(long[] accountIds, int[] totalAmountsToPay, int count) {
+        // Real implementation omitted, assume working code will take every payment in one call to the gateway.
+    }
+
+}
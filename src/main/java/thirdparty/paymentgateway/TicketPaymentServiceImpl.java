@@ -7,4 +7,9 @@ public class TicketPaymentServiceImpl implements TicketPaymentService {
         // Real implementation omitted, assume working code will take the payment using a card pre linked to the account.
     }
 
+    @Override
+    public void refund(long accountId, int totalAmountToRefund) {
+        // Real implementation omitted, assume working code will refund the amount to the card pre linked to the account.
+    }
+
 }
@@ -0,0 +1,10 @@
+package thirdparty.seatbooking;
+
+public interface BatchSeatReservationService {
+
+    /**
+     * Reserves seats for the first {@code count} accounts in a single call. Seat counts line up with account ids by index.
+     */
+    void reserveSeats(long[] accountIds, int[] totalSeatsToAllocate, int count);
+
+}
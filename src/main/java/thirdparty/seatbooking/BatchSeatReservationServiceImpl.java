@@ -0,0 +1,10 @@
+package thirdparty.seatbooking;
+
+public class BatchSeatReservationServiceImpl implements BatchSeatReservationService {
+
+    @Override
+    public void reserveSeats(long[] accountIds, int[] totalSeatsToAllocate, int count) {
+        // Real implementation omitted, assume working code will make every seat reservation in one call.
+    }
+
+}
@@ -0,0 +1,15 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.concurrent.CompletableFuture;
+
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+public interface AsyncTicketService {
+
+    /**
+     * Purchases the tickets without blocking the caller. The future completes once payment has been taken and seats
+     * reserved, or exceptionally with the InvalidPurchaseException or gateway failure that stopped the purchase.
+     */
+    CompletableFuture<Void> purchaseTickets(long accountId, TicketTypeRequest... ticketTypeRequests);
+
+}
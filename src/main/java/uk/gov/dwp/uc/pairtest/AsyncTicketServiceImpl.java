@@ -0,0 +1,108 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+
+/**
+ * Runs each purchase on its own virtual thread, so a slow gateway parks a cheap virtual thread instead of a request
+ * thread. The whole purchase runs on that one thread, keeping payment before seat reservation.
+ *
+ * At most maxInFlight purchases talk to the gateways at once. Up to maxQueued more wait for a slot,
+ * and any purchase beyond that is rejected with a RejectedExecutionException.
+ */
+public class AsyncTicketServiceImpl implements AsyncTicketService, AutoCloseable {
+
+    private final TicketService ticketService;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore inFlightPermits;
+    private final int maxPending;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    public AsyncTicketServiceImpl(TicketService ticketService, int maxInFlight, int maxQueued) {
+        if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be at least 1");
+        if (maxQueued < 0) throw new IllegalArgumentException("maxQueued must not be negative");
+        this.ticketService = ticketService;
+        this.inFlightPermits = new Semaphore(maxInFlight);
+        this.maxPending = maxInFlight + maxQueued;
+    }
+
+    @Override
+    public CompletableFuture<Void> purchaseTickets(long accountId, TicketTypeRequest... ticketTypeRequests) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Too many purchases in progress"));
+        }
+        CompletableFuture<Void> result = new CompletableFuture<Void>();
+        try {
+            executor.execute(() -> purchase(result, accountId, ticketTypeRequests));
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private void purchase(CompletableFuture<Void> result, long accountId, TicketTypeRequest[] ticketTypeRequests) {
+        try {
+            inFlightPermits.acquire();
+        } catch (InterruptedException e) {
+            pending.decrementAndGet();
+            result.completeExceptionally(e);
+            return;
+        }
+        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        Throwable failure = null;
+        try {
+            ticketService.purchaseTickets(accountId, ticketTypeRequests);
+        } catch (Throwable t) {
+            failure = t;
+        } finally {
+            inFlight.decrementAndGet();
+            inFlightPermits.release();
+            pending.decrementAndGet();
+        }
+        // complete after the slot is given back so callers never observe a finished purchase still counted as pending.
+        if (failure == null) {
+            result.complete(null);
+        } else {
+            result.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Purchases currently calling the gateways.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Highest number of purchases that have called the gateways at the same time.
+     */
+    public int getPeakInFlight() {
+        return peakInFlight.get();
+    }
+
+    /**
+     * Purchases accepted but not yet finished, both in flight and waiting for a slot.
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Stops accepting purchases and waits for the ones already accepted to finish.
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
@@ -0,0 +1,67 @@
+package uk.gov.dwp.uc.pairtest;
+
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Told about the outcome of every order TicketServiceImpl handles. Called on the purchasing thread, so
+ * implementations must be quick and should not throw; TicketServiceImpl counts anything they do throw and carries on.
+ */
+public interface PurchaseListener {
+
+    PurchaseListener NONE = new PurchaseListener() {
+        @Override
+        public void purchased(long accountId, int adults, int children, int infants, int seats, int price) {
+        }
+
+        @Override
+        public void rejected(long accountId, int adults, int children, int infants, InvalidPurchaseException.Reason reason) {
+        }
+
+        @Override
+        public void failed(long accountId, int adults, int children, int infants, int seats, int price) {
+        }
+    };
+
+    /**
+     * Tells first, then second.
+     */
+    static PurchaseListener both(PurchaseListener first, PurchaseListener second) {
+        if (first == NONE) return second;
+        if (second == NONE) return first;
+        return new PurchaseListener() {
+            @Override
+            public void purchased(long accountId, int adults, int children, int infants, int seats, int price) {
+                first.purchased(accountId, adults, children, infants, seats, price);
+                second.purchased(accountId, adults, children, infants, seats, price);
+            }
+
+            @Override
+            public void rejected(long accountId, int adults, int children, int infants, InvalidPurchaseException.Reason reason) {
+                first.rejected(accountId, adults, children, infants, reason);
+                second.rejected(accountId, adults, children, infants, reason);
+            }
+
+            @Override
+            public void failed(long accountId, int adults, int children, int infants, int seats, int price) {
+                first.failed(accountId, adults, children, infants, seats, price);
+                second.failed(accountId, adults, children, infants, seats, price);
+            }
+        };
+    }
+
+    /**
+     * Payment taken and seats reserved.
+     */
+    void purchased(long accountId, int adults, int children, int infants, int seats, int price);
+
+    /**
+     * Turned away before reaching the gateways, or by the seat inventory.
+     */
+    void rejected(long accountId, int adults, int children, int infants, InvalidPurchaseException.Reason reason);
+
+    /**
+     * A gateway call threw.
+     */
+    void failed(long accountId, int adults, int children, int infants, int seats, int price);
+
+}
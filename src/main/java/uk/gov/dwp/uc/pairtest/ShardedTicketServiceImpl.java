@@ -0,0 +1,74 @@
+package uk.gov.dwp.uc.pairtest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.shard.ShardedExecutor;
+
+/**
+ * Runs each purchase on the shard its account id hashes to. Purchases for one account never overlap and complete in
+ * the order they were made, so one account's payments and reservations cannot interleave; purchases for accounts on
+ * different shards run in parallel with no lock between them.
+ *
+ * A purchase whose shard already has queueCapacity purchases waiting is rejected with a RejectedExecutionException.
+ */
+public class ShardedTicketServiceImpl implements AsyncTicketService, AutoCloseable {
+
+    private final TicketService ticketService;
+    private final ShardedExecutor shards;
+
+    /**
+     * One shard per core.
+     */
+    public ShardedTicketServiceImpl(TicketService ticketService, int queueCapacity) {
+        this(ticketService, Runtime.getRuntime().availableProcessors(), queueCapacity);
+    }
+
+    /**
+     * Handing a purchase to its shard costs a queue insert and, if the shard had run out of work, waking its thread,
+     * which together cost more than a purchase whose gateways answer at once. More shards each run dry sooner and
+     * are woken more often, so with instant gateways throughput falls as shards are added; they pay off once the
+     * gateways take long enough that the shards spend their time waiting on them rather than being handed work.
+     *
+     * @param shards        single-threaded shards, one per core to keep the cores busy, more when the gateways are slow
+     * @param queueCapacity purchases each shard holds before rejecting
+     */
+    public ShardedTicketServiceImpl(TicketService ticketService, int shards, int queueCapacity) {
+        this.ticketService = ticketService;
+        this.shards = new ShardedExecutor(shards, queueCapacity);
+    }
+
+    @Override
+    public CompletableFuture<Void> purchaseTickets(long accountId, TicketTypeRequest... ticketTypeRequests) {
+        CompletableFuture<Void> result = new CompletableFuture<Void>();
+        try {
+            shards.execute(accountId, () -> {
+                try {
+                    ticketService.purchaseTickets(accountId, ticketTypeRequests);
+                    result.complete(null);
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Queue depths, queue wait and rejections of the shards.
+     */
+    public ShardedExecutor getShards() {
+        return shards;
+    }
+
+    /**
+     * Stops accepting purchases and waits for the ones already accepted to finish.
+     */
+    @Override
+    public void close() {
+        shards.close();
+    }
+}
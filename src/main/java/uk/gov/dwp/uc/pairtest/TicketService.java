@@ -1,5 +1,9 @@
 package uk.gov.dwp.uc.pairtest;
 
+import java.util.List;
+
+import uk.gov.dwp.uc.pairtest.domain.PurchaseRequest;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseResult;
 import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
 import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
 
@@ -7,4 +11,19 @@ public interface TicketService {
 
     void purchaseTickets(long accountId, TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException;
 
+    /**
+     * Purchases at most once per idempotency key, so a client can safely retry after a timeout.
+     * Repeating a key returns the first outcome without calling the gateways again: the same seats and price, or the
+     * same InvalidPurchaseException. A purchase that failed in the gateways is not remembered and can be retried.
+     */
+    PurchaseResult purchaseTickets(String idempotencyKey, long accountId, TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException;
+
+    /**
+     * Validates every order, then takes all payments and reserves all seats in one gateway call each.
+     * Returns one result per request, in the same order. Invalid orders are reported in their result rather than thrown.
+     * A gateway failure is thrown and fails the whole batch, unless each order is bought as its own saga, in which
+     * case it is reported in the result of the order it stopped and the other orders carry on.
+     */
+    List<PurchaseResult> purchaseTicketsBatch(List<PurchaseRequest> purchaseRequests);
+
 }
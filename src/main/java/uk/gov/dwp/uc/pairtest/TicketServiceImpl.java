@@ -1,115 +1,555 @@
 package uk.gov.dwp.uc.pairtest;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
 
-
+import thirdparty.paymentgateway.BatchTicketPaymentService;
+import thirdparty.paymentgateway.BatchTicketPaymentServiceImpl;
 import thirdparty.paymentgateway.TicketPaymentService;
 import thirdparty.paymentgateway.TicketPaymentServiceImpl;
+import thirdparty.seatbooking.BatchSeatReservationService;
+import thirdparty.seatbooking.BatchSeatReservationServiceImpl;
 import thirdparty.seatbooking.SeatReservationService;
 import thirdparty.seatbooking.SeatReservationServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseRequest;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseResult;
 import uk.gov.dwp.uc.pairtest.domain.TicketOrder;
 import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
-import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
 import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.history.AccountPurchaseHistory;
+import uk.gov.dwp.uc.pairtest.idempotency.IdempotencyCache;
+import uk.gov.dwp.uc.pairtest.metrics.PurchaseMetrics;
+import uk.gov.dwp.uc.pairtest.pricing.PriceTable;
+import uk.gov.dwp.uc.pairtest.pricing.PricingEngine;
+import uk.gov.dwp.uc.pairtest.ratelimit.AccountRateLimiter;
+import uk.gov.dwp.uc.pairtest.saga.PurchaseCoordinator;
+import uk.gov.dwp.uc.pairtest.shape.OrderShapeCache;
+import uk.gov.dwp.uc.pairtest.validation.RuleEngine;
+import uk.gov.dwp.uc.pairtest.validation.RuleSet;
 
 public class TicketServiceImpl implements TicketService {
     /**
      * Should only have private methods other than the one below.
      */
-    private TicketPaymentService ticketPaymentService = new TicketPaymentServiceImpl();
-    private SeatReservationService seatReservationService = new SeatReservationServiceImpl(); {
-        
-    };
+    private TicketPaymentService ticketPaymentService;
+    private SeatReservationService seatReservationService;
+    private BatchTicketPaymentService batchTicketPaymentService;
+    private BatchSeatReservationService batchSeatReservationService;
+    private PricingEngine pricingEngine;
+    private PurchaseCoordinator purchaseCoordinator;
+    private PurchaseListener purchaseListener;
+    private IdempotencyCache idempotencyCache;
+    private AccountRateLimiter rateLimiter;
+    private PurchaseMetrics purchaseMetrics;
+    private RuleEngine ruleEngine;
+    private boolean reportAllViolations;
+    private OrderShapeCache orderShapeCache;
+    private AccountPurchaseHistory purchaseHistory;
+    private final LongAdder listenerFailures = new LongAdder();
+    private volatile RuntimeException lastListenerFailure;
+
+    // the original fixed prices, charged without a pricing engine so that path stays two constant multiplies.
     private final int adultPrice = 20;
     private final int childPrice = 10;
-    //private final int infantPrice = 0;
+    private final int[] fixedPrices = {adultPrice, childPrice, 0};
+
+    public TicketServiceImpl() {
+        this(new TicketPaymentServiceImpl(), new SeatReservationServiceImpl(),
+                new BatchTicketPaymentServiceImpl(), new BatchSeatReservationServiceImpl());
+    }
+
+    /**
+     * Batch purchases fall back to one gateway call per order.
+     */
+    public TicketServiceImpl(TicketPaymentService ticketPaymentService, SeatReservationService seatReservationService) {
+        this(ticketPaymentService, seatReservationService, null, null);
+    }
+
+    public TicketServiceImpl(TicketPaymentService ticketPaymentService, SeatReservationService seatReservationService,
+            BatchTicketPaymentService batchTicketPaymentService, BatchSeatReservationService batchSeatReservationService) {
+        this(builder().ticketPaymentService(ticketPaymentService).seatReservationService(seatReservationService)
+                .batchTicketPaymentService(batchTicketPaymentService).batchSeatReservationService(batchSeatReservationService));
+    }
+
+    private TicketServiceImpl(Builder builder) {
+        this.ticketPaymentService = builder.ticketPaymentService;
+        this.seatReservationService = builder.seatReservationService;
+        this.batchTicketPaymentService = builder.batchTicketPaymentService;
+        this.batchSeatReservationService = builder.batchSeatReservationService;
+        this.pricingEngine = builder.pricingEngine;
+        this.purchaseCoordinator = builder.purchaseCoordinator;
+        this.purchaseMetrics = builder.purchaseMetrics;
+        this.ruleEngine = builder.ruleEngine;
+        this.reportAllViolations = builder.reportAllViolations;
+        this.orderShapeCache = builder.orderShapeCache;
+        this.purchaseListener = guarded(purchaseMetrics == null ? builder.purchaseListener
+                : PurchaseListener.both(purchaseMetrics, builder.purchaseListener));
+        this.idempotencyCache = builder.idempotencyCache;
+        this.rateLimiter = builder.rateLimiter;
+        this.purchaseHistory = builder.purchaseHistory;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Calls to the purchase listener that threw. The outcome of the order is unaffected.
+     */
+    public long getListenerFailures() {
+        return listenerFailures.sum();
+    }
+
+    /**
+     * The most recent exception from the purchase listener, or null if none has thrown.
+     */
+    public RuntimeException getLastListenerFailure() {
+        return lastListenerFailure;
+    }
 
     @Override
     public void purchaseTickets(long accountId, TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException {
-        // populate TicketTypeRequest List.
-        List<TicketTypeRequest> ticketRequestList = new LinkedList<TicketTypeRequest>();
-        for(int i = 0; i < ticketTypeRequests.length; i++){
-            ticketRequestList.add(ticketTypeRequests[i]);
-        }
-        
-        //createTicketOrder 
-        TicketOrder order = new TicketOrder(accountId, ticketRequestList);
+        purchase(accountId, ticketTypeRequests);
+    }
 
-        //validateOrder
-        validateTicketOrder(order);
+    @Override
+    public PurchaseResult purchaseTickets(String idempotencyKey, long accountId, TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException {
+        return idempotent(idempotencyKey, accountId, () -> purchase(accountId, ticketTypeRequests));
+    }
 
-        //calculate seats 
-        int totalSeats = calculateNumberOfSeats(order);
-        //calculate price
-        int totalPrice = calculatePrice(order);
+    /**
+     * Purchases an order already tallied into counts, for callers that decode orders off the wire and never build
+     * TicketTypeRequests. Same checks and outcomes as purchaseTickets, and allocates nothing: the seats reserved are
+     * returned in the high 32 bits and the price paid in the low 32 bits.
+     */
+    public long purchaseCounts(long accountId, int adults, int children, int infants) throws InvalidPurchaseException {
+        return purchase(accountId, adults, children, infants);
+    }
+
+    /**
+     * Idempotent purchase of an order already tallied into counts, see {@link #purchaseTickets(String, long, TicketTypeRequest...)}.
+     */
+    public PurchaseResult purchaseCounts(String idempotencyKey, long accountId, int adults, int children, int infants) throws InvalidPurchaseException {
+        return idempotent(idempotencyKey, accountId, () -> purchase(accountId, adults, children, infants));
+    }
 
-        //call service seat and payment service.
-        ticketPaymentService.makePayment(order.getAccountId(), totalPrice); //if payments fails seatReservationService should not be called
-        seatReservationService.reserveSeat(order.getAccountId(), totalSeats);
+    private PurchaseResult idempotent(String idempotencyKey, long accountId, LongSupplier purchase) throws InvalidPurchaseException {
+        PurchaseResult result = idempotencyCache.execute(idempotencyKey, accountId, () -> {
+            try {
+                long purchased = purchase.getAsLong();
+                return PurchaseResult.success(accountId, (int) (purchased >>> 32), (int) purchased);
+            } catch (InvalidPurchaseException e) {
+                // a rate limited or capped attempt is not remembered, the retry may well be allowed.
+                if (e.getReason() == null || e.getReason() == InvalidPurchaseException.Reason.RATE_LIMITED
+                        || e.getReason() == InvalidPurchaseException.Reason.ACCOUNT_LIMIT_REACHED) throw e;
+                return PurchaseResult.rejected(accountId, e.getReason());
+            }
+        });
+        if (!result.isSuccess()) throw new InvalidPurchaseException(result.getFailure());
+        return result;
     }
 
-    private int calculateNumberOfSeats(TicketOrder order) {
-        int seats = 0;
+    // returns the seats in the high half and the price in the low half, so the plain purchase allocates nothing.
+    private long purchase(long accountId, TicketTypeRequest... ticketTypeRequests) throws InvalidPurchaseException {
+        // tally every ticket type in a single pass, no intermediate list or order object.
         int adults = 0;
         int children = 0;
+        int infants = 0;
+        for (int i = 0; i < ticketTypeRequests.length; i++) {
+            TicketTypeRequest ttr = ticketTypeRequests[i];
+            switch (ttr.getTicketType()) {
+                case ADULT: adults += ttr.getNoOfTickets(); break;
+                case CHILD: children += ttr.getNoOfTickets(); break;
+                case INFANT: infants += ttr.getNoOfTickets(); break;
+            }
+        }
+        return purchase(accountId, adults, children, infants);
+    }
 
-        adults = numberOfTicketType(order, Type.ADULT);
-        children = numberOfTicketType(order, Type.CHILD);
+    private long purchase(long accountId, int adults, int children, int infants) throws InvalidPurchaseException {
+        //validateOrder
+        long started = tick();
+        OrderShapeCache.Shape shape = null;
+        int totalPrice;
+        try {
+            checkRateLimit(accountId);
+            if (orderShapeCache != null) {
+                shape = validateShape(currentPrices(), accountId, adults, children, infants);
+            } else {
+                validateTicketOrder(accountId, adults, children, infants);
+            }
+            //calculate price, an order no payment can carry is rejected with the rest
+            totalPrice = shape != null ? shape.getPrice() : calculatePrice(currentPrices(), adults, children, infants);
+            checkPurchaseHistory(accountId, adults + children + infants);
+        } catch (InvalidPurchaseException e) {
+            if (purchaseMetrics != null) purchaseMetrics.recordValidation(tick() - started);
+            purchaseListener.rejected(accountId, adults, children, infants, e.getReason());
+            throw e;
+        }
+        // the end of validation doubles as the start of payment, the clock is read as few times as possible.
+        long validated = tick();
+        if (purchaseMetrics != null) purchaseMetrics.recordValidation(validated - started);
+
+        //calculate seats
+        int totalSeats = shape != null ? shape.getSeats() : calculateNumberOfSeats(adults, children);
 
-        seats = adults + children;
-        System.out.println("Number of seats: " + seats); //should be logged or removed
-        order.setNumberOfSeats(seats);
-        return seats;
+        try {
+            if (purchaseCoordinator != null) {
+                purchaseCoordinator.purchase(accountId, totalSeats, totalPrice);
+            } else {
+                //call service seat and payment service.
+                ticketPaymentService.makePayment(accountId, totalPrice); //if payments fails seatReservationService should not be called
+                long paid = tick();
+                if (purchaseMetrics != null) purchaseMetrics.recordPayment(paid - validated);
+                seatReservationService.reserveSeat(accountId, totalSeats);
+                if (purchaseMetrics != null) purchaseMetrics.recordReservation(tick() - paid);
+            }
+        } catch (InvalidPurchaseException e) {
+            uncountTickets(accountId, adults + children + infants);
+            purchaseListener.rejected(accountId, adults, children, infants, e.getReason());
+            throw e;
+        } catch (RuntimeException e) {
+            uncountTickets(accountId, adults + children + infants);
+            purchaseListener.failed(accountId, adults, children, infants, totalSeats, totalPrice);
+            throw e;
+        }
+        purchaseListener.purchased(accountId, adults, children, infants, totalSeats, totalPrice);
+        return (long) totalSeats << 32 | (totalPrice & 0xFFFFFFFFL);
     }
 
-    private int calculatePrice(TicketOrder order) {
-        int adults = 0;
-        int children = 0;
+    @Override
+    public List<PurchaseResult> purchaseTicketsBatch(List<PurchaseRequest> purchaseRequests) {
+        int size = purchaseRequests.size();
+        List<PurchaseResult> results = new ArrayList<PurchaseResult>(size);
+        long[] accountIds = new long[size];
+        int[] prices = new int[size];
+        int[] seats = new int[size];
+        // adult, child and infant count of each accepted order, three ints per order.
+        int[] counts = new int[size * 3];
+        int[] currentPrices = currentPrices();
+        int accepted = 0;
 
-        adults = numberOfTicketType(order, Type.ADULT);
-        children = numberOfTicketType(order, Type.CHILD);
+        //validate every order first, rejected orders do not reach the gateways.
+        for (PurchaseRequest request : purchaseRequests) {
+            int at = accepted * 3;
+            tally(request, counts, at);
+            int adults = counts[at];
+            int children = counts[at + 1];
+            int infants = counts[at + 2];
+            long started = tick();
+            OrderShapeCache.Shape shape = null;
+            try {
+                checkRateLimit(request.getAccountId());
+                if (orderShapeCache != null) {
+                    shape = validateShape(currentPrices, request.getAccountId(), adults, children, infants);
+                } else {
+                    validateTicketOrder(request.getAccountId(), adults, children, infants);
+                }
+                prices[accepted] = shape != null ? shape.getPrice() : calculatePrice(currentPrices, adults, children, infants);
+                checkPurchaseHistory(request.getAccountId(), adults + children + infants);
+            } catch (InvalidPurchaseException e) {
+                purchaseListener.rejected(request.getAccountId(), adults, children, infants, e.getReason());
+                results.add(PurchaseResult.rejected(request.getAccountId(), e.getReason()));
+                continue;
+            } finally {
+                if (purchaseMetrics != null) purchaseMetrics.recordValidation(tick() - started);
+            }
+            accountIds[accepted] = request.getAccountId();
+            seats[accepted] = shape != null ? shape.getSeats() : calculateNumberOfSeats(adults, children);
+            results.add(PurchaseResult.success(accountIds[accepted], seats[accepted], prices[accepted]));
+            accepted++;
+        }
+        if (accepted == 0) return results;
+        if (purchaseCoordinator != null) return coordinateBatch(results, accountIds, seats, prices, counts, accepted);
 
-        int price =  adults * adultPrice + children * childPrice;
-        System.out.println("Price: " + price); //should be logged or removed
-        order.setPrice(price);
-        return price;
+        //one call per gateway, payment first so that seats are only reserved once everything is paid for.
+        try {
+            long started = tick();
+            if (batchTicketPaymentService != null) {
+                batchTicketPaymentService.makePayments(accountIds, prices, accepted);
+            } else {
+                for (int i = 0; i < accepted; i++) ticketPaymentService.makePayment(accountIds[i], prices[i]);
+            }
+            long paid = tick();
+            if (purchaseMetrics != null) purchaseMetrics.recordPayment(paid - started);
+            if (batchSeatReservationService != null) {
+                batchSeatReservationService.reserveSeats(accountIds, seats, accepted);
+            } else {
+                for (int i = 0; i < accepted; i++) seatReservationService.reserveSeat(accountIds[i], seats[i]);
+            }
+            if (purchaseMetrics != null) purchaseMetrics.recordReservation(tick() - paid);
+        } catch (RuntimeException e) {
+            for (int i = 0; i < accepted; i++) {
+                uncountTickets(accountIds[i], counts[i * 3] + counts[i * 3 + 1] + counts[i * 3 + 2]);
+                purchaseListener.failed(accountIds[i], counts[i * 3], counts[i * 3 + 1], counts[i * 3 + 2], seats[i], prices[i]);
+            }
+            throw e;
+        }
+        for (int i = 0; i < accepted; i++) {
+            purchaseListener.purchased(accountIds[i], counts[i * 3], counts[i * 3 + 1], counts[i * 3 + 2], seats[i], prices[i]);
+        }
+        return results;
     }
 
-    private int numberOfTicketType(TicketOrder order, TicketTypeRequest.Type type) {
-        int count = 0;
-        TicketTypeRequest ttr;
-        Iterator<TicketTypeRequest> it = order.getTickets().iterator();
-        while(it.hasNext()){
-            ttr = it.next();
-             if (ttr.getTicketType() == type) count += ttr.getNoOfTickets();
+    // each accepted order is its own saga, so a full screening or a failing gateway only affects the orders it hits.
+    private List<PurchaseResult> coordinateBatch(List<PurchaseResult> results, long[] accountIds, int[] seats, int[] prices, int[] counts, int accepted) {
+        int order = 0;
+        for (int i = 0; i < results.size(); i++) {
+            if (!results.get(i).isSuccess()) continue;
+            int at = order * 3;
+            boolean purchased = false;
+            try {
+                purchaseCoordinator.purchase(accountIds[order], seats[order], prices[order]);
+                purchased = true;
+            } catch (InvalidPurchaseException e) {
+                uncountTickets(accountIds[order], counts[at] + counts[at + 1] + counts[at + 2]);
+                purchaseListener.rejected(accountIds[order], counts[at], counts[at + 1], counts[at + 2], e.getReason());
+                results.set(i, PurchaseResult.rejected(accountIds[order], e.getReason()));
+            } catch (RuntimeException e) {
+                // the saga has already put things back; the orders before and after it are unaffected.
+                uncountTickets(accountIds[order], counts[at] + counts[at + 1] + counts[at + 2]);
+                purchaseListener.failed(accountIds[order], counts[at], counts[at + 1], counts[at + 2], seats[order], prices[order]);
+                results.set(i, PurchaseResult.failed(accountIds[order], e));
+            }
+            if (purchased) purchaseListener.purchased(accountIds[order], counts[at], counts[at + 1], counts[at + 2], seats[order], prices[order]);
+            order++;
         }
-        return count;
+        return results;
     }
 
-    private boolean validateTicketOrder(TicketOrder order) throws InvalidPurchaseException{
-        int adults = 0;
-        int children = 0;
-        int infants = 0;
+    // a listener that throws, say a journal whose disk has failed, must neither turn a purchase that went through into
+    // a failure nor hide the exception that stopped one that did not; its failures are counted and otherwise ignored.
+    private PurchaseListener guarded(PurchaseListener listener) {
+        if (listener == PurchaseListener.NONE) return listener;
+        return new PurchaseListener() {
+            @Override
+            public void purchased(long accountId, int adults, int children, int infants, int seats, int price) {
+                try {
+                    listener.purchased(accountId, adults, children, infants, seats, price);
+                } catch (RuntimeException e) {
+                    listenerFailed(e);
+                }
+            }
 
-        adults = numberOfTicketType(order, Type.ADULT);
-        children = numberOfTicketType(order, Type.CHILD);
-        infants = numberOfTicketType(order, Type.INFANT);
+            @Override
+            public void rejected(long accountId, int adults, int children, int infants, InvalidPurchaseException.Reason reason) {
+                try {
+                    listener.rejected(accountId, adults, children, infants, reason);
+                } catch (RuntimeException e) {
+                    listenerFailed(e);
+                }
+            }
 
-        // 20 or less tickets max allowed
-        if (adults + children + infants > 20) throw new InvalidPurchaseException(InvalidPurchaseException.tooManyTickets);
+            @Override
+            public void failed(long accountId, int adults, int children, int infants, int seats, int price) {
+                try {
+                    listener.failed(accountId, adults, children, infants, seats, price);
+                } catch (RuntimeException e) {
+                    listenerFailed(e);
+                }
+            }
+        };
+    }
 
-        //at least one adult if order contains child or infant tickets
-        if((children > 0 || infants > 0) && adults == 0) throw new InvalidPurchaseException(InvalidPurchaseException.notAtLeastOneAdult);
+    private void listenerFailed(RuntimeException e) {
+        listenerFailures.increment();
+        lastListenerFailure = e;
+    }
 
-        // at least one adult for each infant. (They are sharing a seat).
-        if(adults < infants) throw new InvalidPurchaseException(InvalidPurchaseException.notEnoughAdults);
+    private void tally(PurchaseRequest request, int[] counts, int at) {
+        TicketOrder order = request.getOrder();
+        counts[at] = order.getAdults();
+        counts[at + 1] = order.getChildren();
+        counts[at + 2] = order.getInfants();
+    }
 
-        //account Id must be > 1.
-        if(order.getAccountId() < 1) throw new InvalidPurchaseException(InvalidPurchaseException.invalidAccountId);
+    // infants sit on an adult's lap so do not take a seat.
+    private int calculateNumberOfSeats(int adults, int children) {
+        return adults + children;
+    }
 
-        //returns true if no validation failures
-        return true;
+    // null without a pricing engine, for calculatePrice to use the fixed prices.
+    private int[] currentPrices() {
+        return pricingEngine != null ? pricingEngine.currentPrices() : null;
+    }
+
+    // prices are indexed by ticket type ordinal.
+    private int calculatePrice(int[] prices, int adults, int children, int infants) throws InvalidPurchaseException {
+        return PriceTable.total(prices != null ? prices : fixedPrices, adults, children, infants);
+    }
+
+    // only read the clock when someone is timing.
+    private long tick() {
+        return purchaseMetrics != null ? System.nanoTime() : 0;
+    }
+
+    // limited calls are refused before validation so that invalid orders use up the account's allowance too.
+    // no stack trace, a bot being turned away should cost as little as possible.
+    private void checkRateLimit(long accountId) throws InvalidPurchaseException {
+        if (rateLimiter != null && !rateLimiter.tryAcquire(accountId)) throw new InvalidPurchaseException(InvalidPurchaseException.Reason.RATE_LIMITED, false);
+    }
+
+    // counted once the order is known to be valid, so a rejected order does not use up the account's tickets.
+    private void checkPurchaseHistory(long accountId, int tickets) throws InvalidPurchaseException {
+        if (purchaseHistory != null && !purchaseHistory.tryRecord(accountId, tickets)) {
+            throw new InvalidPurchaseException(InvalidPurchaseException.Reason.ACCOUNT_LIMIT_REACHED, false);
+        }
+    }
+
+    // tickets counted for an order that then did not go through.
+    private void uncountTickets(long accountId, int tickets) {
+        if (purchaseHistory != null) purchaseHistory.cancel(accountId, tickets);
+    }
+
+    // the rules default to the original four, RuleSet.DEFAULT: at most 20 tickets, an adult with any child or infant,
+    // an adult for each infant (they share a seat) and an account id above 0.
+    private void validateTicketOrder(long accountId, int adults, int children, int infants) throws InvalidPurchaseException{
+        ruleSet().validate(accountId, adults, children, infants, reportAllViolations);
+    }
+
+    private RuleSet ruleSet() {
+        return ruleEngine != null ? ruleEngine.getRuleSet() : RuleSet.DEFAULT;
+    }
+
+    // the same checks as validateTicketOrder with the count rules, seats and price of a repeat shape looked up; the
+    // account id is still checked every time.
+    private OrderShapeCache.Shape validateShape(int[] prices, long accountId, int adults, int children, int infants) throws InvalidPurchaseException {
+        RuleSet ruleSet = ruleSet();
+        OrderShapeCache.Shape shape = orderShapeCache.lookup(ruleSet, prices != null ? prices : fixedPrices, adults, children, infants);
+        long broken = ruleSet.checkAccount(accountId) | shape.getBroken();
+        if (broken != 0) throw ruleSet.exception(broken, reportAllViolations);
+        return shape;
+    }
+
+    /**
+     * Everything except the gateways is optional: prices default to the fixed prices of {@link PriceTable#DEFAULT},
+     * charged without a pricing engine, batch purchases fall back to one gateway call per order, and no listener is
+     * told about outcomes.
+     */
+    public static final class Builder {
+        private TicketPaymentService ticketPaymentService = new TicketPaymentServiceImpl();
+        private SeatReservationService seatReservationService = new SeatReservationServiceImpl();
+        private BatchTicketPaymentService batchTicketPaymentService;
+        private BatchSeatReservationService batchSeatReservationService;
+        private PricingEngine pricingEngine;
+        private PurchaseCoordinator purchaseCoordinator;
+        private PurchaseListener purchaseListener = PurchaseListener.NONE;
+        private IdempotencyCache idempotencyCache = new IdempotencyCache(100_000, TimeUnit.MINUTES.toNanos(10));
+        private AccountRateLimiter rateLimiter;
+        private PurchaseMetrics purchaseMetrics;
+        private RuleEngine ruleEngine;
+        private boolean reportAllViolations;
+        private OrderShapeCache orderShapeCache;
+        private AccountPurchaseHistory purchaseHistory;
+    private final LongAdder listenerFailures = new LongAdder();
+    private volatile RuntimeException lastListenerFailure;
+
+        private Builder() {
+        }
+
+        public Builder ticketPaymentService(TicketPaymentService ticketPaymentService) {
+            this.ticketPaymentService = ticketPaymentService;
+            return this;
+        }
+
+        public Builder seatReservationService(SeatReservationService seatReservationService) {
+            this.seatReservationService = seatReservationService;
+            return this;
+        }
+
+        public Builder batchTicketPaymentService(BatchTicketPaymentService batchTicketPaymentService) {
+            this.batchTicketPaymentService = batchTicketPaymentService;
+            return this;
+        }
+
+        public Builder batchSeatReservationService(BatchSeatReservationService batchSeatReservationService) {
+            this.batchSeatReservationService = batchSeatReservationService;
+            return this;
+        }
+
+        public Builder pricingEngine(PricingEngine pricingEngine) {
+            this.pricingEngine = pricingEngine;
+            return this;
+        }
+
+        /**
+         * Hold, pay and confirm through the coordinator, which compensates if a later step fails. The gateways given
+         * to the builder are then not used. Batch purchases go through the coordinator one order at a time.
+         */
+        public Builder purchaseCoordinator(PurchaseCoordinator purchaseCoordinator) {
+            this.purchaseCoordinator = purchaseCoordinator;
+            return this;
+        }
+
+        public Builder purchaseListener(PurchaseListener purchaseListener) {
+            this.purchaseListener = purchaseListener;
+            return this;
+        }
+
+        /**
+         * Remembers the outcome of purchases made with an idempotency key. Defaults to 100,000 keys for 10 minutes.
+         */
+        public Builder idempotencyCache(IdempotencyCache idempotencyCache) {
+            this.idempotencyCache = idempotencyCache;
+            return this;
+        }
+
+        /**
+         * Limits how often each account can purchase. Not limited by default.
+         */
+        public Builder rateLimiter(AccountRateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * Counts outcomes, as well as any listener, and times validation and the gateway calls. Not measured by
+         * default. Purchases through a coordinator are counted but their gateway calls are not timed.
+         */
+        public Builder purchaseMetrics(PurchaseMetrics purchaseMetrics) {
+            this.purchaseMetrics = purchaseMetrics;
+            return this;
+        }
+
+        /**
+         * Venue specific validation rules, see {@link RuleSet} for the format. Defaults to {@link RuleSet#DEFAULT}.
+         */
+        public Builder ruleEngine(RuleEngine ruleEngine) {
+            this.ruleEngine = ruleEngine;
+            return this;
+        }
+
+        /**
+         * Reject with the messages of every broken rule rather than just the first. The reason is still the first's.
+         */
+        public Builder reportAllViolations(boolean reportAllViolations) {
+            this.reportAllViolations = reportAllViolations;
+            return this;
+        }
+
+        /**
+         * Looks up the verdict, seats and price of order shapes seen before instead of working them out each time.
+         * Not cached by default.
+         */
+        public Builder orderShapeCache(OrderShapeCache orderShapeCache) {
+            this.orderShapeCache = orderShapeCache;
+            return this;
+        }
+
+        /**
+         * Caps the tickets each account can buy over a rolling window, across calls, on top of the per order limit.
+         * Not capped by default.
+         */
+        public Builder purchaseHistory(AccountPurchaseHistory purchaseHistory) {
+            this.purchaseHistory = purchaseHistory;
+            return this;
+        }
+
+        public TicketServiceImpl build() {
+            return new TicketServiceImpl(this);
+        }
     }
 }
@@ -0,0 +1,96 @@
+package uk.gov.dwp.uc.pairtest.config;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Holds a value compiled from a local file and swaps in a newly compiled one when the file changes.
+ * Readers only do a volatile read, a reload never blocks them.
+ */
+public class WatchedFile<T> {
+
+    private final Path file;
+    private final Function<List<String>, T> compiler;
+    private volatile T value;
+    private volatile long lastModified;
+    private final LongAdder reloadFailures = new LongAdder();
+    private volatile Exception lastReloadFailure;
+
+    /**
+     * A fixed value that is never reloaded.
+     */
+    public WatchedFile(T value) {
+        this.file = null;
+        this.compiler = null;
+        this.value = value;
+    }
+
+    /**
+     * The value compiled from the file's lines. The compiler throws IllegalArgumentException for an invalid file.
+     */
+    public WatchedFile(Path file, Function<List<String>, T> compiler) throws IOException {
+        this.file = file;
+        this.compiler = compiler;
+        reload();
+    }
+
+    public T get() {
+        return value;
+    }
+
+    /**
+     * Compiles the file and swaps it in. If the file is invalid the current value stays in force.
+     */
+    public synchronized void reload() throws IOException {
+        if (file == null) return;
+        // remember the version even if it fails to compile, so a bad edit is not retried until the file changes again.
+        lastModified = Files.getLastModifiedTime(file).toMillis();
+        value = compiler.apply(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reloads only if the file has been modified since it was last read.
+     */
+    public boolean reloadIfModified() throws IOException {
+        if (file == null || Files.getLastModifiedTime(file).toMillis() == lastModified) return false;
+        reload();
+        return true;
+    }
+
+    /**
+     * Checks the file for changes on the given executor. A bad edit is counted in {@link #getReloadFailures()}
+     * and the previous value kept.
+     */
+    public ScheduledFuture<?> watch(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        return executor.scheduleWithFixedDelay(() -> {
+            try {
+                reloadIfModified();
+            } catch (IOException | IllegalArgumentException e) {
+                lastReloadFailure = e;
+                reloadFailures.increment();
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Watched reloads that failed, leaving the previous value in force.
+     */
+    public long getReloadFailures() {
+        return reloadFailures.sum();
+    }
+
+    /**
+     * Why the latest watched reload failed, or null if none has.
+     */
+    public Exception getLastReloadFailure() {
+        return lastReloadFailure;
+    }
+}
@@ -0,0 +1,38 @@
+package uk.gov.dwp.uc.pairtest.domain;
+
+/**
+ * Immutable Object
+ *
+ * One customer's order within a batch purchase, tallied into a packed {@link TicketOrder} as it is made, so a batch
+ * waiting to be purchased holds one small object per customer rather than their requests.
+ */
+public final class PurchaseRequest {
+
+    private final TicketOrder order;
+
+    /**
+     * @throws IllegalArgumentException if a type's total does not fit between TicketOrder's minTickets and maxTickets
+     */
+    public PurchaseRequest(long accountId, TicketTypeRequest... ticketTypeRequests) {
+        this.order = TicketOrder.of(accountId, ticketTypeRequests);
+    }
+
+    public PurchaseRequest(TicketOrder order) {
+        this.order = order;
+    }
+
+    public long getAccountId() {
+        return order.getAccountId();
+    }
+
+    public TicketOrder getOrder() {
+        return order;
+    }
+
+    /**
+     * One request per ticket type in the order, built on each call.
+     */
+    public TicketTypeRequest[] getTicketTypeRequests() {
+        return order.getTickets().toArray(new TicketTypeRequest[0]);
+    }
+}
@@ -0,0 +1,79 @@
+package uk.gov.dwp.uc.pairtest.domain;
+
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Immutable Object
+ *
+ * Outcome of a single order: the seats and price that were charged, the rule that rejected it, or the exception
+ * from the gateways that stopped it being bought.
+ */
+public final class PurchaseResult {
+
+    private final long accountId;
+    private final int numberOfSeats;
+    private final int price;
+    private final InvalidPurchaseException.Reason failure;
+    private final RuntimeException error;
+
+    private PurchaseResult(long accountId, int numberOfSeats, int price, InvalidPurchaseException.Reason failure, RuntimeException error) {
+        this.accountId = accountId;
+        this.numberOfSeats = numberOfSeats;
+        this.price = price;
+        this.failure = failure;
+        this.error = error;
+    }
+
+    public static PurchaseResult success(long accountId, int numberOfSeats, int price) {
+        return new PurchaseResult(accountId, numberOfSeats, price, null, null);
+    }
+
+    public static PurchaseResult rejected(long accountId, InvalidPurchaseException.Reason failure) {
+        return new PurchaseResult(accountId, 0, 0, failure, null);
+    }
+
+    /**
+     * An order that was valid but could not be bought because a gateway failed; it can be tried again.
+     */
+    public static PurchaseResult failed(long accountId, RuntimeException error) {
+        return new PurchaseResult(accountId, 0, 0, null, error);
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public boolean isSuccess() {
+        return failure == null && error == null;
+    }
+
+    public int getNumberOfSeats() {
+        return numberOfSeats;
+    }
+
+    public int getPrice() {
+        return price;
+    }
+
+    /**
+     * The rule that rejected the order, or null if it was purchased or failed in the gateways.
+     */
+    public InvalidPurchaseException.Reason getFailure() {
+        return failure;
+    }
+
+    /**
+     * The gateway failure that stopped the order being bought, or null if it was purchased or rejected.
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        if (error != null) return "PurchaseResult[account=" + accountId + ", failed=" + error + "]";
+        return isSuccess()
+                ? "PurchaseResult[account=" + accountId + ", seats=" + numberOfSeats + ", price=" + price + "]"
+                : "PurchaseResult[account=" + accountId + ", rejected=" + failure + "]";
+    }
+}
@@ -1,45 +1,197 @@
 package uk.gov.dwp.uc.pairtest.domain;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-public class TicketOrder {
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+
+/**
+ * Immutable Object
+ *
+ * Represents a customers order of multiple cinema tickets and types. The adult, child and infant counts are packed
+ * into one long, 21 signed bits each, so an order is a single object, 32 bytes with compressed class pointers, with
+ * no list or request objects behind it. Batch purchases hold their orders this way, see {@link PurchaseRequest}.
+ * The number of seats follows from the counts; the price is 0 until one is set with {@link #withPrice}.
+ */
+public final class TicketOrder {
+
+    private static final int bits = 21;
+    private static final int mask = (1 << bits) - 1;
+    public static final int maxTickets = (1 << (bits - 1)) - 1;
+    public static final int minTickets = -(1 << (bits - 1));
+
+    private final long accountId;
+    private final long counts;
+    private final int price;
+
+    private TicketOrder(long accountId, long counts, int price) {
+        this.accountId = accountId;
+        this.counts = counts;
+        this.price = price;
+    }
 
     /**
-     *  Represents a customers order of multiple cinema tickets and types. Number of seats and the order price is calculated by the TicketService.
+     * Tallies the requests straight into the packed counts.
+     *
+     * @throws IllegalArgumentException if a type's total does not fit between minTickets and maxTickets
      */
-    private List<TicketTypeRequest> tickets = new LinkedList<TicketTypeRequest>(); 
-    private long accountId;
-    private int numberOfSeats;
-    private int price; 
-  
-    public TicketOrder(long accountId, List<TicketTypeRequest> tickets) {
-        this.tickets = tickets;
-        this.accountId = accountId;
+    public static TicketOrder of(long accountId, TicketTypeRequest... ticketTypeRequests) {
+        Builder builder = builder(accountId);
+        for (TicketTypeRequest request : ticketTypeRequests) builder.add(request);
+        return builder.build();
     }
 
-    public List<TicketTypeRequest> getTickets() {
-        return this.tickets;
+    public static TicketOrder of(long accountId, int adults, int children, int infants) {
+        return new TicketOrder(accountId, pack(adults, children, infants), 0);
+    }
+
+    public static Builder builder(long accountId) {
+        return new Builder(accountId);
     }
 
     public long getAccountId() {
         return this.accountId;
     }
 
-    public int getNumberOfSeats() {
-        return this.numberOfSeats;
+    public int getAdults() {
+        return count(Type.ADULT);
+    }
+
+    public int getChildren() {
+        return count(Type.CHILD);
     }
 
-    public void setNumberOfSeats(int numberOfSeats) {
-        this.numberOfSeats = numberOfSeats;
+    public int getInfants() {
+        return count(Type.INFANT);
+    }
+
+    public int getNoOfTickets(Type type) {
+        return count(type);
+    }
+
+    public int getTotalTickets() {
+        return getAdults() + getChildren() + getInfants();
+    }
+
+    /**
+     * Infants sit on an adult's lap, every other ticket takes a seat.
+     */
+    public int getNumberOfSeats() {
+        return getAdults() + getChildren();
     }
 
     public int getPrice() {
         return this.price;
     }
 
-    public void setPrice(int price) {
-        this.price = price;
+    /**
+     * The same order at the given price.
+     */
+    public TicketOrder withPrice(int price) {
+        return price == this.price ? this : new TicketOrder(accountId, counts, price);
     }
 
+    /**
+     * One shared request per ticket type in the order, built on each call.
+     */
+    public List<TicketTypeRequest> getTickets() {
+        List<TicketTypeRequest> tickets = new ArrayList<TicketTypeRequest>(3);
+        for (Type type : Type.values()) {
+            int n = count(type);
+            if (n != 0) tickets.add(TicketTypeRequest.of(type, n));
+        }
+        return Collections.unmodifiableList(tickets);
+    }
+
+    private int count(Type type) {
+        // shift the field to the top of the long and back down again to restore its sign.
+        return (int) (counts << (64 - bits * (type.ordinal() + 1)) >> (64 - bits));
+    }
+
+    private static long pack(int adults, int children, int infants) {
+        return field(adults, Type.ADULT) | field(children, Type.CHILD) | field(infants, Type.INFANT);
+    }
+
+    private static long field(int n, Type type) {
+        if (n < minTickets || n > maxTickets) {
+            throw new IllegalArgumentException(type + " tickets must be between " + minTickets + " and " + maxTickets + ", was " + n);
+        }
+        return (long) (n & mask) << (bits * type.ordinal());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TicketOrder)) return false;
+        TicketOrder other = (TicketOrder) o;
+        return accountId == other.accountId && counts == other.counts && price == other.price;
+    }
+
+    @Override
+    public int hashCode() {
+        return (Long.hashCode(accountId) * 31 + Long.hashCode(counts)) * 31 + price;
+    }
+
+    @Override
+    public String toString() {
+        return "TicketOrder[account=" + accountId + ", adults=" + getAdults() + ", children=" + getChildren()
+                + ", infants=" + getInfants() + ", price=" + price + "]";
+    }
+
+    /**
+     * Accumulates counts in plain ints, nothing is allocated until build.
+     */
+    public static final class Builder {
+
+        private final long accountId;
+        private int adults;
+        private int children;
+        private int infants;
+        private int price;
+
+        private Builder(long accountId) {
+            this.accountId = accountId;
+        }
+
+        public Builder add(TicketTypeRequest request) {
+            return add(request.getTicketType(), request.getNoOfTickets());
+        }
+
+        public Builder add(Type type, int noOfTickets) {
+            switch (type) {
+                case ADULT: adults = Math.addExact(adults, noOfTickets); break;
+                case CHILD: children = Math.addExact(children, noOfTickets); break;
+                case INFANT: infants = Math.addExact(infants, noOfTickets); break;
+            }
+            return this;
+        }
+
+        public Builder adults(int adults) {
+            this.adults = adults;
+            return this;
+        }
+
+        public Builder children(int children) {
+            this.children = children;
+            return this;
+        }
+
+        public Builder infants(int infants) {
+            this.infants = infants;
+            return this;
+        }
+
+        public Builder price(int price) {
+            this.price = price;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if a type's total does not fit between minTickets and maxTickets
+         */
+        public TicketOrder build() {
+            return new TicketOrder(accountId, pack(adults, children, infants), price);
+        }
+    }
 }
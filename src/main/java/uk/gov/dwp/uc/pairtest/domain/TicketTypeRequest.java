@@ -2,18 +2,38 @@ package uk.gov.dwp.uc.pairtest.domain;
 
 /**
  * Immutable Object
+ *
+ * Requests for up to 20 tickets of a type, the most one order can hold, are shared: {@link #of} hands out the same
+ * instance for the same type and count instead of allocating one per request.
  */
 
-public class TicketTypeRequest {
+public final class TicketTypeRequest {
 
-    private int noOfTickets;
-    private Type type;
+    private static final int cached = 20;
+    private static final TicketTypeRequest[][] canonical = new TicketTypeRequest[Type.values().length][cached + 1];
+
+    static {
+        for (Type type : Type.values()) {
+            for (int n = 0; n <= cached; n++) canonical[type.ordinal()][n] = new TicketTypeRequest(type, n);
+        }
+    }
+
+    private final int noOfTickets;
+    private final Type type;
 
     public TicketTypeRequest(Type type, int noOfTickets) {
         this.type = type;
         this.noOfTickets = noOfTickets;
     }
 
+    /**
+     * The shared instance for common counts, a new one otherwise.
+     */
+    public static TicketTypeRequest of(Type type, int noOfTickets) {
+        if (type != null && noOfTickets >= 0 && noOfTickets <= cached) return canonical[type.ordinal()][noOfTickets];
+        return new TicketTypeRequest(type, noOfTickets);
+    }
+
     public int getNoOfTickets() {
         return noOfTickets;
     }
@@ -22,6 +42,24 @@ public class TicketTypeRequest {
         return type;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TicketTypeRequest)) return false;
+        TicketTypeRequest other = (TicketTypeRequest) o;
+        return noOfTickets == other.noOfTickets && type == other.type;
+    }
+
+    @Override
+    public int hashCode() {
+        return (type == null ? 0 : type.hashCode()) * 31 + noOfTickets;
+    }
+
+    @Override
+    public String toString() {
+        return "TicketTypeRequest[" + type + " x " + noOfTickets + "]";
+    }
+
     public enum Type {
         ADULT, CHILD , INFANT
     }
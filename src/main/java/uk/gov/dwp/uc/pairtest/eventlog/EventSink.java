@@ -0,0 +1,19 @@
+package uk.gov.dwp.uc.pairtest.eventlog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Where the event log's background writer sends each batch of formatted events. Only ever called from that thread.
+ */
+public interface EventSink extends AutoCloseable {
+
+    /**
+     * Writes every remaining byte of the batch.
+     */
+    void write(ByteBuffer batch) throws IOException;
+
+    @Override
+    void close() throws IOException;
+
+}
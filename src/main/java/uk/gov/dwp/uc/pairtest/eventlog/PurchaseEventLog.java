@@ -0,0 +1,267 @@
+package uk.gov.dwp.uc.pairtest.eventlog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import uk.gov.dwp.uc.pairtest.PurchaseListener;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Structured log of purchase outcomes, one JSON object per line, written off the purchasing thread.
+ *
+ * Purchasing threads copy each event into a preallocated slot of a lock-free ring buffer and return; a background
+ * thread drains the ring in batches, formats them and hands each batch to the sink in one write. Nothing on the
+ * purchasing side allocates, takes a lock or waits for the disk. When the ring is full because the sink has fallen
+ * behind, the event is dropped and counted rather than holding up the purchase.
+ *
+ * Purchases are logged at INFO, rejections at WARN and gateway failures at ERROR. Events below the configured level
+ * are skipped, and INFO events can be sampled so that only one in every sampleEvery is kept.
+ */
+public class PurchaseEventLog implements PurchaseListener, AutoCloseable {
+
+    public enum Level { INFO, WARN, ERROR }
+
+    private static final int kindPurchased = 0;
+    private static final int kindRejected = 1;
+    private static final int kindFailed = 2;
+    private static final String[] events = {"purchased", "rejected", "failed"};
+    private static final Level[] levels = {Level.INFO, Level.WARN, Level.ERROR};
+    private static final InvalidPurchaseException.Reason[] reasons = InvalidPurchaseException.Reason.values();
+
+    // ints per slot: kind, adults, children, infants, seats, price (or reason ordinal + 1 when rejected).
+    private static final int stride = 6;
+    private static final int batchBytes = 64 * 1024;
+    private static final long idleNanos = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final EventSink sink;
+    private final Level level;
+    private final int sampleEvery;
+    private final int mask;
+
+    // slot i is free for the producer claiming position p when sequences[i] == p, and ready for the writer once it
+    // is p + 1; the writer hands it back for the next lap by setting it to p + capacity.
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final long[] timestamps;
+    private final long[] accountIds;
+    private final int[] values;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile boolean abandoned;
+    private volatile IOException writeFailure;
+    // where the writer stopped, so close() can count events claimed too late for it. Only close() moves it on.
+    private volatile long drainedTo = -1;
+
+    /**
+     * @param capacity    events the ring holds before dropping, rounded up to a power of two
+     * @param sampleEvery keep one in every this many INFO events, 1 to keep them all
+     */
+    public PurchaseEventLog(EventSink sink, int capacity, Level level, int sampleEvery) {
+        if (capacity < 2 || capacity > 1 << 24) throw new IllegalArgumentException("capacity must be between 2 and " + (1 << 24));
+        if (sampleEvery < 1) throw new IllegalArgumentException("sampleEvery must be at least 1");
+        int slots = Integer.highestOneBit(capacity - 1) << 1;
+        this.sink = sink;
+        this.level = level;
+        this.sampleEvery = sampleEvery;
+        this.mask = slots - 1;
+        this.sequences = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++) sequences.set(i, i);
+        this.timestamps = new long[slots];
+        this.accountIds = new long[slots];
+        this.values = new int[slots * stride];
+
+        writer = new Thread(this::drain, "purchase-event-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void purchased(long accountId, int adults, int children, int infants, int seats, int price) {
+        if (level != Level.INFO) return;
+        if (sampleEvery > 1 && ThreadLocalRandom.current().nextInt(sampleEvery) != 0) return;
+        publish(kindPurchased, accountId, adults, children, infants, seats, price);
+    }
+
+    @Override
+    public void rejected(long accountId, int adults, int children, int infants, InvalidPurchaseException.Reason reason) {
+        if (level == Level.ERROR) return;
+        publish(kindRejected, accountId, adults, children, infants, 0, reason == null ? 0 : reason.ordinal() + 1);
+    }
+
+    @Override
+    public void failed(long accountId, int adults, int children, int infants, int seats, int price) {
+        publish(kindFailed, accountId, adults, children, infants, seats, price);
+    }
+
+    private void publish(int kind, long accountId, int adults, int children, int infants, int seats, int last) {
+        if (closed) {
+            dropped.increment();
+            return;
+        }
+        long position = tail.get();
+        while (true) {
+            long free = sequences.get((int) position & mask) - position;
+            if (free == 0) {
+                if (tail.compareAndSet(position, position + 1)) break;
+                position = tail.get();
+            } else if (free < 0) {
+                // the writer has not yet emptied this slot from the last lap, the ring is full.
+                dropped.increment();
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+        int slot = (int) position & mask;
+        int at = slot * stride;
+        timestamps[slot] = System.currentTimeMillis();
+        accountIds[slot] = accountId;
+        values[at] = kind;
+        values[at + 1] = adults;
+        values[at + 2] = children;
+        values[at + 3] = infants;
+        values[at + 4] = seats;
+        values[at + 5] = last;
+        sequences.lazySet(slot, position + 1);
+    }
+
+    private void drain() {
+        ByteBuffer batch = ByteBuffer.allocateDirect(batchBytes);
+        StringBuilder line = new StringBuilder(256);
+        long head = 0;
+        int lines = 0;
+        while (true) {
+            boolean stopping = closed;
+            int slot = (int) head & mask;
+            if (sequences.get(slot) == head + 1) {
+                format(slot, line);
+                if (batch.remaining() < line.length()) {
+                    flush(batch, lines);
+                    lines = 0;
+                }
+                for (int i = 0; i < line.length(); i++) batch.put((byte) line.charAt(i));
+                lines++;
+                sequences.lazySet(slot, head + mask + 1);
+                head++;
+                continue;
+            }
+            // ring empty, or the next producer has claimed its slot but not finished writing it.
+            if (lines > 0) {
+                flush(batch, lines);
+                lines = 0;
+            } else if (stopping && head == tail.get()) {
+                drainedTo = head;
+                return;
+            } else {
+                LockSupport.parkNanos(idleNanos);
+            }
+        }
+    }
+
+    private void format(int slot, StringBuilder line) {
+        int at = slot * stride;
+        int kind = values[at];
+        line.setLength(0);
+        line.append("{\"timestamp\":").append(timestamps[slot])
+            .append(",\"level\":\"").append(levels[kind].name())
+            .append("\",\"event\":\"").append(events[kind])
+            .append("\",\"accountId\":").append(accountIds[slot])
+            .append(",\"adults\":").append(values[at + 1])
+            .append(",\"children\":").append(values[at + 2])
+            .append(",\"infants\":").append(values[at + 3]);
+        if (kind == kindRejected) {
+            int reason = values[at + 5];
+            line.append(",\"reason\":");
+            if (reason == 0) line.append("null");
+            else line.append('"').append(reasons[reason - 1].name()).append('"');
+        } else {
+            line.append(",\"seats\":").append(values[at + 4]).append(",\"price\":").append(values[at + 5]);
+        }
+        line.append("}\n");
+    }
+
+    private void flush(ByteBuffer batch, int lines) {
+        if (abandoned) {
+            // closed while the sink was stuck, nothing more is written to it.
+            dropped.add(lines);
+            batch.clear();
+            return;
+        }
+        batch.flip();
+        try {
+            sink.write(batch);
+            written.add(lines);
+        } catch (IOException e) {
+            // keep draining so purchases are never held up, the events in this batch are lost.
+            writeFailure = e;
+            dropped.add(lines);
+        }
+        batch.clear();
+    }
+
+    /**
+     * Events not logged because the ring was full, the sink failed or the log was already closed. Events skipped by
+     * level or sampling are not counted.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Events handed to the sink.
+     */
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * The last error from the sink, or null if every write succeeded.
+     */
+    public IOException getWriteFailure() {
+        return writeFailure;
+    }
+
+    /**
+     * Writes out every event already logged, then closes the sink. Waits at most 10 seconds for the sink.
+     */
+    @Override
+    public void close() throws IOException {
+        close(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Writes out every event already logged, then closes the sink. If the sink has not taken them all within the
+     * timeout it is closed anyway, which fails the write in progress, and the events not yet written are dropped.
+     * Returns false if that happened.
+     */
+    public boolean close(long timeout, TimeUnit unit) throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(Math.max(1, unit.toMillis(timeout)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        boolean drained = !writer.isAlive();
+        if (!drained) {
+            abandoned = true;
+            writer.interrupt();
+        } else {
+            // published while close() was starting, after the writer had seen the ring empty.
+            long late = tail.get() - drainedTo;
+            drainedTo += late;
+            dropped.add(late);
+        }
+        sink.close();
+        return drained;
+    }
+}
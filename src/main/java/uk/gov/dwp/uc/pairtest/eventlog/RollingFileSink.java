@@ -0,0 +1,85 @@
+package uk.gov.dwp.uc.pairtest.eventlog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends to a local file, rolling it over once it reaches maxBytes: purchases.log becomes purchases.log.1,
+ * purchases.log.1 becomes purchases.log.2 and so on, and the oldest beyond maxFiles is deleted.
+ * A batch is never split across files, so a file can run over maxBytes by up to one batch.
+ */
+public class RollingFileSink implements EventSink {
+
+    private final Path file;
+    private final long maxBytes;
+    private final int maxFiles;
+    private FileChannel channel;
+    private long size;
+    // the live file has been renamed or deleted but its replacement is not open yet.
+    private boolean movedAside;
+
+    public RollingFileSink(Path file, long maxBytes, int maxFiles) throws IOException {
+        if (maxBytes < 1) throw new IllegalArgumentException("maxBytes must be at least 1");
+        if (maxFiles < 1) throw new IllegalArgumentException("maxFiles must be at least 1");
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+        open();
+    }
+
+    private void open() throws IOException {
+        FileChannel opened = open(file);
+        size = opened.size();
+        channel = opened;
+    }
+
+    /**
+     * Opens the live file for appending.
+     */
+    protected FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void write(ByteBuffer batch) throws IOException {
+        if (size >= maxBytes) roll();
+        while (batch.hasRemaining()) size += channel.write(batch);
+    }
+
+    // the old file is renamed while still open, and only closed once the new one is, so if opening fails the sink
+    // carries on appending to the renamed file rather than being left without one. The next write then only tries
+    // the open again: the live file is already out of the way, and shifting the generations again would fail.
+    private void roll() throws IOException {
+        if (!movedAside) {
+            if (maxFiles == 1) {
+                Files.delete(file);
+            } else {
+                Files.deleteIfExists(rolled(maxFiles - 1));
+                for (int i = maxFiles - 2; i >= 1; i--) {
+                    if (Files.exists(rolled(i))) Files.move(rolled(i), rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+                Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+            }
+            movedAside = true;
+        }
+        FileChannel old = channel;
+        open();
+        movedAside = false;
+        old.close();
+    }
+
+    // maxFiles counts the live file, so the rolled ones run from .1 to .(maxFiles - 1).
+    private Path rolled(int generation) {
+        return file.resolveSibling(file.getFileName() + "." + generation);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
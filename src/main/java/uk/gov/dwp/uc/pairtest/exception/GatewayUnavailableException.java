@@ -0,0 +1,62 @@
+package uk.gov.dwp.uc.pairtest.exception;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A gateway call was not made, or was given up on, to protect the rest of the service. Unlike
+ * InvalidPurchaseException the order itself was fine. A call refused with CIRCUIT_OPEN or BULKHEAD_FULL never
+ * reached the gateway and can be tried again later; one given up on with DEADLINE_EXCEEDED may still complete in the
+ * gateway, so trying it again could charge twice. {@link #getPending()} says how it ended.
+ */
+public class GatewayUnavailableException extends RuntimeException {
+
+    private final String gateway;
+    private final Reason reason;
+    private final CompletionStage<Void> pending;
+
+    public GatewayUnavailableException(String gateway, Reason reason)
+    {
+        this(gateway, reason, null);
+    }
+
+    public GatewayUnavailableException(String gateway, Reason reason, CompletionStage<Void> pending)
+    {
+        // raised on every call while a gateway is down, a stack trace would tell us nothing.
+        super(gateway + ": " + reason.getMessage(), null, false, false);
+        this.gateway = gateway;
+        this.reason = reason;
+        this.pending = pending;
+    }
+
+    public String getGateway() {
+        return gateway;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * The call given up on, completed when the gateway finally returns from it: normally if it went through,
+     * exceptionally if it failed. Null unless the reason is DEADLINE_EXCEEDED.
+     */
+    public CompletionStage<Void> getPending() {
+        return pending;
+    }
+
+    public enum Reason {
+        CIRCUIT_OPEN("Gateway is failing, calls are suspended"),
+        BULKHEAD_FULL("Too many calls to the gateway in progress"),
+        DEADLINE_EXCEEDED("Gateway did not answer in time");
+
+        private final String message;
+
+        Reason(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package uk.gov.dwp.uc.pairtest.exception;
+
+/**
+ * An idempotency key was sent by a different account from the one that first used it. Nothing was purchased.
+ */
+public class IdempotencyKeyConflictException extends IllegalArgumentException {
+
+    public IdempotencyKeyConflictException(String message)
+    {
+        super(message);
+    }
+}
@@ -2,13 +2,68 @@ package uk.gov.dwp.uc.pairtest.exception;
 
 public class InvalidPurchaseException extends RuntimeException {
 
-    public static String notEnoughAdults = "Not Enough Adults for Infants";
-    public static String notAtLeastOneAdult = "At least one Adult required with Children/Infants";
-    public static String tooManyTickets = "Maximum of 20 tickets per purchase";
-    public static String invalidAccountId = "Account Id must be greater than zero";
+    public static String notEnoughAdults = Reason.NOT_ENOUGH_ADULTS.getMessage();
+    public static String notAtLeastOneAdult = Reason.NOT_AT_LEAST_ONE_ADULT.getMessage();
+    public static String tooManyTickets = Reason.TOO_MANY_TICKETS.getMessage();
+    public static String invalidAccountId = Reason.INVALID_ACCOUNT_ID.getMessage();
+
+    private final Reason reason;
 
     public InvalidPurchaseException(String message)
     {
         super(message);
+        this.reason = null;
+    }
+
+    public InvalidPurchaseException(Reason reason)
+    {
+        super(reason.getMessage());
+        this.reason = reason;
+    }
+
+    /**
+     * A rejection with a message other than the reason's own, e.g. several broken rules at once.
+     */
+    public InvalidPurchaseException(Reason reason, String message)
+    {
+        super(message);
+        this.reason = reason;
+    }
+
+    /**
+     * Without a stack trace, for rejections frequent enough that filling one in would cost more than the check itself.
+     */
+    public InvalidPurchaseException(Reason reason, boolean writableStackTrace)
+    {
+        super(reason.getMessage(), null, false, writableStackTrace);
+        this.reason = reason;
+    }
+
+    /**
+     * The rule that rejected the purchase, or null if the exception was raised with a free text message.
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    public enum Reason {
+        NOT_ENOUGH_ADULTS("Not Enough Adults for Infants"),
+        NOT_AT_LEAST_ONE_ADULT("At least one Adult required with Children/Infants"),
+        TOO_MANY_TICKETS("Maximum of 20 tickets per purchase"),
+        INVALID_ACCOUNT_ID("Account Id must be greater than zero"),
+        SEATS_UNAVAILABLE("Not enough seats available"),
+        RATE_LIMITED("Too many purchases for this account, try again later"),
+        ACCOUNT_LIMIT_REACHED("Maximum tickets for this account reached, try again later"),
+        PRICE_TOO_HIGH("Order total is more than can be paid in one payment");
+
+        private final String message;
+
+        Reason(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
     }
 }
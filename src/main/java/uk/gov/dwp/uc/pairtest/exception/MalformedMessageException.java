@@ -0,0 +1,14 @@
+package uk.gov.dwp.uc.pairtest.exception;
+
+/**
+ * A binary purchase message could not be decoded: truncated, for another template, or with a field out of range.
+ * Nothing was purchased.
+ */
+public class MalformedMessageException extends RuntimeException {
+
+    public MalformedMessageException(String message)
+    {
+        // raised for every bad frame a client sends, a stack trace would tell us nothing about the client.
+        super(message, null, false, false);
+    }
+}
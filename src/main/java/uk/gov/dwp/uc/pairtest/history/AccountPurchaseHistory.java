@@ -0,0 +1,366 @@
+package uk.gov.dwp.uc.pairtest.history;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import uk.gov.dwp.uc.pairtest.journal.OrderJournalReader;
+
+/**
+ * Tickets bought by each account over a rolling window, e.g. a day, so that a cap holds across calls and not just
+ * within one order.
+ *
+ * Accounts live in a fixed size open addressing table keyed by the raw account id, as in AccountRateLimiter, so memory
+ * is set once at construction: 16 bytes a slot plus 4 bytes for each entry in its ring, and at least 1.5 slots per
+ * account. With the default 8 entries that is 48 bytes a slot, 72 to 144 bytes an account depending on how close
+ * maxAccounts is below a power of two. Each slot is adjacent longs, so a lookup touches one or two cache lines: the
+ * account id; the time of its newest purchase packed with the ring's head, size and running total; then the ring of
+ * (time, tickets) entries, two to a long, each the time in seconds modulo 2^22 and the tickets in the low 10 bits. The
+ * time of the newest purchase says whether the ring can be trusted at all, and an entry can be no older than two
+ * windows when it is, so 22 bits is enough for a window of up to 24 days.
+ *
+ * Entries older than the window are dropped from the tail of the ring whenever the account is looked at, so each
+ * purchase is added and dropped once: O(1) amortised. An account that buys more often than its ring holds has its two
+ * oldest entries folded into one at the later time, which keeps the older tickets counted for longer, never shorter.
+ * When an account's probe window is full the one whose newest purchase is oldest is reused; an account quiet for a
+ * whole window loses nothing by this, only a table too small for the accounts active in a window becomes lenient.
+ *
+ * The table is split into stripes, each with its own lock held only to update one slot.
+ */
+public class AccountPurchaseHistory {
+
+    private static final int MAX_PROBES = 16;
+    private static final int TICKET_BITS = 10;
+    private static final int MAX_ENTRY_TICKETS = (1 << TICKET_BITS) - 1;
+    private static final int TIME_BITS = 32 - TICKET_BITS;
+    private static final int TIME_MASK = (1 << TIME_BITS) - 1;
+    private static final long MAX_WINDOW_SECONDS = (1 << (TIME_BITS - 1)) - 1;
+    private static final int MAX_ENTRIES = 64;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final int slotMask;
+    private final int entries;
+    private final int stride;
+    private final int maxTickets;
+    private final int windowSeconds;
+    private final Clock clock;
+    private final long epoch;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder folds = new LongAdder();
+
+    public AccountPurchaseHistory(int maxTickets, Duration window, int maxAccounts) {
+        this(maxTickets, window, maxAccounts, 8, Clock.systemUTC());
+    }
+
+    /**
+     * @param maxTickets tickets an account may buy within any window
+     * @param window     whole seconds, up to 24 days
+     * @param entries    purchases each account's ring holds before the oldest are folded together
+     */
+    public AccountPurchaseHistory(int maxTickets, Duration window, int maxAccounts, int entries, Clock clock) {
+        if (maxTickets < 1 || maxTickets > MAX_ENTRY_TICKETS) throw new IllegalArgumentException("maxTickets must be between 1 and " + MAX_ENTRY_TICKETS);
+        if (window.getSeconds() < 1 || window.getSeconds() > MAX_WINDOW_SECONDS) throw new IllegalArgumentException("window must be between 1 and " + MAX_WINDOW_SECONDS + " seconds");
+        if (maxAccounts < 1 || maxAccounts > 1 << 28) throw new IllegalArgumentException("maxAccounts must be between 1 and " + (1 << 28));
+        if (entries < 1 || entries > MAX_ENTRIES) throw new IllegalArgumentException("entries must be between 1 and " + MAX_ENTRIES);
+        int slots = Math.max(MAX_PROBES, Integer.highestOneBit(maxAccounts * 3 / 2) << 1);
+        int stripeCount = Math.min(64, slots / MAX_PROBES);
+        this.entries = entries;
+        this.stride = 2 + (entries + 1) / 2;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) stripes[i] = new Stripe(slots / stripeCount, stride);
+        this.stripeMask = stripeCount - 1;
+        this.slotMask = slots / stripeCount - 1;
+        this.maxTickets = maxTickets;
+        this.windowSeconds = (int) window.getSeconds();
+        this.clock = clock;
+        // a window back, so that purchases replayed from the journal are never before the epoch.
+        this.epoch = clock.millis() - window.toMillis();
+    }
+
+    /**
+     * Replays the purchases in an order journal that are still within the window, so caps hold across a restart.
+     * Call before taking purchases. Returns the number of purchases replayed.
+     */
+    public long rebuild(Path journalDirectory) throws IOException {
+        long replayed = 0;
+        try (OrderJournalReader reader = new OrderJournalReader(journalDirectory)) {
+            while (reader.next()) {
+                if (!reader.isPurchased()) continue;
+                int tickets = reader.getAdults() + reader.getChildren() + reader.getInfants();
+                if (record(reader.getAccountId(), tickets, reader.getTimestamp())) replayed++;
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Adds the tickets to the account's window, or returns false without adding them if that would take it over the
+     * cap. Account ids below 1 are not tracked, they are rejected by validation anyway.
+     */
+    public boolean tryRecord(long accountId, int tickets) {
+        if (accountId < 1 || tickets < 1) return true;
+        if (tickets > maxTickets) {
+            rejected.increment();
+            return false;
+        }
+        long hash = mix(accountId);
+        Stripe stripe = stripes[(int) hash & stripeMask];
+        int now = seconds(clock.millis());
+
+        stripe.lock.lock();
+        try {
+            long[] table = stripe.table;
+            int slot = claim(table, accountId, (int) (hash >>> 32), now);
+            int sum = expire(table, slot, now) & 0xFFFF;
+            if (sum + tickets > maxTickets) {
+                rejected.increment();
+                return false;
+            }
+            append(table, slot, now, tickets);
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a purchase made at the given time whatever the cap, for replaying the journal. Returns false if it is
+     * already outside the window.
+     */
+    public boolean record(long accountId, int tickets, long timestampMillis) {
+        if (accountId < 1 || tickets < 1) return false;
+        int at = seconds(timestampMillis);
+        if (seconds(clock.millis()) - at >= windowSeconds) return false;
+        long hash = mix(accountId);
+        Stripe stripe = stripes[(int) hash & stripeMask];
+
+        stripe.lock.lock();
+        try {
+            long[] table = stripe.table;
+            int slot = claim(table, accountId, (int) (hash >>> 32), at);
+            expire(table, slot, at);
+            append(table, slot, at, Math.min(tickets, MAX_ENTRY_TICKETS));
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Takes back tickets recorded for a purchase that then failed, newest first.
+     *
+     * Entries do not say which purchase recorded them, so if another purchase by the same account was recorded
+     * while this one was in progress, its tickets are the ones taken back and this purchase's older entry stays.
+     * The account's total is right either way; only the surviving tickets are dated from the failed purchase rather
+     * than their own, so they leave the window early by at most the time the failed purchase was in progress.
+     */
+    public void cancel(long accountId, int tickets) {
+        if (accountId < 1) return;
+        long hash = mix(accountId);
+        Stripe stripe = stripes[(int) hash & stripeMask];
+
+        stripe.lock.lock();
+        try {
+            long[] table = stripe.table;
+            int slot = find(table, accountId, (int) (hash >>> 32));
+            if (table[slot] != accountId) return;
+            int meta = (int) table[slot + 1];
+            int head = meta >>> 24;
+            int size = (meta >>> 16) & 0xFF;
+            int sum = meta & 0xFFFF;
+            while (tickets > 0 && size > 0) {
+                int index = (head + size - 1) % entries;
+                int entry = entry(table, slot, index);
+                int taken = Math.min(tickets, entry & MAX_ENTRY_TICKETS);
+                tickets -= taken;
+                sum -= taken;
+                if (taken == (entry & MAX_ENTRY_TICKETS)) {
+                    size--;
+                } else {
+                    setEntry(table, slot, index, entry - taken);
+                }
+            }
+            setMeta(table, slot, head << 24 | size << 16 | sum);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Tickets the account has bought within the window up to now.
+     */
+    public int ticketsInWindow(long accountId) {
+        if (accountId < 1) return 0;
+        long hash = mix(accountId);
+        Stripe stripe = stripes[(int) hash & stripeMask];
+        int now = seconds(clock.millis());
+
+        stripe.lock.lock();
+        try {
+            long[] table = stripe.table;
+            int slot = find(table, accountId, (int) (hash >>> 32));
+            return table[slot] == accountId ? expire(table, slot, now) & 0xFFFF : 0;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // the account's slot, taking over an empty or the least recently used one if it has none.
+    private int claim(long[] table, long accountId, int home, int now) {
+        int slot = find(table, accountId, home);
+        if (table[slot] != accountId) {
+            if (table[slot] != 0 && now - newest(table, slot) < windowSeconds) evictions.increment();
+            table[slot] = accountId;
+            table[slot + 1] = (long) now << 32;
+        }
+        return slot;
+    }
+
+    // drops entries that are a window or more old, returns the slot's packed head, size and total.
+    private int expire(long[] table, int slot, int now) {
+        int newest = newest(table, slot);
+        // a clock stepped back counts from the newest purchase instead.
+        if (now < newest) now = newest;
+        if (now - newest >= windowSeconds) {
+            setMeta(table, slot, 0);
+            return 0;
+        }
+        int meta = (int) table[slot + 1];
+        int head = meta >>> 24;
+        int size = (meta >>> 16) & 0xFF;
+        int sum = meta & 0xFFFF;
+        while (size > 0) {
+            int entry = entry(table, slot, head);
+            if (((now - (entry >>> TICKET_BITS)) & TIME_MASK) < windowSeconds) break;
+            sum -= entry & MAX_ENTRY_TICKETS;
+            head = head + 1 == entries ? 0 : head + 1;
+            size--;
+        }
+        meta = head << 24 | size << 16 | sum;
+        setMeta(table, slot, meta);
+        return meta;
+    }
+
+    // called after expire, so the ring only holds entries within the window.
+    private void append(long[] table, int slot, int at, int tickets) {
+        int meta = (int) table[slot + 1];
+        int head = meta >>> 24;
+        int size = (meta >>> 16) & 0xFF;
+        int sum = meta & 0xFFFF;
+        if (size == entries) {
+            // fold the oldest entry into the next one, or into this purchase if the ring only holds one.
+            int oldest = entry(table, slot, head);
+            head = head + 1 == entries ? 0 : head + 1;
+            size--;
+            sum -= oldest & MAX_ENTRY_TICKETS;
+            if (size > 0) {
+                int next = entry(table, slot, head);
+                int folded = Math.min(MAX_ENTRY_TICKETS, (next & MAX_ENTRY_TICKETS) + (oldest & MAX_ENTRY_TICKETS));
+                sum += folded - (next & MAX_ENTRY_TICKETS);
+                setEntry(table, slot, head, (next & ~MAX_ENTRY_TICKETS) | folded);
+            } else {
+                tickets = Math.min(MAX_ENTRY_TICKETS, tickets + (oldest & MAX_ENTRY_TICKETS));
+            }
+            folds.increment();
+        }
+        // purchases journalled by several threads can be a little out of order, the ring must not be.
+        at = Math.max(at, newest(table, slot));
+        setEntry(table, slot, (head + size) % entries, (at & TIME_MASK) << TICKET_BITS | tickets);
+        table[slot + 1] = (long) at << 32 | ((head << 24 | (size + 1) << 16 | (sum + tickets)) & 0xFFFFFFFFL);
+    }
+
+    // index of the account's slot, else the first empty one, else the one in the probe window with the oldest purchase.
+    private int find(long[] table, long accountId, int home) {
+        int victim = (home & slotMask) * stride;
+        int oldest = Integer.MAX_VALUE;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = ((home + probe) & slotMask) * stride;
+            long key = table[slot];
+            if (key == accountId || key == 0) return slot;
+            int newest = newest(table, slot);
+            if (newest < oldest) {
+                oldest = newest;
+                victim = slot;
+            }
+        }
+        return victim;
+    }
+
+    private static int newest(long[] table, int slot) {
+        return (int) (table[slot + 1] >> 32);
+    }
+
+    private static void setMeta(long[] table, int slot, int meta) {
+        table[slot + 1] = (table[slot + 1] & 0xFFFFFFFF00000000L) | (meta & 0xFFFFFFFFL);
+    }
+
+    // ring entries are packed two to a long after the key and state.
+    private static int entry(long[] table, int slot, int index) {
+        return (int) (table[slot + 2 + (index >> 1)] >>> ((index & 1) << 5));
+    }
+
+    private static void setEntry(long[] table, int slot, int index, int entry) {
+        int at = slot + 2 + (index >> 1);
+        int shift = (index & 1) << 5;
+        table[at] = (table[at] & ~(0xFFFFFFFFL << shift)) | (entry & 0xFFFFFFFFL) << shift;
+    }
+
+    private int seconds(long millis) {
+        return (int) (Math.max(0, millis - epoch) / 1000);
+    }
+
+    // splits the 64 bit murmur finaliser between the stripe (low bits) and the home slot (high bits).
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+    public int getMaxTickets() {
+        return maxTickets;
+    }
+
+    /**
+     * Purchases refused because they would take the account over the cap.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Slots reused for another account while they still had purchases within the window.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Entries folded into the next because an account's ring was full.
+     */
+    public long getFolds() {
+        return folds.sum();
+    }
+
+    /**
+     * Bytes held by the table, fixed at construction.
+     */
+    public long getTableBytes() {
+        return (long) stripes.length * (slotMask + 1) * stride * 8;
+    }
+
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final long[] table;
+
+        Stripe(int slots, int stride) {
+            this.table = new long[slots * stride];
+        }
+    }
+}
@@ -0,0 +1,436 @@
+package uk.gov.dwp.uc.pairtest.hold;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tracks when seat holds expire, for millions of holds at once, and hands the seats of expired holds back in batches.
+ *
+ * A hierarchical timing wheel: four levels of 256 buckets, where a bucket at level 0 holds the holds due in one tick
+ * and a bucket at level n those due in 256^n ticks. A hold goes into the lowest level whose span reaches its expiry,
+ * and is moved down a level each time the wheel turns past the start of its bucket, so it is touched at most four
+ * times however far off it is. Holds, cancels and moves are a few array writes, independent of how many holds are
+ * outstanding. Expiries more than 2^32 ticks off are moved down at that point and put back further out.
+ *
+ * Holds are kept in primitive arrays rather than as objects, 33 bytes each, and buckets are lists linked through
+ * those arrays, so ten million outstanding holds take 330MB and nothing for the garbage collector to trace. The
+ * arrays are split into stripes, each with its own lock, and each thread holds into its own stripe.
+ *
+ * One thread, the ticker, turns the wheel. Every hold that expired in the turn is added up by tag, a screening id
+ * for instance, and {@link Expiry#expired} is called once per tag with the total, outside any lock. A hold never
+ * expires early, and expires at most a tick after its time plus however late the ticker runs. If the callback throws
+ * for a tag, those seats are kept and offered again on the next turn, added to whatever else that tag has expired,
+ * so a failing release delays seats coming back rather than losing them.
+ */
+public class HoldExpiryWheel implements AutoCloseable {
+
+    /**
+     * Told about the seats of holds that expired in one turn of the wheel, totalled by tag.
+     */
+    public interface Expiry {
+        void expired(long tag, int seats);
+    }
+
+    private static final int levelBits = 8;
+    private static final int levels = 4;
+    private static final int slots = 1 << levelBits;
+    private static final int slotMask = slots - 1;
+    private static final long maxDelta = (1L << (levelBits * levels)) - 1;
+    private static final int indexBits = 24;
+    private static final int maxStripes = 256;
+    private static final int none = -1;
+
+    private final Clock clock;
+    private final long tickMillis;
+    private final Expiry expiry;
+    private final Stripe[] stripes;
+    private final LongAdder holds = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder releaseFailures = new LongAdder();
+    private volatile RuntimeException lastReleaseFailure;
+    private final ReentrantLock turning = new ReentrantLock();
+    private ScheduledExecutorService ticker;
+
+    // seats expired in the current turn by tag, open addressing; only touched while turning.
+    private long[] batchTags = new long[64];
+    private int[] batchSeats = new int[64];
+    private int[] batchUsed = new int[64];
+    private int batchCount;
+
+    /**
+     * @param tickMillis how often the wheel turns, the resolution of expiry times
+     * @param capacity   holds that can be outstanding at once, spread evenly over the stripes
+     */
+    public HoldExpiryWheel(Clock clock, long tickMillis, int capacity, int stripes, Expiry expiry) {
+        if (tickMillis < 1) throw new IllegalArgumentException("tickMillis must be at least 1");
+        if (stripes < 1 || stripes > maxStripes) throw new IllegalArgumentException("stripes must be between 1 and " + maxStripes);
+        int perStripe = (capacity + stripes - 1) / stripes;
+        if (capacity < 1 || perStripe > 1 << indexBits) throw new IllegalArgumentException("capacity must be between 1 and 2^24 per stripe");
+        this.clock = clock;
+        this.tickMillis = tickMillis;
+        this.expiry = expiry;
+        this.stripes = new Stripe[stripes];
+        long now = tickAt(clock.millis());
+        for (int i = 0; i < stripes; i++) this.stripes[i] = new Stripe(perStripe, now);
+    }
+
+    /**
+     * Turns the wheel every tick on a daemon thread until closed.
+     */
+    public synchronized void start() {
+        if (ticker != null) return;
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "hold-expiry-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(() -> {
+            try {
+                advance();
+            } catch (RuntimeException e) {
+                // a failure must not stop the ticker, which would leave every later hold held forever.
+                failed(e);
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Holds seats until ttlMillis from now. Returns a handle for {@link #cancel}, or -1 if this thread's stripe
+     * is full.
+     */
+    public long hold(long tag, int seats, long ttlMillis) {
+        if (seats < 1) throw new IllegalArgumentException("seats must be at least 1");
+        if (ttlMillis < 0) throw new IllegalArgumentException("ttlMillis must not be negative");
+        // rounded up, a hold is never released before its time.
+        long deadline = ceilTick(clock.millis() + ttlMillis);
+        int s = homeStripe();
+        Stripe stripe = stripes[s];
+        stripe.lock.lock();
+        try {
+            int node = stripe.free;
+            if (node == none) return -1;
+            stripe.free = stripe.next[node];
+            stripe.expiresAt[node] = deadline;
+            stripe.tags[node] = tag;
+            stripe.seats[node] = seats;
+            stripe.link(node);
+            stripe.outstanding++;
+            holds.increment();
+            return (long) stripe.generations[node] << 32 | (long) s << indexBits | node;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a hold off the wheel before it expires. Returns its seats, or 0 if it has already expired or been
+     * cancelled, in which case the caller no longer owns them.
+     */
+    public int cancel(long handle) {
+        if (handle < 0) return 0;
+        int node = (int) handle & ((1 << indexBits) - 1);
+        int s = (int) (handle >>> indexBits) & (maxStripes - 1);
+        int generation = (int) (handle >>> 32);
+        if (s >= stripes.length) return 0;
+        Stripe stripe = stripes[s];
+        stripe.lock.lock();
+        try {
+            if (node >= stripe.seats.length || stripe.generations[node] != generation || stripe.seats[node] == 0) return 0;
+            int seats = stripe.seats[node];
+            stripe.unlink(node);
+            stripe.release(node);
+            cancelled.increment();
+            return seats;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Turns the wheel up to now, expiring every hold that is due, and releases their seats. Returns the holds expired.
+     * Called by the ticker; only one thread turns the wheel at a time.
+     */
+    public int advance() {
+        turning.lock();
+        try {
+            return turn(tickAt(clock.millis()));
+        } finally {
+            turning.unlock();
+        }
+    }
+
+    private int turn(long now) {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            // one tick per lock so that holds are not kept waiting behind a turn that is catching up.
+            while (true) {
+                stripe.lock.lock();
+                try {
+                    if (stripe.currentTick > now) break;
+                    if (stripe.outstanding == 0) {
+                        // nothing to move or expire, the wheel can jump straight to now.
+                        stripe.currentTick = now + 1;
+                        break;
+                    }
+                    // levels below the lowest one holding anything only need turning at that level's boundaries,
+                    // so a wheel catching up over an idle hour or holding only far off holds skips the ticks between.
+                    int lowest = 0;
+                    while (stripe.levelCounts[lowest] == 0) lowest++;
+                    if (lowest > 0) {
+                        long span = 1L << (lowest * levelBits);
+                        long boundary = (stripe.currentTick + span - 1) & -span;
+                        if (boundary > now) {
+                            stripe.currentTick = now + 1;
+                            break;
+                        }
+                        stripe.currentTick = boundary;
+                    }
+                    count += turnTick(stripe);
+                } finally {
+                    stripe.lock.unlock();
+                }
+            }
+        }
+        expired.add(count);
+        // seats a failed callback kept from an earlier turn are offered again even if nothing new expired.
+        if (batchCount > 0) releaseBatch();
+        return count;
+    }
+
+    // moves the holds whose bucket starts at this tick down a level, highest level first, then expires level 0's.
+    private int turnTick(Stripe stripe) {
+        long tick = stripe.currentTick;
+        for (int level = levels - 1; level > 0; level--) {
+            if ((tick & ((1L << (level * levelBits)) - 1)) != 0) continue;
+            int bucket = level * slots + ((int) (tick >>> (level * levelBits)) & slotMask);
+            int node = stripe.heads[bucket];
+            stripe.heads[bucket] = none;
+            while (node != none) {
+                int following = stripe.next[node];
+                stripe.levelCounts[level]--;
+                stripe.link(node);
+                node = following;
+            }
+        }
+        int bucket = (int) tick & slotMask;
+        int node = stripe.heads[bucket];
+        stripe.heads[bucket] = none;
+        int count = 0;
+        while (node != none) {
+            int following = stripe.next[node];
+            stripe.levelCounts[0]--;
+            add(stripe.tags[node], stripe.seats[node]);
+            stripe.release(node);
+            count++;
+            node = following;
+        }
+        stripe.currentTick = tick + 1;
+        return count;
+    }
+
+    private void add(long tag, int seats) {
+        if (batchCount * 2 >= batchTags.length) growBatch();
+        int mask = batchTags.length - 1;
+        int slot = (int) (tag * 0x9E3779B97F4A7C15L >>> 40) & mask;
+        while (batchSeats[slot] != 0 && batchTags[slot] != tag) slot = (slot + 1) & mask;
+        if (batchSeats[slot] == 0) {
+            batchTags[slot] = tag;
+            batchUsed[batchCount++] = slot;
+        }
+        batchSeats[slot] += seats;
+    }
+
+    private void growBatch() {
+        long[] tags = batchTags;
+        int[] seats = batchSeats;
+        int[] used = Arrays.copyOf(batchUsed, batchCount);
+        batchTags = new long[tags.length * 2];
+        batchSeats = new int[tags.length * 2];
+        batchUsed = new int[tags.length * 2];
+        batchCount = 0;
+        for (int slot : used) add(tags[slot], seats[slot]);
+    }
+
+    // the callbacks run outside every stripe lock, so holding and cancelling carry on while seats are released.
+    // a tag whose callback throws stays in the batch for the next turn; the others are cleared.
+    private void releaseBatch() {
+        int kept = 0;
+        for (int i = 0; i < batchCount; i++) {
+            int slot = batchUsed[i];
+            batches.increment();
+            try {
+                expiry.expired(batchTags[slot], batchSeats[slot]);
+                batchSeats[slot] = 0;
+            } catch (RuntimeException e) {
+                failed(e);
+                batchUsed[kept++] = slot;
+            }
+        }
+        batchCount = kept;
+    }
+
+    private void failed(RuntimeException e) {
+        releaseFailures.increment();
+        lastReleaseFailure = e;
+    }
+
+    private long tickAt(long millis) {
+        return Math.floorDiv(millis, tickMillis);
+    }
+
+    private long ceilTick(long millis) {
+        return Math.floorDiv(millis + tickMillis - 1, tickMillis);
+    }
+
+    private int homeStripe() {
+        return (Long.hashCode(Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L) & 0x7fffffff) % stripes.length;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    public long getOutstanding() {
+        return holds.sum() - cancelled.sum() - expired.sum();
+    }
+
+    public long getHolds() {
+        return holds.sum();
+    }
+
+    public long getCancelled() {
+        return cancelled.sum();
+    }
+
+    public long getExpired() {
+        return expired.sum();
+    }
+
+    /**
+     * Calls to {@link Expiry#expired}, one per tag per turn of the wheel with anything to release.
+     */
+    public long getReleaseBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * Calls to {@link Expiry#expired} that threw; their seats are offered again on the next turn.
+     */
+    public long getReleaseFailures() {
+        return releaseFailures.sum();
+    }
+
+    /**
+     * The most recent exception from {@link Expiry#expired}, or null if none has thrown.
+     */
+    public RuntimeException getLastReleaseFailure() {
+        return lastReleaseFailure;
+    }
+
+    /**
+     * Seats of expired holds still to be handed back because their release failed.
+     */
+    public long getPendingReleases() {
+        turning.lock();
+        try {
+            long seats = 0;
+            for (int i = 0; i < batchCount; i++) seats += batchSeats[batchUsed[i]];
+            return seats;
+        } finally {
+            turning.unlock();
+        }
+    }
+
+    /**
+     * Stops the ticker. Outstanding holds are left as they are.
+     */
+    @Override
+    public synchronized void close() {
+        if (ticker == null) return;
+        ticker.shutdown();
+        try {
+            ticker.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One wheel over its share of the holds. A hold is a node: its expiry tick, tag and seats, its neighbours in its
+     * bucket's list and the level of that bucket. A node's prev is the node before it, or -(bucket + 2) at the head of a bucket, so any node
+     * can be unlinked without searching. Free nodes are chained through next and have no seats.
+     */
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final long[] expiresAt;
+        final long[] tags;
+        final int[] seats;
+        final int[] next;
+        final int[] prev;
+        final int[] generations;
+        final byte[] levelOf;
+        final int[] heads = new int[levels * slots];
+        final int[] levelCounts = new int[levels];
+        int free;
+        int outstanding;
+        long currentTick;
+
+        Stripe(int capacity, long currentTick) {
+            expiresAt = new long[capacity];
+            tags = new long[capacity];
+            seats = new int[capacity];
+            next = new int[capacity];
+            prev = new int[capacity];
+            generations = new int[capacity];
+            levelOf = new byte[capacity];
+            Arrays.fill(heads, none);
+            for (int i = 0; i < capacity; i++) next[i] = i + 1 < capacity ? i + 1 : none;
+            this.free = 0;
+            this.currentTick = currentTick;
+        }
+
+        // into the lowest level whose span reaches the expiry; one already due goes in the bucket turned next.
+        void link(int node) {
+            long delta = expiresAt[node] - currentTick;
+            long at = delta <= 0 ? currentTick : delta > maxDelta ? currentTick + maxDelta : expiresAt[node];
+            delta = at - currentTick;
+            int level = delta < 1L << levelBits ? 0 : delta < 1L << (2 * levelBits) ? 1 : delta < 1L << (3 * levelBits) ? 2 : 3;
+            int bucket = level * slots + ((int) (at >>> (level * levelBits)) & slotMask);
+            int head = heads[bucket];
+            next[node] = head;
+            prev[node] = -(bucket + 2);
+            if (head != none) prev[head] = node;
+            heads[bucket] = node;
+            levelOf[node] = (byte) level;
+            levelCounts[level]++;
+        }
+
+        void unlink(int node) {
+            int before = prev[node];
+            int after = next[node];
+            if (before >= 0) {
+                next[before] = after;
+            } else {
+                heads[-before - 2] = after;
+            }
+            if (after != none) prev[after] = before;
+            levelCounts[levelOf[node]]--;
+        }
+
+        // back on the free list; the new generation makes any handle to it stale.
+        void release(int node) {
+            seats[node] = 0;
+            generations[node] = (generations[node] + 1) & 0x7fffffff;
+            next[node] = free;
+            free = node;
+            outstanding--;
+        }
+    }
+}
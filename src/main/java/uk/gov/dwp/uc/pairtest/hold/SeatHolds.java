@@ -0,0 +1,97 @@
+package uk.gov.dwp.uc.pairtest.hold;
+
+import java.time.Clock;
+
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.inventory.ScreeningInventory;
+import uk.gov.dwp.uc.pairtest.inventory.SeatInventory;
+
+/**
+ * Hold-then-confirm seat booking: seats are taken from the screening's {@link SeatInventory} while the customer pays,
+ * and either confirmed with the booking system or handed back, by the customer or by the hold expiring. Expiry is
+ * tracked by a {@link HoldExpiryWheel}, which gives back the seats of every hold on a screening that expired in the
+ * same tick in one release.
+ */
+public class SeatHolds implements AutoCloseable {
+
+    private final ScreeningInventory inventory;
+    private final SeatReservationService seatReservationService;
+    private final HoldExpiryWheel wheel;
+
+    /**
+     * Does not start the wheel turning, see {@link #start()}.
+     *
+     * @param tickMillis resolution of hold expiry times
+     * @param capacity   holds that can be outstanding at once
+     */
+    public SeatHolds(ScreeningInventory inventory, SeatReservationService seatReservationService, Clock clock,
+            long tickMillis, int capacity) {
+        this.inventory = inventory;
+        this.seatReservationService = seatReservationService;
+        this.wheel = new HoldExpiryWheel(clock, tickMillis, capacity, Math.min(16, Runtime.getRuntime().availableProcessors()), this::expired);
+    }
+
+    public void start() {
+        wheel.start();
+    }
+
+    /**
+     * Takes the seats from the screening for ttlMillis. Returns the hold to confirm or release.
+     *
+     * @throws InvalidPurchaseException if the screening does not have the seats, or too many holds are outstanding
+     */
+    public long hold(long screeningId, int seats, long ttlMillis) throws InvalidPurchaseException {
+        SeatInventory screening = inventory.get(screeningId);
+        if (screening == null) throw new IllegalArgumentException("Screening " + screeningId + " is not open");
+        if (!screening.tryReserve(seats)) throw new InvalidPurchaseException(InvalidPurchaseException.Reason.SEATS_UNAVAILABLE);
+        long hold = wheel.hold(screeningId, seats, ttlMillis);
+        if (hold < 0) {
+            screening.release(seats);
+            throw new InvalidPurchaseException(InvalidPurchaseException.Reason.SEATS_UNAVAILABLE);
+        }
+        return hold;
+    }
+
+    /**
+     * Reserves the held seats with the booking system for the account. Returns false if the hold has already expired
+     * or been released, when the seats are no longer the customer's. If the booking system fails the seats go back
+     * to the screening and the exception is thrown.
+     */
+    public boolean confirm(long accountId, long screeningId, long hold) {
+        int seats = wheel.cancel(hold);
+        if (seats == 0) return false;
+        try {
+            seatReservationService.reserveSeat(accountId, seats);
+        } catch (RuntimeException e) {
+            expired(screeningId, seats);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Gives the held seats back before the hold expires. Returns false if it had already expired or been released.
+     */
+    public boolean release(long screeningId, long hold) {
+        int seats = wheel.cancel(hold);
+        if (seats == 0) return false;
+        expired(screeningId, seats);
+        return true;
+    }
+
+    // a screening closed while seats were held has nothing to give them back to.
+    private void expired(long screeningId, int seats) {
+        SeatInventory screening = inventory.get(screeningId);
+        if (screening != null) screening.release(seats);
+    }
+
+    public HoldExpiryWheel getWheel() {
+        return wheel;
+    }
+
+    @Override
+    public void close() {
+        wheel.close();
+    }
+}
@@ -0,0 +1,192 @@
+package uk.gov.dwp.uc.pairtest.idempotency;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import uk.gov.dwp.uc.pairtest.domain.PurchaseResult;
+import uk.gov.dwp.uc.pairtest.exception.IdempotencyKeyConflictException;
+
+/**
+ * Recent idempotency keys and the outcome of the purchase made with each one.
+ *
+ * Keys are spread over lock-striped segments, each an insertion-ordered map that holds at most its share of the
+ * total size. Oldest keys are evicted first, which is also the order they expire in, so memory is bounded by
+ * maxEntries plus the purchases in progress whatever the traffic. A key is never evicted or expired while its
+ * purchase is in progress, since a retry would then start a second one. A lock is only held for the map lookup and
+ * insert, never while purchasing.
+ *
+ * A retry that arrives while the first purchase is still in progress waits for that purchase rather than starting
+ * another. Only successes and rejections are remembered; if the gateways threw, the key is forgotten so the client
+ * can try again.
+ */
+public class IdempotencyCache {
+
+    private final Segment[] segments;
+    private final int mask;
+    private final long ttlNanos;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public IdempotencyCache(int maxEntries, long ttlNanos) {
+        this(maxEntries, ttlNanos, 64);
+    }
+
+    public IdempotencyCache(int maxEntries, long ttlNanos, int stripes) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be at least 1");
+        if (Integer.bitCount(stripes) != 1) throw new IllegalArgumentException("stripes must be a power of two");
+        stripes = Math.min(stripes, Integer.highestOneBit(maxEntries));
+        this.segments = new Segment[stripes];
+        for (int i = 0; i < stripes; i++) {
+            segments[i] = new Segment(maxEntries / stripes + (i < maxEntries % stripes ? 1 : 0));
+        }
+        this.mask = stripes - 1;
+        this.ttlNanos = ttlNanos;
+    }
+
+    /**
+     * Runs the purchase the first time a key is seen and returns its result; later calls with the same key return
+     * that result without running anything.
+     *
+     * @throws IdempotencyKeyConflictException if the key was already used by a different account
+     */
+    public PurchaseResult execute(String idempotencyKey, long accountId, Supplier<PurchaseResult> purchase) {
+        Segment segment = segments[spread(idempotencyKey.hashCode()) & mask];
+        long now = System.nanoTime();
+        Entry entry;
+        boolean owner = false;
+
+        segment.lock.lock();
+        try {
+            entry = segment.entries.get(idempotencyKey);
+            if (entry != null && now - entry.createdAt >= ttlNanos && entry.result.isDone()) {
+                segment.entries.remove(idempotencyKey);
+                evictions.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(accountId, now);
+                segment.entries.put(idempotencyKey, entry);
+                evict(segment, now);
+                owner = true;
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+
+        if (entry.accountId != accountId) {
+            throw new IdempotencyKeyConflictException("Idempotency key already used by another account");
+        }
+        if (!owner) {
+            hits.increment();
+            return await(entry);
+        }
+
+        misses.increment();
+        try {
+            PurchaseResult result = purchase.get();
+            entry.result.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            forget(segment, idempotencyKey, entry);
+            entry.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    // called holding the segment lock. The oldest entries are at the head, so expired ones are found there too.
+    private void evict(Segment segment, long now) {
+        Iterator<Entry> oldest = segment.entries.values().iterator();
+        while (oldest.hasNext()) {
+            Entry entry = oldest.next();
+            if (segment.entries.size() <= segment.maxEntries && now - entry.createdAt < ttlNanos) break;
+            // still at the gateway, skip it and look further on for a finished entry to evict instead.
+            if (!entry.result.isDone()) continue;
+            oldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private void forget(Segment segment, String idempotencyKey, Entry entry) {
+        segment.lock.lock();
+        try {
+            segment.entries.remove(idempotencyKey, entry);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    private static PurchaseResult await(Entry entry) {
+        try {
+            return entry.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Duplicate requests answered from the cache, including ones that waited for the first attempt to finish.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Requests with a key not seen before, each of which made a purchase.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Keys dropped because they expired or the cache was full.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.entries.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private static final class Segment {
+        final ReentrantLock lock = new ReentrantLock();
+        final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+        final int maxEntries;
+
+        Segment(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    private static final class Entry {
+        final long accountId;
+        final long createdAt;
+        final CompletableFuture<PurchaseResult> result = new CompletableFuture<PurchaseResult>();
+
+        Entry(long accountId, long createdAt) {
+            this.accountId = accountId;
+            this.createdAt = createdAt;
+        }
+    }
+}
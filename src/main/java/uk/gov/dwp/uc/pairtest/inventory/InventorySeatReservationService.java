@@ -0,0 +1,40 @@
+package uk.gov.dwp.uc.pairtest.inventory;
+
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Reserves seats against a screening's {@link SeatInventory} before handing on to the downstream reservation
+ * service. If the screening is full the purchase is rejected rather than oversold, and if the downstream call fails
+ * the seats go back into the inventory.
+ */
+public class InventorySeatReservationService implements SeatReservationService {
+
+    private final SeatInventory inventory;
+    private final SeatReservationService seatReservationService;
+
+    public InventorySeatReservationService(SeatInventory inventory, SeatReservationService seatReservationService) {
+        this.inventory = inventory;
+        this.seatReservationService = seatReservationService;
+    }
+
+    @Override
+    public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+        if (!inventory.tryReserve(totalSeatsToAllocate)) {
+            throw new InvalidPurchaseException(InvalidPurchaseException.Reason.SEATS_UNAVAILABLE);
+        }
+        try {
+            seatReservationService.reserveSeat(accountId, totalSeatsToAllocate);
+        } catch (RuntimeException e) {
+            inventory.release(totalSeatsToAllocate);
+            throw e;
+        }
+    }
+
+    /**
+     * Gives seats back to the screening, for compensating a purchase that failed after its seats were reserved.
+     */
+    public void releaseSeat(long accountId, int totalSeatsToRelease) {
+        inventory.release(totalSeatsToRelease);
+    }
+}
@@ -0,0 +1,30 @@
+package uk.gov.dwp.uc.pairtest.inventory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Seat inventories for every open screening.
+ */
+public class ScreeningInventory {
+
+    private final ConcurrentMap<Long, SeatInventory> screenings = new ConcurrentHashMap<Long, SeatInventory>();
+
+    /**
+     * Opens a screening with the given number of seats, or returns its inventory if it is already open.
+     */
+    public SeatInventory open(long screeningId, int capacity) {
+        return screenings.computeIfAbsent(screeningId, id -> new SeatInventory(capacity));
+    }
+
+    /**
+     * Inventory for the screening, or null if it has not been opened.
+     */
+    public SeatInventory get(long screeningId) {
+        return screenings.get(screeningId);
+    }
+
+    public void close(long screeningId) {
+        screenings.remove(screeningId);
+    }
+}
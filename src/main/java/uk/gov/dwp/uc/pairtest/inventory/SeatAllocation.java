@@ -0,0 +1,99 @@
+package uk.gov.dwp.uc.pairtest.inventory;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Immutable Object
+ *
+ * Seats allocated to one purchase on a {@link SeatMap}, as one or more blocks of adjacent seats. A single block means
+ * the whole group sits together. The only thing that changes is whether the seats have been given back, which lets
+ * the map refuse a second release once the same seats belong to someone else.
+ */
+public final class SeatAllocation {
+
+    // row in the high 32 bits, first seat in the next 16, block length in the low 16.
+    private final long[] blocks;
+    private final int seats;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    SeatAllocation(long[] blocks) {
+        this.blocks = blocks;
+        int seats = 0;
+        for (long block : blocks) seats += length(block);
+        this.seats = seats;
+    }
+
+    static long block(int row, int firstSeat, int length) {
+        return (long) row << 32 | (long) firstSeat << 16 | length;
+    }
+
+    static int row(long block) {
+        return (int) (block >>> 32);
+    }
+
+    static int firstSeat(long block) {
+        return (int) (block >>> 16) & 0xffff;
+    }
+
+    static int length(long block) {
+        return (int) block & 0xffff;
+    }
+
+    long[] blocks() {
+        return blocks;
+    }
+
+    // true the first time only.
+    boolean markReleased() {
+        return released.compareAndSet(false, true);
+    }
+
+    public int getSeats() {
+        return seats;
+    }
+
+    public int getBlocks() {
+        return blocks.length;
+    }
+
+    /**
+     * True if every seat is in one unbroken block.
+     */
+    public boolean isContiguous() {
+        return blocks.length == 1;
+    }
+
+    public int getRow(int block) {
+        return row(blocks[block]);
+    }
+
+    public int getFirstSeat(int block) {
+        return firstSeat(blocks[block]);
+    }
+
+    public int getLength(int block) {
+        return length(blocks[block]);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SeatAllocation && Arrays.equals(blocks, ((SeatAllocation) o).blocks);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(blocks);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("SeatAllocation[");
+        for (int i = 0; i < blocks.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append("row ").append(getRow(i)).append(" seats ").append(getFirstSeat(i)).append('-')
+                    .append(getFirstSeat(i) + getLength(i) - 1);
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,119 @@
+package uk.gov.dwp.uc.pairtest.inventory;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Remaining seats for one screening, spread across striped counters so that many threads booking the same screening
+ * update different cache lines. Each thread takes from its own stripe, and a request that stripe cannot cover in
+ * full takes from a shared pool in a single compare-and-set instead. Seats are only ever taken whole from one
+ * counter, so two requests never each hold part of what the other needs, and a request is only refused once every
+ * stripe and the pool have been gathered together and it still falls short. What is left after such a refill is
+ * dealt back out evenly, the odd seats to the pool, so that threads go back to their own stripes rather than all
+ * contending on the pool.
+ *
+ * Refilling and releasing seats are serialised on a lock; reserving from a stripe or the pool never waits. A reservation is all-or-nothing, the seat count can never go below zero, so the screening cannot be
+ * oversold, and a release that would take it above capacity is refused.
+ */
+public class SeatInventory {
+
+    // one stripe per 64 byte cache line.
+    private static final int padding = 16;
+
+    private final int capacity;
+    private final int stripes;
+    private final int pool;
+    private final AtomicIntegerArray remaining;
+    private final ReentrantLock refilling = new ReentrantLock();
+
+    public SeatInventory(int capacity) {
+        this(capacity, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1));
+    }
+
+    public SeatInventory(int capacity, int stripes) {
+        if (capacity < 0) throw new IllegalArgumentException("capacity must not be negative");
+        if (stripes < 1) throw new IllegalArgumentException("stripes must be at least 1");
+        this.capacity = capacity;
+        this.stripes = stripes;
+        this.pool = stripes * padding;
+        this.remaining = new AtomicIntegerArray((stripes + 1) * padding);
+        for (int i = 0; i < stripes; i++) {
+            remaining.set(i * padding, capacity / stripes + (i < capacity % stripes ? 1 : 0));
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Seats not reserved. Only exact when no reservations are in progress.
+     */
+    public int available() {
+        int sum = remaining.get(pool);
+        for (int i = 0; i < stripes; i++) {
+            sum += remaining.get(i * padding);
+        }
+        return sum;
+    }
+
+    /**
+     * Reserves all of the seats or none of them.
+     */
+    public boolean tryReserve(int seats) {
+        if (seats < 0) throw new IllegalArgumentException("seats must not be negative");
+        if (seats == 0) return true;
+        if (takeAll(homeStripe() * padding, seats) || takeAll(pool, seats)) return true;
+
+        refilling.lock();
+        try {
+            // no release or other refill can run now, so once every counter is emptied this holds every seat left
+            // apart from what other threads take meanwhile, which they really are reserving.
+            int gathered = remaining.getAndSet(pool, 0);
+            for (int i = 0; i < stripes; i++) {
+                gathered += remaining.getAndSet(i * padding, 0);
+            }
+            boolean reserved = gathered >= seats;
+            if (reserved) gathered -= seats;
+            for (int i = 0; i < stripes; i++) {
+                remaining.getAndAdd(i * padding, gathered / stripes);
+            }
+            remaining.getAndAdd(pool, gathered % stripes);
+            return reserved;
+        } finally {
+            refilling.unlock();
+        }
+    }
+
+    /**
+     * Returns previously reserved seats, for example when a later step of the purchase fails.
+     *
+     * @throws IllegalStateException if that would leave more seats available than the screening has
+     */
+    public void release(int seats) {
+        if (seats < 0) throw new IllegalArgumentException("seats must not be negative");
+        if (seats == 0) return;
+        refilling.lock();
+        try {
+            // counters can only fall while the lock is held, so this overstates what is left, never understates it.
+            if (available() > capacity - seats) {
+                throw new IllegalStateException("Releasing " + seats + " seats would exceed the capacity of " + capacity);
+            }
+            remaining.getAndAdd(homeStripe() * padding, seats);
+        } finally {
+            refilling.unlock();
+        }
+    }
+
+    private boolean takeAll(int index, int wanted) {
+        while (true) {
+            int current = remaining.get(index);
+            if (current < wanted) return false;
+            if (remaining.compareAndSet(index, current, current - wanted)) return true;
+        }
+    }
+
+    private int homeStripe() {
+        return (Long.hashCode(Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L) & 0x7fffffff) % stripes;
+    }
+}
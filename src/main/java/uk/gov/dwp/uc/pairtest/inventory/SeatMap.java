@@ -0,0 +1,386 @@
+package uk.gov.dwp.uc.pairtest.inventory;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Seat layout of one auditorium, each row a bitset of taken seats, so that a group can be seated together rather
+ * than anywhere there is a free seat. Rows are numbered from the most wanted, seats from one end of the row.
+ *
+ * An allocation looks for, in order:
+ * <ol>
+ * <li>one unbroken block in the first row that has one, from the tightest free run that fits so that longer runs are
+ * kept for larger groups</li>
+ * <li>the seats in one row that are closest together</li>
+ * <li>the seats in the fewest adjacent rows</li>
+ * </ol>
+ *
+ * Free runs are found a 64 seat word at a time with trailing zero counts rather than seat by seat. There are no
+ * locks: a search reads the bitsets as they are, then claims the seats it chose with a compare-and-set per word, and
+ * if another allocation got any of them first it hands back what it claimed and searches again.
+ */
+public class SeatMap {
+
+    public static final int maxRowWidth = 0xffff;
+
+    // seats a search could not claim because another allocation took them first.
+    private static final long[] conflict = new long[0];
+
+    private final int[] widths;
+    private final int[] offsets;
+    private final AtomicLongArray taken;
+    // per row, never below the seats actually free: released before the bits clear, taken after they are set.
+    private final AtomicIntegerArray free;
+    private final int capacity;
+    private final int maxRowWords;
+    private final LongAdder retries = new LongAdder();
+
+    public SeatMap(int rows, int seatsPerRow) {
+        this(filled(rows, seatsPerRow));
+    }
+
+    /**
+     * @param rowWidths seats in each row, most wanted row first
+     */
+    public SeatMap(int... rowWidths) {
+        if (rowWidths.length == 0) throw new IllegalArgumentException("an auditorium must have at least one row");
+        this.widths = rowWidths.clone();
+        this.offsets = new int[widths.length];
+        this.free = new AtomicIntegerArray(widths.length);
+        int words = 0;
+        int capacity = 0;
+        for (int row = 0; row < widths.length; row++) {
+            int width = widths[row];
+            if (width < 1 || width > maxRowWidth) {
+                throw new IllegalArgumentException("row " + row + " must have between 1 and " + maxRowWidth + " seats");
+            }
+            offsets[row] = words;
+            words += (width + 63) >>> 6;
+            capacity += width;
+            free.set(row, width);
+        }
+        this.capacity = capacity;
+        this.maxRowWords = (Arrays.stream(widths).max().getAsInt() + 63) >>> 6;
+        this.taken = new AtomicLongArray(words);
+        // the bits past the end of a row are taken, so a free run always stops at the row's end.
+        for (int row = 0; row < widths.length; row++) {
+            if ((widths[row] & 63) != 0) taken.set(lastWord(row), -1L << (widths[row] & 63));
+        }
+    }
+
+    public int getRows() {
+        return widths.length;
+    }
+
+    public int getRowWidth(int row) {
+        return widths[row];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Seats not allocated. Only exact when no allocations are in progress.
+     */
+    public int available() {
+        int sum = 0;
+        for (int row = 0; row < widths.length; row++) sum += free.get(row);
+        return sum;
+    }
+
+    public int available(int row) {
+        return free.get(row);
+    }
+
+    public boolean isTaken(int row, int seat) {
+        if (seat < 0 || seat >= widths[row]) throw new IndexOutOfBoundsException("row " + row + " has no seat " + seat);
+        return (taken.get(offsets[row] + (seat >>> 6)) & 1L << seat) != 0;
+    }
+
+    /**
+     * Searches that found their seats taken by another allocation before they could claim them, and went again.
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * Allocates all of the seats or none of them.
+     *
+     * @return the seats allocated, or null if the auditorium does not have that many free
+     */
+    public SeatAllocation allocate(int seats) {
+        if (seats < 0) throw new IllegalArgumentException("seats must not be negative");
+        while (true) {
+            long[] blocks = find(seats);
+            if (blocks == null) return null;
+            if (blocks != conflict && claim(blocks)) return new SeatAllocation(blocks);
+            retries.increment();
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Gives an allocation's seats back, for example when a later step of the purchase fails. Each allocation can be
+     * released once; releasing it again is refused even if its seats have since been allocated to someone else.
+     *
+     * @throws IllegalStateException if the allocation was already released, or any of its seats are not taken
+     */
+    public void release(SeatAllocation allocation) {
+        if (!allocation.markReleased()) throw new IllegalStateException(allocation + " was already released");
+        for (long block : allocation.blocks()) {
+            int row = SeatAllocation.row(block);
+            int from = SeatAllocation.firstSeat(block);
+            int length = SeatAllocation.length(block);
+            free.addAndGet(row, length);
+            int cleared = clear(row, from, from + length);
+            if (cleared != length) {
+                free.addAndGet(row, cleared - length);
+                throw new IllegalStateException("seats in " + allocation + " were not allocated");
+            }
+        }
+    }
+
+    private long[] find(int seats) {
+        if (seats == 0) return new long[0];
+
+        long[] scratch = new long[maxRowWords];
+        for (int row = 0; row < widths.length; row++) {
+            if (free.get(row) < seats) continue;
+            int start = seats <= 64 ? tightestFit(row, seats, scratch) : tightestRun(row, seats);
+            if (start >= 0) return new long[] {SeatAllocation.block(row, start, seats)};
+        }
+
+        for (int row = 0; row < widths.length; row++) {
+            if (free.get(row) >= seats) return closest(row, seats);
+        }
+        if (seats > available()) return null;
+
+        // the shortest run of adjacent rows with enough seats between them, earliest first.
+        int bestFirst = -1;
+        int bestRows = Integer.MAX_VALUE;
+        int sum = 0;
+        for (int first = 0, last = 0; first < widths.length; first++) {
+            while (sum < seats && last < widths.length) sum += free.get(last++);
+            if (sum < seats) break;
+            if (last - first < bestRows) {
+                bestFirst = first;
+                bestRows = last - first;
+            }
+            sum -= free.get(first);
+        }
+        if (bestFirst < 0) return conflict;
+
+        long[] blocks = new long[0];
+        int wanted = seats;
+        for (int row = bestFirst; row < bestFirst + bestRows && wanted > 0; row++) {
+            int share = Math.min(wanted, free.get(row));
+            if (share == 0) continue;
+            long[] inRow = closest(row, share);
+            if (inRow == conflict) return conflict;
+            blocks = concat(blocks, inRow);
+            wanted -= share;
+        }
+        return wanted == 0 ? blocks : conflict;
+    }
+
+    // as tightestRun for groups of up to 64, from a bitset of the seats that start a free block of the group's size.
+    // A free run of n seats holds n - seats + 1 such starts in a row, so the tightest run is the shortest run of
+    // starts, and runs too short for the group drop out before any are walked.
+    private int tightestFit(int row, int seats, long[] starts) {
+        int words = lastWord(row) - offsets[row] + 1;
+        for (int word = 0; word < words; word++) starts[word] = ~taken.getOpaque(offsets[row] + word);
+        // each pass doubles the block the starts are known to be free for, until it is the size of the group.
+        for (int covered = 1; covered < seats; ) {
+            int shift = Math.min(covered, seats - covered);
+            for (int word = 0; word < words; word++) {
+                long next = word + 1 < words ? starts[word + 1] << 64 - shift : 0;
+                starts[word] &= starts[word] >>> shift | next;
+            }
+            covered += shift;
+        }
+
+        int best = -1;
+        int bestStarts = Integer.MAX_VALUE;
+        for (int start = nextSet(starts, words, 0); start >= 0; ) {
+            int end = nextClear(starts, words, start);
+            if (end - start < bestStarts) {
+                best = start;
+                bestStarts = end - start;
+                if (bestStarts == 1) break;
+            }
+            start = nextSet(starts, words, end);
+        }
+        return best;
+    }
+
+    private static int nextSet(long[] bits, int words, int from) {
+        int word = from >>> 6;
+        if (word >= words) return -1;
+        long current = bits[word] & -1L << (from & 63);
+        while (current == 0) {
+            if (++word == words) return -1;
+            current = bits[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(current);
+    }
+
+    private static int nextClear(long[] bits, int words, int from) {
+        int word = from >>> 6;
+        long current = ~bits[word] & -1L << (from & 63);
+        while (current == 0) {
+            if (++word == words) return words << 6;
+            current = ~bits[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(current);
+    }
+
+    // start of the shortest free run in the row that is at least seats long, or -1 if there is none.
+    private int tightestRun(int row, int seats) {
+        int width = widths[row];
+        int best = -1;
+        int bestLength = Integer.MAX_VALUE;
+        for (int start = nextFree(row, 0); start < width; ) {
+            int end = nextTaken(row, start);
+            int length = end - start;
+            if (length >= seats && length < bestLength) {
+                best = start;
+                bestLength = length;
+                if (length == seats) break;
+            }
+            start = nextFree(row, end);
+        }
+        return best;
+    }
+
+    // the seats free seats in the row with the fewest seats between the first and last, as blocks.
+    private long[] closest(int row, int seats) {
+        int width = widths[row];
+        int[] positions = new int[free.get(row)];
+        int found = 0;
+        for (int start = nextFree(row, 0); start < width && found < positions.length; ) {
+            int end = nextTaken(row, start);
+            for (int seat = start; seat < end && found < positions.length; seat++) positions[found++] = seat;
+            start = nextFree(row, end);
+        }
+        if (found < seats) return conflict;
+
+        int first = 0;
+        for (int i = 1; i + seats <= found; i++) {
+            if (positions[i + seats - 1] - positions[i] < positions[first + seats - 1] - positions[first]) first = i;
+        }
+        long[] blocks = new long[seats];
+        int count = 0;
+        for (int i = first, start = first; i < first + seats; i++) {
+            if (i + 1 == first + seats || positions[i + 1] != positions[i] + 1) {
+                blocks[count++] = SeatAllocation.block(row, positions[start], i - start + 1);
+                start = i + 1;
+            }
+        }
+        return Arrays.copyOf(blocks, count);
+    }
+
+    // first free seat at or after from, or the row width if there is none.
+    private int nextFree(int row, int from) {
+        int words = lastWord(row) - offsets[row] + 1;
+        int word = from >>> 6;
+        if (word >= words) return widths[row];
+        long bits = ~taken.get(offsets[row] + word) & -1L << (from & 63);
+        while (bits == 0) {
+            if (++word == words) return widths[row];
+            bits = ~taken.get(offsets[row] + word);
+        }
+        return Math.min(widths[row], (word << 6) + Long.numberOfTrailingZeros(bits));
+    }
+
+    // first taken seat at or after from, or the row width if there is none.
+    private int nextTaken(int row, int from) {
+        int words = lastWord(row) - offsets[row] + 1;
+        int word = from >>> 6;
+        if (word >= words) return widths[row];
+        long bits = taken.get(offsets[row] + word) & -1L << (from & 63);
+        while (bits == 0) {
+            if (++word == words) return widths[row];
+            bits = taken.get(offsets[row] + word);
+        }
+        return Math.min(widths[row], (word << 6) + Long.numberOfTrailingZeros(bits));
+    }
+
+    private boolean claim(long[] blocks) {
+        for (int i = 0; i < blocks.length; i++) {
+            if (!set(blocks[i])) {
+                for (int j = 0; j < i; j++) {
+                    int from = SeatAllocation.firstSeat(blocks[j]);
+                    clear(SeatAllocation.row(blocks[j]), from, from + SeatAllocation.length(blocks[j]));
+                }
+                return false;
+            }
+        }
+        for (long block : blocks) free.addAndGet(SeatAllocation.row(block), -SeatAllocation.length(block));
+        return true;
+    }
+
+    // takes every seat in the block, or none of them if any is already taken.
+    private boolean set(long block) {
+        int row = SeatAllocation.row(block);
+        int from = SeatAllocation.firstSeat(block);
+        int to = from + SeatAllocation.length(block);
+        for (int word = from >>> 6; word <= (to - 1) >>> 6; word++) {
+            long mask = mask(word, from, to);
+            int index = offsets[row] + word;
+            while (true) {
+                long bits = taken.get(index);
+                if ((bits & mask) != 0) {
+                    if (word > from >>> 6) clear(row, from, word << 6);
+                    return false;
+                }
+                if (taken.compareAndSet(index, bits, bits | mask)) break;
+            }
+        }
+        return true;
+    }
+
+    // frees seats from up to to, returning how many of them were taken.
+    private int clear(int row, int from, int to) {
+        int cleared = 0;
+        for (int word = from >>> 6; word <= (to - 1) >>> 6; word++) {
+            long mask = mask(word, from, to);
+            int index = offsets[row] + word;
+            while (true) {
+                long bits = taken.get(index);
+                if (taken.compareAndSet(index, bits, bits & ~mask)) {
+                    cleared += Long.bitCount(bits & mask);
+                    break;
+                }
+            }
+        }
+        return cleared;
+    }
+
+    // the bits of the word that fall between seats from and to.
+    private static long mask(int word, int from, int to) {
+        int low = Math.max(from, word << 6) - (word << 6);
+        int high = Math.min(to, (word + 1) << 6) - (word << 6);
+        return (high == 64 ? -1L : (1L << high) - 1) & -1L << low;
+    }
+
+    private int lastWord(int row) {
+        return offsets[row] + ((widths[row] - 1) >>> 6);
+    }
+
+    private static long[] concat(long[] a, long[] b) {
+        long[] both = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, both, a.length, b.length);
+        return both;
+    }
+
+    private static int[] filled(int rows, int seatsPerRow) {
+        if (rows < 1) throw new IllegalArgumentException("an auditorium must have at least one row");
+        int[] widths = new int[rows];
+        Arrays.fill(widths, seatsPerRow);
+        return widths;
+    }
+}
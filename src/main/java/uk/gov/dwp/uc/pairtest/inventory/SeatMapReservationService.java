@@ -0,0 +1,78 @@
+package uk.gov.dwp.uc.pairtest.inventory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Allocates actual seats on an auditorium's {@link SeatMap} before handing on to the downstream reservation service,
+ * so that the adults and children of one purchase sit together. If the auditorium is full the purchase is rejected
+ * rather than oversold, and if the downstream call fails the seats go back on the map.
+ *
+ * One service per screening, like the map itself: it remembers only allocations whose seats are still taken, so it
+ * never holds more of them than the map has seats. Each account's allocations are a list changed in place inside
+ * the map's compute, so a purchase adds one entry rather than copying the account's history.
+ */
+public class SeatMapReservationService implements SeatReservationService {
+
+    private final SeatMap seatMap;
+    private final SeatReservationService seatReservationService;
+    private final ConcurrentMap<Long, List<SeatAllocation>> allocations = new ConcurrentHashMap<Long, List<SeatAllocation>>();
+
+    public SeatMapReservationService(SeatMap seatMap, SeatReservationService seatReservationService) {
+        this.seatMap = seatMap;
+        this.seatReservationService = seatReservationService;
+    }
+
+    @Override
+    public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+        SeatAllocation allocation = seatMap.allocate(totalSeatsToAllocate);
+        if (allocation == null) {
+            throw new InvalidPurchaseException(InvalidPurchaseException.Reason.SEATS_UNAVAILABLE);
+        }
+        try {
+            seatReservationService.reserveSeat(accountId, totalSeatsToAllocate);
+        } catch (RuntimeException e) {
+            seatMap.release(allocation);
+            throw e;
+        }
+        allocations.compute(accountId, (id, held) -> {
+            if (held == null) held = new ArrayList<SeatAllocation>(1);
+            held.add(allocation);
+            return held;
+        });
+    }
+
+    /**
+     * Seats allocated to the account, oldest purchase first.
+     */
+    public List<SeatAllocation> getAllocations(long accountId) {
+        List<SeatAllocation> snapshot = new ArrayList<SeatAllocation>();
+        allocations.computeIfPresent(accountId, (id, held) -> {
+            snapshot.addAll(held);
+            return held;
+        });
+        return snapshot;
+    }
+
+    /**
+     * Gives back the account's most recent allocation of that many seats, for compensating a purchase that failed
+     * after its seats were reserved. Does nothing if the account holds no such allocation.
+     */
+    public void releaseSeat(long accountId, int totalSeatsToRelease) {
+        SeatAllocation[] released = new SeatAllocation[1];
+        allocations.computeIfPresent(accountId, (id, held) -> {
+            for (int i = held.size() - 1; i >= 0; i--) {
+                if (held.get(i).getSeats() != totalSeatsToRelease) continue;
+                released[0] = held.remove(i);
+                return held.isEmpty() ? null : held;
+            }
+            return held;
+        });
+        if (released[0] != null) seatMap.release(released[0]);
+    }
+}
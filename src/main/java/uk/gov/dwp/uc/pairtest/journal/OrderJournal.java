@@ -0,0 +1,240 @@
+package uk.gov.dwp.uc.pairtest.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import uk.gov.dwp.uc.pairtest.PurchaseListener;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Durable, append-only record of every order, written into memory-mapped segment files.
+ *
+ * Appending is a handful of stores into the mapped segment, nothing waits for the disk. A background thread forces
+ * written records to disk every flush interval (group commit), so one fsync covers every order appended since the
+ * last one. When a segment is full the next one is mapped and the full one is forced and released by the flusher.
+ *
+ * Records are fixed width, see {@link #recordSize}. The commit marker is written last, so a reader stops cleanly at
+ * a record that was only half written when the process died. That order only holds in memory, though: 48 byte
+ * records straddle page boundaries, and after a power failure the page holding a record's commit marker may have
+ * reached the disk without the page before it. Every record therefore also carries a checksum of its fields, and a
+ * record only counts as written when both the marker and the checksum match.
+ */
+public class OrderJournal implements PurchaseListener, AutoCloseable {
+
+    /** accountId, timestamp, adults, children, infants, seats, price, outcome, checksum, commit marker. */
+    public static final int recordSize = 48;
+
+    public static final int outcomePurchased = 0;
+    public static final int outcomeFailed = 1;
+    /** Rejections are stored as outcomeRejected + Reason.ordinal(). */
+    public static final int outcomeRejected = 2;
+
+    static final int commitMarker = 0x4F524452;
+    static final int accountIdOffset = 0;
+    static final int timestampOffset = 8;
+    static final int adultsOffset = 16;
+    static final int childrenOffset = 20;
+    static final int infantsOffset = 24;
+    static final int seatsOffset = 28;
+    static final int priceOffset = 32;
+    static final int outcomeOffset = 36;
+    // the checksum and marker share an aligned 8 bytes, so they are always on the same page.
+    static final int checksumOffset = 40;
+    static final int commitOffset = 44;
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ConcurrentLinkedQueue<Segment> sealed = new ConcurrentLinkedQueue<Segment>();
+    private final ScheduledExecutorService flusher;
+    private Segment current;
+
+    /**
+     * @param flushIntervalMillis how often written records are forced to disk, 0 to leave it to {@link #sync()}
+     */
+    public OrderJournal(Path directory, int recordsPerSegment, long flushIntervalMillis) throws IOException {
+        if (recordsPerSegment < 1) throw new IllegalArgumentException("recordsPerSegment must be at least 1");
+        this.directory = Files.createDirectories(directory);
+        this.recordsPerSegment = recordsPerSegment;
+
+        List<Path> segments = Segments.list(directory);
+        if (segments.isEmpty()) {
+            current = Segment.open(directory, 0, recordsPerSegment);
+        } else {
+            Path last = segments.get(segments.size() - 1);
+            current = Segment.open(directory, Segments.number(last), recordsPerSegment);
+            current.seekToEnd();
+        }
+        current.flushed = current.next;
+
+        if (flushIntervalMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "order-journal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::sync, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    @Override
+    public void purchased(long accountId, int adults, int children, int infants, int seats, int price) {
+        append(accountId, adults, children, infants, seats, price, outcomePurchased);
+    }
+
+    @Override
+    public void rejected(long accountId, int adults, int children, int infants, InvalidPurchaseException.Reason reason) {
+        append(accountId, adults, children, infants, 0, 0, reason == null ? outcomeFailed : outcomeRejected + reason.ordinal());
+    }
+
+    @Override
+    public void failed(long accountId, int adults, int children, int infants, int seats, int price) {
+        append(accountId, adults, children, infants, seats, price, outcomeFailed);
+    }
+
+    public void append(long accountId, int adults, int children, int infants, int seats, int price, int outcome) {
+        long timestamp = System.currentTimeMillis();
+        appendLock.lock();
+        try {
+            if (current.next == recordsPerSegment) roll();
+            MappedByteBuffer buffer = current.buffer;
+            int offset = current.next * recordSize;
+            buffer.putLong(offset + accountIdOffset, accountId);
+            buffer.putLong(offset + timestampOffset, timestamp);
+            buffer.putInt(offset + adultsOffset, adults);
+            buffer.putInt(offset + childrenOffset, children);
+            buffer.putInt(offset + infantsOffset, infants);
+            buffer.putInt(offset + seatsOffset, seats);
+            buffer.putInt(offset + priceOffset, price);
+            buffer.putInt(offset + outcomeOffset, outcome);
+            buffer.putInt(offset + checksumOffset, checksum(accountId, timestamp, adults, children, infants, seats, price, outcome));
+            buffer.putInt(offset + commitOffset, commitMarker);
+            current.next++;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Whether the record at offset was completely written: its commit marker is there and its fields match their
+     * checksum.
+     */
+    static boolean isCommitted(MappedByteBuffer buffer, int offset) {
+        return buffer.getInt(offset + commitOffset) == commitMarker
+                && buffer.getInt(offset + checksumOffset) == checksum(buffer.getLong(offset + accountIdOffset),
+                        buffer.getLong(offset + timestampOffset), buffer.getInt(offset + adultsOffset),
+                        buffer.getInt(offset + childrenOffset), buffer.getInt(offset + infantsOffset),
+                        buffer.getInt(offset + seatsOffset), buffer.getInt(offset + priceOffset),
+                        buffer.getInt(offset + outcomeOffset));
+    }
+
+    // seeded, so a record whose fields never reached the disk does not match a checksum of zeros.
+    static int checksum(long accountId, long timestamp, int adults, int children, int infants, int seats, int price, int outcome) {
+        long hash = commitMarker;
+        hash = (hash ^ accountId) * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ timestamp) * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ ((long) adults << 32 | (children & 0xFFFFFFFFL))) * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ ((long) infants << 32 | (seats & 0xFFFFFFFFL))) * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ ((long) price << 32 | (outcome & 0xFFFFFFFFL))) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32);
+    }
+
+    // called holding the append lock.
+    private void roll() {
+        Segment full = current;
+        try {
+            current = Segment.open(directory, full.number + 1, recordsPerSegment);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create order journal segment " + (full.number + 1), e);
+        }
+        sealed.add(full);
+    }
+
+    /**
+     * Forces every record appended so far to disk.
+     */
+    public synchronized void sync() {
+        Segment full;
+        while ((full = sealed.poll()) != null) {
+            full.buffer.force();
+            full.close();
+        }
+        Segment segment;
+        int written;
+        appendLock.lock();
+        try {
+            segment = current;
+            written = segment.next;
+        } finally {
+            appendLock.unlock();
+        }
+        if (written > segment.flushed) {
+            segment.buffer.force(segment.flushed * recordSize, (written - segment.flushed) * recordSize);
+            segment.flushed = written;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        sync();
+        current.close();
+    }
+
+    static final class Segment {
+        final long number;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        int next;
+        // only touched by sync().
+        int flushed;
+
+        private Segment(long number, FileChannel channel, MappedByteBuffer buffer) {
+            this.number = number;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment open(Path directory, long number, int records) throws IOException {
+            FileChannel channel = FileChannel.open(Segments.path(directory, number),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) records * recordSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return new Segment(number, channel, buffer);
+        }
+
+        void seekToEnd() {
+            int records = buffer.capacity() / recordSize;
+            while (next < records && isCommitted(buffer, next * recordSize)) next++;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
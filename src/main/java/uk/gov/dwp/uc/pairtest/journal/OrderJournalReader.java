@@ -0,0 +1,96 @@
+package uk.gov.dwp.uc.pairtest.journal;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Reads an {@link OrderJournal} from the oldest record to the newest, for replay and audit. The reader is a cursor:
+ * {@link #next()} moves it on and the getters read the current record in place, nothing is allocated per record.
+ *
+ * Reading stops at the first record without a commit marker or with fields that do not match its checksum, which is
+ * either the end of the journal or a record the writer had not finished, or the disk had not been given, when it
+ * stopped.
+ */
+public class OrderJournalReader implements AutoCloseable {
+
+    private final List<Path> segments;
+    private int segmentIndex = -1;
+    private MappedByteBuffer buffer;
+    private int offset;
+
+    public OrderJournalReader(Path directory) throws IOException {
+        this.segments = Segments.list(directory);
+    }
+
+    public boolean next() throws IOException {
+        if (buffer != null) offset += OrderJournal.recordSize;
+        while (true) {
+            if (buffer != null && offset + OrderJournal.recordSize <= buffer.capacity()) {
+                return OrderJournal.isCommitted(buffer, offset);
+            }
+            if (++segmentIndex >= segments.size()) return false;
+            try (FileChannel channel = FileChannel.open(segments.get(segmentIndex), StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            offset = 0;
+        }
+    }
+
+    public long getAccountId() {
+        return buffer.getLong(offset + OrderJournal.accountIdOffset);
+    }
+
+    public long getTimestamp() {
+        return buffer.getLong(offset + OrderJournal.timestampOffset);
+    }
+
+    public int getAdults() {
+        return buffer.getInt(offset + OrderJournal.adultsOffset);
+    }
+
+    public int getChildren() {
+        return buffer.getInt(offset + OrderJournal.childrenOffset);
+    }
+
+    public int getInfants() {
+        return buffer.getInt(offset + OrderJournal.infantsOffset);
+    }
+
+    public int getSeats() {
+        return buffer.getInt(offset + OrderJournal.seatsOffset);
+    }
+
+    public int getPrice() {
+        return buffer.getInt(offset + OrderJournal.priceOffset);
+    }
+
+    public int getOutcome() {
+        return buffer.getInt(offset + OrderJournal.outcomeOffset);
+    }
+
+    public boolean isPurchased() {
+        return getOutcome() == OrderJournal.outcomePurchased;
+    }
+
+    /**
+     * The rule that rejected the order, or null if it was not rejected.
+     */
+    public InvalidPurchaseException.Reason getReason() {
+        int outcome = getOutcome();
+        return outcome < OrderJournal.outcomeRejected ? null
+                : InvalidPurchaseException.Reason.values()[outcome - OrderJournal.outcomeRejected];
+    }
+
+    @Override
+    public void close() {
+        buffer = null;
+    }
+}
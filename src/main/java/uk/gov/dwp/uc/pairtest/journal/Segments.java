@@ -0,0 +1,38 @@
+package uk.gov.dwp.uc.pairtest.journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Segment files are named orders-NNNNNNNNNN.journal, so sorting by name is sorting by age.
+ */
+final class Segments {
+
+    private static final String prefix = "orders-";
+    private static final String suffix = ".journal";
+
+    private Segments() {
+    }
+
+    static Path path(Path directory, long number) {
+        return directory.resolve(String.format("%s%010d%s", prefix, number, suffix));
+    }
+
+    static long number(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+
+    static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> {
+                String name = f.getFileName().toString();
+                return name.startsWith(prefix) && name.endsWith(suffix);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+}
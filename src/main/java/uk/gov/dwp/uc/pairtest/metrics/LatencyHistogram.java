@@ -0,0 +1,141 @@
+package uk.gov.dwp.uc.pairtest.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of latencies in nanoseconds, in the style of HdrHistogram.
+ *
+ * Values below 32ns are counted exactly. Above that each power of two is split into 32 equal buckets, so any value
+ * is reported to within about 3% however large it is. The buckets are a fixed array of 1920 counters allocated up
+ * front, and recording is one atomic increment, so it never allocates.
+ *
+ * Latencies cluster, so threads recording at once mostly hit the same few buckets. Each thread therefore counts in
+ * its own stripe, a full set of buckets 15KB from the next, and a snapshot adds the stripes up. By default there is a
+ * stripe per processor rounded up to a power of two, at most 16; a histogram only one thread records into needs one.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    private static final int MAX_STRIPES = 16;
+
+    private final int stripeMask;
+    private final AtomicLongArray counts;
+    private final LongAdder total = new LongAdder();
+
+    public LatencyHistogram() {
+        this(Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1)));
+    }
+
+    /**
+     * @param stripes sets of buckets to spread recording threads over, a power of two; 1 for a single writer.
+     */
+    public LatencyHistogram(int stripes) {
+        if (stripes < 1 || Integer.bitCount(stripes) != 1) throw new IllegalArgumentException("stripes must be a power of two");
+        this.stripeMask = stripes - 1;
+        this.counts = new AtomicLongArray(stripes * BUCKETS);
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(homeStripe() * BUCKETS + indexOf(nanos));
+        total.add(nanos);
+    }
+
+    private int homeStripe() {
+        return Long.hashCode(Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L) & stripeMask;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // the largest value counted in the bucket.
+    static long highestOf(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lowest = (1L << exponent) | ((long) (index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS));
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Copies the counts. Recording carries on meanwhile, so a busy histogram's snapshot can be a few values out.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < counts.length(); i++) copy[i % BUCKETS] += counts.get(i);
+        return new Snapshot(copy, total.sum());
+    }
+
+    /**
+     * Immutable Object
+     *
+     * Counts at one point in time. Getters are exposed over JMX as a composite value.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long total;
+
+        Snapshot(long[] counts, long total) {
+            long count = 0;
+            for (long c : counts) count += c;
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * This snapshot's counts and the other's together, for reporting histograms kept apart as one.
+         */
+        public Snapshot plus(Snapshot other) {
+            long[] sum = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) sum[i] = counts[i] + other.counts[i];
+            return new Snapshot(sum, total + other.total);
+        }
+
+        public long getMeanNanos() {
+            return count == 0 ? 0 : total / count;
+        }
+
+        public long getP50Nanos() {
+            return valueAtPercentile(50);
+        }
+
+        public long getP99Nanos() {
+            return valueAtPercentile(99);
+        }
+
+        public long getP999Nanos() {
+            return valueAtPercentile(99.9);
+        }
+
+        public long getMaxNanos() {
+            return valueAtPercentile(100);
+        }
+
+        /**
+         * The value that percentile of recorded values are at or below, to the precision of its bucket.
+         */
+        public long valueAtPercentile(double percentile) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return highestOf(i);
+            }
+            return highestOf(counts.length - 1);
+        }
+    }
+}
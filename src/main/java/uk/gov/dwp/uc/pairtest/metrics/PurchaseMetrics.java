@@ -0,0 +1,171 @@
+package uk.gov.dwp.uc.pairtest.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import uk.gov.dwp.uc.pairtest.PurchaseListener;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Counts every outcome and times validation and each gateway call made by TicketServiceImpl.
+ *
+ * Counters are LongAdders, so threads purchasing at once do not fight over one cache line, and histograms are
+ * allocated up front; nothing is allocated while recording. Read the figures with {@link #snapshot()} or over JMX
+ * once {@link #register(String)} has been called.
+ */
+public class PurchaseMetrics implements PurchaseListener, PurchaseMetricsMXBean {
+
+    private static final InvalidPurchaseException.Reason[] reasons = InvalidPurchaseException.Reason.values();
+
+    private final LongAdder purchased = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder[] rejected = new LongAdder[reasons.length];
+    private final LatencyHistogram validation = new LatencyHistogram();
+    private final LatencyHistogram payment = new LatencyHistogram();
+    private final LatencyHistogram reservation = new LatencyHistogram();
+
+    public PurchaseMetrics() {
+        for (int i = 0; i < rejected.length; i++) rejected[i] = new LongAdder();
+    }
+
+    @Override
+    public void purchased(long accountId, int adults, int children, int infants, int seats, int price) {
+        purchased.increment();
+    }
+
+    @Override
+    public void rejected(long accountId, int adults, int children, int infants, InvalidPurchaseException.Reason reason) {
+        if (reason != null) rejected[reason.ordinal()].increment();
+    }
+
+    @Override
+    public void failed(long accountId, int adults, int children, int infants, int seats, int price) {
+        failed.increment();
+    }
+
+    public void recordValidation(long nanos) {
+        validation.record(nanos);
+    }
+
+    /**
+     * A successful payment call, single or batch.
+     */
+    public void recordPayment(long nanos) {
+        payment.record(nanos);
+    }
+
+    /**
+     * A successful reservation call, single or batch.
+     */
+    public void recordReservation(long nanos) {
+        reservation.record(nanos);
+    }
+
+    /**
+     * Registers with the platform MBean server as uk.gov.dwp.uc.pairtest:type=PurchaseMetrics,name=name.
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("uk.gov.dwp.uc.pairtest:type=PurchaseMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public Snapshot snapshot() {
+        long[] rejectedCounts = new long[rejected.length];
+        for (int i = 0; i < rejected.length; i++) rejectedCounts[i] = rejected[i].sum();
+        return new Snapshot(purchased.sum(), failed.sum(), rejectedCounts,
+                validation.snapshot(), payment.snapshot(), reservation.snapshot());
+    }
+
+    @Override
+    public long getPurchased() {
+        return purchased.sum();
+    }
+
+    @Override
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    @Override
+    public Map<String, Long> getRejected() {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (InvalidPurchaseException.Reason reason : reasons) counts.put(reason.name(), rejected[reason.ordinal()].sum());
+        return counts;
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getValidationLatency() {
+        return validation.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getPaymentLatency() {
+        return payment.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getReservationLatency() {
+        return reservation.snapshot();
+    }
+
+    /**
+     * Immutable Object
+     *
+     * Every counter and histogram, read one after another; not an atomic view while purchases carry on.
+     */
+    public static final class Snapshot {
+
+        private final long purchased;
+        private final long failed;
+        private final long[] rejected;
+        private final LatencyHistogram.Snapshot validation;
+        private final LatencyHistogram.Snapshot payment;
+        private final LatencyHistogram.Snapshot reservation;
+
+        Snapshot(long purchased, long failed, long[] rejected, LatencyHistogram.Snapshot validation,
+                LatencyHistogram.Snapshot payment, LatencyHistogram.Snapshot reservation) {
+            this.purchased = purchased;
+            this.failed = failed;
+            this.rejected = rejected;
+            this.validation = validation;
+            this.payment = payment;
+            this.reservation = reservation;
+        }
+
+        public long getPurchased() {
+            return purchased;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getRejected(InvalidPurchaseException.Reason reason) {
+            return rejected[reason.ordinal()];
+        }
+
+        public long getRejected() {
+            long total = 0;
+            for (long count : rejected) total += count;
+            return total;
+        }
+
+        public LatencyHistogram.Snapshot getValidation() {
+            return validation;
+        }
+
+        public LatencyHistogram.Snapshot getPayment() {
+            return payment;
+        }
+
+        public LatencyHistogram.Snapshot getReservation() {
+            return reservation;
+        }
+    }
+}
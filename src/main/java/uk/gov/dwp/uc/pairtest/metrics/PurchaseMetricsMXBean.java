@@ -0,0 +1,25 @@
+package uk.gov.dwp.uc.pairtest.metrics;
+
+import java.util.Map;
+
+/**
+ * Purchase counters and latencies as seen over JMX.
+ */
+public interface PurchaseMetricsMXBean {
+
+    long getPurchased();
+
+    long getFailed();
+
+    /**
+     * Rejections keyed by InvalidPurchaseException.Reason name.
+     */
+    Map<String, Long> getRejected();
+
+    LatencyHistogram.Snapshot getValidationLatency();
+
+    LatencyHistogram.Snapshot getPaymentLatency();
+
+    LatencyHistogram.Snapshot getReservationLatency();
+
+}
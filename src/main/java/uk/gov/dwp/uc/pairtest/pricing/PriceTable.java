@@ -0,0 +1,184 @@
+package uk.gov.dwp.uc.pairtest.pricing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Immutable Object
+ *
+ * Compiled price rules. Each time band is a flat array of prices indexed by {@link Type#ordinal()}, and every minute
+ * of the day points at the band that applies, so a lookup is two array reads.
+ *
+ * Rule lines, '#' starts a comment:
+ * <pre>
+ * ADULT=20                  default price for a ticket type
+ * ADULT@17:00-23:00=25      price from 17:00 up to (not including) 23:00, local time
+ * ADULT@00:00-24:00=25      the whole day
+ * </pre>
+ * Later time bands win where they overlap. Types without a default price cost 0.
+ */
+public final class PriceTable {
+
+    private static final int minutesPerDay = 24 * 60;
+
+    public static final PriceTable DEFAULT = new PriceTable(new int[][] {{20, 10, 0}}, null);
+
+    private final int[][] bands;
+    private final byte[] bandForMinute;
+
+    private PriceTable(int[][] bands, byte[] bandForMinute) {
+        this.bands = bands;
+        this.bandForMinute = bandForMinute;
+    }
+
+    /**
+     * True if prices do not depend on the time of day.
+     */
+    public boolean isFlat() {
+        return bandForMinute == null;
+    }
+
+    /**
+     * Prices indexed by ticket type ordinal. The returned array is shared and must not be modified.
+     */
+    int[] pricesAt(int minuteOfDay) {
+        return bandForMinute == null ? bands[0] : bands[bandForMinute[minuteOfDay]];
+    }
+
+    public int price(Type type, int minuteOfDay) {
+        return pricesAt(minuteOfDay)[type.ordinal()];
+    }
+
+    /**
+     * What the ticket counts come to at the given prices, indexed by ticket type ordinal.
+     *
+     * @throws InvalidPurchaseException if the total does not fit in an int, the most one payment can be
+     */
+    public static int total(int[] prices, int adults, int children, int infants) throws InvalidPurchaseException {
+        // each product fits in a long, and the running total is checked back into int range before the next is added.
+        long total = (long) adults * prices[0];
+        total = payable(total) + (long) children * prices[1];
+        total = payable(total) + (long) infants * prices[2];
+        return (int) payable(total);
+    }
+
+    private static long payable(long total) {
+        if (total != (int) total) throw new InvalidPurchaseException(InvalidPurchaseException.Reason.PRICE_TOO_HIGH);
+        return total;
+    }
+
+    public static PriceTable compile(List<String> lines) {
+        int[] defaults = new int[Type.values().length];
+        // {type ordinal, from minute, to minute, price} in the order they were written.
+        List<int[]> overrides = new ArrayList<int[]>();
+
+        for (int n = 0; n < lines.size(); n++) {
+            String line = lines.get(n);
+            int comment = line.indexOf('#');
+            if (comment >= 0) line = line.substring(0, comment);
+            line = line.trim();
+            if (line.isEmpty()) continue;
+
+            int equals = line.indexOf('=');
+            if (equals < 0) throw invalid(n, "expected TYPE=price");
+            String key = line.substring(0, equals).trim();
+            int price = parsePrice(n, line.substring(equals + 1).trim());
+
+            int at = key.indexOf('@');
+            Type type = parseType(n, at < 0 ? key : key.substring(0, at).trim());
+            if (at < 0) {
+                defaults[type.ordinal()] = price;
+                continue;
+            }
+            String[] range = key.substring(at + 1).split("-");
+            if (range.length != 2) throw invalid(n, "expected a time range HH:mm-HH:mm");
+            overrides.add(new int[] {type.ordinal(), parseMinute(n, range[0]), parseMinute(n, range[1]), price});
+        }
+        return build(defaults, overrides);
+    }
+
+    private static PriceTable build(int[] defaults, List<int[]> overrides) {
+        if (overrides.isEmpty()) return new PriceTable(new int[][] {defaults}, null);
+
+        // work out the prices for every minute, then share one array per distinct set of prices.
+        List<int[]> bands = new ArrayList<int[]>();
+        bands.add(defaults);
+        byte[] bandForMinute = new byte[minutesPerDay];
+        for (int minute = 0; minute < minutesPerDay; minute++) {
+            int[] prices = defaults.clone();
+            for (int[] override : overrides) {
+                if (covers(override[1], override[2], minute)) prices[override[0]] = override[3];
+            }
+            int band = indexOf(bands, prices);
+            if (band < 0) {
+                if (bands.size() > Byte.MAX_VALUE) throw new IllegalArgumentException("Price rules: too many distinct time bands");
+                band = bands.size();
+                bands.add(prices);
+            }
+            bandForMinute[minute] = (byte) band;
+        }
+        // one band all day, e.g. 00:00-24:00, is a flat table at that band's prices.
+        int first = bandForMinute[0];
+        boolean flat = true;
+        for (int minute = 1; minute < minutesPerDay && flat; minute++) flat = bandForMinute[minute] == first;
+        if (flat) return new PriceTable(new int[][] {bands.get(first)}, null);
+        return new PriceTable(bands.toArray(new int[0][]), bandForMinute);
+    }
+
+    // ranges may wrap past midnight, e.g. 22:00-02:00. 24:00 is kept as 1440, so 00:00-24:00 covers every minute.
+    private static boolean covers(int from, int to, int minute) {
+        return from <= to ? minute >= from && minute < to : minute >= from || minute < to;
+    }
+
+    private static int indexOf(List<int[]> bands, int[] prices) {
+        for (int i = 0; i < bands.size(); i++) {
+            if (Arrays.equals(bands.get(i), prices)) return i;
+        }
+        return -1;
+    }
+
+    private static Type parseType(int line, String name) {
+        try {
+            return Type.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw invalid(line, "unknown ticket type " + name);
+        }
+    }
+
+    private static int parsePrice(int line, String value) {
+        try {
+            int price = Integer.parseInt(value);
+            if (price < 0) throw invalid(line, "price must not be negative");
+            return price;
+        } catch (NumberFormatException e) {
+            throw invalid(line, "price must be a whole number");
+        }
+    }
+
+    private static int parseMinute(int line, String time) {
+        String[] parts = time.trim().split(":");
+        try {
+            int hours = Integer.parseInt(parts[0]);
+            int minutes = parts.length == 2 ? Integer.parseInt(parts[1]) : -1;
+            if (hours < 0 || hours > 24 || minutes < 0 || minutes > 59 || hours * 60 + minutes > minutesPerDay) {
+                throw invalid(line, "invalid time " + time);
+            }
+            return hours * 60 + minutes;
+        } catch (NumberFormatException e) {
+            throw invalid(line, "invalid time " + time);
+        }
+    }
+
+    private static IllegalArgumentException invalid(int line, String message) {
+        return new IllegalArgumentException("Price rule line " + (line + 1) + ": " + message);
+    }
+
+    @Override
+    public String toString() {
+        return "PriceTable" + Arrays.deepToString(bands);
+    }
+}
@@ -0,0 +1,123 @@
+package uk.gov.dwp.uc.pairtest.pricing;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import uk.gov.dwp.uc.pairtest.config.WatchedFile;
+
+/**
+ * Holds the current {@link PriceTable} and swaps in a newly compiled one when the rule file changes.
+ * Readers only do a volatile read, a reload never blocks a purchase.
+ */
+public class PricingEngine {
+
+    private final WatchedFile<PriceTable> rules;
+    private final Clock clock;
+    private final ZoneRules zoneRules;
+    private volatile ZoneWindow zoneWindow = new ZoneWindow(0, 0, 0);
+
+    /**
+     * Fixed prices that are never reloaded.
+     */
+    public PricingEngine(PriceTable table) {
+        this.rules = new WatchedFile<PriceTable>(table);
+        this.clock = Clock.systemDefaultZone();
+        this.zoneRules = clock.getZone().getRules();
+    }
+
+    /**
+     * Prices compiled from a rule file, time bands are read in the clock's time zone.
+     */
+    public PricingEngine(Path rules, Clock clock) throws IOException {
+        this.rules = new WatchedFile<PriceTable>(rules, PriceTable::compile);
+        this.clock = clock;
+        this.zoneRules = clock.getZone().getRules();
+    }
+
+    public PriceTable getTable() {
+        return rules.get();
+    }
+
+    /**
+     * Prices in force right now, indexed by ticket type ordinal. The returned array is shared and must not be modified.
+     */
+    public int[] currentPrices() {
+        PriceTable current = rules.get();
+        if (current.isFlat()) return current.pricesAt(0);
+        return current.pricesAt(minuteOfDay(clock.millis()));
+    }
+
+    private int minuteOfDay(long epochMillis) {
+        // the UTC offset only changes at daylight saving transitions, so only look it up again after crossing one.
+        ZoneWindow window = zoneWindow;
+        if (epochMillis < window.from || epochMillis >= window.until) {
+            window = zoneWindow = ZoneWindow.at(zoneRules, epochMillis);
+        }
+        return Math.floorMod(Math.floorDiv(epochMillis + window.offsetMillis, 60_000L), 24 * 60);
+    }
+
+    /**
+     * Compiles the rule file and swaps it in. If the file is invalid the current prices stay in force.
+     */
+    public void reload() throws IOException {
+        rules.reload();
+    }
+
+    /**
+     * Reloads only if the rule file has been modified since it was last read.
+     */
+    public boolean reloadIfModified() throws IOException {
+        return rules.reloadIfModified();
+    }
+
+    /**
+     * Checks the rule file for changes on the given executor. A bad edit is counted in {@link #getReloadFailures()}
+     * and the previous prices kept.
+     */
+    public ScheduledFuture<?> watch(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        return rules.watch(executor, period, unit);
+    }
+
+    /**
+     * Watched reloads that failed, leaving the previous prices in force.
+     */
+    public long getReloadFailures() {
+        return rules.getReloadFailures();
+    }
+
+    /**
+     * Why the latest watched reload failed, or null if none has.
+     */
+    public Exception getLastReloadFailure() {
+        return rules.getLastReloadFailure();
+    }
+
+    private static final class ZoneWindow {
+        final long from;
+        final long until;
+        final long offsetMillis;
+
+        ZoneWindow(long from, long until, long offsetMillis) {
+            this.from = from;
+            this.until = until;
+            this.offsetMillis = offsetMillis;
+        }
+
+        static ZoneWindow at(ZoneRules rules, long epochMillis) {
+            Instant instant = Instant.ofEpochMilli(epochMillis);
+            ZoneOffsetTransition previous = rules.previousTransition(instant);
+            ZoneOffsetTransition next = rules.nextTransition(instant);
+            return new ZoneWindow(
+                    previous == null ? Long.MIN_VALUE : previous.getInstant().toEpochMilli(),
+                    next == null ? Long.MAX_VALUE : next.getInstant().toEpochMilli(),
+                    rules.getOffset(instant).getTotalSeconds() * 1000L);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package uk.gov.dwp.uc.pairtest.ratelimit;
+
+import java.time.Clock;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket per account: each account may burst up to burst purchases, then refillPerSecond purchases a second.
+ *
+ * Buckets live in a fixed size open addressing table keyed by the raw account id, so memory is set once at
+ * construction (16 bytes a slot, twice maxAccounts rounded up to a power of two, so two to four slots per account)
+ * however many accounts are seen. Each slot is two adjacent
+ * longs, the account id then the time of the last purchase in milliseconds packed with the tokens left in
+ * thousandths, so a lookup touches one cache line.
+ * When an account's probe window is full the least recently used bucket in it is reused; an account idle long enough
+ * to have refilled loses nothing by this, so only a table far too small for the traffic becomes more lenient.
+ *
+ * The table is split into stripes, each with its own lock held only to update one slot.
+ */
+public class AccountRateLimiter {
+
+    private static final int MAX_PROBES = 16;
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long MILLI_TOKENS = 1000;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final int slotMask;
+    private final long burst;
+    private final long refillPerSecond;
+    private final Clock clock;
+    private final long epoch;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public AccountRateLimiter(int burst, int refillPerSecond, int maxAccounts) {
+        this(burst, refillPerSecond, maxAccounts, Clock.systemUTC());
+    }
+
+    public AccountRateLimiter(int burst, int refillPerSecond, int maxAccounts, Clock clock) {
+        if (burst < 1 || burst * MILLI_TOKENS > TOKEN_MASK) throw new IllegalArgumentException("burst must be between 1 and " + TOKEN_MASK / MILLI_TOKENS);
+        if (refillPerSecond < 1) throw new IllegalArgumentException("refillPerSecond must be at least 1");
+        if (maxAccounts < 1 || maxAccounts > 1 << 29) throw new IllegalArgumentException("maxAccounts must be between 1 and " + (1 << 29));
+        int slots = Math.max(MAX_PROBES, Integer.highestOneBit(maxAccounts * 2 - 1) << 1);
+        int stripeCount = Math.min(64, slots / MAX_PROBES);
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) stripes[i] = new Stripe(slots / stripeCount);
+        this.stripeMask = stripeCount - 1;
+        this.slotMask = slots / stripeCount - 1;
+        this.burst = burst * MILLI_TOKENS;
+        this.refillPerSecond = refillPerSecond;
+        this.clock = clock;
+        this.epoch = clock.millis();
+    }
+
+    /**
+     * Takes one token from the account's bucket, or returns false if it is empty.
+     * Account ids below 1 are not limited, they are rejected by validation anyway.
+     */
+    public boolean tryAcquire(long accountId) {
+        if (accountId < 1) return true;
+        long hash = mix(accountId);
+        Stripe stripe = stripes[(int) hash & stripeMask];
+        int home = (int) (hash >>> 32);
+        long now = Math.max(0, clock.millis() - epoch);
+
+        stripe.lock.lock();
+        try {
+            int slot = find(stripe, accountId, home);
+            long tokens;
+            long[] table = stripe.table;
+            if (table[slot] == accountId) {
+                long state = table[slot + 1];
+                long elapsed = Math.max(0, now - (state >>> TOKEN_BITS));
+                tokens = Math.min(burst, (state & TOKEN_MASK) + elapsed * refillPerSecond);
+            } else {
+                if (table[slot] != 0) evictions.increment();
+                table[slot] = accountId;
+                tokens = burst;
+            }
+            // refill is a whole number of thousandths per millisecond, so none is lost by moving the timestamp on.
+            if (tokens < MILLI_TOKENS) {
+                table[slot + 1] = now << TOKEN_BITS | tokens;
+                rejected.increment();
+                return false;
+            }
+            table[slot + 1] = now << TOKEN_BITS | (tokens - MILLI_TOKENS);
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // index of the account's slot, else the first empty one, else the least recently used one in the probe window.
+    private int find(Stripe stripe, long accountId, int home) {
+        long[] table = stripe.table;
+        int victim = (home & slotMask) << 1;
+        long oldest = Long.MAX_VALUE;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = ((home + probe) & slotMask) << 1;
+            long key = table[slot];
+            if (key == accountId || key == 0) return slot;
+            long lastUsed = table[slot + 1] >>> TOKEN_BITS;
+            if (lastUsed < oldest) {
+                oldest = lastUsed;
+                victim = slot;
+            }
+        }
+        return victim;
+    }
+
+    // splits the 64 bit murmur finaliser between the stripe (low bits) and the home slot (high bits).
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+    /**
+     * Purchases refused because the account's bucket was empty.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Buckets reused for another account because the table was full around it.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Bytes held by the table, fixed at construction.
+     */
+    public long getTableBytes() {
+        return (long) stripes.length * (slotMask + 1) * 16;
+    }
+
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final long[] table;
+
+        Stripe(int slots) {
+            this.table = new long[slots * 2];
+        }
+    }
+}
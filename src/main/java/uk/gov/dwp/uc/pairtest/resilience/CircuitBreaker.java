@@ -0,0 +1,124 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops calling a gateway that keeps failing, then lets a single probe through now and then to see if it is back.
+ *
+ * Closed: every call goes through; failureThreshold failures in a row open the breaker.
+ * Open: every call is refused until openFor has passed since it opened.
+ * Half open: the first call after that is let through as a probe and the rest refused; success closes the breaker,
+ * failure opens it again for another openFor.
+ *
+ * The whole state lives in one AtomicLong, the time it last opened in milliseconds above the state and the count of
+ * failures in a row, so every transition is a single compare and set.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final State[] states = State.values();
+    private static final int COUNT_BITS = 22;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final int STATE_BITS = 2;
+    private static final int TIME_SHIFT = COUNT_BITS + STATE_BITS;
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final Clock clock;
+    private final long epoch;
+    private final AtomicLong state = new AtomicLong(pack(0, State.CLOSED, 0));
+
+    public CircuitBreaker(int failureThreshold, Duration openFor) {
+        this(failureThreshold, openFor, Clock.systemUTC());
+    }
+
+    public CircuitBreaker(int failureThreshold, Duration openFor, Clock clock) {
+        if (failureThreshold < 1 || failureThreshold > COUNT_MASK) throw new IllegalArgumentException("failureThreshold must be between 1 and " + COUNT_MASK);
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openFor.toMillis();
+        this.clock = clock;
+        this.epoch = clock.millis();
+    }
+
+    /**
+     * True if the call may go ahead, in which case the caller must report how it went with {@link #onSuccess()},
+     * {@link #onFailure()} or, if it never found out, {@link #release()}.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            long current = state.get();
+            switch (stateOf(current)) {
+                case CLOSED:
+                    return true;
+                case HALF_OPEN:
+                    return false;
+                default:
+                    long now = now();
+                    if (now - openedAt(current) < openMillis) return false;
+                    if (state.compareAndSet(current, pack(openedAt(current), State.HALF_OPEN, 0))) return true;
+            }
+        }
+    }
+
+    public void onSuccess() {
+        while (true) {
+            long current = state.get();
+            State phase = stateOf(current);
+            // once open, a success from a call let through before it opened is ignored. While half open any success
+            // closes it, whether it is the probe's or a straggler's: either way the gateway has just answered.
+            if (phase == State.OPEN || current == pack(openedAt(current), State.CLOSED, 0)) return;
+            if (state.compareAndSet(current, pack(openedAt(current), State.CLOSED, 0))) return;
+        }
+    }
+
+    public void onFailure() {
+        while (true) {
+            long current = state.get();
+            State phase = stateOf(current);
+            if (phase == State.OPEN) return;
+            long failures = (current & COUNT_MASK) + 1;
+            long next = phase == State.HALF_OPEN || failures >= failureThreshold
+                    ? pack(now(), State.OPEN, 0)
+                    : pack(openedAt(current), State.CLOSED, failures);
+            if (state.compareAndSet(current, next)) return;
+        }
+    }
+
+    /**
+     * For a call that ended without saying whether the gateway works, e.g. because the caller was interrupted. If the
+     * breaker is half open the probe slot is handed back, so the next call becomes the probe instead of the breaker
+     * waiting forever for an answer that will not come. A straggler released at the wrong moment lets at most one
+     * extra probe through.
+     */
+    public void release() {
+        while (true) {
+            long current = state.get();
+            if (stateOf(current) != State.HALF_OPEN) return;
+            // back to open with the old opening time, which has already passed, so the next tryAcquire probes again.
+            if (state.compareAndSet(current, pack(openedAt(current), State.OPEN, 0))) return;
+        }
+    }
+
+    public State getState() {
+        return stateOf(state.get());
+    }
+
+    private long now() {
+        return Math.max(0, clock.millis() - epoch);
+    }
+
+    private static long pack(long openedAt, State phase, long failures) {
+        return openedAt << TIME_SHIFT | (long) phase.ordinal() << COUNT_BITS | failures;
+    }
+
+    private static State stateOf(long packed) {
+        return states[(int) (packed >>> COUNT_BITS) & ((1 << STATE_BITS) - 1)];
+    }
+
+    private static long openedAt(long packed) {
+        return packed >>> TIME_SHIFT;
+    }
+}
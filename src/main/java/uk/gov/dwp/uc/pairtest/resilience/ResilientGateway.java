@@ -0,0 +1,138 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import uk.gov.dwp.uc.pairtest.exception.GatewayUnavailableException;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Guards every call to one gateway with a bulkhead, a deadline and a circuit breaker, so that a slow or failing
+ * gateway costs the caller at most the deadline and soon costs nothing at all.
+ *
+ * The bulkhead is a count of calls in progress; once maxConcurrent are in progress, further calls are refused
+ * rather than queued. Each call runs on its own virtual thread while the caller waits up to the deadline; a call
+ * that overruns is interrupted and counted as a failure, but keeps its bulkhead place until it actually returns, so
+ * calls hung in the gateway can never add up to more than maxConcurrent threads. Only errors from the gateway
+ * itself count against the breaker; an InvalidPurchaseException such as SEATS_UNAVAILABLE is the gateway answering.
+ *
+ * A call given up on may still complete in the gateway afterwards. The GatewayUnavailableException thrown for it
+ * carries the call, so the caller can find out how it ended; the PurchaseCoordinator uses that to refund a payment
+ * that went through after its purchase was given up on.
+ */
+public class ResilientGateway {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final long deadlineNanos;
+    private final CircuitBreaker breaker;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    public ResilientGateway(String name, int maxConcurrent, Duration deadline, CircuitBreaker breaker) {
+        if (maxConcurrent < 1) throw new IllegalArgumentException("maxConcurrent must be at least 1");
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.deadlineNanos = deadline.toNanos();
+        this.breaker = breaker;
+    }
+
+    /**
+     * Makes the call, or throws GatewayUnavailableException if it was refused or overran the deadline. Anything the
+     * call itself throws is rethrown as it is.
+     */
+    public void call(Runnable call) {
+        // bulkhead first, so a half open probe is never let through only to be refused by the bulkhead.
+        if (!enter()) {
+            rejected.increment();
+            throw new GatewayUnavailableException(name, GatewayUnavailableException.Reason.BULKHEAD_FULL);
+        }
+        if (!breaker.tryAcquire()) {
+            inFlight.decrementAndGet();
+            rejected.increment();
+            throw new GatewayUnavailableException(name, GatewayUnavailableException.Reason.CIRCUIT_OPEN);
+        }
+
+        CompletableFuture<Void> done = new CompletableFuture<Void>();
+        Thread worker = Thread.startVirtualThread(() -> {
+            Throwable failure = null;
+            try {
+                call.run();
+            } catch (Throwable t) {
+                failure = t;
+            }
+            // give the place back first, whoever is waiting on a late call may need the gateway again.
+            inFlight.decrementAndGet();
+            if (failure == null) done.complete(null);
+            else done.completeExceptionally(failure);
+        });
+
+        try {
+            done.get(deadlineNanos, TimeUnit.NANOSECONDS);
+            breaker.onSuccess();
+        } catch (TimeoutException e) {
+            worker.interrupt();
+            timedOut.increment();
+            breaker.onFailure();
+            throw new GatewayUnavailableException(name, GatewayUnavailableException.Reason.DEADLINE_EXCEEDED,
+                    done.minimalCompletionStage());
+        } catch (ExecutionException e) {
+            // a sold out screening is an answer, not an outage.
+            if (e.getCause() instanceof InvalidPurchaseException) breaker.onSuccess();
+            else breaker.onFailure();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            // the caller gave up, which says nothing about the gateway.
+            worker.interrupt();
+            breaker.release();
+            Thread.currentThread().interrupt();
+            throw new GatewayUnavailableException(name, GatewayUnavailableException.Reason.DEADLINE_EXCEEDED,
+                    done.minimalCompletionStage());
+        }
+    }
+
+    private boolean enter() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= maxConcurrent) return false;
+            if (inFlight.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    /**
+     * Calls in progress, including ones given up on that the gateway has not returned from yet.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Calls refused by the bulkhead or the open breaker.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Calls that overran the deadline.
+     */
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+}
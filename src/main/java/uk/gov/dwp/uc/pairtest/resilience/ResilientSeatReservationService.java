@@ -0,0 +1,23 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import thirdparty.seatbooking.SeatReservationService;
+
+/**
+ * Seat booking system behind a bulkhead, deadline and circuit breaker of its own, so a payment outage does not use
+ * up its capacity and the other way round.
+ */
+public class ResilientSeatReservationService implements SeatReservationService {
+
+    private final SeatReservationService seatReservationService;
+    private final ResilientGateway gateway;
+
+    public ResilientSeatReservationService(SeatReservationService seatReservationService, ResilientGateway gateway) {
+        this.seatReservationService = seatReservationService;
+        this.gateway = gateway;
+    }
+
+    @Override
+    public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+        gateway.call(() -> seatReservationService.reserveSeat(accountId, totalSeatsToAllocate));
+    }
+}
@@ -0,0 +1,32 @@
+package uk.gov.dwp.uc.pairtest.resilience;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+
+/**
+ * Payment gateway behind a bulkhead, deadline and circuit breaker. Refunds have their own, so that a run of failing
+ * payments cannot open the breaker on the refunds compensating for them, nor payments fill the bulkhead they need.
+ */
+public class ResilientTicketPaymentService implements TicketPaymentService {
+
+    private final TicketPaymentService ticketPaymentService;
+    private final ResilientGateway payments;
+    private final ResilientGateway refunds;
+
+    public ResilientTicketPaymentService(TicketPaymentService ticketPaymentService, ResilientGateway payments,
+            ResilientGateway refunds) {
+        if (payments == refunds) throw new IllegalArgumentException("refunds need their own gateway");
+        this.ticketPaymentService = ticketPaymentService;
+        this.payments = payments;
+        this.refunds = refunds;
+    }
+
+    @Override
+    public void makePayment(long accountId, int totalAmountToPay) {
+        payments.call(() -> ticketPaymentService.makePayment(accountId, totalAmountToPay));
+    }
+
+    @Override
+    public void refund(long accountId, int totalAmountToRefund) {
+        refunds.call(() -> ticketPaymentService.refund(accountId, totalAmountToRefund));
+    }
+}
@@ -0,0 +1,250 @@
+package uk.gov.dwp.uc.pairtest.saga;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.exception.GatewayUnavailableException;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.inventory.SeatInventory;
+
+/**
+ * Runs the gateway side of a purchase as a saga so that a customer is never left paying for seats they did not get:
+ * <ol>
+ * <li>hold the seats in the local {@link SeatInventory}, which is cheap and can be undone</li>
+ * <li>take payment, releasing the hold if it fails</li>
+ * <li>confirm the seats with the booking system, refunding the payment and releasing the hold if it fails</li>
+ * </ol>
+ * Every step is written to the {@link SagaJournal} before moving on, so {@link #recover()} only needs to replay the
+ * journal to find and compensate purchases interrupted by a crash. A refund the gateway refuses is journalled as
+ * REFUND_FAILED and tried again by {@link #retryRefunds()}, every period once {@link #start} has been called, and by
+ * the next recover().
+ *
+ * A payment given up on after its deadline may still go through in the gateway. Its hold is released at once and the
+ * saga journalled as PAYMENT_UNKNOWN until the gateway returns from the call: refunded if it went through, RELEASED
+ * if it failed.
+ *
+ * One coordinator, inventory and journal per screening.
+ */
+public class PurchaseCoordinator implements AutoCloseable {
+
+    private final SeatInventory inventory;
+    private final TicketPaymentService ticketPaymentService;
+    private final SeatReservationService seatReservationService;
+    private final SagaJournal journal;
+    private final AtomicLong sagaIds = new AtomicLong();
+    // REFUND_FAILED sagas by id, waiting for retryRefunds().
+    private final Map<Long, SagaJournal.Entry> failedRefunds = new ConcurrentHashMap<Long, SagaJournal.Entry>();
+    private final LongAdder retryFailures = new LongAdder();
+    private volatile RuntimeException lastRetryFailure;
+    private ScheduledExecutorService retrier;
+
+    public PurchaseCoordinator(SeatInventory inventory, TicketPaymentService ticketPaymentService,
+            SeatReservationService seatReservationService, SagaJournal journal) {
+        this.inventory = inventory;
+        this.ticketPaymentService = ticketPaymentService;
+        this.seatReservationService = seatReservationService;
+        this.journal = journal;
+    }
+
+    /**
+     * Holds, pays for and confirms the seats. Throws InvalidPurchaseException if the screening is full, or the gateway
+     * exception once the earlier steps have been compensated.
+     */
+    public void purchase(long accountId, int seats, int price) {
+        long sagaId = sagaIds.incrementAndGet();
+
+        if (!inventory.tryReserve(seats)) {
+            journal.append(sagaId, accountId, seats, price, SagaState.REJECTED);
+            throw new InvalidPurchaseException(InvalidPurchaseException.Reason.SEATS_UNAVAILABLE);
+        }
+        try {
+            journal.append(sagaId, accountId, seats, price, SagaState.HELD);
+        } catch (RuntimeException e) {
+            // nothing journalled, so nothing for recover() to undo; only the hold needs giving back.
+            inventory.release(seats);
+            throw e;
+        }
+
+        try {
+            ticketPaymentService.makePayment(accountId, price);
+        } catch (GatewayUnavailableException e) {
+            inventory.release(seats);
+            if (e.getPending() == null) {
+                journal.append(sagaId, accountId, seats, price, SagaState.RELEASED);
+            } else {
+                journal.append(sagaId, accountId, seats, price, SagaState.PAYMENT_UNKNOWN);
+                e.getPending().whenComplete((paid, failure) -> reconcile(sagaId, accountId, seats, price, failure == null));
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            inventory.release(seats);
+            journal.append(sagaId, accountId, seats, price, SagaState.RELEASED);
+            throw e;
+        }
+        try {
+            // the journal must say PAID before we go on, or a crash would release the seats without a refund.
+            journal.append(sagaId, accountId, seats, price, SagaState.PAID);
+            seatReservationService.reserveSeat(accountId, seats);
+        } catch (RuntimeException e) {
+            try {
+                refund(sagaId, accountId, seats, price);
+            } catch (RuntimeException compensation) {
+                e.addSuppressed(compensation);
+            }
+            throw e;
+        }
+        journal.append(sagaId, accountId, seats, price, SagaState.CONFIRMED);
+    }
+
+    private void refund(long sagaId, long accountId, int seats, int price) {
+        try {
+            refundPayment(sagaId, accountId, seats, price);
+        } finally {
+            inventory.release(seats);
+        }
+    }
+
+    /**
+     * Settles a PAYMENT_UNKNOWN saga once the gateway has returned from the payment, on the thread that made it.
+     */
+    private void reconcile(long sagaId, long accountId, int seats, int price, boolean paid) {
+        if (paid) refundPayment(sagaId, accountId, seats, price);
+        else journal.append(sagaId, accountId, seats, price, SagaState.RELEASED);
+    }
+
+    /**
+     * Refunds and journals the outcome, REFUNDED or REFUND_FAILED. Returns false if the gateway refused the refund.
+     */
+    private boolean refundPayment(long sagaId, long accountId, int seats, int price) {
+        try {
+            ticketPaymentService.refund(accountId, price);
+        } catch (RuntimeException e) {
+            // tracked before journalling, so a journal failure still leaves the refund to be retried.
+            failedRefunds.put(sagaId, new SagaJournal.Entry(sagaId, accountId, seats, price, SagaState.REFUND_FAILED));
+            journal.append(sagaId, accountId, seats, price, SagaState.REFUND_FAILED);
+            return false;
+        }
+        journal.append(sagaId, accountId, seats, price, SagaState.REFUNDED);
+        return true;
+    }
+
+    /**
+     * Tries every refund the gateway has refused since startup again. Returns the number that went through; the rest
+     * stay REFUND_FAILED for the next try.
+     */
+    public int retryRefunds() {
+        int refunded = 0;
+        for (Long sagaId : failedRefunds.keySet()) {
+            // claimed first, so a refund is never made twice by overlapping retries.
+            SagaJournal.Entry entry = failedRefunds.remove(sagaId);
+            if (entry == null) continue;
+            if (refundPayment(sagaId, entry.getAccountId(), entry.getSeats(), entry.getPrice())) refunded++;
+        }
+        return refunded;
+    }
+
+    /**
+     * Calls {@link #retryRefunds()} every periodMillis on a daemon thread until closed.
+     */
+    public synchronized void start(long periodMillis) {
+        if (periodMillis < 1) throw new IllegalArgumentException("periodMillis must be at least 1");
+        if (retrier != null) return;
+        retrier = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "refund-retrier");
+            thread.setDaemon(true);
+            return thread;
+        });
+        retrier.scheduleWithFixedDelay(() -> {
+            try {
+                retryRefunds();
+            } catch (RuntimeException e) {
+                // a failure must not stop the retrier, which would leave every later failed refund to the restart.
+                retryFailures.increment();
+                lastRetryFailure = e;
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Replays the journal on startup, before taking new purchases. The inventory must be freshly opened at full
+     * capacity: seats of confirmed purchases are taken out of it again, paid but unconfirmed purchases and failed
+     * refunds are refunded, and holds that never got as far as payment are marked released. The journal is then
+     * compacted so the next replay only reads what is still open. Returns the number of sagas compensated; a refund
+     * the gateway refuses again stays REFUND_FAILED for {@link #retryRefunds()}.
+     *
+     * A paid saga is refunded even if the booking system did reserve the seats before the crash; the journal has no
+     * record of that, and a refund is safer than charging for seats the customer may not have. For the same reason a
+     * payment still unknown when the process died is refunded.
+     */
+    public int recover() throws IOException {
+        int recovered = 0;
+        for (SagaJournal.Entry entry : journal.replay().values()) {
+            sagaIds.accumulateAndGet(entry.getSagaId(), Math::max);
+            switch (entry.getState()) {
+                case CHECKPOINT:
+                case CONFIRMED:
+                    if (!inventory.tryReserve(entry.getSeats())) {
+                        throw new IllegalStateException("Inventory has fewer seats than the journal has confirmed");
+                    }
+                    break;
+                case PAID:
+                case PAYMENT_UNKNOWN:
+                case REFUND_FAILED:
+                    // the hold died with the process, only the payment needs undoing.
+                    if (refundPayment(entry.getSagaId(), entry.getAccountId(), entry.getSeats(), entry.getPrice())) recovered++;
+                    break;
+                case HELD:
+                    journal.append(entry.getSagaId(), entry.getAccountId(), entry.getSeats(), entry.getPrice(), SagaState.RELEASED);
+                    recovered++;
+                    break;
+                default:
+                    break;
+            }
+        }
+        journal.compact();
+        return recovered;
+    }
+
+    /**
+     * Refunds refused by the gateway and not yet made.
+     */
+    public int getPendingRefunds() {
+        return failedRefunds.size();
+    }
+
+    /**
+     * Scheduled retries that threw, typically because the journal could not be written.
+     */
+    public long getRetryFailures() {
+        return retryFailures.sum();
+    }
+
+    /**
+     * The most recent exception from a scheduled retry, or null if none has thrown.
+     */
+    public RuntimeException getLastRetryFailure() {
+        return lastRetryFailure;
+    }
+
+    /**
+     * Stops the retrier. Refunds still pending are left for the next recover().
+     */
+    @Override
+    public synchronized void close() {
+        if (retrier == null) return;
+        retrier.shutdown();
+        try {
+            retrier.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
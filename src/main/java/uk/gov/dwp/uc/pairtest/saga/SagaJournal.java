@@ -0,0 +1,176 @@
+package uk.gov.dwp.uc.pairtest.saga;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Append-only file of saga steps. Every record is a fixed 32 bytes:
+ * saga id (long), account id (long), seats (int), price (int), state ordinal (int), padding.
+ *
+ * Because records are only ever appended, recovery reads the file once front to back and keeps the last state of
+ * each saga; anything not in a terminal state was interrupted. {@link #compact()} keeps that read short by folding
+ * every finished saga into a single checkpoint record.
+ */
+public class SagaJournal implements AutoCloseable {
+
+    static final int recordSize = 32;
+
+    /** Key of the checkpoint in {@link #replay()}; saga ids start at 1. */
+    public static final long checkpointKey = 0;
+
+    private final Path file;
+    private final boolean sync;
+    // appends share the lock, compact() takes it alone while it swaps the file underneath them.
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+
+    /**
+     * @param sync fsync after every record. Without it records survive a process crash but not a power failure.
+     */
+    public SagaJournal(Path file, boolean sync) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.sync = sync;
+    }
+
+    public void append(long sagaId, long accountId, int seats, int price, SagaState state) {
+        ByteBuffer record = record(sagaId, accountId, seats, price, state);
+        lock.readLock().lock();
+        try {
+            while (record.hasRemaining()) channel.write(record);
+            if (sync) channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write saga journal", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Last journalled step of every saga, in the order the sagas started. A torn record at the end of the file,
+     * left by a crash mid-write, is ignored. A compacted journal also has a {@link SagaState#CHECKPOINT} entry under
+     * {@link #checkpointKey}.
+     */
+    public Map<Long, Entry> replay() throws IOException {
+        Map<Long, Entry> sagas = new LinkedHashMap<Long, Entry>();
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        try (FileChannel reader = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = 0;
+            long size = reader.size();
+            while (position + recordSize <= size) {
+                record.clear();
+                while (record.hasRemaining()) {
+                    if (reader.read(record, position + record.position()) < 0) return sagas;
+                }
+                record.flip();
+                Entry entry = new Entry(record.getLong(), record.getLong(), record.getInt(), record.getInt(),
+                        SagaState.values()[record.getInt()]);
+                sagas.put(entry.getState() == SagaState.CHECKPOINT ? checkpointKey : entry.getSagaId(), entry);
+                position += recordSize;
+            }
+        }
+        return sagas;
+    }
+
+    /**
+     * Rewrites the journal as one checkpoint followed by the last step of every saga still in progress, so replay
+     * time follows the number of open sagas rather than every saga ever run. The new file is written beside the old
+     * one and moved over it, so a crash part way through leaves one or the other intact. Appends wait while it runs.
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            long lastSagaId = 0;
+            int confirmedSeats = 0;
+            Map<Long, Entry> open = new LinkedHashMap<Long, Entry>();
+            for (Entry entry : replay().values()) {
+                lastSagaId = Math.max(lastSagaId, entry.getSagaId());
+                if (entry.getState() == SagaState.CHECKPOINT || entry.getState() == SagaState.CONFIRMED) confirmedSeats += entry.getSeats();
+                else if (!entry.getState().isTerminal()) open.put(entry.getSagaId(), entry);
+            }
+
+            Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+            try (FileChannel writer = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                write(writer, record(lastSagaId, 0, confirmedSeats, 0, SagaState.CHECKPOINT));
+                for (Entry entry : open.values()) {
+                    write(writer, record(entry.getSagaId(), entry.getAccountId(), entry.getSeats(), entry.getPrice(), entry.getState()));
+                }
+                writer.force(false);
+            }
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            FileChannel old = channel;
+            channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            old.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static ByteBuffer record(long sagaId, long accountId, int seats, int price, SagaState state) {
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        record.putLong(sagaId).putLong(accountId).putInt(seats).putInt(price).putInt(state.ordinal()).rewind();
+        return record;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer record) throws IOException {
+        while (record.hasRemaining()) channel.write(record);
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public static final class Entry {
+        private final long sagaId;
+        private final long accountId;
+        private final int seats;
+        private final int price;
+        private final SagaState state;
+
+        Entry(long sagaId, long accountId, int seats, int price, SagaState state) {
+            this.sagaId = sagaId;
+            this.accountId = accountId;
+            this.seats = seats;
+            this.price = price;
+            this.state = state;
+        }
+
+        public long getSagaId() {
+            return sagaId;
+        }
+
+        public long getAccountId() {
+            return accountId;
+        }
+
+        public int getSeats() {
+            return seats;
+        }
+
+        public int getPrice() {
+            return price;
+        }
+
+        public SagaState getState() {
+            return state;
+        }
+    }
+}
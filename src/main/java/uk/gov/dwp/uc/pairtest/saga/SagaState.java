@@ -0,0 +1,44 @@
+package uk.gov.dwp.uc.pairtest.saga;
+
+/**
+ * Steps of a purchase saga as written to the {@link SagaJournal}.
+ */
+public enum SagaState {
+    /** Seats held locally, nothing charged yet. */
+    HELD(false),
+    /** Payment taken, seats still only held. */
+    PAID(false),
+    /** Seats reserved with the booking system, the purchase is complete. */
+    CONFIRMED(true),
+    /** Hold given back, nothing was charged. */
+    RELEASED(true),
+    /** Payment refunded and hold given back. */
+    REFUNDED(true),
+    /** Could not even place the hold. */
+    REJECTED(true),
+    /**
+     * Payment taken and hold given back, but the refund failed; retried by {@link PurchaseCoordinator#retryRefunds()}
+     * and {@link PurchaseCoordinator#recover()}.
+     */
+    REFUND_FAILED(false),
+    /**
+     * Written first by {@link SagaJournal#compact()} in place of the terminal sagas it drops: the saga id is the
+     * highest one compacted and the seats are those still taken by its confirmed sagas.
+     */
+    CHECKPOINT(true),
+    /**
+     * Payment given up on after its deadline and hold given back; the gateway may still have taken it. Refunded if
+     * the call turns out to have gone through, released if it failed, refunded by recover() if the process died first.
+     */
+    PAYMENT_UNKNOWN(false);
+
+    private final boolean terminal;
+
+    SagaState(boolean terminal) {
+        this.terminal = terminal;
+    }
+
+    public boolean isTerminal() {
+        return terminal;
+    }
+}
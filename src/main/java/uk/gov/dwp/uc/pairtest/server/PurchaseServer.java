@@ -0,0 +1,331 @@
+package uk.gov.dwp.uc.pairtest.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.exception.MalformedMessageException;
+import uk.gov.dwp.uc.pairtest.wire.Wire;
+import uk.gov.dwp.uc.pairtest.wire.WirePurchaseHandler;
+
+/**
+ * Non-blocking TCP front end taking binary purchase requests (see {@link Wire}) and answering each with a binary
+ * result, in the order the requests arrived on the connection.
+ *
+ * Each connection belongs to one of a fixed number of event loops, a selector and thread apiece, which do all of its
+ * reading and writing. The gateway calls are made off the loop: once a read completes one or more requests, the
+ * connection's buffers are handed to a virtual thread that answers every whole request there is room for and hands
+ * them back. A connection has at most one such thread at a time, so its requests are answered in order, while a slow
+ * gateway call holds up only the connection that made it, not the others on its loop. Clients may pipeline as many
+ * requests as they like; nothing is allocated per request, only a thread per batch of requests read together.
+ *
+ * Backpressure comes from the connection's own buffers. A connection is not read from while its requests are being
+ * answered, or while its results are not being read and there is no room for another, so the kernel's socket buffers
+ * fill and TCP holds the sender back; no connection can make the server buffer without limit. A message that cannot
+ * be decoded, or is larger than the connection's buffer, closes the connection.
+ */
+public class PurchaseServer implements AutoCloseable {
+
+    private static final int bufferBytes = 16 * 1024;
+
+    private final ServerSocketChannel server;
+    private final EventLoop[] loops;
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+    private final LongAdder pauses = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * Binds and starts serving straight away.
+     *
+     * @param address port 0 picks a free port, see {@link #getAddress()}
+     * @param loops   event loop threads, e.g. one per core
+     */
+    public PurchaseServer(TicketServiceImpl ticketService, InetSocketAddress address, int loops) throws IOException {
+        if (loops < 1) throw new IllegalArgumentException("loops must be at least 1");
+        this.server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        this.loops = new EventLoop[loops];
+        for (int i = 0; i < loops; i++) this.loops[i] = new EventLoop(i, new WirePurchaseHandler(ticketService));
+        server.register(this.loops[0].selector, SelectionKey.OP_ACCEPT);
+        for (EventLoop loop : this.loops) loop.thread.start();
+    }
+
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    public int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * Requests answered, including rejections and gateway failures.
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Connections closed because a message could not be decoded.
+     */
+    public long getMalformed() {
+        return malformed.sum();
+    }
+
+    /**
+     * Times a connection stopped being read from because its client was not reading results.
+     */
+    public long getPauses() {
+        return pauses.sum();
+    }
+
+    /**
+     * Stops accepting, closes every connection and waits for the loops to finish, and up to 10 seconds for gateway
+     * calls in progress.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        for (EventLoop loop : loops) loop.selector.wakeup();
+        for (EventLoop loop : loops) {
+            try {
+                loop.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        server.close();
+        workers.shutdown();
+        try {
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocateDirect(bufferBytes);
+        final ByteBuffer out = ByteBuffer.allocateDirect(bufferBytes);
+        SelectionKey key;
+        boolean paused;
+        // the buffers belong to a worker answering requests; the loop leaves them alone until it hands them back.
+        boolean busy;
+        // set by the worker, read by the loop once the connection is handed back.
+        boolean failed;
+        Runnable answer;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+        final Selector selector;
+        final Thread thread;
+        final WirePurchaseHandler handler;
+        final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<SocketChannel>();
+        final Queue<Connection> answered = new ConcurrentLinkedQueue<Connection>();
+
+        EventLoop(int index, WirePurchaseHandler handler) throws IOException {
+            this.selector = Selector.open();
+            this.handler = handler;
+            this.thread = new Thread(this, "purchase-server-" + index);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    selector.select();
+                    for (SocketChannel channel; (channel = accepted.poll()) != null; ) register(channel);
+                    for (Connection connection; (connection = answered.poll()) != null; ) handedBack(connection);
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isWritable()) {
+                            flush(connection);
+                            if (key.isValid()) dispatch(connection);
+                        }
+                        if (key.isValid() && key.isReadable()) read(connection);
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException e) {
+                // the selector itself failed, nothing on this loop can be served any more.
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection) close((Connection) key.attachment());
+                }
+                // handed over by the accepting loop but never registered here.
+                for (SocketChannel channel; (channel = accepted.poll()) != null; ) closeQuietly(channel);
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // closing anyway.
+                }
+            }
+        }
+
+        // new connections are spread over the loops in turn, the only time anything crosses between them.
+        private void accept() throws IOException {
+            for (SocketChannel channel; (channel = server.accept()) != null; ) {
+                EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+                if (loop == this) {
+                    register(channel);
+                } else {
+                    loop.accepted.add(channel);
+                    loop.selector.wakeup();
+                }
+            }
+        }
+
+        private void register(SocketChannel channel) {
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Connection connection = new Connection(channel);
+                connection.answer = () -> answer(connection);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connections.incrementAndGet();
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        }
+
+        private void read(Connection connection) {
+            try {
+                if (connection.channel.read(connection.in) < 0) {
+                    close(connection);
+                    return;
+                }
+            } catch (IOException e) {
+                close(connection);
+                return;
+            }
+            if (!connection.in.hasRemaining() && !hasWholeRequest(connection.in)) {
+                // the buffer always starts at a request, so one that fills it and is still not whole is too large.
+                malformed.increment();
+                close(connection);
+                return;
+            }
+            dispatch(connection);
+        }
+
+        // hands the buffers to a worker if there is a whole request waiting and room to answer it.
+        private void dispatch(Connection connection) {
+            if (connection.busy || connection.paused || !connection.channel.isOpen()) return;
+            if (!hasWholeRequest(connection.in)) return;
+            connection.busy = true;
+            connection.key.interestOps(0);
+            try {
+                workers.execute(connection.answer);
+            } catch (RejectedExecutionException e) {
+                // closing.
+                close(connection);
+            }
+        }
+
+        // on the worker: answers every whole request there is room to answer, then hands the connection back.
+        private void answer(Connection connection) {
+            ByteBuffer in = connection.in;
+            ByteBuffer out = connection.out;
+            in.flip();
+            try {
+                while (in.hasRemaining()) {
+                    int length = Wire.frameLength(in, in.position());
+                    if (length < 0 || in.remaining() < length) break;
+                    if (out.remaining() < WirePurchaseHandler.maxResultLength) break;
+                    int limit = in.limit();
+                    in.limit(in.position() + length);
+                    handler.handle(in, out);
+                    in.limit(limit);
+                    requests.increment();
+                }
+            } catch (MalformedMessageException e) {
+                connection.failed = true;
+            } finally {
+                in.compact();
+                answered.add(connection);
+                selector.wakeup();
+            }
+        }
+
+        // back on the loop: sends what was answered, and carries on with any requests left waiting for room.
+        private void handedBack(Connection connection) {
+            connection.busy = false;
+            if (!connection.channel.isOpen()) return;
+            if (connection.failed) {
+                malformed.increment();
+                close(connection);
+                return;
+            }
+            flush(connection);
+            dispatch(connection);
+        }
+
+        // whether the buffer, in write mode, starts with a whole request.
+        private boolean hasWholeRequest(ByteBuffer in) {
+            int held = in.position();
+            in.limit(held);
+            int length = Wire.frameLength(in, 0);
+            in.limit(in.capacity());
+            return length > 0 && length <= held;
+        }
+
+        private void flush(Connection connection) {
+            ByteBuffer out = connection.out;
+            out.flip();
+            try {
+                connection.channel.write(out);
+            } catch (IOException e) {
+                close(connection);
+                return;
+            } finally {
+                out.compact();
+            }
+            boolean full = out.remaining() < WirePurchaseHandler.maxResultLength;
+            if (full && !connection.paused) pauses.increment();
+            connection.paused = full;
+            connection.key.interestOps((full ? 0 : SelectionKey.OP_READ) | (out.position() > 0 ? SelectionKey.OP_WRITE : 0));
+        }
+
+        private void close(Connection connection) {
+            if (!connection.channel.isOpen()) return;
+            connections.decrementAndGet();
+            connection.key.cancel();
+            closeQuietly(connection.channel);
+        }
+
+        private void closeQuietly(SocketChannel channel) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing more to send on it either way.
+            }
+        }
+    }
+}
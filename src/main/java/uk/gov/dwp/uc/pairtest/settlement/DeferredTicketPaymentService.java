@@ -0,0 +1,276 @@
+package uk.gov.dwp.uc.pairtest.settlement;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+
+/**
+ * Deferred settlement: payments are not taken when the purchase is made but added to the account's total in
+ * {@link PendingPayments}, and every account is charged its total in one gateway call when the window closes. A window
+ * closes after maxAuthorisations payments or windowMillis, whichever comes first. A refund within the window is taken
+ * off the account's total instead of going to the gateway, so an order paid for and compensated in the same window
+ * costs no gateway calls at all.
+ *
+ * Totals are recorded before the purchase goes on and taken off only once the gateway has charged them, so nothing
+ * authorised is lost if the process dies; what is pending is settled in the first window after the restart. The one
+ * gap is the process dying after the gateway has charged an account but before its total is taken off, which charges
+ * that window again after the restart. An account the pending table has no room for is charged straight away.
+ *
+ * A settlement the gateway fails stays pending and is retried in the next window, up to maxAttempts windows in a
+ * row. After that the account is dead-lettered: its total stays pending, so it is not lost, but it is left out of
+ * settlement until {@link #retryDeadLetter} puts it back. Dead letters are kept in memory only, so after a restart
+ * such an account is tried maxAttempts times again.
+ */
+public class DeferredTicketPaymentService implements TicketPaymentService, AutoCloseable {
+
+    private final TicketPaymentService ticketPaymentService;
+    private final PendingPayments pending;
+    private final int maxAuthorisations;
+    private final int maxAttempts;
+    private final ScheduledExecutorService flusher;
+    private final AtomicInteger inWindow = new AtomicInteger();
+    private final LongAdder authorisations = new LongAdder();
+    private final LongAdder gatewayCalls = new LongAdder();
+    private final LongAdder passedThrough = new LongAdder();
+    private final LongAdder failedSettlements = new LongAdder();
+    private final LongAdder windows = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private volatile RuntimeException lastFlushFailure;
+    // failed settlements in a row by account, and the accounts given up on; only touched while settling.
+    private final Map<Long, Integer> attempts = new HashMap<Long, Integer>();
+    private final Set<Long> deadLetters = new LinkedHashSet<Long>();
+
+    /**
+     * Dead-letters an account after 5 failed settlements in a row.
+     */
+    public DeferredTicketPaymentService(TicketPaymentService ticketPaymentService, PendingPayments pending,
+            int maxAuthorisations, long windowMillis) {
+        this(ticketPaymentService, pending, maxAuthorisations, windowMillis, 5);
+    }
+
+    /**
+     * With a windowMillis of 0 there is no flusher thread, and the payment that fills the window settles it itself:
+     * that purchase waits for one gateway call per pending account, and any other payment arriving meanwhile for
+     * the lock on {@link #settle()}. Only use 0 where that is acceptable, e.g. when settle is called on a schedule of
+     * the caller's own and maxAuthorisations is out of reach.
+     *
+     * @param maxAuthorisations payments and refunds after which the window closes early
+     * @param windowMillis      how often the window closes, 0 to leave it to maxAuthorisations and {@link #settle()}
+     * @param maxAttempts       windows in a row an account's settlement may fail before it is dead-lettered
+     */
+    public DeferredTicketPaymentService(TicketPaymentService ticketPaymentService, PendingPayments pending,
+            int maxAuthorisations, long windowMillis, int maxAttempts) {
+        if (maxAuthorisations < 1) throw new IllegalArgumentException("maxAuthorisations must be at least 1");
+        if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts must be at least 1");
+        this.ticketPaymentService = ticketPaymentService;
+        this.pending = pending;
+        this.maxAuthorisations = maxAuthorisations;
+        this.maxAttempts = maxAttempts;
+        if (windowMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "settlement-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    @Override
+    public void makePayment(long accountId, int totalAmountToPay) {
+        if (!pending.add(accountId, totalAmountToPay)) {
+            passedThrough.increment();
+            gatewayCalls.increment();
+            ticketPaymentService.makePayment(accountId, totalAmountToPay);
+            return;
+        }
+        authorised();
+    }
+
+    @Override
+    public void refund(long accountId, int totalAmountToRefund) {
+        if (!pending.add(accountId, -(long) totalAmountToRefund)) {
+            passedThrough.increment();
+            gatewayCalls.increment();
+            ticketPaymentService.refund(accountId, totalAmountToRefund);
+            return;
+        }
+        authorised();
+    }
+
+    // closes the window once it is full, on the flusher if there is one so the purchase that filled it does not wait.
+    private void authorised() {
+        authorisations.increment();
+        if (inWindow.incrementAndGet() != maxAuthorisations) return;
+        if (flusher == null) {
+            settle();
+            return;
+        }
+        try {
+            flusher.execute(this::flush);
+        } catch (RejectedExecutionException e) {
+            // closing, which settles everything once the flusher has stopped.
+        }
+    }
+
+    private void flush() {
+        try {
+            settle();
+        } catch (RuntimeException e) {
+            // e.g. the pending table could not be forced; a failure must not stop the flusher, which would leave every
+            // later window open until close.
+            flushFailures.increment();
+            lastFlushFailure = e;
+        }
+    }
+
+    /**
+     * Closes the window: charges every account its pending total, or refunds it if its refunds came to more, in one
+     * gateway call each, then forces the pending table to disk. Dead-lettered accounts are skipped.
+     */
+    public synchronized void settle() {
+        inWindow.set(0);
+        windows.increment();
+        long[] accounts = pending.snapshot();
+        for (int i = 0; i < accounts.length; i += 2) {
+            long accountId = accounts[i];
+            long amount = accounts[i + 1];
+            if (deadLetters.contains(accountId)) continue;
+            try {
+                // a total beyond what one call can carry is taken in several.
+                while (amount != 0) {
+                    int part = (int) Math.max(-Integer.MAX_VALUE, Math.min(Integer.MAX_VALUE, amount));
+                    gatewayCalls.increment();
+                    if (part > 0) {
+                        ticketPaymentService.makePayment(accountId, part);
+                    } else {
+                        ticketPaymentService.refund(accountId, -part);
+                    }
+                    settled(accountId, part);
+                    amount -= part;
+                }
+                attempts.remove(accountId);
+            } catch (RuntimeException e) {
+                failedSettlements.increment();
+                int failed = attempts.merge(accountId, 1, Integer::sum);
+                if (failed >= maxAttempts) {
+                    attempts.remove(accountId);
+                    deadLetters.add(accountId);
+                }
+            }
+        }
+        pending.force();
+    }
+
+    // takes what the gateway has just settled off the account's total. Its slot may have gone to another account if
+    // a refund brought the total to zero meanwhile; if there is then no room to record what is now owed back, it is
+    // refunded straight away.
+    private void settled(long accountId, int part) {
+        if (pending.add(accountId, -part)) return;
+        passedThrough.increment();
+        gatewayCalls.increment();
+        if (part > 0) {
+            ticketPaymentService.refund(accountId, part);
+        } else {
+            ticketPaymentService.makePayment(accountId, -part);
+        }
+    }
+
+    public PendingPayments getPending() {
+        return pending;
+    }
+
+    /**
+     * Payments and refunds added to an account's pending total.
+     */
+    public long getAuthorisations() {
+        return authorisations.sum();
+    }
+
+    /**
+     * Every call made to the gateway, settlements and payments passed straight through.
+     */
+    public long getGatewayCalls() {
+        return gatewayCalls.sum();
+    }
+
+    /**
+     * Payments and refunds sent straight to the gateway because the pending table had no room for the account.
+     */
+    public long getPassedThrough() {
+        return passedThrough.sum();
+    }
+
+    /**
+     * Accounts whose settlement the gateway failed, left pending for the next window or dead-lettered.
+     */
+    public long getFailedSettlements() {
+        return failedSettlements.sum();
+    }
+
+    /**
+     * Accounts left out of settlement after maxAttempts failures in a row, oldest first. Their totals are still
+     * pending.
+     */
+    public synchronized long[] getDeadLetters() {
+        long[] accounts = new long[deadLetters.size()];
+        int i = 0;
+        for (long accountId : deadLetters) accounts[i++] = accountId;
+        return accounts;
+    }
+
+    /**
+     * Puts a dead-lettered account back into settlement from the next window, with its attempts counted afresh.
+     * Returns false if the account was not dead-lettered.
+     */
+    public synchronized boolean retryDeadLetter(long accountId) {
+        return deadLetters.remove(accountId);
+    }
+
+    public long getWindows() {
+        return windows.sum();
+    }
+
+    /**
+     * Windows the flusher closed that threw, e.g. forcing the pending table to disk failed. The next window still
+     * closes on time.
+     */
+    public long getFlushFailures() {
+        return flushFailures.sum();
+    }
+
+    /**
+     * The most recent exception from a window the flusher closed, or null if none has thrown.
+     */
+    public RuntimeException getLastFlushFailure() {
+        return lastFlushFailure;
+    }
+
+    /**
+     * Stops the window timer and settles everything still pending apart from dead letters. The pending table stays
+     * open.
+     */
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        settle();
+    }
+}
@@ -0,0 +1,202 @@
+package uk.gov.dwp.uc.pairtest.settlement;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Amount each account has been authorised for and not yet charged, kept in a memory-mapped file so that it survives
+ * a restart. Positive amounts are owed by the account, negative ones are owed back to it after a refund larger than
+ * what was pending.
+ *
+ * The file is an open addressing table keyed by the raw account id, sized once when it is created (16 bytes a slot,
+ * twice maxAccounts rounded up to a power of two, so two to four slots per account). Each slot is the account id then its amount, and an update is an aligned store into the
+ * mapped page, so the table survives the process dying at any point; {@link #force()} makes it survive the machine
+ * going down as well. A slot whose amount is back to zero can be taken by another account. When an account has no
+ * slot in its probe window and no zero slot either, {@link #add} refuses it rather than losing the amount.
+ *
+ * The table is split into stripes, each with its own lock held only to update one slot.
+ */
+public class PendingPayments implements AutoCloseable {
+
+    static final int magic = 0x50454E44;
+    static final int headerLength = 64;
+    static final int slotLength = 16;
+
+    private static final int maxProbes = 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer table;
+    private final ReentrantLock[] locks;
+    private final int stripeMask;
+    private final int stripeSlots;
+
+    /**
+     * Opens the table in the file, creating it for maxAccounts accounts if the file is new. An existing file keeps the
+     * size it was created with.
+     */
+    public PendingPayments(Path file, int maxAccounts) throws IOException {
+        if (maxAccounts < 1 || maxAccounts > 1 << 24) throw new IllegalArgumentException("maxAccounts must be between 1 and " + (1 << 24));
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int slots;
+        if (channel.size() == 0) {
+            slots = Math.max(maxProbes, Integer.highestOneBit(maxAccounts * 2 - 1) << 1);
+        } else {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerLength);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != magic) throw new IOException(file + " is not a pending payments table");
+            slots = header.getInt(4);
+        }
+        this.table = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerLength + (long) slots * slotLength);
+        table.order(ByteOrder.LITTLE_ENDIAN);
+        if (table.getInt(0) != magic) {
+            table.putInt(4, slots);
+            table.putInt(0, magic);
+        }
+        int stripeCount = Math.min(64, slots / maxProbes);
+        this.locks = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) locks[i] = new ReentrantLock();
+        this.stripeMask = stripeCount - 1;
+        this.stripeSlots = slots / stripeCount;
+    }
+
+    /**
+     * Adds to the account's pending amount, negative to take away.
+     *
+     * @return false, changing nothing, if the table has no room for the account
+     */
+    public boolean add(long accountId, long amount) {
+        if (accountId == 0) throw new IllegalArgumentException("accountId must not be zero");
+        long hash = mix(accountId);
+        int stripe = (int) hash & stripeMask;
+        int home = (int) (hash >>> 32);
+        ReentrantLock lock = locks[stripe];
+        lock.lock();
+        try {
+            int slot = find(stripe, accountId, home);
+            if (slot < 0) return false;
+            // the key goes first: dying between the two stores loses this amount, the other way round would charge it
+            // to the account that had the slot before.
+            table.putLong(slot, accountId);
+            table.putLong(slot + 8, table.getLong(slot + 8) + amount);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The account's pending amount, zero if it has none.
+     */
+    public long get(long accountId) {
+        long hash = mix(accountId);
+        int stripe = (int) hash & stripeMask;
+        ReentrantLock lock = locks[stripe];
+        lock.lock();
+        try {
+            int slot = find(stripe, accountId, (int) (hash >>> 32));
+            return slot < 0 || table.getLong(slot) != accountId ? 0 : table.getLong(slot + 8);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Every account with a pending amount, as pairs of account id and amount. Each stripe is read under its lock, so
+     * an amount is never half updated, but the stripes are read one after another.
+     */
+    public long[] snapshot() {
+        long[] pending = new long[32];
+        int count = 0;
+        for (int stripe = 0; stripe < locks.length; stripe++) {
+            locks[stripe].lock();
+            try {
+                for (int i = 0; i < stripeSlots; i++) {
+                    int slot = offset(stripe, i);
+                    long amount = table.getLong(slot + 8);
+                    if (amount == 0) continue;
+                    if (count + 2 > pending.length) pending = Arrays.copyOf(pending, pending.length * 2);
+                    pending[count++] = table.getLong(slot);
+                    pending[count++] = amount;
+                }
+            } finally {
+                locks[stripe].unlock();
+            }
+        }
+        return Arrays.copyOf(pending, count);
+    }
+
+    /**
+     * Accounts with a pending amount.
+     */
+    public int getAccounts() {
+        return snapshot().length / 2;
+    }
+
+    /**
+     * Sum of every pending amount.
+     */
+    public long getTotal() {
+        long[] pending = snapshot();
+        long total = 0;
+        for (int i = 1; i < pending.length; i += 2) total += pending[i];
+        return total;
+    }
+
+    /**
+     * Bytes of the table file, fixed when it was created.
+     */
+    public long getTableBytes() {
+        return table.capacity();
+    }
+
+    /**
+     * Writes the table through to disk.
+     */
+    public void force() {
+        table.force();
+    }
+
+    @Override
+    public void close() {
+        force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // position of the account's slot, else the first free one in its probe window, else -1. A free slot is one never
+    // used or one whose amount is back to zero, but the account's own slot is preferred if it is further along.
+    private int find(int stripe, long accountId, int home) {
+        int free = -1;
+        for (int probe = 0; probe < maxProbes; probe++) {
+            int slot = offset(stripe, (home + probe) & (stripeSlots - 1));
+            long key = table.getLong(slot);
+            if (key == accountId) return slot;
+            if (key == 0) return free < 0 ? slot : free;
+            if (free < 0 && table.getLong(slot + 8) == 0) free = slot;
+        }
+        return free;
+    }
+
+    private int offset(int stripe, int slot) {
+        return headerLength + (stripe * stripeSlots + slot) * slotLength;
+    }
+
+    // splits the 64 bit murmur finaliser between the stripe (low bits) and the home slot (high bits).
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+}
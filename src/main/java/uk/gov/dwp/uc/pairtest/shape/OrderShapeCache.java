@@ -0,0 +1,161 @@
+package uk.gov.dwp.uc.pairtest.shape;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import uk.gov.dwp.uc.pairtest.pricing.PriceTable;
+import uk.gov.dwp.uc.pairtest.validation.RuleSet;
+
+/**
+ * Remembers what the ticket counts of an order come to: the count rules they break, the seats and the price. Most
+ * orders are one of a handful of shapes, two adults or two adults and two children, so a repeat shape is one table
+ * read instead of validating and pricing it again. The account id is not part of the shape and is still checked for
+ * every order.
+ *
+ * Entries are only good for the rules and prices they were worked out under. Each lookup is given the rule set and
+ * prices in force, and if either is not the same object as last time the whole table is dropped, so a rule or price
+ * file reload, or a move into another price band, empties the cache without anyone having to tell it.
+ *
+ * The table is direct mapped: a shape has one slot, keyed by its counts packed into an int, and a different shape
+ * landing on the same slot replaces it. Lookups take no lock. Orders with a count outside 0 to 1023 are worked out
+ * every time.
+ */
+public class OrderShapeCache {
+
+    private static final int countBits = 10;
+    private static final int countMask = (1 << countBits) - 1;
+
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private volatile Generation generation;
+
+    /**
+     * @param capacity slots in the table, rounded up to a power of two
+     */
+    public OrderShapeCache(int capacity) {
+        if (capacity < 1 || capacity > 1 << 20) throw new IllegalArgumentException("capacity must be between 1 and 2^20");
+        int slots = Integer.highestOneBit(capacity);
+        if (slots < capacity) slots <<= 1;
+        this.mask = slots - 1;
+        this.generation = new Generation(null, null, slots);
+    }
+
+    /**
+     * What the counts come to under the given rules and prices, from the table if the shape has been seen since they
+     * came into force.
+     *
+     * @param prices prices indexed by ticket type ordinal, as given by the pricing engine; compared by identity
+     */
+    public Shape lookup(RuleSet ruleSet, int[] prices, int adults, int children, int infants) {
+        if (((adults | children | infants) & ~countMask) != 0) {
+            misses.increment();
+            return shape(-1, ruleSet, prices, adults, children, infants);
+        }
+        Generation current = generation;
+        if (current.ruleSet != ruleSet || current.prices != prices) {
+            // several threads may each start a generation at the change, the last one stays; nothing is lost but hits.
+            if (current.ruleSet != null) invalidations.increment();
+            generation = current = new Generation(ruleSet, prices, mask + 1);
+        }
+        int key = adults | children << countBits | infants << (2 * countBits);
+        int hash = key * 0x9E3779B9;
+        int slot = (hash ^ hash >>> 16) & mask;
+        Shape shape = current.slots[slot];
+        if (shape != null && shape.key == key) {
+            hits.increment();
+            return shape;
+        }
+        misses.increment();
+        // a plain store: every field of a Shape is final, so another thread sees it whole or not at all.
+        return current.slots[slot] = shape(key, ruleSet, prices, adults, children, infants);
+    }
+
+    // infants sit on an adult's lap so do not take a seat; prices are indexed by ticket type ordinal.
+    private static Shape shape(int key, RuleSet ruleSet, int[] prices, int adults, int children, int infants) {
+        return new Shape(key, ruleSet.checkCounts(adults, children, infants), adults + children,
+                PriceTable.total(prices, adults, children, infants));
+    }
+
+    /**
+     * Drops every entry. Not needed when rules or prices change, which is noticed on the next lookup.
+     */
+    public void invalidate() {
+        invalidations.increment();
+        generation = new Generation(null, null, mask + 1);
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Times the table was emptied, by a change of rules or prices or by {@link #invalidate()}.
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * Share of lookups answered from the table, 0 before the first.
+     */
+    public double getHitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /**
+     * Immutable Object
+     *
+     * What an order's ticket counts come to.
+     */
+    public static final class Shape {
+        private final int key;
+        private final long broken;
+        private final int seats;
+        private final int price;
+
+        Shape(int key, long broken, int seats, int price) {
+            this.key = key;
+            this.broken = broken;
+            this.seats = seats;
+            this.price = price;
+        }
+
+        /**
+         * The count rules broken, as returned by {@link RuleSet#checkCounts}; 0 if the counts are valid.
+         */
+        public long getBroken() {
+            return broken;
+        }
+
+        public int getSeats() {
+            return seats;
+        }
+
+        public int getPrice() {
+            return price;
+        }
+    }
+
+    private static final class Generation {
+        final RuleSet ruleSet;
+        final int[] prices;
+        final Shape[] slots;
+
+        Generation(RuleSet ruleSet, int[] prices, int slots) {
+            this.ruleSet = ruleSet;
+            this.prices = prices;
+            this.slots = new Shape[slots];
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package uk.gov.dwp.uc.pairtest.shard;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import uk.gov.dwp.uc.pairtest.metrics.LatencyHistogram;
+
+/**
+ * Runs tasks keyed by account id, each account always on the same single-threaded shard. Tasks for one account run
+ * one at a time in the order they were submitted; tasks for accounts on different shards run in parallel. Shards
+ * share nothing, so there is no lock that every task passes through.
+ *
+ * Each shard queues at most queueCapacity tasks, beyond which submissions to it are rejected with a
+ * RejectedExecutionException. The time each task waits in its queue is recorded.
+ */
+public class ShardedExecutor implements AutoCloseable {
+
+    private final Shard[] shards;
+    private final LongAdder rejected = new LongAdder();
+
+    public ShardedExecutor(int shardCount, int queueCapacity) {
+        if (shardCount < 1) throw new IllegalArgumentException("shardCount must be at least 1");
+        if (queueCapacity < 1) throw new IllegalArgumentException("queueCapacity must be at least 1");
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) shards[i] = new Shard(i, queueCapacity);
+    }
+
+    /**
+     * The shard every task for the account runs on.
+     */
+    public int shardOf(long accountId) {
+        // mix the bits first, account ids are often sequential and would otherwise stripe unevenly.
+        long mixed = accountId * 0x9E3779B97F4A7C15L;
+        return (int) (((mixed >>> 32) * shards.length) >>> 32);
+    }
+
+    /**
+     * @throws RejectedExecutionException if the account's shard has a full queue or the executor is closed
+     */
+    public void execute(long accountId, Runnable task) throws RejectedExecutionException {
+        Shard shard = shards[shardOf(accountId)];
+        long queued = System.nanoTime();
+        shard.depth.incrementAndGet();
+        try {
+            shard.executor.execute(() -> {
+                shard.depth.decrementAndGet();
+                shard.queueWait.record(System.nanoTime() - queued);
+                task.run();
+            });
+        } catch (RejectedExecutionException e) {
+            shard.depth.decrementAndGet();
+            rejected.increment();
+            throw e;
+        }
+        shard.peakDepth.accumulateAndGet(shard.depth.get(), Math::max);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Tasks waiting to start on the shard, not counting the one running.
+     */
+    public int getQueueDepth(int shard) {
+        return shards[shard].depth.get();
+    }
+
+    /**
+     * Tasks waiting to start on every shard.
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Shard shard : shards) depth += shard.depth.get();
+        return depth;
+    }
+
+    /**
+     * Deepest any shard's queue has been.
+     */
+    public int getPeakQueueDepth() {
+        int peak = 0;
+        for (Shard shard : shards) peak = Math.max(peak, shard.peakDepth.get());
+        return peak;
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Time from submission to the task starting, over every shard.
+     */
+    public LatencyHistogram.Snapshot getQueueWait() {
+        LatencyHistogram.Snapshot queueWait = shards[0].queueWait.snapshot();
+        for (int i = 1; i < shards.length; i++) queueWait = queueWait.plus(shards[i].queueWait.snapshot());
+        return queueWait;
+    }
+
+    /**
+     * Stops accepting tasks and waits for the queued ones to finish.
+     */
+    @Override
+    public void close() {
+        for (Shard shard : shards) shard.executor.shutdown();
+        boolean interrupted = false;
+        for (Shard shard : shards) {
+            while (true) {
+                try {
+                    if (shard.executor.awaitTermination(1, TimeUnit.DAYS)) break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private static final class Shard {
+        final ThreadPoolExecutor executor;
+        final AtomicInteger depth = new AtomicInteger();
+        final AtomicInteger peakDepth = new AtomicInteger();
+        // one per shard and only recorded by its thread, so shards never write to the same counters.
+        final LatencyHistogram queueWait = new LatencyHistogram(1);
+
+        Shard(int index, int queueCapacity) {
+            this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity),
+                    task -> {
+                        Thread thread = new Thread(task, "purchase-shard-" + index);
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package uk.gov.dwp.uc.pairtest.validation;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import uk.gov.dwp.uc.pairtest.config.WatchedFile;
+
+/**
+ * Holds the current {@link RuleSet} and swaps in a newly compiled one when the venue's rule file changes.
+ * Readers only do a volatile read, a reload never blocks a purchase.
+ */
+public class RuleEngine {
+
+    private final WatchedFile<RuleSet> rules;
+
+    /**
+     * Fixed rules that are never reloaded.
+     */
+    public RuleEngine(RuleSet ruleSet) {
+        this.rules = new WatchedFile<RuleSet>(ruleSet);
+    }
+
+    /**
+     * Rules compiled from a local file.
+     */
+    public RuleEngine(Path rules) throws IOException {
+        this.rules = new WatchedFile<RuleSet>(rules, RuleSet::compile);
+    }
+
+    public RuleSet getRuleSet() {
+        return rules.get();
+    }
+
+    /**
+     * Compiles the rule file and swaps it in. If the file is invalid the current rules stay in force.
+     */
+    public void reload() throws IOException {
+        rules.reload();
+    }
+
+    /**
+     * Reloads only if the rule file has been modified since it was last read.
+     */
+    public boolean reloadIfModified() throws IOException {
+        return rules.reloadIfModified();
+    }
+
+    /**
+     * Checks the rule file for changes on the given executor. A bad edit is counted in {@link #getReloadFailures()}
+     * and the previous rules kept.
+     */
+    public ScheduledFuture<?> watch(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        return rules.watch(executor, period, unit);
+    }
+
+    /**
+     * Watched reloads that failed, leaving the previous rules in force.
+     */
+    public long getReloadFailures() {
+        return rules.getReloadFailures();
+    }
+
+    /**
+     * Why the latest watched reload failed, or null if none has.
+     */
+    public Exception getLastReloadFailure() {
+        return rules.getLastReloadFailure();
+    }
+}
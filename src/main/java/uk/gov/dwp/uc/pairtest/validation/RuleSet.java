@@ -0,0 +1,391 @@
+package uk.gov.dwp.uc.pairtest.validation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+/**
+ * Immutable Object
+ *
+ * Compiled order validation rules. Every comparison is rewritten as a linear expression over the ticket counts or
+ * the account id that is non-negative when it holds, and the expressions are packed into one array of coefficients.
+ * A rule is broken when its requirement's sign bit is set and its condition's is not, so evaluating them is a loop of
+ * multiply-adds with no branch per rule. An == comparison is folded the same way: e | -e is non-negative only when e
+ * is 0.
+ *
+ * Compiling also evaluates the ticket count rules for every order with fewer than 16 of each type, and keeps the
+ * broken rules for each in a 64KB table, twice over: with the account id rule broken and with it kept. Each account
+ * id rule is reduced to the range of ids that break it. Checking a typical order is then two subtractions, whose sign
+ * bit picks the half of the table, and one table read, with no branch on the order itself: a rejected account id is
+ * too common to predict. Unusually large orders, more than one account id rule, or ids 2^62 or more from 0 either side
+ * take the slow path, a branch-free range test per account rule and the count rules evaluated one at a time.
+ *
+ * Rule lines, '#' starts a comment:
+ * <pre>
+ * TOTAL &lt;= 20 : TOO_MANY_TICKETS                                   broken unless the comparison holds
+ * when ADULT == 0 require CHILD &lt;= 0 : NOT_AT_LEAST_ONE_ADULT     only checked when the first comparison holds
+ * CHILD &lt;= 8 : "No more than 8 children per booking"               free text instead of a reason
+ * </pre>
+ * A comparison is a sum of terms, each an optional whole number multiplier and one of ADULT, CHILD, INFANT or TOTAL,
+ * then one of &lt;=, &gt;=, &lt;, &gt; or == and a whole number. ACCOUNT can only be compared on its own, with anything but ==,
+ * in a rule with no ticket counts. The text after the colon is an {@link InvalidPurchaseException.Reason} name, whose
+ * message is used, or a quoted message. Rules are checked in the order written, and the first one broken is the one
+ * reported; several rules may share a reason, and its message is then reported once.
+ */
+public final class RuleSet {
+
+    // exactly the original hardcoded checks, negative counts included: an order with no adults may have no children
+    // and no infants, each checked on its own.
+    public static final RuleSet DEFAULT = compile(Arrays.asList(
+            "TOTAL <= 20 : TOO_MANY_TICKETS",
+            "when ADULT == 0 require CHILD <= 0 : NOT_AT_LEAST_ONE_ADULT",
+            "when ADULT == 0 require INFANT <= 0 : NOT_AT_LEAST_ONE_ADULT",
+            "ADULT - INFANT >= 0 : NOT_ENOUGH_ADULTS",
+            "ACCOUNT >= 1 : INVALID_ACCOUNT_ID"));
+
+    private static final int maxRules = 64;
+    private static final long maxMultiplier = 1_000_000;
+    // adults, children, infants, account id, constant, -1 for ==; the condition then the requirement.
+    private static final int terms = 6;
+    private static final int stride = terms * 2;
+    private static final int adult = 0;
+    private static final int child = 1;
+    private static final int infant = 2;
+    private static final int account = 3;
+    private static final int constant = 4;
+    private static final int equal = 5;
+    // orders with every count below 1 << tableBits are looked up rather than evaluated.
+    private static final int tableBits = 4;
+    private static final int tableLimit = 1 << tableBits;
+    // the table index bit set when the account id keeps the first account rule.
+    private static final int accountKept = 1 << (3 * tableBits);
+    // account ids from -near up to near - 1 are checked in the table; ranges are clamped to one past them either
+    // side, which keeps the verdict and lets either be subtracted from the other without overflow.
+    private static final long near = 1L << 62;
+
+    private final long[] countCoefficients;
+    private final int[] countRules;
+    private final long[] accountBroken;
+    private final long firstAccountFrom;
+    private final long firstAccountWidth;
+    private final long firstAccountBit;
+    private final long firstAccountLow;
+    private final long firstAccountHigh;
+    private final int[] accountRules;
+    private final long[] brokenForOrder;
+    private final InvalidPurchaseException.Reason[] reasons;
+    private final String[] messages;
+
+    private RuleSet(List<long[]> compiled, InvalidPurchaseException.Reason[] reasons, String[] messages) {
+        List<Integer> counts = new ArrayList<Integer>();
+        List<Integer> accounts = new ArrayList<Integer>();
+        for (int rule = 0; rule < compiled.size(); rule++) {
+            long[] c = compiled.get(rule);
+            (c[account] != 0 || c[terms + account] != 0 ? accounts : counts).add(rule);
+        }
+        this.countRules = bits(counts);
+        this.countCoefficients = pack(compiled, counts);
+        // each account rule is broken over one range of account ids, kept as its first id and width; a rule no id
+        // can break is left out.
+        List<Integer> breakable = new ArrayList<Integer>();
+        List<long[]> ranges = new ArrayList<long[]>();
+        for (int rule : accounts) {
+            long[] range = brokenRange(compiled.get(rule));
+            if (range[0] > range[1]) continue;
+            breakable.add(rule);
+            ranges.add(range);
+        }
+        // the first, and usually only, one is kept in fields so that checking it reads no arrays.
+        this.firstAccountFrom = ranges.isEmpty() ? 0 : ranges.get(0)[0];
+        this.firstAccountWidth = ranges.isEmpty() ? 0 : ranges.get(0)[1] - ranges.get(0)[0];
+        this.firstAccountBit = ranges.isEmpty() ? 0 : 1L << breakable.get(0);
+        // and again clamped for the table, with an empty range no id falls in for no rule.
+        this.firstAccountLow = ranges.isEmpty() ? 1 : Math.min(Math.max(ranges.get(0)[0], -near), near);
+        this.firstAccountHigh = ranges.isEmpty() ? 0 : Math.min(Math.max(ranges.get(0)[1], -near - 1), near - 1);
+        int more = Math.max(0, ranges.size() - 1);
+        this.accountRules = new int[more];
+        this.accountBroken = new long[more * 2];
+        for (int i = 0; i < more; i++) {
+            accountRules[i] = breakable.get(i + 1);
+            accountBroken[i * 2] = ranges.get(i + 1)[0];
+            accountBroken[i * 2 + 1] = ranges.get(i + 1)[1] - ranges.get(i + 1)[0];
+        }
+        this.reasons = reasons;
+        this.messages = messages;
+
+        brokenForOrder = new long[accountKept * 2];
+        for (int order = 0; order < brokenForOrder.length; order++) {
+            long broken = evaluate(countCoefficients, countRules,
+                    order & (tableLimit - 1), (order >> tableBits) & (tableLimit - 1), (order >> (2 * tableBits)) & (tableLimit - 1));
+            brokenForOrder[order] = (order & accountKept) != 0 ? broken : broken | firstAccountBit;
+        }
+    }
+
+    private static int[] bits(List<Integer> rules) {
+        int[] bits = new int[rules.size()];
+        for (int i = 0; i < bits.length; i++) bits[i] = rules.get(i);
+        return bits;
+    }
+
+    private static long[] pack(List<long[]> compiled, List<Integer> rules) {
+        long[] coefficients = new long[rules.size() * stride];
+        for (int i = 0; i < rules.size(); i++) System.arraycopy(compiled.get(rules.get(i)), 0, coefficients, i * stride, stride);
+        return coefficients;
+    }
+
+    /**
+     * One bit per broken rule, bit 0 for the first rule written; 0 if the order is valid.
+     */
+    public long check(long accountId, int adults, int children, int infants) {
+        if (((adults | children | infants) & -tableLimit) == 0 && accountRules.length == 0 && accountId + near >= 0) {
+            // sign bits clear only when low <= id <= high, so the shifted bit is set when the id keeps the rule.
+            int kept = (int) (((accountId - firstAccountLow) | (firstAccountHigh - accountId)) >>> 63) << (3 * tableBits);
+            return brokenForOrder[kept | adults | children << tableBits | infants << (2 * tableBits)];
+        }
+        return checkAccount(accountId) | checkCounts(adults, children, infants);
+    }
+
+    /**
+     * The account id rules broken, the same bits as {@link #check}.
+     */
+    public long checkAccount(long accountId) {
+        long broken = firstAccountBit & inRange(accountId - firstAccountFrom, firstAccountWidth);
+        for (int rule = 0; rule < accountRules.length; rule++) {
+            broken |= 1L << accountRules[rule] & inRange(accountId - accountBroken[rule * 2], accountBroken[rule * 2 + 1]);
+        }
+        return broken;
+    }
+
+    // -1 if offset <= width unsigned, which is when width - offset does not borrow, else 0. No branch, as a rejected
+    // account id is too common to predict.
+    private static long inRange(long offset, long width) {
+        long borrow = ((~width & offset) | (~(width ^ offset) & (width - offset))) >>> 63;
+        return borrow - 1;
+    }
+
+    /**
+     * The ticket count rules broken, the same bits as {@link #check}. Depends only on the counts, so the result can be
+     * kept for the shape of the order.
+     */
+    public long checkCounts(int adults, int children, int infants) {
+        if (((adults | children | infants) & -tableLimit) == 0) {
+            return brokenForOrder[accountKept | adults | children << tableBits | infants << (2 * tableBits)];
+        }
+        return evaluate(countCoefficients, countRules, adults, children, infants);
+    }
+
+
+    // the account ids for which the rule's condition holds but its requirement does not. Empty if from > to.
+    private static long[] brokenRange(long[] c) {
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        // condition multiplier * id + constant >= 0, with a multiplier of -1, 0 or 1.
+        long m = c[account];
+        long k = c[constant];
+        if (m > 0) from = Math.max(from, -k);
+        else if (m < 0) to = Math.min(to, k);
+        else if (k < 0) return new long[] {1, 0};
+        // requirement multiplier * id + constant < 0.
+        m = c[terms + account];
+        k = c[terms + constant];
+        if (m > 0) to = Math.min(to, -k - 1);
+        else if (m < 0) from = Math.max(from, k + 1);
+        else if (k >= 0) return new long[] {1, 0};
+        return new long[] {from, to};
+    }
+
+
+    private static long evaluate(long[] c, int[] rules, int adults, int children, int infants) {
+        long broken = 0;
+        for (int rule = 0, at = 0; rule < rules.length; rule++, at += stride) {
+            long condition = c[at] * adults + c[at + 1] * children + c[at + 2] * infants + c[at + 4];
+            condition |= -condition & c[at + 5];
+            long requirement = c[at + 6] * adults + c[at + 7] * children + c[at + 8] * infants + c[at + 10];
+            requirement |= -requirement & c[at + 11];
+            broken |= ((requirement & ~condition) >>> 63) << rules[rule];
+        }
+        return broken;
+    }
+
+    /**
+     * Throws for the first broken rule, or for all of them with their messages joined if allViolations is set.
+     */
+    public void validate(long accountId, int adults, int children, int infants, boolean allViolations) throws InvalidPurchaseException {
+        long broken = check(accountId, adults, children, infants);
+        if (broken != 0) throw exception(broken, allViolations);
+    }
+
+    /**
+     * Exception for the given broken rules, carrying the reason of the first of them.
+     */
+    public InvalidPurchaseException exception(long broken, boolean allViolations) {
+        int first = Long.numberOfTrailingZeros(broken);
+        if (!allViolations || Long.bitCount(broken) == 1) {
+            return reasons[first] != null ? new InvalidPurchaseException(reasons[first]) : new InvalidPurchaseException(messages[first]);
+        }
+        return new InvalidPurchaseException(reasons[first], String.join("; ", messages(broken)));
+    }
+
+    /**
+     * Messages of the given broken rules, in the order the rules were written.
+     */
+    public List<String> messages(long broken) {
+        List<String> broke = new ArrayList<String>(Long.bitCount(broken));
+        for (long rest = broken; rest != 0; rest &= rest - 1) {
+            String message = messages[Long.numberOfTrailingZeros(rest)];
+            if (!broke.contains(message)) broke.add(message);
+        }
+        return broke;
+    }
+
+    public int size() {
+        return reasons.length;
+    }
+
+    public static RuleSet compile(List<String> lines) {
+        List<long[]> compiled = new ArrayList<long[]>();
+        List<InvalidPurchaseException.Reason> reasons = new ArrayList<InvalidPurchaseException.Reason>();
+        List<String> messages = new ArrayList<String>();
+
+        for (int n = 0; n < lines.size(); n++) {
+            String line = lines.get(n);
+            int comment = line.indexOf('#');
+            if (comment >= 0) line = line.substring(0, comment);
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            if (compiled.size() == maxRules) throw invalid(n, "no more than " + maxRules + " rules");
+
+            // a quoted message may itself contain a colon.
+            int colon = line.endsWith("\"") ? line.lastIndexOf(':', line.indexOf('"')) : line.lastIndexOf(':');
+            if (colon < 0) throw invalid(n, "expected rule : REASON");
+            String target = line.substring(colon + 1).trim();
+            String rule = line.substring(0, colon).trim();
+
+            long[] coefficients = new long[stride];
+            if (rule.startsWith("when ")) {
+                int require = rule.indexOf(" require ");
+                if (require < 0) throw invalid(n, "expected when ... require ...");
+                parseComparison(n, rule.substring(5, require), coefficients, 0);
+                parseComparison(n, rule.substring(require + 9), coefficients, terms);
+            } else {
+                parseComparison(n, rule, coefficients, terms);
+            }
+            boolean counts = false;
+            for (int t = 0; t < account; t++) counts |= coefficients[t] != 0 || coefficients[terms + t] != 0;
+            boolean accounts = coefficients[account] != 0 || coefficients[terms + account] != 0;
+            if (counts && accounts) throw invalid(n, "ACCOUNT can not be mixed with ticket counts in one rule");
+            if (accounts && (coefficients[equal] != 0 || coefficients[terms + equal] != 0)) {
+                throw invalid(n, "ACCOUNT can not be compared with ==");
+            }
+            compiled.add(coefficients);
+
+            if (target.length() >= 2 && target.startsWith("\"") && target.endsWith("\"")) {
+                reasons.add(null);
+                messages.add(target.substring(1, target.length() - 1));
+            } else {
+                InvalidPurchaseException.Reason reason = parseReason(n, target);
+                reasons.add(reason);
+                messages.add(reason.getMessage());
+            }
+        }
+
+        return new RuleSet(compiled, reasons.toArray(new InvalidPurchaseException.Reason[0]), messages.toArray(new String[0]));
+    }
+
+    // writes the comparison as coefficients of an expression that is >= 0 exactly when it holds.
+    private static void parseComparison(int line, String comparison, long[] coefficients, int at) {
+        int op = indexOfOperator(comparison);
+        if (op < 0) throw invalid(line, "expected a comparison with <=, >=, <, > or ==");
+        String operator = op + 1 < comparison.length() && comparison.charAt(op + 1) == '=' ? comparison.substring(op, op + 2) : comparison.substring(op, op + 1);
+        if (operator.equals("=")) throw invalid(line, "expected == rather than =");
+        long[] left = new long[terms];
+        parseSum(line, comparison.substring(0, op), left);
+        long bound = parseNumber(line, comparison.substring(op + operator.length()).trim());
+
+        // left >= bound -> left - bound >= 0, left > bound -> left - bound - 1 >= 0, and the mirror images.
+        // left == bound -> left - bound, folded by evaluate.
+        long sign = operator.charAt(0) == '>' ? 1 : -1;
+        long strict = operator.length() == 1 ? 1 : 0;
+        for (int t = 0; t < constant; t++) coefficients[at + t] = sign * left[t];
+        coefficients[at + constant] = sign * -bound - strict;
+        coefficients[at + equal] = operator.equals("==") ? -1 : 0;
+    }
+
+    private static int indexOfOperator(String comparison) {
+        for (int i = 0; i < comparison.length(); i++) {
+            if (comparison.charAt(i) == '<' || comparison.charAt(i) == '>' || comparison.charAt(i) == '=') return i;
+        }
+        return -1;
+    }
+
+    private static void parseSum(int line, String sum, long[] left) {
+        String expression = sum.replace(" ", "");
+        if (expression.isEmpty()) throw invalid(line, "nothing to compare");
+        int start = 0;
+        while (start < expression.length()) {
+            long sign = 1;
+            if (expression.charAt(start) == '+' || expression.charAt(start) == '-') {
+                sign = expression.charAt(start) == '-' ? -1 : 1;
+                start++;
+            } else if (start > 0) {
+                throw invalid(line, "expected + or - between terms");
+            }
+            int end = start;
+            while (end < expression.length() && expression.charAt(end) != '+' && expression.charAt(end) != '-') end++;
+            String term = expression.substring(start, end);
+            int times = term.indexOf('*');
+            long multiplier = times < 0 ? 1 : parseNumber(line, term.substring(0, times));
+            if (multiplier > maxMultiplier) throw invalid(line, "multiplier above " + maxMultiplier);
+            String variable = times < 0 ? term : term.substring(times + 1);
+            addTerm(line, variable, sign * multiplier, left);
+            start = end;
+        }
+        if (left[account] != 0 && (left[account] != 1 || left[adult] != 0 || left[child] != 0 || left[infant] != 0)) {
+            throw invalid(line, "ACCOUNT can only be compared on its own");
+        }
+    }
+
+    private static void addTerm(int line, String variable, long multiplier, long[] left) {
+        switch (variable) {
+            case "ADULT": left[adult] += multiplier; break;
+            case "CHILD": left[child] += multiplier; break;
+            case "INFANT": left[infant] += multiplier; break;
+            case "TOTAL":
+                left[adult] += multiplier;
+                left[child] += multiplier;
+                left[infant] += multiplier;
+                break;
+            case "ACCOUNT": left[account] += multiplier; break;
+            default: throw invalid(line, "unknown count " + variable);
+        }
+    }
+
+    private static long parseNumber(int line, String value) {
+        try {
+            long number = Long.parseLong(value.trim());
+            if (Math.abs(number) > Integer.MAX_VALUE) throw invalid(line, "number out of range " + value);
+            return number;
+        } catch (NumberFormatException e) {
+            throw invalid(line, "expected a whole number but found " + value);
+        }
+    }
+
+    private static InvalidPurchaseException.Reason parseReason(int line, String name) {
+        try {
+            return InvalidPurchaseException.Reason.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw invalid(line, "unknown reason " + name);
+        }
+    }
+
+    private static IllegalArgumentException invalid(int line, String message) {
+        return new IllegalArgumentException("Validation rule line " + (line + 1) + ": " + message);
+    }
+
+    @Override
+    public String toString() {
+        return "RuleSet" + Arrays.toString(messages);
+    }
+}
@@ -0,0 +1,126 @@
+package uk.gov.dwp.uc.pairtest.wire;
+
+import java.nio.ByteBuffer;
+
+import uk.gov.dwp.uc.pairtest.exception.MalformedMessageException;
+
+/**
+ * Reads or writes one purchase request in place in a buffer, heap or direct, without copying it into objects.
+ * A flyweight is reused for message after message and is not thread safe.
+ * <pre>
+ * 0   header, template 1
+ * 4   i64  account id
+ * 12  i32  adult tickets
+ * 16  i32  child tickets
+ * 20  i32  infant tickets
+ * 24  u8   idempotency key length, 0 for none, then the key
+ * </pre>
+ */
+public final class PurchaseRequestFlyweight {
+
+    public static final int template = 1;
+    public static final int blockLength = 20;
+
+    private static final int accountIdOffset = Wire.headerLength;
+    private static final int adultsOffset = accountIdOffset + 8;
+    private static final int childrenOffset = adultsOffset + 4;
+    private static final int infantsOffset = childrenOffset + 4;
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int keyOffset;
+
+    /**
+     * Checks the request starting at offset once, after which the getters read straight from the buffer.
+     *
+     * @throws MalformedMessageException if it is not a whole, well formed request
+     */
+    public PurchaseRequestFlyweight wrap(ByteBuffer buffer, int offset) throws MalformedMessageException {
+        int block = Wire.readHeader(buffer, offset, template, blockLength);
+        this.buffer = buffer;
+        this.offset = offset;
+        this.keyOffset = offset + Wire.headerLength + block;
+        return this;
+    }
+
+    /**
+     * Starts a request at offset with all counts zero and no idempotency key.
+     */
+    public PurchaseRequestFlyweight wrapForEncode(ByteBuffer buffer, int offset) {
+        Wire.writeHeader(buffer, offset, template, blockLength);
+        this.buffer = buffer;
+        this.offset = offset;
+        this.keyOffset = offset + Wire.headerLength + blockLength;
+        return accountId(0).adults(0).children(0).infants(0);
+    }
+
+    public long accountId() {
+        return Wire.getLong(buffer, offset + accountIdOffset);
+    }
+
+    public int adults() {
+        return Wire.getInt(buffer, offset + adultsOffset);
+    }
+
+    public int children() {
+        return Wire.getInt(buffer, offset + childrenOffset);
+    }
+
+    public int infants() {
+        return Wire.getInt(buffer, offset + infantsOffset);
+    }
+
+    public int keyLength() {
+        return buffer.get(keyOffset) & 0xFF;
+    }
+
+    /**
+     * The idempotency key, or null if the request has none. Allocates, unlike every other getter.
+     */
+    public String key() {
+        return Wire.readKey(buffer, keyOffset);
+    }
+
+    /**
+     * Where the key's bytes start in the buffer, for copying them without decoding.
+     */
+    public int keyBytesOffset() {
+        return keyOffset + 1;
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public int encodedLength() {
+        return keyOffset + 1 + keyLength() - offset;
+    }
+
+    public PurchaseRequestFlyweight accountId(long accountId) {
+        Wire.putLong(buffer, offset + accountIdOffset, accountId);
+        return this;
+    }
+
+    public PurchaseRequestFlyweight adults(int adults) {
+        Wire.putInt(buffer, offset + adultsOffset, adults);
+        return this;
+    }
+
+    public PurchaseRequestFlyweight children(int children) {
+        Wire.putInt(buffer, offset + childrenOffset, children);
+        return this;
+    }
+
+    public PurchaseRequestFlyweight infants(int infants) {
+        Wire.putInt(buffer, offset + infantsOffset, infants);
+        return this;
+    }
+
+    /**
+     * @param key up to 255 printable US-ASCII characters, or null for none
+     */
+    public PurchaseRequestFlyweight key(CharSequence key) {
+        Wire.writeKey(buffer, keyOffset, key);
+        return this;
+    }
+}
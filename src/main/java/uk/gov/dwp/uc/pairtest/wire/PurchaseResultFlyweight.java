@@ -0,0 +1,168 @@
+package uk.gov.dwp.uc.pairtest.wire;
+
+import java.nio.ByteBuffer;
+
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.exception.MalformedMessageException;
+
+/**
+ * Reads or writes one purchase result in place in a buffer. A flyweight is reused for message after message and is
+ * not thread safe.
+ * <pre>
+ * 0   header, template 2
+ * 4   i64  account id
+ * 12  u8   outcome: 0 purchased, 1 failed at a gateway, 2 rejected by a free text rule, 3 + n rejected for the
+ *          InvalidPurchaseException.Reason with ordinal n below 64, 67 the idempotency key was first used by another
+ *          account
+ * 13  3 bytes unused
+ * 16  i32  seats reserved
+ * 20  i32  price paid
+ * 24  u8   idempotency key length, 0 for none, then the key echoed from the request
+ * </pre>
+ * Reasons are only ever added at the end of the enum, so their codes do not change between versions.
+ */
+public final class PurchaseResultFlyweight {
+
+    public static final int template = 2;
+    public static final int blockLength = 20;
+
+    public static final int purchased = 0;
+    public static final int failed = 1;
+    public static final int rejected = 2;
+    private static final int firstReason = 3;
+    private static final int maxReasons = 64;
+    public static final int keyConflict = firstReason + maxReasons;
+    private static final InvalidPurchaseException.Reason[] reasons = InvalidPurchaseException.Reason.values();
+
+    private static final int accountIdOffset = Wire.headerLength;
+    private static final int outcomeOffset = accountIdOffset + 8;
+    private static final int seatsOffset = outcomeOffset + 4;
+    private static final int priceOffset = seatsOffset + 4;
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int keyOffset;
+
+    /**
+     * @throws MalformedMessageException if the result starting at offset is not whole and well formed
+     */
+    public PurchaseResultFlyweight wrap(ByteBuffer buffer, int offset) throws MalformedMessageException {
+        int block = Wire.readHeader(buffer, offset, template, blockLength);
+        int outcome = buffer.get(offset + outcomeOffset) & 0xFF;
+        // a later schema may know more reasons, they read as a plain rejection.
+        if (outcome > keyConflict) throw new MalformedMessageException("unknown outcome " + outcome);
+        this.buffer = buffer;
+        this.offset = offset;
+        this.keyOffset = offset + Wire.headerLength + block;
+        return this;
+    }
+
+    /**
+     * Starts a result at offset with the purchased outcome, no seats, no price and no idempotency key.
+     */
+    public PurchaseResultFlyweight wrapForEncode(ByteBuffer buffer, int offset, long accountId) {
+        Wire.writeHeader(buffer, offset, template, blockLength);
+        this.buffer = buffer;
+        this.offset = offset;
+        this.keyOffset = offset + Wire.headerLength + blockLength;
+        Wire.putLong(buffer, offset + accountIdOffset, accountId);
+        Wire.putInt(buffer, offset + outcomeOffset, 0);
+        return purchased(0, 0);
+    }
+
+    public long accountId() {
+        return Wire.getLong(buffer, offset + accountIdOffset);
+    }
+
+    public int outcome() {
+        return buffer.get(offset + outcomeOffset) & 0xFF;
+    }
+
+    public boolean isSuccess() {
+        return outcome() == purchased;
+    }
+
+    /**
+     * The rule that rejected the order, or null if it was not rejected, was rejected by a free text rule or for its
+     * idempotency key, or the reason is newer than this reader.
+     */
+    public InvalidPurchaseException.Reason reason() {
+        int code = outcome() - firstReason;
+        return code >= 0 && code < reasons.length ? reasons[code] : null;
+    }
+
+    /**
+     * True if nothing was purchased because the idempotency key was first used by another account.
+     */
+    public boolean isKeyConflict() {
+        return outcome() == keyConflict;
+    }
+
+    public int seats() {
+        return Wire.getInt(buffer, offset + seatsOffset);
+    }
+
+    public int price() {
+        return Wire.getInt(buffer, offset + priceOffset);
+    }
+
+    public int keyLength() {
+        return buffer.get(keyOffset) & 0xFF;
+    }
+
+    /**
+     * The idempotency key, or null if there is none. Allocates, unlike every other getter.
+     */
+    public String key() {
+        return Wire.readKey(buffer, keyOffset);
+    }
+
+    public int encodedLength() {
+        return keyOffset + 1 + keyLength() - offset;
+    }
+
+    public PurchaseResultFlyweight purchased(int seats, int price) {
+        buffer.put(offset + outcomeOffset, (byte) purchased);
+        Wire.putInt(buffer, offset + seatsOffset, seats);
+        Wire.putInt(buffer, offset + priceOffset, price);
+        return this;
+    }
+
+    public PurchaseResultFlyweight rejected(InvalidPurchaseException.Reason reason) {
+        buffer.put(offset + outcomeOffset, (byte) (reason == null ? rejected : firstReason + reason.ordinal()));
+        Wire.putInt(buffer, offset + seatsOffset, 0);
+        Wire.putInt(buffer, offset + priceOffset, 0);
+        return this;
+    }
+
+    public PurchaseResultFlyweight keyConflict() {
+        buffer.put(offset + outcomeOffset, (byte) keyConflict);
+        Wire.putInt(buffer, offset + seatsOffset, 0);
+        Wire.putInt(buffer, offset + priceOffset, 0);
+        return this;
+    }
+
+    public PurchaseResultFlyweight failed() {
+        buffer.put(offset + outcomeOffset, (byte) failed);
+        Wire.putInt(buffer, offset + seatsOffset, 0);
+        Wire.putInt(buffer, offset + priceOffset, 0);
+        return this;
+    }
+
+    /**
+     * @param key up to 255 printable US-ASCII characters, or null for none
+     */
+    public PurchaseResultFlyweight key(CharSequence key) {
+        Wire.writeKey(buffer, keyOffset, key);
+        return this;
+    }
+
+    /**
+     * Copies an already checked key byte for byte, e.g. from the request being answered.
+     */
+    public PurchaseResultFlyweight key(ByteBuffer source, int sourceOffset, int length) {
+        buffer.put(keyOffset, (byte) length);
+        buffer.put(keyOffset + 1, source, sourceOffset, length);
+        return this;
+    }
+}
@@ -0,0 +1,117 @@
+package uk.gov.dwp.uc.pairtest.wire;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import uk.gov.dwp.uc.pairtest.exception.MalformedMessageException;
+
+/**
+ * Layout shared by every binary purchase message, in network byte order whatever the buffer's own order:
+ * <pre>
+ * 0  u8   schema version
+ * 1  u8   template id, which message follows
+ * 2  u16  block length, bytes of fixed size fields after this header
+ * 4  ...  fixed size fields, then an optional u8 length and US-ASCII idempotency key
+ * </pre>
+ * Fields are only ever appended to a block, never moved or removed, and a reader skips any it does not know using the
+ * block length. A message from a later schema version can therefore be read by an earlier reader, and only a block
+ * shorter than the reader needs is malformed.
+ */
+public final class Wire {
+
+    public static final int schemaVersion = 1;
+    public static final int headerLength = 4;
+    public static final int maxKeyLength = 255;
+
+    private Wire() {
+    }
+
+    /**
+     * Length of the message starting at offset, judged from its header and key length alone, or -1 if fewer bytes
+     * than that have arrived. Lets a reader tell a message still arriving from a malformed one before decoding it.
+     */
+    public static int frameLength(ByteBuffer buffer, int offset) {
+        if (buffer.limit() - offset < headerLength) return -1;
+        int key = offset + headerLength + (getShort(buffer, offset + 2) & 0xFFFF);
+        if (buffer.limit() - key < 1) return -1;
+        return key + 1 + (buffer.get(key) & 0xFF) - offset;
+    }
+
+    /**
+     * Checks the header and that the whole message, key included, lies before the buffer's limit.
+     *
+     * @return the block length
+     * @throws MalformedMessageException if it does not
+     */
+    static int readHeader(ByteBuffer buffer, int offset, int template, int minBlockLength) throws MalformedMessageException {
+        if (offset < 0 || buffer.limit() - offset < headerLength) throw new MalformedMessageException("truncated header");
+        int version = buffer.get(offset) & 0xFF;
+        if (version < 1) throw new MalformedMessageException("unknown schema version " + version);
+        int found = buffer.get(offset + 1) & 0xFF;
+        if (found != template) throw new MalformedMessageException("expected template " + template + ", was " + found);
+        int blockLength = getShort(buffer, offset + 2) & 0xFFFF;
+        if (blockLength < minBlockLength) throw new MalformedMessageException("block of " + blockLength + " bytes, needs " + minBlockLength);
+        int key = offset + headerLength + blockLength;
+        if (buffer.limit() - key < 1) throw new MalformedMessageException("truncated block");
+        int keyLength = buffer.get(key) & 0xFF;
+        if (buffer.limit() - key - 1 < keyLength) throw new MalformedMessageException("truncated idempotency key");
+        for (int i = key + 1; i <= key + keyLength; i++) {
+            byte b = buffer.get(i);
+            if (b < 0x21 || b > 0x7E) throw new MalformedMessageException("idempotency key is not printable US-ASCII");
+        }
+        return blockLength;
+    }
+
+    static void writeHeader(ByteBuffer buffer, int offset, int template, int blockLength) {
+        buffer.put(offset, (byte) schemaVersion);
+        buffer.put(offset + 1, (byte) template);
+        putShort(buffer, offset + 2, (short) blockLength);
+        buffer.put(offset + headerLength + blockLength, (byte) 0);
+    }
+
+    static void writeKey(ByteBuffer buffer, int at, CharSequence key) {
+        int length = key == null ? 0 : key.length();
+        if (length > maxKeyLength) throw new IllegalArgumentException("idempotency key longer than " + maxKeyLength);
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (c < 0x21 || c > 0x7E) throw new IllegalArgumentException("idempotency key must be printable US-ASCII");
+            buffer.put(at + 1 + i, (byte) c);
+        }
+        buffer.put(at, (byte) length);
+    }
+
+    static String readKey(ByteBuffer buffer, int at) {
+        int length = buffer.get(at) & 0xFF;
+        if (length == 0) return null;
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) chars[i] = (char) buffer.get(at + 1 + i);
+        return new String(chars);
+    }
+
+    static short getShort(ByteBuffer buffer, int at) {
+        short v = buffer.getShort(at);
+        return buffer.order() == ByteOrder.BIG_ENDIAN ? v : Short.reverseBytes(v);
+    }
+
+    static int getInt(ByteBuffer buffer, int at) {
+        int v = buffer.getInt(at);
+        return buffer.order() == ByteOrder.BIG_ENDIAN ? v : Integer.reverseBytes(v);
+    }
+
+    static long getLong(ByteBuffer buffer, int at) {
+        long v = buffer.getLong(at);
+        return buffer.order() == ByteOrder.BIG_ENDIAN ? v : Long.reverseBytes(v);
+    }
+
+    static void putShort(ByteBuffer buffer, int at, short v) {
+        buffer.putShort(at, buffer.order() == ByteOrder.BIG_ENDIAN ? v : Short.reverseBytes(v));
+    }
+
+    static void putInt(ByteBuffer buffer, int at, int v) {
+        buffer.putInt(at, buffer.order() == ByteOrder.BIG_ENDIAN ? v : Integer.reverseBytes(v));
+    }
+
+    static void putLong(ByteBuffer buffer, int at, long v) {
+        buffer.putLong(at, buffer.order() == ByteOrder.BIG_ENDIAN ? v : Long.reverseBytes(v));
+    }
+}
@@ -0,0 +1,62 @@
+package uk.gov.dwp.uc.pairtest.wire;
+
+import java.nio.ByteBuffer;
+
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseResult;
+import uk.gov.dwp.uc.pairtest.exception.IdempotencyKeyConflictException;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.exception.MalformedMessageException;
+
+/**
+ * Answers binary purchase requests with binary results. The counts go from the request buffer straight into
+ * {@link TicketServiceImpl#purchaseCounts}, and a request without an idempotency key is handled without allocating.
+ * Rejections and gateway failures are answered as outcomes rather than thrown.
+ *
+ * Holds its own flyweights, so use one handler per thread or connection.
+ */
+public class WirePurchaseHandler {
+
+    public static final int maxResultLength = Wire.headerLength + PurchaseResultFlyweight.blockLength + 1 + Wire.maxKeyLength;
+
+    private final TicketServiceImpl ticketService;
+    private final PurchaseRequestFlyweight request = new PurchaseRequestFlyweight();
+    private final PurchaseResultFlyweight result = new PurchaseResultFlyweight();
+
+    public WirePurchaseHandler(TicketServiceImpl ticketService) {
+        this.ticketService = ticketService;
+    }
+
+    /**
+     * Reads one request at the input's position and writes its result at the output's position, advancing both.
+     * The output needs room for {@link #maxResultLength} bytes.
+     *
+     * @throws MalformedMessageException if the input does not hold a whole, well formed request; neither buffer is
+     *                                   advanced
+     */
+    public void handle(ByteBuffer in, ByteBuffer out) throws MalformedMessageException {
+        request.wrap(in, in.position());
+        long accountId = request.accountId();
+        result.wrapForEncode(out, out.position(), accountId);
+        try {
+            if (request.keyLength() == 0) {
+                long purchased = ticketService.purchaseCounts(accountId, request.adults(), request.children(), request.infants());
+                result.purchased((int) (purchased >>> 32), (int) purchased);
+            } else {
+                PurchaseResult purchased = ticketService.purchaseCounts(request.key(), accountId, request.adults(), request.children(),
+                        request.infants());
+                result.purchased(purchased.getNumberOfSeats(), purchased.getPrice());
+            }
+        } catch (InvalidPurchaseException e) {
+            result.rejected(e.getReason());
+        } catch (IdempotencyKeyConflictException e) {
+            result.keyConflict();
+        } catch (RuntimeException e) {
+            // the gateway's problem, not the client's; the client can retry with the same key.
+            result.failed();
+        }
+        result.key(in, request.keyBytesOffset(), request.keyLength());
+        in.position(in.position() + request.encodedLength());
+        out.position(out.position() + result.encodedLength());
+    }
+}
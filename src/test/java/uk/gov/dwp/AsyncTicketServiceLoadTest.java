@@ -0,0 +1,91 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.AsyncTicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+public class AsyncTicketServiceLoadTest {
+
+    private static final long gatewayLatency = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final LatencyTicketPaymentService tps = new LatencyTicketPaymentService(gatewayLatency);
+    private final LatencySeatReservationService srs = new LatencySeatReservationService(gatewayLatency);
+    private final TicketTypeRequest adults = new TicketTypeRequest(Type.ADULT, 2);
+
+    @Test // 5000 orders against 20ms gateways - all 2000 slots in flight at once, finishes far sooner than serial
+    public void fillsConcurrencyLimit() throws Exception {
+        //setup (Given)
+        int orders = 5000;
+        int maxInFlight = 2000;
+        List<CompletableFuture<Void>> futures = new ArrayList<>(orders);
+        long start = System.nanoTime();
+
+        //make the call (When)
+        try (AsyncTicketServiceImpl ts = new AsyncTicketServiceImpl(new TicketServiceImpl(tps, srs), maxInFlight, orders)) {
+            for (int i = 0; i < orders; i++) {
+                futures.add(ts.purchaseTickets(1 + i, adults));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+
+            //results (Then)
+            assertEquals(maxInFlight, ts.getPeakInFlight());
+            assertEquals(0, ts.getPending());
+        }
+        long elapsed = System.nanoTime() - start;
+        assertEquals(orders, tps.getPayments());
+        assertEquals(orders, srs.getReservations());
+        // serially this is 5000 * 40ms = 200s.
+        assertTrue("took " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms", elapsed < TimeUnit.SECONDS.toNanos(20));
+    }
+
+    @Test // more than in flight + queued - extra orders rejected, not run
+    public void rejectsBeyondQueue() throws Exception {
+        try (AsyncTicketServiceImpl ts = new AsyncTicketServiceImpl(new TicketServiceImpl(tps, srs), 1, 1)) {
+            CompletableFuture<Void> first = ts.purchaseTickets(1001, adults);
+            CompletableFuture<Void> second = ts.purchaseTickets(1002, adults);
+            CompletableFuture<Void> third = ts.purchaseTickets(1003, adults);
+
+            assertTrue(third.isCompletedExceptionally());
+            try {
+                third.get();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(2, tps.getPayments());
+    }
+
+    @Test // invalid order - future fails with the validation error, no gateway calls
+    public void invalidOrderCompletesExceptionally() throws Exception {
+        try (AsyncTicketServiceImpl ts = new AsyncTicketServiceImpl(new TicketServiceImpl(tps, srs), 10, 10)) {
+            CompletableFuture<Void> result = ts.purchaseTickets(0, adults);
+            try {
+                result.get(5, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof InvalidPurchaseException);
+                assertEquals(InvalidPurchaseException.invalidAccountId, e.getCause().getMessage());
+            }
+            assertTrue(result.isCompletedExceptionally());
+        }
+        assertEquals(0, tps.getPayments());
+        assertEquals(0, srs.getReservations());
+    }
+}
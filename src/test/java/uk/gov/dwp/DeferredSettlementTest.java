@@ -0,0 +1,287 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.settlement.DeferredTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.settlement.PendingPayments;
+
+public class DeferredSettlementTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test // one window - each account charged its total in a single call
+    public void onePaymentPerAccount() throws Exception {
+        //setup (Given)
+        TicketPaymentService gateway = mock(TicketPaymentService.class);
+        try (PendingPayments pending = new PendingPayments(file(), 100);
+                DeferredTicketPaymentService tps = new DeferredTicketPaymentService(gateway, pending, 1000, 0)) {
+            TicketServiceImpl ts = new TicketServiceImpl(tps, new LatencySeatReservationService(0));
+
+            //make the call (When)
+            ts.purchaseTickets(1001, TicketTypeRequest.of(Type.ADULT, 2));
+            ts.purchaseTickets(1002, TicketTypeRequest.of(Type.ADULT, 1));
+            ts.purchaseTickets(1001, TicketTypeRequest.of(Type.ADULT, 1), TicketTypeRequest.of(Type.CHILD, 1));
+            verifyNoInteractions(gateway);
+            assertEquals(70, pending.get(1001));
+            tps.settle();
+
+            //results (Then)
+            verify(gateway).makePayment(1001, 70);
+            verify(gateway).makePayment(1002, 20);
+            assertEquals(0, pending.getAccounts());
+            assertEquals(3, tps.getAuthorisations());
+            assertEquals(2, tps.getGatewayCalls());
+        }
+    }
+
+    @Test // refunds in the window - netted off, only what is left goes to the gateway
+    public void refundsNetted() throws Exception {
+        //setup (Given)
+        TicketPaymentService gateway = mock(TicketPaymentService.class);
+        try (PendingPayments pending = new PendingPayments(file(), 100);
+                DeferredTicketPaymentService tps = new DeferredTicketPaymentService(gateway, pending, 1000, 0)) {
+            //make the call (When)
+            tps.makePayment(1001, 100);
+            tps.refund(1001, 40);
+            tps.makePayment(1002, 50);
+            tps.refund(1002, 50);
+            tps.refund(1003, 30);
+            tps.settle();
+
+            //results (Then)
+            verify(gateway).makePayment(1001, 60);
+            verify(gateway, never()).makePayment(eq(1002L), anyInt());
+            verify(gateway, never()).refund(eq(1002L), anyInt());
+            verify(gateway).refund(1003, 30);
+            assertEquals(2, tps.getGatewayCalls());
+        }
+    }
+
+    @Test // size window - the payment that fills it settles the window
+    public void windowClosesWhenFull() throws Exception {
+        //setup (Given)
+        LatencyTicketPaymentService gateway = new LatencyTicketPaymentService(0);
+        try (PendingPayments pending = new PendingPayments(file(), 100);
+                DeferredTicketPaymentService tps = new DeferredTicketPaymentService(gateway, pending, 3, 0)) {
+            //make the call (When)
+            for (int i = 0; i < 7; i++) tps.makePayment(1001 + i % 2, 10);
+
+            //results (Then)
+            assertEquals(2, tps.getWindows());
+            assertEquals(4, gateway.getPayments());
+            assertEquals(60, gateway.getAmount());
+            assertEquals(10, pending.getTotal());
+        }
+    }
+
+    @Test // time window - settled by the flusher without anyone calling settle
+    public void windowClosesOnTimer() throws Exception {
+        //setup (Given)
+        LatencyTicketPaymentService gateway = new LatencyTicketPaymentService(0);
+        try (PendingPayments pending = new PendingPayments(file(), 100);
+                DeferredTicketPaymentService tps = new DeferredTicketPaymentService(gateway, pending, 1000, 20)) {
+            //make the call (When)
+            tps.makePayment(1001, 10);
+            tps.makePayment(1001, 15);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (gateway.getPayments() == 0 && System.nanoTime() < deadline) Thread.sleep(5);
+
+            //results (Then)
+            assertEquals(1, gateway.getPayments());
+            assertEquals(25, gateway.getAmount());
+        }
+    }
+
+    @Test // restart - pending totals survive the process going away without settling, and are settled after
+    public void survivesRestart() throws Exception {
+        //setup (Given)
+        Path file = file();
+        TicketPaymentService gateway = mock(TicketPaymentService.class);
+        PendingPayments before = new PendingPayments(file, 100);
+        DeferredTicketPaymentService crashed = new DeferredTicketPaymentService(gateway, before, 1000, 0);
+        crashed.makePayment(1001, 40);
+        crashed.makePayment(1002, 25);
+        crashed.refund(1001, 15);
+        before.close();
+
+        //make the call (When)
+        try (PendingPayments after = new PendingPayments(file, 1);
+                DeferredTicketPaymentService restarted = new DeferredTicketPaymentService(gateway, after, 1000, 0)) {
+            assertArrayEquals(new long[] {25, 25}, new long[] {after.get(1001), after.get(1002)});
+            restarted.settle();
+
+            //results (Then)
+            verify(gateway).makePayment(1001, 25);
+            verify(gateway).makePayment(1002, 25);
+            assertEquals(before.getTableBytes(), after.getTableBytes());
+        }
+    }
+
+    @Test // gateway down - the settlement stays pending and is taken in the next window
+    public void failedSettlementRetried() throws Exception {
+        //setup (Given)
+        TicketPaymentService gateway = mock(TicketPaymentService.class);
+        doThrow(new IllegalStateException("gateway down")).doNothing().when(gateway).makePayment(anyLong(), anyInt());
+        try (PendingPayments pending = new PendingPayments(file(), 100);
+                DeferredTicketPaymentService tps = new DeferredTicketPaymentService(gateway, pending, 1000, 0)) {
+            tps.makePayment(1001, 20);
+
+            //make the call (When)
+            tps.settle();
+            tps.makePayment(1001, 30);
+            tps.settle();
+
+            //results (Then)
+            assertEquals(1, tps.getFailedSettlements());
+            verify(gateway).makePayment(1001, 50);
+            assertEquals(0, pending.get(1001));
+        }
+    }
+
+    @Test // gateway refuses one account every time - dead-lettered after 3 windows, the others still settled
+    public void failingAccountDeadLettered() throws Exception {
+        //setup (Given)
+        TicketPaymentService gateway = mock(TicketPaymentService.class);
+        doThrow(new IllegalStateException("card declined")).when(gateway).makePayment(eq(1001L), anyInt());
+        try (PendingPayments pending = new PendingPayments(file(), 100);
+                DeferredTicketPaymentService tps = new DeferredTicketPaymentService(gateway, pending, 1000, 0, 3)) {
+            tps.makePayment(1001, 20);
+
+            //make the call (When)
+            for (int window = 0; window < 5; window++) {
+                tps.makePayment(1002, 10);
+                tps.settle();
+            }
+
+            //results (Then)
+            assertEquals(3, tps.getFailedSettlements());
+            assertArrayEquals(new long[] {1001}, tps.getDeadLetters());
+            assertEquals(20, pending.get(1001));
+            verify(gateway, times(3)).makePayment(1001, 20);
+            verify(gateway, times(5)).makePayment(1002, 10);
+
+            doNothing().when(gateway).makePayment(eq(1001L), anyInt());
+            assertTrue(tps.retryDeadLetter(1001));
+            tps.settle();
+            assertEquals(0, tps.getDeadLetters().length);
+            assertEquals(0, pending.get(1001));
+        }
+    }
+
+    @Test // table full - payments for accounts without room are charged straight away
+    public void fullTablePassesThrough() throws Exception {
+        //setup (Given)
+        TicketPaymentService gateway = mock(TicketPaymentService.class);
+        try (PendingPayments pending = new PendingPayments(file(), 1);
+                DeferredTicketPaymentService tps = new DeferredTicketPaymentService(gateway, pending, 1000, 0)) {
+            //make the call (When)
+            for (long accountId = 1; accountId <= 20; accountId++) tps.makePayment(accountId, 10);
+
+            //results (Then)
+            // a one account table still has a full probe window of 16 slots.
+            assertEquals(4, tps.getPassedThrough());
+            assertEquals(16, pending.getAccounts());
+            tps.settle();
+            assertEquals(20, tps.getGatewayCalls());
+        }
+    }
+
+    @Test // 8 threads paying into overlapping accounts - every amount accounted for
+    public void concurrentTotals() throws Exception {
+        //setup (Given)
+        LatencyTicketPaymentService gateway = new LatencyTicketPaymentService(0);
+        try (PendingPayments pending = new PendingPayments(file(), 1000);
+                DeferredTicketPaymentService tps = new DeferredTicketPaymentService(gateway, pending, 5000, 1)) {
+            List<Thread> threads = new ArrayList<Thread>();
+
+            //make the call (When)
+            for (int t = 0; t < 8; t++) {
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        tps.makePayment(1 + i % 500, 3);
+                        if (i % 10 == 0) tps.refund(1 + i % 500, 1);
+                    }
+                }));
+            }
+            for (Thread thread : threads) thread.start();
+            for (Thread thread : threads) thread.join();
+            tps.settle();
+
+            //results (Then)
+            assertEquals(8 * (20_000 * 3 - 2_000), gateway.getAmount());
+            assertEquals(0, pending.getTotal());
+            assertTrue(tps.getGatewayCalls() < 8 * 22_000 / 10);
+        }
+    }
+
+    @Test // forcing the table to disk fails - counted, and the flusher keeps closing windows
+    public void flusherSurvivesFailedForce() throws Exception {
+        //setup (Given)
+        LatencyTicketPaymentService gateway = new LatencyTicketPaymentService(0);
+        try (PendingPayments pending = new FailingForcePayments(file(), 2);
+                DeferredTicketPaymentService tps = new DeferredTicketPaymentService(gateway, pending, 1000, 5)) {
+            //make the call (When)
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (tps.getFlushFailures() < 2 && System.nanoTime() < deadline) Thread.sleep(5);
+            tps.makePayment(1001, 10);
+            while (gateway.getPayments() == 0 && System.nanoTime() < deadline) Thread.sleep(5);
+
+            //results (Then)
+            assertEquals(2, tps.getFlushFailures());
+            assertEquals("disk gone", tps.getLastFlushFailure().getMessage());
+            assertEquals(1, gateway.getPayments());
+            assertEquals(10, gateway.getAmount());
+        }
+    }
+
+    private Path file() throws Exception {
+        return folder.newFile().toPath();
+    }
+
+    // a pending table whose first forces fail.
+    private static class FailingForcePayments extends PendingPayments {
+        private final AtomicInteger failures;
+
+        FailingForcePayments(Path file, int failures) throws Exception {
+            super(file, 100);
+            this.failures = new AtomicInteger(failures);
+        }
+
+        @Override
+        public void force() {
+            if (failures.getAndDecrement() > 0) throw new UncheckedIOException("disk gone", new IOException());
+            super.force();
+        }
+    }
+}
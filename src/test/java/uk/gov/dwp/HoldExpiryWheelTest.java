@@ -0,0 +1,255 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.stub.ManualClock;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.hold.HoldExpiryWheel;
+import uk.gov.dwp.uc.pairtest.hold.SeatHolds;
+import uk.gov.dwp.uc.pairtest.inventory.ScreeningInventory;
+import uk.gov.dwp.uc.pairtest.inventory.SeatInventory;
+
+public class HoldExpiryWheelTest {
+
+    @Test // hold for 100ms - still held at 99ms, released at 100ms
+    public void expiresOnTime() {
+        //setup (Given)
+        ManualClock clock = new ManualClock(Instant.parse("2026-10-18T18:00:00Z"));
+        List<long[]> released = new ArrayList<long[]>();
+        HoldExpiryWheel wheel = new HoldExpiryWheel(clock, 10, 100, 1, (tag, seats) -> released.add(new long[] {tag, seats}));
+        wheel.hold(7, 3, 100);
+
+        //make the call (When)
+        clock.advance(Duration.ofMillis(99));
+        int early = wheel.advance();
+        clock.advance(Duration.ofMillis(1));
+        int due = wheel.advance();
+
+        //results (Then)
+        assertEquals(0, early);
+        assertEquals(1, due);
+        assertEquals(1, released.size());
+        assertEquals(7, released.get(0)[0]);
+        assertEquals(3, released.get(0)[1]);
+        assertEquals(0, wheel.getOutstanding());
+    }
+
+    @Test // cancelled hold - its seats are returned to the caller, not released by the wheel, and a second cancel gets nothing
+    public void cancelBeforeExpiry() {
+        //setup (Given)
+        ManualClock clock = new ManualClock(Instant.parse("2026-10-18T18:00:00Z"));
+        AtomicLong released = new AtomicLong();
+        HoldExpiryWheel wheel = new HoldExpiryWheel(clock, 1, 100, 1, (tag, seats) -> released.addAndGet(seats));
+        long kept = wheel.hold(1, 2, 50);
+        long cancelled = wheel.hold(1, 4, 50);
+
+        //make the call (When)
+        int seats = wheel.cancel(cancelled);
+        clock.advance(Duration.ofMillis(50));
+        wheel.advance();
+
+        //results (Then)
+        assertEquals(4, seats);
+        assertEquals(0, wheel.cancel(cancelled));
+        assertEquals(0, wheel.cancel(kept));
+        assertEquals(2, released.get());
+        assertEquals(1, wheel.getCancelled());
+        assertEquals(1, wheel.getExpired());
+    }
+
+    @Test // a handle kept after its hold expired - cannot cancel the next hold to reuse the slot
+    public void staleHandle() {
+        //setup (Given)
+        ManualClock clock = new ManualClock(Instant.parse("2026-10-18T18:00:00Z"));
+        HoldExpiryWheel wheel = new HoldExpiryWheel(clock, 1, 1, 1, (tag, seats) -> { });
+        long first = wheel.hold(1, 1, 5);
+        clock.advance(Duration.ofMillis(5));
+        wheel.advance();
+
+        //make the call (When)
+        long second = wheel.hold(1, 6, 5);
+
+        //results (Then)
+        assertEquals(0, wheel.cancel(first));
+        assertEquals(6, wheel.cancel(second));
+    }
+
+    @Test // holds from a second to a month out - each released in the tick it falls due, after moving down the levels
+    public void expiresAcrossLevels() {
+        //setup (Given)
+        ManualClock clock = new ManualClock(Instant.parse("2026-10-18T18:00:00Z"));
+        long start = clock.millis();
+        List<Long> releasedAt = new ArrayList<Long>();
+        HoldExpiryWheel wheel = new HoldExpiryWheel(clock, 1, 100, 1, (tag, seats) -> {
+            assertEquals(tag, clock.millis() - start);
+            releasedAt.add(tag);
+        });
+        long[] ttls = {1_000, 70_000, 300_000, 5 * 3_600_000L, 30 * 86_400_000L, 17, 255, 256, 65_536};
+        for (long ttl : ttls) wheel.hold(ttl, 1, ttl);
+
+        //make the call (When)
+        // a millisecond at a time around each expiry, big steps in between
+        List<Long> sorted = new ArrayList<Long>();
+        for (long ttl : ttls) sorted.add(ttl);
+        sorted.sort(null);
+        long at = 0;
+        for (long ttl : sorted) {
+            clock.advance(Duration.ofMillis(ttl - 1 - at));
+            wheel.advance();
+            clock.advance(Duration.ofMillis(1));
+            wheel.advance();
+            at = ttl;
+        }
+
+        //results (Then)
+        assertEquals(sorted, releasedAt);
+    }
+
+    @Test // a thousand holds on one screening in one tick - one release of all their seats
+    public void releasedInBatches() {
+        //setup (Given)
+        ManualClock clock = new ManualClock(Instant.parse("2026-10-18T18:00:00Z"));
+        List<long[]> released = new ArrayList<long[]>();
+        HoldExpiryWheel wheel = new HoldExpiryWheel(clock, 10, 2000, 1, (tag, seats) -> released.add(new long[] {tag, seats}));
+        for (int i = 0; i < 1000; i++) wheel.hold(1, 2, 95 + i % 5);
+        for (int i = 0; i < 300; i++) wheel.hold(2 + i % 3, 1, 100);
+
+        //make the call (When)
+        clock.advance(Duration.ofMillis(100));
+        wheel.advance();
+
+        //results (Then)
+        assertEquals(4, released.size());
+        assertEquals(4, wheel.getReleaseBatches());
+        long total = 0;
+        for (long[] release : released) total += release[1];
+        assertEquals(2300, total);
+    }
+
+    @Test // release fails for one screening - the others are released, and its seats are offered again next turn
+    public void failedReleaseIsRetried() {
+        //setup (Given)
+        ManualClock clock = new ManualClock(Instant.parse("2026-10-18T18:00:00Z"));
+        AtomicLong released = new AtomicLong();
+        boolean[] down = {true};
+        HoldExpiryWheel wheel = new HoldExpiryWheel(clock, 10, 100, 1, (tag, seats) -> {
+            if (tag == 1 && down[0]) throw new IllegalStateException("inventory unavailable");
+            released.addAndGet(seats);
+        });
+        wheel.hold(1, 3, 10);
+        wheel.hold(2, 4, 10);
+        wheel.hold(1, 2, 20);
+
+        //make the call (When)
+        clock.advance(Duration.ofMillis(10));
+        wheel.advance();
+        long afterFailure = released.get();
+        long pending = wheel.getPendingReleases();
+        clock.advance(Duration.ofMillis(10));
+        wheel.advance();
+        long stillDown = wheel.getPendingReleases();
+        down[0] = false;
+        clock.advance(Duration.ofMillis(10));
+        wheel.advance();
+
+        //results (Then)
+        assertEquals(4, afterFailure);
+        assertEquals(3, pending);
+        assertEquals(5, stillDown);
+        assertEquals(9, released.get());
+        assertEquals(0, wheel.getPendingReleases());
+        assertEquals(2, wheel.getReleaseFailures());
+        assertEquals("inventory unavailable", wheel.getLastReleaseFailure().getMessage());
+    }
+
+    @Test // more holds than capacity - refused instead of growing
+    public void fullWheel() {
+        ManualClock clock = new ManualClock(Instant.parse("2026-10-18T18:00:00Z"));
+        HoldExpiryWheel wheel = new HoldExpiryWheel(clock, 1, 2, 1, (tag, seats) -> { });
+
+        assertTrue(wheel.hold(1, 1, 10) >= 0);
+        assertTrue(wheel.hold(1, 1, 10) >= 0);
+        assertEquals(-1, wheel.hold(1, 1, 10));
+    }
+
+    @Test // hold, confirm, release and expire through the inventory - seats end where they should
+    public void seatHolds() {
+        //setup (Given)
+        ManualClock clock = new ManualClock(Instant.parse("2026-10-18T18:00:00Z"));
+        ScreeningInventory inventory = new ScreeningInventory();
+        SeatInventory screening = inventory.open(42, 10);
+        SeatReservationService seatReservationService = mock(SeatReservationService.class);
+        SeatHolds holds = new SeatHolds(inventory, seatReservationService, clock, 1, 100);
+
+        //make the call (When)
+        long confirmed = holds.hold(42, 3, 60_000);
+        long released = holds.hold(42, 2, 60_000);
+        holds.hold(42, 4, 60_000);
+        int heldBack = screening.available();
+        boolean full = false;
+        try {
+            holds.hold(42, 2, 60_000);
+        } catch (InvalidPurchaseException e) {
+            full = e.getReason() == InvalidPurchaseException.Reason.SEATS_UNAVAILABLE;
+        }
+        assertTrue(holds.confirm(1001, 42, confirmed));
+        assertTrue(holds.release(42, released));
+        clock.advance(Duration.ofMinutes(1));
+        holds.getWheel().advance();
+
+        //results (Then)
+        assertEquals(1, heldBack);
+        assertTrue(full);
+        verify(seatReservationService).reserveSeat(1001, 3);
+        assertFalse(holds.confirm(1001, 42, confirmed));
+        assertEquals(7, screening.available());
+    }
+
+    @Test // 4 threads holding and cancelling while the ticker runs - every seat taken comes back exactly once
+    public void concurrentHoldsAndTicker() throws Exception {
+        //setup (Given)
+        ScreeningInventory inventory = new ScreeningInventory();
+        SeatInventory screening = inventory.open(1, 1_000_000);
+        try (SeatHolds holds = new SeatHolds(inventory, mock(SeatReservationService.class), Clock.systemUTC(), 1, 100_000)) {
+            holds.start();
+            List<Thread> threads = new ArrayList<Thread>();
+
+            //make the call (When)
+            for (int t = 0; t < 4; t++) {
+                int seed = t;
+                threads.add(new Thread(() -> {
+                    SplittableRandom random = new SplittableRandom(seed);
+                    for (int i = 0; i < 20_000; i++) {
+                        long hold = holds.hold(1, 1 + random.nextInt(4), random.nextInt(30));
+                        if (random.nextBoolean()) holds.release(1, hold);
+                    }
+                }));
+            }
+            for (Thread thread : threads) thread.start();
+            for (Thread thread : threads) thread.join();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (holds.getWheel().getOutstanding() > 0 && System.nanoTime() < deadline) Thread.sleep(5);
+
+            //results (Then)
+            assertEquals(0, holds.getWheel().getOutstanding());
+            assertEquals(1_000_000, screening.available());
+            assertEquals(80_000, holds.getWheel().getHolds());
+        }
+    }
+}
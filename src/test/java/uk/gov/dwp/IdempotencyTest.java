@@ -0,0 +1,228 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseResult;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.exception.IdempotencyKeyConflictException;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.idempotency.IdempotencyCache;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IdempotencyTest {
+
+    @Mock
+    TicketPaymentService tps;
+
+    @Mock
+    SeatReservationService srs;
+
+    IdempotencyCache cache;
+    TicketService ts;
+
+    @Before
+    public void setUp() {
+        cache = new IdempotencyCache(1000, TimeUnit.MINUTES.toNanos(1));
+        ts = TicketServiceImpl.builder().ticketPaymentService(tps).seatReservationService(srs).idempotencyCache(cache).build();
+    }
+
+    @Test // same key twice - one payment, same result both times
+    public void duplicateReturnsFirstResult() {
+        //setup (Given)
+        TicketTypeRequest adults = new TicketTypeRequest(Type.ADULT, 2);
+
+        //make the call (When)
+        PurchaseResult first = ts.purchaseTickets("order-1", 1001, adults);
+        PurchaseResult second = ts.purchaseTickets("order-1", 1001, adults);
+
+        //results (Then)
+        assertSame(first, second);
+        assertEquals(2, first.getNumberOfSeats());
+        assertEquals(40, first.getPrice());
+        verify(tps, times(1)).makePayment(1001, 40);
+        verify(srs, times(1)).reserveSeat(1001, 2);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test // different keys are different purchases
+    public void differentKeysBothPurchase() {
+        //make the call (When)
+        ts.purchaseTickets("order-1", 1001, new TicketTypeRequest(Type.ADULT, 1));
+        ts.purchaseTickets("order-2", 1001, new TicketTypeRequest(Type.ADULT, 1));
+
+        //results (Then)
+        verify(tps, times(2)).makePayment(1001, 20);
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test // rejected order - the retry is rejected for the same reason without validating again
+    public void rejectionIsRemembered() {
+        //setup (Given)
+        TicketTypeRequest infants = new TicketTypeRequest(Type.INFANT, 1);
+
+        //make the call (When)
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                ts.purchaseTickets("order-1", 1001, infants);
+                fail("child only order should be rejected");
+            } catch (InvalidPurchaseException e) {
+                //results (Then)
+                assertEquals(InvalidPurchaseException.Reason.NOT_AT_LEAST_ONE_ADULT, e.getReason());
+            }
+        }
+        verify(tps, never()).makePayment(anyLong(), anyInt());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test // payment gateway down - the key is forgotten so the retry pays
+    public void gatewayFailureCanBeRetried() {
+        //setup (Given)
+        doThrow(new IllegalStateException("gateway down")).doNothing().when(tps).makePayment(1001, 20);
+
+        //make the call (When)
+        try {
+            ts.purchaseTickets("order-1", 1001, new TicketTypeRequest(Type.ADULT, 1));
+            fail("gateway failure should be rethrown");
+        } catch (IllegalStateException expected) {
+        }
+        PurchaseResult retry = ts.purchaseTickets("order-1", 1001, new TicketTypeRequest(Type.ADULT, 1));
+
+        //results (Then)
+        assertEquals(20, retry.getPrice());
+        verify(tps, times(2)).makePayment(1001, 20);
+        verify(srs, times(1)).reserveSeat(1001, 1);
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test // a retry that arrives mid purchase waits for it rather than paying again
+    public void concurrentDuplicateWaitsForFirst() throws Exception {
+        //setup (Given)
+        CountDownLatch paying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            paying.countDown();
+            release.await();
+            return null;
+        }).when(tps).makePayment(1001, 20);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        //make the call (When)
+        Future<PurchaseResult> first = executor.submit(() -> ts.purchaseTickets("order-1", 1001, new TicketTypeRequest(Type.ADULT, 1)));
+        paying.await();
+        Future<PurchaseResult> second = executor.submit(() -> ts.purchaseTickets("order-1", 1001, new TicketTypeRequest(Type.ADULT, 1)));
+        release.countDown();
+
+        //results (Then)
+        assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+        verify(tps, times(1)).makePayment(1001, 20);
+        executor.shutdown();
+    }
+
+    @Test // a key belongs to the account that first used it
+    public void keyReusedByAnotherAccount() {
+        //setup (Given)
+        ts.purchaseTickets("order-1", 1001, new TicketTypeRequest(Type.ADULT, 1));
+
+        //make the call (When)
+        try {
+            ts.purchaseTickets("order-1", 2002, new TicketTypeRequest(Type.ADULT, 1));
+            fail("key belongs to account 1001");
+        } catch (IdempotencyKeyConflictException expected) {
+        }
+
+        //results (Then)
+        verify(tps, never()).makePayment(2002, 20);
+    }
+
+    @Test // full cache - the oldest key is evicted and purchases again
+    public void oldestKeyEvicted() {
+        //setup (Given)
+        IdempotencyCache small = new IdempotencyCache(2, TimeUnit.MINUTES.toNanos(1), 1);
+        TicketService service = TicketServiceImpl.builder().ticketPaymentService(tps).seatReservationService(srs).idempotencyCache(small).build();
+
+        //make the call (When)
+        service.purchaseTickets("order-1", 1001, new TicketTypeRequest(Type.ADULT, 1));
+        service.purchaseTickets("order-2", 1001, new TicketTypeRequest(Type.ADULT, 1));
+        service.purchaseTickets("order-3", 1001, new TicketTypeRequest(Type.ADULT, 1));
+        service.purchaseTickets("order-1", 1001, new TicketTypeRequest(Type.ADULT, 1));
+
+        //results (Then)
+        verify(tps, times(4)).makePayment(1001, 20);
+        assertEquals(2, small.size());
+        assertEquals(2, small.getEvictions());
+    }
+
+    @Test // expired key - purchases again
+    public void expiredKeyPurchasesAgain() throws Exception {
+        //setup (Given)
+        IdempotencyCache shortLived = new IdempotencyCache(10, TimeUnit.MILLISECONDS.toNanos(1));
+        TicketService service = TicketServiceImpl.builder().ticketPaymentService(tps).seatReservationService(srs).idempotencyCache(shortLived).build();
+
+        //make the call (When)
+        service.purchaseTickets("order-1", 1001, new TicketTypeRequest(Type.ADULT, 1));
+        Thread.sleep(5);
+        service.purchaseTickets("order-1", 1001, new TicketTypeRequest(Type.ADULT, 1));
+
+        //results (Then)
+        verify(tps, times(2)).makePayment(1001, 20);
+        assertEquals(1, shortLived.getEvictions());
+        assertEquals(0, shortLived.getHits());
+    }
+
+    @Test // retry while the first attempt is still paying, cache full and key past its TTL - still only one payment
+    public void inFlightKeyIsNeverEvicted() throws Exception {
+        //setup (Given)
+        cache = new IdempotencyCache(1, TimeUnit.MILLISECONDS.toNanos(1));
+        ts = TicketServiceImpl.builder().ticketPaymentService(tps).seatReservationService(srs).idempotencyCache(cache).build();
+        CountDownLatch paying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            paying.countDown();
+            release.await();
+            return null;
+        }).when(tps).makePayment(1001, 20);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<PurchaseResult> first = executor.submit(() -> ts.purchaseTickets("order-1", 1001, new TicketTypeRequest(Type.ADULT, 1)));
+        paying.await();
+        ts.purchaseTickets("order-2", 1002, new TicketTypeRequest(Type.ADULT, 1));
+        ts.purchaseTickets("order-3", 1003, new TicketTypeRequest(Type.ADULT, 1));
+        Thread.sleep(5);
+
+        //make the call (When)
+        Future<PurchaseResult> retry = executor.submit(() -> ts.purchaseTickets("order-1", 1001, new TicketTypeRequest(Type.ADULT, 1)));
+        Thread.sleep(50);
+        release.countDown();
+
+        //results (Then)
+        assertSame(first.get(5, TimeUnit.SECONDS), retry.get(5, TimeUnit.SECONDS));
+        verify(tps, times(1)).makePayment(1001, 20);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,182 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import uk.gov.dwp.loadtest.LoadTestHarness;
+import uk.gov.dwp.loadtest.SimulatedGateway;
+import uk.gov.dwp.loadtest.Traffic;
+import uk.gov.dwp.loadtest.TrafficProfile;
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException.Reason;
+import uk.gov.dwp.uc.pairtest.journal.OrderJournal;
+
+public class LoadTestHarnessTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public ExpectedException exceptionRule = ExpectedException.none();
+
+    @Test // same profile twice - the same orders, a different seed - different orders
+    public void profileIsReproducible() throws Exception {
+        //setup (Given)
+        TrafficProfile profile = TrafficProfile.read(profile("steady.profile"));
+
+        //make the call (When)
+        Traffic first = profile.generate();
+        Traffic second = profile.generate();
+        Traffic reseeded = TrafficProfile.parse(Arrays.asList("seed=8", "orders=20000", "rate=2000")).generate();
+
+        //results (Then)
+        assertEquals(20_000, first.size());
+        assertEquals(first, second);
+        assertNotEquals(first, reseeded);
+        // 20,000 orders at 2,000 a second
+        assertEquals(10.0, first.getDurationNanos() / 1e9, 0.5);
+    }
+
+    @Test // bad line - rejected with its line number
+    public void badProfileLine() {
+        exceptionRule.expect(IllegalArgumentException.class);
+        exceptionRule.expectMessage("Traffic profile line 3: invalid order shape 2X");
+
+        TrafficProfile.parse(Arrays.asList("# comment", "orders=10", "mix=2A:1,2X:1"));
+    }
+
+    @Test // bursts at 4x the rate for 20% of each second - they carry 80% of the orders
+    public void burstyArrivals() {
+        //setup (Given)
+        TrafficProfile profile = TrafficProfile.parse(Arrays.asList("orders=50000", "rate=1000", "burst=4x0.2/1000"));
+
+        //make the call (When)
+        Traffic traffic = profile.generate();
+
+        //results (Then)
+        int inBurst = 0;
+        for (int i = 0; i < traffic.size(); i++) {
+            if (traffic.getArrivalNanos(i) % TimeUnit.SECONDS.toNanos(1) < TimeUnit.MILLISECONDS.toNanos(200)) inBurst++;
+        }
+        assertEquals(0.8, (double) inBurst / traffic.size(), 0.02);
+        assertEquals(50.0, traffic.getDurationNanos() / 1e9, 2.5);
+    }
+
+    @Test // skewed accounts - the busiest one percent of accounts make well over half the orders
+    public void skewedAccounts() {
+        //setup (Given)
+        TrafficProfile uniform = TrafficProfile.parse(Arrays.asList("orders=50000", "accounts=10000"));
+        TrafficProfile skewed = TrafficProfile.parse(Arrays.asList("orders=50000", "accounts=10000", "skew=1.1"));
+
+        //make the call (When)
+        double uniformShare = topShare(uniform.generate(), 100);
+        double skewedShare = topShare(skewed.generate(), 100);
+
+        //results (Then)
+        assertTrue("uniform " + uniformShare, uniformShare < 0.05);
+        assertTrue("skewed " + skewedShare, skewedShare > 0.5);
+    }
+
+    @Test // write and read back - the same orders, in a few bytes each
+    public void compactRoundTrip() throws Exception {
+        //setup (Given)
+        Traffic traffic = TrafficProfile.read(profile("evening-peak.profile")).generate();
+        Path file = folder.newFile("peak.traffic").toPath();
+
+        //make the call (When)
+        traffic.write(file);
+        Traffic read = Traffic.read(file);
+
+        //results (Then)
+        assertEquals(traffic, read);
+        double bytesPerOrder = (double) Files.size(file) / traffic.size();
+        assertTrue("bytes per order " + bytesPerOrder, bytesPerOrder < OrderJournal.recordSize / 4);
+    }
+
+    @Test // journalled orders - replayed as traffic with their counts, in the order they were taken
+    public void trafficFromJournal() throws Exception {
+        //setup (Given)
+        Path directory = folder.newFolder("journal").toPath();
+        try (OrderJournal journal = new OrderJournal(directory, 1024, 0)) {
+            journal.purchased(1001, 2, 1, 0, 3, 50);
+            journal.rejected(1002, 0, 1, 0, Reason.NOT_AT_LEAST_ONE_ADULT);
+            journal.purchased(1003, 1, 0, 1, 1, 20);
+        }
+
+        //make the call (When)
+        Traffic traffic = Traffic.fromJournal(directory);
+
+        //results (Then)
+        assertEquals(3, traffic.size());
+        assertEquals(1002, traffic.getAccountId(1));
+        assertEquals(0, traffic.getAdults(1));
+        assertEquals(1, traffic.getChildren(1));
+        assertEquals(1, traffic.getInfants(2));
+        assertEquals(0, traffic.getArrivalNanos(0));
+    }
+
+    @Test // replay as fast as possible - every order accounted for, rejections in line with the profile's invalid share
+    public void replayReportsOutcomes() throws Exception {
+        //setup (Given)
+        TrafficProfile profile = TrafficProfile.read(profile("evening-peak.profile"));
+        Traffic traffic = profile.generate();
+        LatencyTicketPaymentService payments = new LatencyTicketPaymentService(0);
+        TicketServiceImpl ts = new TicketServiceImpl(payments, new LatencySeatReservationService(0));
+
+        //make the call (When)
+        LoadTestHarness.Report report = new LoadTestHarness(ts, 4, 0).run(traffic);
+
+        //results (Then)
+        assertEquals(traffic.size(), report.getOrders());
+        assertEquals(report.getPurchased(), payments.getPayments());
+        assertEquals(0, report.getFailed());
+        assertEquals(profile.getInvalid(), report.getRejectionRate(), 0.01);
+        assertEquals(4, report.getRejectedByReason().size());
+        assertEquals(traffic.size(), report.getLatency().getCount());
+    }
+
+    @Test // paced replay against a failing gateway - takes as long as the traffic, failures reported as errors
+    public void pacedReplayWithFailures() throws Exception {
+        //setup (Given)
+        Traffic traffic = TrafficProfile.parse(Arrays.asList("orders=2000", "rate=10000")).generate();
+        SimulatedGateway gateway = new SimulatedGateway(TimeUnit.MICROSECONDS.toNanos(20), 0.1);
+        TicketServiceImpl ts = new TicketServiceImpl(gateway, gateway);
+
+        //make the call (When)
+        LoadTestHarness.Report report = new LoadTestHarness(ts, 2, 1).run(traffic);
+
+        //results (Then)
+        assertTrue(report.getElapsedNanos() >= traffic.getDurationNanos());
+        assertEquals(traffic.size(), report.getOrders());
+        // a purchase calls the gateway twice, unless the payment fails
+        assertEquals(0.19, report.getErrorRate(), 0.03);
+        assertEquals(gateway.getFailures(), report.getFailed());
+    }
+
+    private static double topShare(Traffic traffic, int top) {
+        Map<Long, Integer> orders = new HashMap<Long, Integer>();
+        for (int i = 0; i < traffic.size(); i++) orders.merge(traffic.getAccountId(i), 1, Integer::sum);
+        return orders.values().stream().sorted((a, b) -> b - a).limit(top).mapToInt(Integer::intValue).sum()
+                / (double) traffic.size();
+    }
+
+    private static Path profile(String name) throws Exception {
+        return Paths.get(LoadTestHarnessTest.class.getResource("/profiles/" + name).toURI());
+    }
+}
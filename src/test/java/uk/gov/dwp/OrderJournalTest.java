@@ -0,0 +1,125 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.journal.OrderJournal;
+import uk.gov.dwp.uc.pairtest.journal.OrderJournalReader;
+
+public class OrderJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test // purchase and rejection through the service - both journalled with counts, seats, price and outcome
+    public void journalsEveryOrder() throws Exception {
+        //setup (Given)
+        Path directory = folder.getRoot().toPath();
+        try (OrderJournal journal = new OrderJournal(directory, 1024, 0)) {
+            TicketServiceImpl ts = TicketServiceImpl.builder().ticketPaymentService(mock(TicketPaymentService.class))
+                    .seatReservationService(mock(SeatReservationService.class)).purchaseListener(journal).build();
+
+            //make the call (When)
+            ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 2), new TicketTypeRequest(Type.CHILD, 1),
+                    new TicketTypeRequest(Type.INFANT, 1));
+            try {
+                ts.purchaseTickets(1002, new TicketTypeRequest(Type.CHILD, 1));
+            } catch (InvalidPurchaseException expected) {
+            }
+        }
+
+        //results (Then)
+        try (OrderJournalReader reader = new OrderJournalReader(directory)) {
+            assertTrue(reader.next());
+            assertEquals(1001, reader.getAccountId());
+            assertEquals(2, reader.getAdults());
+            assertEquals(1, reader.getChildren());
+            assertEquals(1, reader.getInfants());
+            assertEquals(3, reader.getSeats());
+            assertEquals(50, reader.getPrice());
+            assertTrue(reader.isPurchased());
+            assertNull(reader.getReason());
+            assertTrue(reader.getTimestamp() > 0);
+
+            assertTrue(reader.next());
+            assertEquals(1002, reader.getAccountId());
+            assertFalse(reader.isPurchased());
+            assertEquals(InvalidPurchaseException.Reason.NOT_AT_LEAST_ONE_ADULT, reader.getReason());
+
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test // 25 records, 10 per segment, reopened half way - 3 segments, replayed in order
+    public void rollsOverAndReopens() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (OrderJournal journal = new OrderJournal(directory, 10, 5)) {
+            for (int i = 0; i < 15; i++) journal.purchased(i, 1, 0, 0, 1, 20);
+        }
+        try (OrderJournal journal = new OrderJournal(directory, 10, 5)) {
+            for (int i = 15; i < 25; i++) journal.purchased(i, 1, 0, 0, 1, 20);
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(3, files.count());
+        }
+        try (OrderJournalReader reader = new OrderJournalReader(directory)) {
+            for (int i = 0; i < 25; i++) {
+                assertTrue(reader.next());
+                assertEquals(i, reader.getAccountId());
+            }
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test // record straddling a page whose first page never reached the disk - marker present, replay stops before it
+    public void tornRecordAcrossPagesIsIgnored() throws Exception {
+        //setup (Given)
+        Path directory = folder.getRoot().toPath();
+        try (OrderJournal journal = new OrderJournal(directory, 1024, 0)) {
+            for (int i = 1; i <= 100; i++) journal.purchased(i, 1, 0, 0, 1, 20);
+        }
+        // record 85 runs from byte 4080 to 4128, its fields before the page boundary are lost.
+        int straddling = 4096 / OrderJournal.recordSize;
+        try (Stream<Path> files = Files.list(directory);
+                FileChannel segment = FileChannel.open(files.findFirst().get(), StandardOpenOption.WRITE)) {
+            segment.write(ByteBuffer.allocate(4096 - straddling * OrderJournal.recordSize), straddling * OrderJournal.recordSize);
+        }
+
+        //make the call (When)
+        int replayed = 0;
+        try (OrderJournalReader reader = new OrderJournalReader(directory)) {
+            while (reader.next()) replayed++;
+        }
+        try (OrderJournal journal = new OrderJournal(directory, 1024, 0)) {
+            journal.purchased(1001, 1, 0, 0, 1, 20);
+        }
+
+        //results (Then)
+        assertEquals(straddling, replayed);
+        try (OrderJournalReader reader = new OrderJournalReader(directory)) {
+            for (int i = 0; i <= straddling; i++) assertTrue(reader.next());
+            assertEquals(1001, reader.getAccountId());
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseRequest;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseResult;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.pricing.PriceTable;
+import uk.gov.dwp.uc.pairtest.pricing.PricingEngine;
+import uk.gov.dwp.uc.pairtest.shape.OrderShapeCache;
+import uk.gov.dwp.uc.pairtest.validation.RuleEngine;
+import uk.gov.dwp.uc.pairtest.validation.RuleSet;
+
+public class OrderShapeCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test // same shape, different accounts - worked out once, charged and seated the same
+    public void repeatShapeHits() {
+        //setup (Given)
+        TicketPaymentService payments = mock(TicketPaymentService.class);
+        SeatReservationService seats = mock(SeatReservationService.class);
+        OrderShapeCache cache = new OrderShapeCache(64);
+        TicketServiceImpl ts = TicketServiceImpl.builder().ticketPaymentService(payments).seatReservationService(seats)
+                .orderShapeCache(cache).build();
+
+        //make the call (When)
+        for (long accountId = 1001; accountId <= 1010; accountId++) {
+            ts.purchaseTickets(accountId, TicketTypeRequest.of(Type.ADULT, 2), TicketTypeRequest.of(Type.CHILD, 2));
+        }
+
+        //results (Then)
+        verify(payments).makePayment(1010, 60);
+        verify(seats).reserveSeat(1010, 4);
+        assertEquals(9, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.9, cache.getHitRate(), 1e-9);
+    }
+
+    @Test // a valid shape from a bad account - still rejected, the account is not part of the shape
+    public void accountCheckedEveryTime() {
+        //setup (Given)
+        OrderShapeCache cache = new OrderShapeCache(64);
+        TicketServiceImpl ts = TicketServiceImpl.builder().ticketPaymentService(mock(TicketPaymentService.class))
+                .seatReservationService(mock(SeatReservationService.class)).orderShapeCache(cache).build();
+        ts.purchaseTickets(1001, TicketTypeRequest.of(Type.ADULT, 1));
+
+        //make the call (When)
+        try {
+            ts.purchaseTickets(0, TicketTypeRequest.of(Type.ADULT, 1));
+            fail("expected the account to be rejected");
+        } catch (InvalidPurchaseException e) {
+            //results (Then)
+            assertEquals(InvalidPurchaseException.Reason.INVALID_ACCOUNT_ID, e.getReason());
+            assertEquals(1, cache.getHits());
+        }
+    }
+
+    @Test // invalid shape repeated - rejected from the cache with every broken rule reported
+    public void invalidShapeCached() {
+        //setup (Given)
+        OrderShapeCache cache = new OrderShapeCache(64);
+        TicketServiceImpl ts = TicketServiceImpl.builder().ticketPaymentService(mock(TicketPaymentService.class))
+                .seatReservationService(mock(SeatReservationService.class)).orderShapeCache(cache)
+                .reportAllViolations(true).build();
+        String message = null;
+
+        //make the call (When)
+        for (int i = 0; i < 2; i++) {
+            try {
+                ts.purchaseTickets(-1, TicketTypeRequest.of(Type.CHILD, 21));
+            } catch (InvalidPurchaseException e) {
+                message = e.getMessage();
+            }
+        }
+
+        //results (Then)
+        assertEquals(InvalidPurchaseException.tooManyTickets + "; " + InvalidPurchaseException.notAtLeastOneAdult
+                + "; " + InvalidPurchaseException.invalidAccountId, message);
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test // price file reloaded - the next order is priced afresh and the cache starts again
+    public void priceReloadInvalidates() throws Exception {
+        //setup (Given)
+        Path prices = folder.newFile("prices.rules").toPath();
+        Files.write(prices, Arrays.asList("ADULT=20", "CHILD=10"), StandardCharsets.UTF_8);
+        PricingEngine pricingEngine = new PricingEngine(prices, Clock.fixed(Instant.parse("2026-10-18T12:00:00Z"), ZoneOffset.UTC));
+        TicketPaymentService payments = mock(TicketPaymentService.class);
+        OrderShapeCache cache = new OrderShapeCache(64);
+        TicketServiceImpl ts = TicketServiceImpl.builder().ticketPaymentService(payments)
+                .seatReservationService(mock(SeatReservationService.class)).pricingEngine(pricingEngine)
+                .orderShapeCache(cache).build();
+        ts.purchaseTickets(1001, TicketTypeRequest.of(Type.ADULT, 2));
+
+        //make the call (When)
+        Files.write(prices, Arrays.asList("ADULT=25", "CHILD=10"), StandardCharsets.UTF_8);
+        pricingEngine.reload();
+        ts.purchaseTickets(1002, TicketTypeRequest.of(Type.ADULT, 2));
+
+        //results (Then)
+        verify(payments).makePayment(1001, 40);
+        verify(payments).makePayment(1002, 50);
+        assertEquals(1, cache.getInvalidations());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test // rule file reloaded - a shape that was valid is now rejected
+    public void ruleReloadInvalidates() throws Exception {
+        //setup (Given)
+        Path rules = folder.newFile("validation.rules").toPath();
+        Files.write(rules, Arrays.asList("TOTAL <= 6 : TOO_MANY_TICKETS"), StandardCharsets.UTF_8);
+        RuleEngine ruleEngine = new RuleEngine(rules);
+        OrderShapeCache cache = new OrderShapeCache(64);
+        TicketServiceImpl ts = TicketServiceImpl.builder().ticketPaymentService(mock(TicketPaymentService.class))
+                .seatReservationService(mock(SeatReservationService.class)).ruleEngine(ruleEngine)
+                .orderShapeCache(cache).build();
+        ts.purchaseTickets(1001, TicketTypeRequest.of(Type.ADULT, 5));
+
+        //make the call (When)
+        Files.write(rules, Arrays.asList("TOTAL <= 4 : TOO_MANY_TICKETS"), StandardCharsets.UTF_8);
+        ruleEngine.reload();
+
+        //results (Then)
+        try {
+            ts.purchaseTickets(1001, TicketTypeRequest.of(Type.ADULT, 5));
+            fail("expected the new rules to reject the order");
+        } catch (InvalidPurchaseException e) {
+            assertEquals(InvalidPurchaseException.Reason.TOO_MANY_TICKETS, e.getReason());
+        }
+        assertEquals(1, cache.getInvalidations());
+    }
+
+    @Test // batch of mixed shapes, against the cache and without it - the same results
+    public void batchMatchesUncached() {
+        //setup (Given)
+        List<PurchaseRequest> orders = Arrays.asList(
+                new PurchaseRequest(1001, TicketTypeRequest.of(Type.ADULT, 2), TicketTypeRequest.of(Type.INFANT, 1)),
+                new PurchaseRequest(1002, TicketTypeRequest.of(Type.INFANT, 1)),
+                new PurchaseRequest(1003, TicketTypeRequest.of(Type.ADULT, 2), TicketTypeRequest.of(Type.INFANT, 1)),
+                new PurchaseRequest(1004, TicketTypeRequest.of(Type.ADULT, 1500)),
+                new PurchaseRequest(1005, TicketTypeRequest.of(Type.ADULT, 1), TicketTypeRequest.of(Type.CHILD, 3)));
+        OrderShapeCache cache = new OrderShapeCache(1);
+        TicketServiceImpl cached = TicketServiceImpl.builder().ticketPaymentService(mock(TicketPaymentService.class))
+                .seatReservationService(mock(SeatReservationService.class)).orderShapeCache(cache).build();
+        TicketServiceImpl uncached = TicketServiceImpl.builder().ticketPaymentService(mock(TicketPaymentService.class))
+                .seatReservationService(mock(SeatReservationService.class)).build();
+
+        //make the call (When)
+        List<PurchaseResult> fromCache = cached.purchaseTicketsBatch(orders);
+        List<PurchaseResult> worked = uncached.purchaseTicketsBatch(orders);
+
+        //results (Then)
+        assertEquals(worked.toString(), fromCache.toString());
+        // one slot: every change of shape replaces the last, the order of 1500 adults is never cached
+        assertEquals(0, cache.getHits());
+        assertEquals(5, cache.getMisses());
+    }
+
+    @Test // direct lookup - the shape's verdict matches the rule set's own
+    public void lookupMatchesRuleSet() {
+        OrderShapeCache cache = new OrderShapeCache(16);
+        int[] prices = new PricingEngine(PriceTable.DEFAULT).currentPrices();
+        for (int adults = 0; adults < 12; adults++) {
+            for (int children = 0; children < 12; children++) {
+                for (int infants = 0; infants < 12; infants++) {
+                    OrderShapeCache.Shape shape = cache.lookup(RuleSet.DEFAULT, prices, adults, children, infants);
+                    assertEquals(RuleSet.DEFAULT.check(1, adults, children, infants), shape.getBroken());
+                    assertEquals(adults + children, shape.getSeats());
+                    assertEquals(adults * 20 + children * 10, shape.getPrice());
+                }
+            }
+        }
+        assertEquals(0, cache.getInvalidations());
+    }
+}
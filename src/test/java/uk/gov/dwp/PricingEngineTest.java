@@ -0,0 +1,153 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.pricing.PriceTable;
+import uk.gov.dwp.uc.pairtest.pricing.PricingEngine;
+
+public class PricingEngineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public ExpectedException exceptionRule = ExpectedException.none();
+
+    private static final Clock sixPm = Clock.fixed(Instant.parse("2026-10-18T18:00:00Z"), ZoneOffset.UTC);
+
+    @Test // default table - matches the original hardcoded prices
+    public void defaultPrices() {
+        assertTrue(PriceTable.DEFAULT.isFlat());
+        assertEquals(20, PriceTable.DEFAULT.price(Type.ADULT, 0));
+        assertEquals(10, PriceTable.DEFAULT.price(Type.CHILD, 0));
+        assertEquals(0, PriceTable.DEFAULT.price(Type.INFANT, 0));
+    }
+
+    @Test // evening band - only the overridden type changes, later band wins
+    public void timeBands() {
+        PriceTable table = PriceTable.compile(Arrays.asList(
+                "ADULT=20", "CHILD=10  # children half price",
+                "ADULT@17:00-23:00=25",
+                "ADULT@22:00-02:00=15"));
+
+        assertFalse(table.isFlat());
+        assertEquals(20, table.price(Type.ADULT, 16 * 60 + 59));
+        assertEquals(25, table.price(Type.ADULT, 17 * 60));
+        assertEquals(10, table.price(Type.CHILD, 17 * 60));
+        assertEquals(15, table.price(Type.ADULT, 22 * 60));
+        assertEquals(15, table.price(Type.ADULT, 60));
+        assertEquals(20, table.price(Type.ADULT, 2 * 60));
+    }
+
+    @Test // 00:00-24:00 - the override applies all day, including the last minute
+    public void fullDayBand() {
+        PriceTable table = PriceTable.compile(Arrays.asList("ADULT=20", "ADULT@00:00-24:00=25"));
+
+        assertTrue(table.isFlat());
+        assertEquals(25, table.price(Type.ADULT, 0));
+        assertEquals(25, table.price(Type.ADULT, 12 * 60));
+        assertEquals(25, table.price(Type.ADULT, 24 * 60 - 1));
+    }
+
+    @Test // bad edit picked up by watch - counted, previous prices kept
+    public void watchCountsFailedReloads() throws Exception {
+        //setup (Given)
+        File rules = folder.newFile("prices.rules");
+        Files.write(rules.toPath(), Arrays.asList("ADULT=20"), StandardCharsets.UTF_8);
+        PricingEngine engine = new PricingEngine(rules.toPath(), sixPm);
+        Files.write(rules.toPath(), Arrays.asList("ADULT=twenty"), StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(rules.toPath(), FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+        //make the call (When)
+        engine.watch(executor, 1, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 500 && engine.getReloadFailures() == 0; i++) Thread.sleep(10);
+        executor.shutdownNow();
+
+        //results (Then)
+        assertEquals(1, engine.getReloadFailures());
+        assertTrue(engine.getLastReloadFailure().getMessage().contains("line 1"));
+        assertEquals(20, engine.currentPrices()[Type.ADULT.ordinal()]);
+    }
+
+    @Test // unknown type - rejected with the line number
+    public void invalidRule() {
+        exceptionRule.expect(IllegalArgumentException.class);
+        exceptionRule.expectMessage("line 2");
+
+        PriceTable.compile(Arrays.asList("ADULT=20", "SENIOR=5"));
+    }
+
+    @Test // rule file edited - new prices after reload, purchase charged at the evening price
+    public void reloadsRuleFile() throws Exception {
+        //setup (Given)
+        File rules = folder.newFile("prices.rules");
+        Files.write(rules.toPath(), Arrays.asList("ADULT=20", "CHILD=10"), StandardCharsets.UTF_8);
+        PricingEngine engine = new PricingEngine(rules.toPath(), sixPm);
+        assertEquals(20, engine.currentPrices()[Type.ADULT.ordinal()]);
+
+        //make the call (When)
+        Files.write(rules.toPath(), Arrays.asList("ADULT=20", "CHILD=10", "ADULT@17:00-23:00=25"), StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(rules.toPath(), FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        assertTrue(engine.reloadIfModified());
+        assertFalse(engine.reloadIfModified());
+
+        //results (Then)
+        TicketPaymentService tps = Mockito.mock(TicketPaymentService.class);
+        SeatReservationService srs = Mockito.mock(SeatReservationService.class);
+        TicketServiceImpl.builder().ticketPaymentService(tps).seatReservationService(srs).pricingEngine(engine).build().purchaseTickets(1001,
+                new TicketTypeRequest(Type.ADULT, 2), new TicketTypeRequest(Type.CHILD, 1));
+        verify(tps).makePayment(1001, 60);
+    }
+
+    @Test // total above what one payment can carry - rejected rather than charged a wrapped-round amount
+    public void totalTooHighRejected() {
+        //setup (Given)
+        TicketPaymentService tps = Mockito.mock(TicketPaymentService.class);
+        PricingEngine engine = new PricingEngine(PriceTable.compile(Arrays.asList("ADULT=1500000000", "CHILD=10")));
+        InvalidPurchaseException.Reason reason = null;
+
+        //make the call (When)
+        try {
+            TicketServiceImpl.builder().ticketPaymentService(tps).seatReservationService(Mockito.mock(SeatReservationService.class))
+                    .pricingEngine(engine).build().purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 2));
+        } catch (InvalidPurchaseException e) {
+            reason = e.getReason();
+        }
+
+        //results (Then)
+        assertEquals(InvalidPurchaseException.Reason.PRICE_TOO_HIGH, reason);
+        verify(tps, never()).makePayment(anyLong(), anyInt());
+        assertEquals(Integer.MAX_VALUE, PriceTable.total(new int[] {Integer.MAX_VALUE, 0, 0}, 1, 5, 5));
+    }
+}
@@ -0,0 +1,457 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.stub.ManualClock;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.PurchaseListener;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseRequest;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseResult;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.exception.GatewayUnavailableException;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.history.AccountPurchaseHistory;
+import uk.gov.dwp.uc.pairtest.inventory.SeatInventory;
+import uk.gov.dwp.uc.pairtest.resilience.CircuitBreaker;
+import uk.gov.dwp.uc.pairtest.resilience.ResilientGateway;
+import uk.gov.dwp.uc.pairtest.resilience.ResilientTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.saga.PurchaseCoordinator;
+import uk.gov.dwp.uc.pairtest.saga.SagaJournal;
+import uk.gov.dwp.uc.pairtest.saga.SagaState;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PurchaseCoordinatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    TicketPaymentService tps;
+
+    @Mock
+    SeatReservationService srs;
+
+    Path journalFile;
+    SagaJournal journal;
+    SeatInventory inventory;
+    TicketService ts;
+
+    @Before
+    public void setUp() throws Exception {
+        journalFile = folder.getRoot().toPath().resolve("sagas.journal");
+        journal = new SagaJournal(journalFile, false);
+        inventory = new SeatInventory(10);
+        ts = TicketServiceImpl.builder().purchaseCoordinator(new PurchaseCoordinator(inventory, tps, srs, journal)).build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        journal.close();
+    }
+
+    @Test // 2 adults - hold, pay, confirm in that order
+    public void happyPath() throws Exception {
+        ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 2));
+
+        InOrder order = inOrder(tps, srs);
+        order.verify(tps).makePayment(1001, 40);
+        order.verify(srs).reserveSeat(1001, 2);
+        assertEquals(8, inventory.available());
+        assertEquals(SagaState.CONFIRMED, journal.replay().get(1L).getState());
+    }
+
+    @Test // payment declined - hold released, no reservation, no refund
+    public void paymentFailureReleasesHold() throws Exception {
+        doThrow(new IllegalStateException("card declined")).when(tps).makePayment(anyLong(), anyInt());
+
+        try {
+            ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 2));
+            fail("payment failure should be rethrown");
+        } catch (IllegalStateException expected) {
+        }
+
+        verify(srs, never()).reserveSeat(anyLong(), anyInt());
+        verify(tps, never()).refund(anyLong(), anyInt());
+        assertEquals(10, inventory.available());
+        assertEquals(SagaState.RELEASED, journal.replay().get(1L).getState());
+    }
+
+    @Test // booking system fails after payment - payment refunded and hold released
+    public void confirmFailureRefunds() throws Exception {
+        doThrow(new IllegalStateException("booking system down")).when(srs).reserveSeat(anyLong(), anyInt());
+
+        try {
+            ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 2), new TicketTypeRequest(Type.CHILD, 1));
+            fail("reservation failure should be rethrown");
+        } catch (IllegalStateException expected) {
+        }
+
+        verify(tps).refund(1001, 50);
+        assertEquals(10, inventory.available());
+        assertEquals(SagaState.REFUNDED, journal.replay().get(1L).getState());
+    }
+
+    @Test // batch where one order's booking fails - that order reports the failure, the others are still bought
+    public void batchCarriesOnPastFailedOrder() throws Exception {
+        //setup (Given)
+        PurchaseListener listener = mock(PurchaseListener.class);
+        ts = TicketServiceImpl.builder().purchaseCoordinator(new PurchaseCoordinator(inventory, tps, srs, journal))
+                .purchaseListener(listener).build();
+        IllegalStateException down = new IllegalStateException("booking system down");
+        doThrow(down).when(srs).reserveSeat(eq(1002L), anyInt());
+
+        //make the call (When)
+        List<PurchaseResult> results = ts.purchaseTicketsBatch(Arrays.asList(
+                new PurchaseRequest(1001, new TicketTypeRequest(Type.ADULT, 1)),
+                new PurchaseRequest(1002, new TicketTypeRequest(Type.ADULT, 2)),
+                new PurchaseRequest(1003, new TicketTypeRequest(Type.ADULT, 3))));
+
+        //results (Then)
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertSame(down, results.get(1).getError());
+        assertTrue(results.get(2).isSuccess());
+        verify(listener).purchased(1001, 1, 0, 0, 1, 20);
+        verify(listener).failed(1002, 2, 0, 0, 2, 40);
+        verify(listener).purchased(1003, 3, 0, 0, 3, 60);
+        verify(tps).refund(1002, 40);
+        assertEquals(6, inventory.available());
+    }
+
+    @Test // listener throws after a completed saga - the order still succeeds, its tickets stay counted, failure counted
+    public void listenerFailureAfterPurchaseIsCounted() throws Exception {
+        //setup (Given)
+        PurchaseListener listener = mock(PurchaseListener.class);
+        UncheckedIOException journalDown = new UncheckedIOException(new IOException("disk full"));
+        doThrow(journalDown).when(listener).purchased(anyLong(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt());
+        AccountPurchaseHistory history = new AccountPurchaseHistory(30, Duration.ofDays(1), 1000);
+        TicketServiceImpl service = TicketServiceImpl.builder().purchaseCoordinator(new PurchaseCoordinator(inventory, tps, srs, journal))
+                .purchaseListener(listener).purchaseHistory(history).build();
+
+        //make the call (When)
+        service.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 1));
+        List<PurchaseResult> results = service.purchaseTicketsBatch(Arrays.asList(
+                new PurchaseRequest(1002, new TicketTypeRequest(Type.ADULT, 2))));
+
+        //results (Then)
+        assertTrue(results.get(0).isSuccess());
+        assertEquals(1, history.ticketsInWindow(1001));
+        assertEquals(2, history.ticketsInWindow(1002));
+        verify(tps, never()).refund(anyLong(), anyInt());
+        assertEquals(7, inventory.available());
+        assertEquals(2, service.getListenerFailures());
+        assertSame(journalDown, service.getLastListenerFailure());
+    }
+
+    @Test // listener throws while the failure is reported - the gateway's exception is still the one thrown
+    public void listenerFailureDoesNotHideGatewayFailure() throws Exception {
+        //setup (Given)
+        PurchaseListener listener = mock(PurchaseListener.class);
+        doThrow(new UncheckedIOException(new IOException("disk full")))
+                .when(listener).failed(anyLong(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt());
+        IllegalStateException down = new IllegalStateException("booking system down");
+        doThrow(down).when(srs).reserveSeat(anyLong(), anyInt());
+        TicketServiceImpl service = TicketServiceImpl.builder().purchaseCoordinator(new PurchaseCoordinator(inventory, tps, srs, journal))
+                .purchaseListener(listener).build();
+
+        //make the call (When)
+        try {
+            service.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 2));
+            fail("reservation failure should be rethrown");
+        } catch (IllegalStateException e) {
+            //results (Then)
+            assertSame(down, e);
+        }
+        assertEquals(1, service.getListenerFailures());
+    }
+
+    @Test // not enough seats - rejected before any payment
+    public void fullScreening() {
+        ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 9));
+
+        try {
+            ts.purchaseTickets(1002, new TicketTypeRequest(Type.ADULT, 2));
+            fail("screening is full");
+        } catch (InvalidPurchaseException e) {
+            assertEquals(InvalidPurchaseException.Reason.SEATS_UNAVAILABLE, e.getReason());
+        }
+        verify(tps, never()).makePayment(1002, 40);
+    }
+
+    @Test // crash after payment and after hold - restart refunds the payment, rebuilds inventory from confirmed sagas
+    public void recoveryCompensatesInterruptedSagas() throws Exception {
+        //setup (Given)
+        journal.append(1, 1001, 3, 60, SagaState.HELD);
+        journal.append(1, 1001, 3, 60, SagaState.PAID);
+        journal.append(1, 1001, 3, 60, SagaState.CONFIRMED);
+        journal.append(2, 1002, 2, 40, SagaState.HELD);
+        journal.append(2, 1002, 2, 40, SagaState.PAID);
+        journal.append(3, 1003, 1, 20, SagaState.HELD);
+        journal.close();
+
+        //make the call (When)
+        journal = new SagaJournal(journalFile, false);
+        SeatInventory restarted = new SeatInventory(10);
+        PurchaseCoordinator coordinator = new PurchaseCoordinator(restarted, tps, srs, journal);
+        int recovered = coordinator.recover();
+
+        //results (Then)
+        assertEquals(2, recovered);
+        verify(tps).refund(1002, 40);
+        verify(tps, never()).refund(1003, 20);
+        assertEquals(7, restarted.available());
+        Map<Long, SagaJournal.Entry> compacted = journal.replay();
+        assertEquals(1, compacted.size());
+        assertEquals(3, compacted.get(SagaJournal.checkpointKey).getSeats());
+
+        coordinator.purchase(1004, 1, 20);
+        assertEquals(SagaState.CONFIRMED, journal.replay().get(4L).getState());
+    }
+
+    @Test // journal fails to record the payment - payment refunded and hold released rather than left unrecorded
+    public void unjournalledPaymentIsRefunded() throws Exception {
+        //setup (Given)
+        SagaJournal failing = spy(journal);
+        doThrow(new UncheckedIOException(new IOException("disk full")))
+                .when(failing).append(anyLong(), anyLong(), anyInt(), anyInt(), eq(SagaState.PAID));
+        PurchaseCoordinator coordinator = new PurchaseCoordinator(inventory, tps, srs, failing);
+
+        //make the call (When)
+        try {
+            coordinator.purchase(1001, 2, 40);
+            fail("journal failure should be rethrown");
+        } catch (UncheckedIOException expected) {
+        }
+
+        //results (Then)
+        verify(tps).refund(1001, 40);
+        verify(srs, never()).reserveSeat(anyLong(), anyInt());
+        assertEquals(10, inventory.available());
+        assertEquals(SagaState.REFUNDED, journal.replay().get(1L).getState());
+    }
+
+    @Test // refund refused - seats still released, the failure journalled and the refund retried on recovery
+    public void failedRefundIsRetried() throws Exception {
+        //setup (Given)
+        doThrow(new IllegalStateException("booking system down")).when(srs).reserveSeat(anyLong(), anyInt());
+        doThrow(new IllegalStateException("refunds unavailable")).doNothing().when(tps).refund(anyLong(), anyInt());
+        try {
+            ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 2));
+            fail("reservation failure should be rethrown");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(10, inventory.available());
+        assertEquals(SagaState.REFUND_FAILED, journal.replay().get(1L).getState());
+
+        //make the call (When)
+        int recovered = new PurchaseCoordinator(new SeatInventory(10), tps, srs, journal).recover();
+
+        //results (Then)
+        assertEquals(1, recovered);
+        verify(tps, times(2)).refund(1001, 40);
+        assertEquals(1, journal.replay().size());
+    }
+
+    @Test // payment overruns its deadline, then goes through - seats released at once, payment refunded when it lands
+    public void latePaymentIsRefunded() throws Exception {
+        //setup (Given)
+        CountDownLatch answer = new CountDownLatch(1);
+        doAnswer(invocation -> awaitIgnoringInterrupts(answer)).when(tps).makePayment(anyLong(), anyInt());
+        PurchaseCoordinator coordinator = new PurchaseCoordinator(inventory, resilient(tps), srs, journal);
+
+        //make the call (When)
+        try {
+            coordinator.purchase(1001, 2, 40);
+            fail("deadline should be exceeded");
+        } catch (GatewayUnavailableException e) {
+            assertEquals(GatewayUnavailableException.Reason.DEADLINE_EXCEEDED, e.getReason());
+        }
+        SagaState unknown = journal.replay().get(1L).getState();
+        answer.countDown();
+
+        //results (Then)
+        assertEquals(SagaState.PAYMENT_UNKNOWN, unknown);
+        assertEquals(10, inventory.available());
+        assertEquals(SagaState.REFUNDED, awaitSettled(1L));
+        verify(tps).refund(1001, 40);
+        verify(srs, never()).reserveSeat(anyLong(), anyInt());
+    }
+
+    @Test // payment overruns its deadline, then fails - released without a refund
+    public void latePaymentFailureIsReleased() throws Exception {
+        //setup (Given)
+        CountDownLatch answer = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            awaitIgnoringInterrupts(answer);
+            throw new IllegalStateException("card declined");
+        }).when(tps).makePayment(anyLong(), anyInt());
+        PurchaseCoordinator coordinator = new PurchaseCoordinator(inventory, resilient(tps), srs, journal);
+
+        //make the call (When)
+        try {
+            coordinator.purchase(1001, 2, 40);
+            fail("deadline should be exceeded");
+        } catch (GatewayUnavailableException expected) {
+        }
+        answer.countDown();
+
+        //results (Then)
+        assertEquals(SagaState.RELEASED, awaitSettled(1L));
+        verify(tps, never()).refund(anyLong(), anyInt());
+        assertEquals(10, inventory.available());
+    }
+
+    @Test // crash while a payment was unknown - refunded on recovery
+    public void unknownPaymentRefundedOnRecovery() throws Exception {
+        //setup (Given)
+        journal.append(1, 1001, 2, 40, SagaState.HELD);
+        journal.append(1, 1001, 2, 40, SagaState.PAYMENT_UNKNOWN);
+
+        //make the call (When)
+        int recovered = new PurchaseCoordinator(new SeatInventory(10), tps, srs, journal).recover();
+
+        //results (Then)
+        assertEquals(1, recovered);
+        verify(tps).refund(1001, 40);
+        assertEquals(1, journal.replay().size());
+    }
+
+    @Test // journal fails to record the hold - hold given back, nothing charged
+    public void unjournalledHoldIsReleased() throws Exception {
+        //setup (Given)
+        SagaJournal failing = spy(journal);
+        doThrow(new UncheckedIOException(new IOException("disk full")))
+                .when(failing).append(anyLong(), anyLong(), anyInt(), anyInt(), eq(SagaState.HELD));
+        PurchaseCoordinator coordinator = new PurchaseCoordinator(inventory, tps, srs, failing);
+
+        //make the call (When)
+        try {
+            coordinator.purchase(1001, 2, 40);
+            fail("journal failure should be rethrown");
+        } catch (UncheckedIOException expected) {
+        }
+
+        //results (Then)
+        verify(tps, never()).makePayment(anyLong(), anyInt());
+        assertEquals(10, inventory.available());
+    }
+
+    @Test // refund refused at runtime - retried on the retrier's schedule without waiting for a restart
+    public void failedRefundIsRetriedAtRuntime() throws Exception {
+        //setup (Given)
+        doThrow(new IllegalStateException("booking system down")).when(srs).reserveSeat(anyLong(), anyInt());
+        doThrow(new IllegalStateException("refunds unavailable")).doNothing().when(tps).refund(anyLong(), anyInt());
+        PurchaseCoordinator coordinator = new PurchaseCoordinator(inventory, tps, srs, journal);
+        try {
+            coordinator.purchase(1001, 2, 40);
+            fail("reservation failure should be rethrown");
+        } catch (IllegalStateException expected) {
+        }
+        int pending = coordinator.getPendingRefunds();
+
+        //make the call (When)
+        coordinator.start(5);
+        try {
+            //results (Then)
+            assertEquals(1, pending);
+            assertEquals(SagaState.REFUNDED, awaitSettled(1L));
+            verify(tps, times(2)).refund(1001, 40);
+            assertEquals(0, coordinator.getPendingRefunds());
+            assertEquals(0, coordinator.retryRefunds());
+        } finally {
+            coordinator.close();
+        }
+    }
+
+    @Test // many finished sagas - compaction leaves a checkpoint and the open sagas, replay still rebuilds the inventory
+    public void compactionKeepsOpenSagasAndSeats() throws Exception {
+        //setup (Given)
+        PurchaseCoordinator coordinator = new PurchaseCoordinator(new SeatInventory(1000), tps, srs, journal);
+        for (int i = 0; i < 200; i++) coordinator.purchase(1001, 1, 20);
+        journal.append(500, 1002, 2, 40, SagaState.PAID);
+        long before = Files.size(journalFile);
+
+        //make the call (When)
+        journal.compact();
+        coordinator.purchase(1003, 3, 60);
+
+        //results (Then)
+        assertTrue(Files.size(journalFile) < before / 100);
+        Map<Long, SagaJournal.Entry> sagas = journal.replay();
+        assertEquals(3, sagas.size());
+        assertEquals(200, sagas.get(SagaJournal.checkpointKey).getSeats());
+        assertEquals(500, sagas.get(SagaJournal.checkpointKey).getSagaId());
+        SeatInventory restarted = new SeatInventory(1000);
+        new PurchaseCoordinator(restarted, tps, srs, journal).recover();
+        assertEquals(1000 - 200 - 3, restarted.available());
+        verify(tps).refund(1002, 40);
+    }
+
+    private static TicketPaymentService resilient(TicketPaymentService ticketPaymentService) {
+        ManualClock clock = new ManualClock(Instant.parse("2026-10-18T18:00:00Z"));
+        return new ResilientTicketPaymentService(ticketPaymentService,
+                new ResilientGateway("payments", 4, Duration.ofMillis(20), new CircuitBreaker(100, Duration.ofSeconds(5), clock)),
+                new ResilientGateway("refunds", 4, Duration.ofMillis(20), new CircuitBreaker(100, Duration.ofSeconds(5), clock)));
+    }
+
+    // the gateway interrupts a call it gives up on, a real gateway would carry on regardless.
+    private static Object awaitIgnoringInterrupts(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return null;
+            } catch (InterruptedException e) {
+                // keep waiting
+            }
+        }
+    }
+
+    private SagaState awaitSettled(long sagaId) throws Exception {
+        SagaState state = journal.replay().get(sagaId).getState();
+        for (int i = 0; i < 500 && !state.isTerminal(); i++) {
+            Thread.sleep(10);
+            state = journal.replay().get(sagaId).getState();
+        }
+        return state;
+    }
+}
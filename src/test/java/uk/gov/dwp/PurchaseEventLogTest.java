@@ -0,0 +1,258 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.eventlog.EventSink;
+import uk.gov.dwp.uc.pairtest.eventlog.PurchaseEventLog;
+import uk.gov.dwp.uc.pairtest.eventlog.PurchaseEventLog.Level;
+import uk.gov.dwp.uc.pairtest.eventlog.RollingFileSink;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+public class PurchaseEventLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test // every outcome written as one JSON line
+    public void writesStructuredLines() throws Exception {
+        //setup (Given)
+        Path file = folder.getRoot().toPath().resolve("purchases.log");
+        PurchaseEventLog log = new PurchaseEventLog(new RollingFileSink(file, 1 << 20, 3), 1024, Level.INFO, 1);
+        TicketService ts = service(log);
+
+        //make the call (When)
+        ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 2), new TicketTypeRequest(Type.INFANT, 1));
+        reject(ts, new TicketTypeRequest(Type.CHILD, 1));
+        log.close();
+
+        //results (Then)
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0), lines.get(0).matches("\\{\"timestamp\":\\d+,\"level\":\"INFO\",\"event\":\"purchased\",\"accountId\":1001,"
+                + "\"adults\":2,\"children\":0,\"infants\":1,\"seats\":2,\"price\":40}"));
+        assertTrue(lines.get(1), lines.get(1).endsWith("\"level\":\"WARN\",\"event\":\"rejected\",\"accountId\":1001,"
+                + "\"adults\":0,\"children\":1,\"infants\":0,\"reason\":\"NOT_AT_LEAST_ONE_ADULT\"}"));
+        assertEquals(2, log.getWritten());
+        assertEquals(0, log.getDropped());
+    }
+
+    @Test // WARN level skips purchases but keeps rejections
+    public void levelFiltersEvents() throws Exception {
+        //setup (Given)
+        CountingSink sink = new CountingSink(0);
+        PurchaseEventLog log = new PurchaseEventLog(sink, 1024, Level.WARN, 1);
+        TicketService ts = service(log);
+
+        //make the call (When)
+        for (int i = 0; i < 10; i++) ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 1));
+        reject(ts, new TicketTypeRequest(Type.INFANT, 1));
+        log.close();
+
+        //results (Then)
+        assertEquals(1, log.getWritten());
+        assertEquals(1, sink.lines);
+    }
+
+    @Test // sampling 1 in 10 keeps roughly a tenth of purchases
+    public void samplesPurchases() throws Exception {
+        //setup (Given)
+        CountingSink sink = new CountingSink(0);
+        PurchaseEventLog log = new PurchaseEventLog(sink, 1 << 16, Level.INFO, 10);
+
+        //make the call (When)
+        for (int i = 0; i < 20_000; i++) log.purchased(1001, 1, 0, 0, 1, 20);
+        log.close();
+
+        //results (Then)
+        assertTrue(log.getWritten() + " kept", log.getWritten() > 1_500 && log.getWritten() < 2_500);
+    }
+
+    @Test // sink takes 200ms a write - purchases do not wait for it, overflow is dropped and counted
+    public void slowSinkDoesNotStallPurchases() throws Exception {
+        //setup (Given)
+        CountingSink sink = new CountingSink(200);
+        PurchaseEventLog log = new PurchaseEventLog(sink, 64, Level.INFO, 1);
+        TicketService ts = service(log);
+
+        //make the call (When)
+        long slowest = 0;
+        for (int i = 0; i < 10_000; i++) {
+            long started = System.nanoTime();
+            ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 1));
+            slowest = Math.max(slowest, System.nanoTime() - started);
+        }
+        log.close();
+
+        //results (Then)
+        assertTrue("slowest purchase took " + slowest + "ns", slowest < TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(log.getDropped() > 0);
+        assertEquals(10_000, log.getWritten() + log.getDropped());
+        assertEquals(log.getWritten(), sink.lines);
+    }
+
+    @Test // sink hangs - close gives up after its timeout instead of waiting for ever, the unwritten events dropped
+    public void closeDoesNotWaitForStuckSink() throws Exception {
+        //setup (Given)
+        CountingSink sink = new CountingSink(TimeUnit.MINUTES.toMillis(10));
+        PurchaseEventLog log = new PurchaseEventLog(sink, 64, Level.INFO, 1);
+        TicketService ts = service(log);
+        for (int i = 0; i < 10; i++) ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 1));
+
+        //make the call (When)
+        long started = System.nanoTime();
+        boolean drained = log.close(100, TimeUnit.MILLISECONDS);
+        long took = System.nanoTime() - started;
+
+        //results (Then)
+        assertFalse(drained);
+        assertTrue("close took " + took + "ns", took < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(0, log.getWritten());
+    }
+
+    @Test // file rolls over at the size limit, oldest beyond the limit deleted
+    public void rollsFiles() throws Exception {
+        //setup (Given)
+        Path file = folder.getRoot().toPath().resolve("purchases.log");
+        RollingFileSink sink = new RollingFileSink(file, 10, 3);
+
+        //make the call (When)
+        for (int i = 0; i < 5; i++) sink.write(ByteBuffer.wrap(("line " + i + " of the log\n").getBytes()));
+        sink.close();
+
+        //results (Then)
+        assertEquals("line 4 of the log", Files.readAllLines(file).get(0));
+        assertEquals("line 3 of the log", Files.readAllLines(file.resolveSibling("purchases.log.1")).get(0));
+        assertEquals("line 2 of the log", Files.readAllLines(file.resolveSibling("purchases.log.2")).get(0));
+        assertTrue(Files.notExists(file.resolveSibling("purchases.log.3")));
+    }
+
+    @Test // new file cannot be opened at a roll - writes carry on in the old one, the next roll only retries the open
+    public void rollSurvivesFailedOpen() throws Exception {
+        for (int maxFiles : new int[] {1, 3}) {
+            //setup (Given)
+            Path file = folder.getRoot().toPath().resolve("purchases-" + maxFiles + ".log");
+            FailingOpenSink sink = new FailingOpenSink(file, 10, maxFiles);
+            sink.write(ByteBuffer.wrap("line 0 of the log\n".getBytes()));
+
+            //make the call (When)
+            sink.failing = true;
+            try {
+                sink.write(ByteBuffer.wrap("line 1 of the log\n".getBytes()));
+                fail("open failure should be thrown");
+            } catch (IOException expected) {
+            }
+            try {
+                sink.write(ByteBuffer.wrap("line 1 of the log\n".getBytes()));
+                fail("open failure should be thrown");
+            } catch (IOException e) {
+                assertEquals("disk unavailable", e.getMessage());
+            }
+            sink.failing = false;
+            sink.write(ByteBuffer.wrap("line 2 of the log\n".getBytes()));
+            sink.write(ByteBuffer.wrap("line 3 of the log\n".getBytes()));
+            sink.close();
+
+            //results (Then)
+            assertEquals("line 3 of the log", Files.readAllLines(file).get(0));
+            if (maxFiles > 1) {
+                assertEquals("line 2 of the log", Files.readAllLines(file.resolveSibling(file.getFileName() + ".1")).get(0));
+                assertEquals("line 0 of the log", Files.readAllLines(file.resolveSibling(file.getFileName() + ".2")).get(0));
+            }
+        }
+    }
+
+    @Test // purchases after close - not written, counted as dropped
+    public void eventsAfterCloseAreDropped() throws Exception {
+        //setup (Given)
+        CountingSink sink = new CountingSink(0);
+        PurchaseEventLog log = new PurchaseEventLog(sink, 64, Level.INFO, 1);
+        TicketService ts = service(log);
+        ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 1));
+        log.close();
+
+        //make the call (When)
+        for (int i = 0; i < 3; i++) ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 1));
+
+        //results (Then)
+        assertEquals(1, log.getWritten());
+        assertEquals(3, log.getDropped());
+        assertEquals(1, sink.lines);
+    }
+
+    private static TicketService service(PurchaseEventLog log) {
+        return TicketServiceImpl.builder().ticketPaymentService(new LatencyTicketPaymentService(0))
+                .seatReservationService(new LatencySeatReservationService(0)).purchaseListener(log).build();
+    }
+
+    private static void reject(TicketService ts, TicketTypeRequest request) {
+        try {
+            ts.purchaseTickets(1001, request);
+            fail("order should be rejected");
+        } catch (InvalidPurchaseException expected) {
+        }
+    }
+
+    // stands in for a slow disk or console, counts the lines it is given.
+    private static class CountingSink implements EventSink {
+        private final long latencyMillis;
+        private volatile long lines;
+
+        CountingSink(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public void write(ByteBuffer batch) throws IOException {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            long count = 0;
+            while (batch.hasRemaining()) {
+                if (batch.get() == '\n') count++;
+            }
+            lines += count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // a disk that refuses to open files while failing is set.
+    private static class FailingOpenSink extends RollingFileSink {
+        private volatile boolean failing;
+
+        FailingOpenSink(Path file, long maxBytes, int maxFiles) throws IOException {
+            super(file, maxBytes, maxFiles);
+        }
+
+        @Override
+        protected FileChannel open(Path file) throws IOException {
+            if (failing) throw new IOException("disk unavailable");
+            return super.open(file);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.stub.ManualClock;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.history.AccountPurchaseHistory;
+import uk.gov.dwp.uc.pairtest.journal.OrderJournal;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PurchaseHistoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    TicketPaymentService tps;
+
+    @Mock
+    SeatReservationService srs;
+
+    ManualClock clock;
+    AccountPurchaseHistory history;
+    TicketService ts;
+
+    @Before
+    public void setUp() {
+        clock = new ManualClock(Instant.parse("2026-10-18T18:00:00Z"));
+        history = new AccountPurchaseHistory(30, Duration.ofDays(1), 1000, 8, clock);
+        ts = TicketServiceImpl.builder().ticketPaymentService(tps).seatReservationService(srs).purchaseHistory(history).build();
+    }
+
+    @Test // two orders of 20 in a day - each within the per order limit, the second takes the account over 30
+    public void capHoldsAcrossCalls() {
+        //setup (Given)
+        ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 20));
+
+        //make the call (When)
+        try {
+            ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 20));
+            fail("second order should take the account over its cap");
+        } catch (InvalidPurchaseException e) {
+            //results (Then)
+            assertEquals(InvalidPurchaseException.Reason.ACCOUNT_LIMIT_REACHED, e.getReason());
+        }
+        ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 10));
+        ts.purchaseTickets(2002, new TicketTypeRequest(Type.ADULT, 20));
+        verify(tps, times(1)).makePayment(1001, 400);
+        assertEquals(30, history.ticketsInWindow(1001));
+        assertEquals(1, history.getRejected());
+    }
+
+    @Test // tickets bought a day ago no longer count, tickets bought since still do
+    public void windowRolls() {
+        //setup (Given)
+        assertTrue(history.tryRecord(1001, 20));
+        clock.advance(Duration.ofHours(12));
+        assertTrue(history.tryRecord(1001, 10));
+
+        //make the call (When)
+        boolean beforeDay = history.tryRecord(1001, 1);
+        clock.advance(Duration.ofHours(12));
+        int afterDay = history.ticketsInWindow(1001);
+
+        //results (Then)
+        assertFalse(beforeDay);
+        assertEquals(10, afterDay);
+        assertTrue(history.tryRecord(1001, 20));
+        assertFalse(history.tryRecord(1001, 1));
+    }
+
+    @Test // payment fails - the tickets counted for the order are taken back, invalid orders are never counted
+    public void failedPurchaseIsRefunded() {
+        //setup (Given)
+        doThrow(new IllegalStateException("payment gateway down")).when(tps).makePayment(anyLong(), anyInt());
+
+        //make the call (When)
+        try {
+            ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 20));
+            fail("payment should fail");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            ts.purchaseTickets(1001, new TicketTypeRequest(Type.INFANT, 5));
+            fail("infant only order should be rejected");
+        } catch (InvalidPurchaseException expected) {
+        }
+
+        //results (Then)
+        assertEquals(0, history.ticketsInWindow(1001));
+    }
+
+    @Test // more purchases than the ring holds - the oldest are folded forward, so they expire later rather than sooner
+    public void fullRingFoldsOldest() {
+        //setup (Given)
+        AccountPurchaseHistory small = new AccountPurchaseHistory(100, Duration.ofHours(1), 10, 2, clock);
+        small.tryRecord(1001, 5);
+        clock.advance(Duration.ofMinutes(10));
+        small.tryRecord(1001, 6);
+        clock.advance(Duration.ofMinutes(10));
+
+        //make the call (When)
+        small.tryRecord(1001, 7);
+        clock.advance(Duration.ofMinutes(45));
+        int afterFirst = small.ticketsInWindow(1001);
+        clock.advance(Duration.ofMinutes(10));
+        int afterSecond = small.ticketsInWindow(1001);
+
+        //results (Then)
+        assertEquals(1, small.getFolds());
+        assertEquals(18, afterFirst);
+        assertEquals(7, afterSecond);
+    }
+
+    @Test // a restart rebuilds the window from the journal - purchases count, rejections do not
+    public void rebuiltFromJournal() throws Exception {
+        //setup (Given)
+        Path directory = folder.newFolder("journal").toPath();
+        try (OrderJournal journal = new OrderJournal(directory, 16, 0)) {
+            TicketService journalled = TicketServiceImpl.builder().ticketPaymentService(tps).seatReservationService(srs)
+                    .purchaseListener(journal).build();
+            for (int i = 0; i < 20; i++) journalled.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 1));
+            journalled.purchaseTickets(2002, new TicketTypeRequest(Type.ADULT, 2), new TicketTypeRequest(Type.CHILD, 3));
+            try {
+                journalled.purchaseTickets(3003, new TicketTypeRequest(Type.CHILD, 3));
+            } catch (InvalidPurchaseException expected) {
+            }
+        }
+        ManualClock now = new ManualClock(Instant.now());
+        AccountPurchaseHistory restarted = new AccountPurchaseHistory(30, Duration.ofDays(1), 1000, 8, now);
+
+        //make the call (When)
+        long replayed = restarted.rebuild(directory);
+
+        //results (Then)
+        assertEquals(21, replayed);
+        assertEquals(20, restarted.ticketsInWindow(1001));
+        assertEquals(5, restarted.ticketsInWindow(2002));
+        assertEquals(0, restarted.ticketsInWindow(3003));
+        assertFalse(restarted.tryRecord(1001, 11));
+        now.advance(Duration.ofDays(1));
+        assertEquals(0, restarted.ticketsInWindow(1001));
+    }
+
+    @Test // far more accounts than the table holds - memory stays fixed, accounts quiet for a window are reused first
+    public void tableSizeIsFixed() {
+        //setup (Given)
+        AccountPurchaseHistory small = new AccountPurchaseHistory(30, Duration.ofMinutes(1), 1024, 8, clock);
+        long bytes = small.getTableBytes();
+
+        //make the call (When)
+        for (long account = 1; account <= 100_000; account++) {
+            if (account % 500 == 0) clock.advance(Duration.ofMinutes(1));
+            assertTrue(small.tryRecord(account, 1));
+        }
+
+        //results (Then)
+        assertEquals(bytes, small.getTableBytes());
+        assertEquals(2048 * 48, bytes);
+        assertEquals(0, small.getEvictions());
+        assertEquals(1, small.ticketsInWindow(100_000));
+    }
+}
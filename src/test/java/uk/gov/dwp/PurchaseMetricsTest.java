@@ -0,0 +1,172 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.metrics.LatencyHistogram;
+import uk.gov.dwp.uc.pairtest.metrics.PurchaseMetrics;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PurchaseMetricsTest {
+
+    @Mock
+    TicketPaymentService tps;
+
+    @Mock
+    SeatReservationService srs;
+
+    PurchaseMetrics metrics;
+    TicketService ts;
+
+    @Before
+    public void setUp() {
+        metrics = new PurchaseMetrics();
+        ts = TicketServiceImpl.builder().ticketPaymentService(tps).seatReservationService(srs).purchaseMetrics(metrics).build();
+    }
+
+    @Test // each outcome counted, gateways timed only when called
+    public void countsEveryOutcome() {
+        //setup (Given)
+        ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 2));
+        ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 1));
+        reject(new TicketTypeRequest(Type.INFANT, 1));
+        reject(new TicketTypeRequest(Type.ADULT, 21));
+        doThrow(new IllegalStateException("gateway down")).when(tps).makePayment(anyLong(), anyInt());
+        try {
+            ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 1));
+            fail("gateway failure should be rethrown");
+        } catch (IllegalStateException expected) {
+        }
+
+        //make the call (When)
+        PurchaseMetrics.Snapshot snapshot = metrics.snapshot();
+
+        //results (Then)
+        assertEquals(2, snapshot.getPurchased());
+        assertEquals(1, snapshot.getFailed());
+        assertEquals(2, snapshot.getRejected());
+        assertEquals(1, snapshot.getRejected(InvalidPurchaseException.Reason.NOT_AT_LEAST_ONE_ADULT));
+        assertEquals(1, snapshot.getRejected(InvalidPurchaseException.Reason.TOO_MANY_TICKETS));
+        assertEquals(5, snapshot.getValidation().getCount());
+        assertEquals(2, snapshot.getPayment().getCount());
+        assertEquals(2, snapshot.getReservation().getCount());
+    }
+
+    @Test // percentiles reported to within the 3% bucket width
+    public void histogramPercentiles() {
+        //setup (Given)
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100_000; nanos++) histogram.record(nanos * 1000);
+
+        //make the call (When)
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        //results (Then)
+        assertEquals(100_000, snapshot.getCount());
+        assertWithin(50_000_000, snapshot.getP50Nanos());
+        assertWithin(99_000_000, snapshot.getP99Nanos());
+        assertWithin(100_000_000, snapshot.getMaxNanos());
+        assertWithin(50_000_500, snapshot.getMeanNanos());
+    }
+
+    @Test // small values are exact
+    public void histogramSmallValuesExact() {
+        //setup (Given)
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(7);
+        histogram.record(31);
+
+        //results (Then)
+        assertEquals(7, histogram.snapshot().valueAtPercentile(50));
+        assertEquals(31, histogram.snapshot().getMaxNanos());
+    }
+
+    @Test // 4 threads recording at once into their own stripes - the snapshot counts every value once
+    public void histogramConcurrentRecording() throws Exception {
+        //setup (Given)
+        LatencyHistogram histogram = new LatencyHistogram(4);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (long nanos = 1; nanos <= 100_000; nanos++) histogram.record(nanos);
+            }));
+        }
+
+        //make the call (When)
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        //results (Then)
+        assertEquals(400_000, snapshot.getCount());
+        assertWithin(50_000, snapshot.getP50Nanos());
+        assertWithin(100_000, snapshot.getMaxNanos());
+        assertEquals(50_000, snapshot.getMeanNanos());
+    }
+
+    @Test(expected = IllegalArgumentException.class) // stripes must be a power of two
+    public void histogramStripesPowerOfTwo() {
+        new LatencyHistogram(3);
+    }
+
+    @Test // readable over JMX as open types
+    public void exposedOverJmx() throws Exception {
+        //setup (Given)
+        ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 2));
+        reject(new TicketTypeRequest(Type.INFANT, 1));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = metrics.register("test");
+
+        try {
+            //make the call (When)
+            long purchased = (Long) server.getAttribute(name, "Purchased");
+            TabularData rejected = (TabularData) server.getAttribute(name, "Rejected");
+            CompositeData payment = (CompositeData) server.getAttribute(name, "PaymentLatency");
+
+            //results (Then)
+            assertEquals(1, purchased);
+            assertEquals(1L, rejected.get(new Object[] {"NOT_AT_LEAST_ONE_ADULT"}).get("value"));
+            assertEquals(1L, payment.get("count"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    private void reject(TicketTypeRequest request) {
+        try {
+            ts.purchaseTickets(1001, request);
+            fail("order should be rejected");
+        } catch (InvalidPurchaseException expected) {
+        }
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " not within 3% of " + expected, Math.abs(actual - expected) <= expected * 0.03);
+    }
+}
@@ -0,0 +1,236 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import uk.gov.dwp.loadtest.LoadGenerator;
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.server.PurchaseServer;
+import uk.gov.dwp.uc.pairtest.wire.PurchaseRequestFlyweight;
+import uk.gov.dwp.uc.pairtest.wire.PurchaseResultFlyweight;
+import uk.gov.dwp.uc.pairtest.wire.Wire;
+
+public class PurchaseServerTest {
+
+    LatencyTicketPaymentService payments = new LatencyTicketPaymentService(0);
+    PurchaseServer server;
+    PurchaseRequestFlyweight request = new PurchaseRequestFlyweight();
+    PurchaseResultFlyweight result = new PurchaseResultFlyweight();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new PurchaseServer(new TicketServiceImpl(payments, new LatencySeatReservationService(0)),
+                new InetSocketAddress("127.0.0.1", 0), 2);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test // pipelined - requests dribbled a byte at a time are answered in order
+    public void pipelinedInOrder() throws IOException {
+        //setup (Given)
+        ByteBuffer requests = ByteBuffer.allocate(1024);
+        for (int i = 1; i <= 10; i++) {
+            request.wrapForEncode(requests, requests.position()).accountId(i).adults(i % 3).infants(1);
+            requests.position(requests.position() + request.encodedLength());
+        }
+        requests.flip();
+
+        try (SocketChannel channel = SocketChannel.open(server.getAddress())) {
+            //make the call (When)
+            while (requests.hasRemaining()) {
+                channel.write(requests.slice(requests.position(), 1));
+                requests.position(requests.position() + 1);
+            }
+            ByteBuffer results = readResults(channel, 10);
+
+            //results (Then)
+            for (int i = 1; i <= 10; i++) {
+                result.wrap(results, results.position());
+                assertEquals(i, result.accountId());
+                if (i % 3 == 0) assertEquals(InvalidPurchaseException.Reason.NOT_AT_LEAST_ONE_ADULT, result.reason());
+                else assertEquals(20 * (i % 3), result.price());
+                results.position(results.position() + result.encodedLength());
+            }
+        }
+        assertEquals(10, server.getRequests());
+        assertEquals(7, payments.getPayments());
+    }
+
+    @Test // pipelined past the output buffer - requests left waiting for room are answered without more being sent
+    public void pipelinedBeyondOutputBuffer() throws IOException {
+        for (String key : new String[] {null, "order-0123456789-0123456789-01234567"}) {
+            //setup (Given)
+            int count = key == null ? 650 : 268;
+            ByteBuffer requests = ByteBuffer.allocate(count * 64);
+            for (int i = 0; i < count; i++) {
+                request.wrapForEncode(requests, requests.position()).accountId(1 + i).adults(1);
+                if (key != null) request.key(key.substring(0, 30) + (100_000 + i));
+                requests.position(requests.position() + request.encodedLength());
+            }
+            requests.flip();
+
+            try (SocketChannel channel = SocketChannel.open(server.getAddress())) {
+                //make the call (When)
+                while (requests.hasRemaining()) channel.write(requests);
+                ByteBuffer results = readResults(channel, count, key == null ? 0 : key.length());
+
+                //results (Then)
+                for (int i = 0; i < count; i++) {
+                    result.wrap(results, results.position());
+                    assertEquals(1 + i, result.accountId());
+                    assertTrue(result.isSuccess());
+                    results.position(results.position() + result.encodedLength());
+                }
+            }
+        }
+        assertEquals(650 + 268, server.getRequests());
+    }
+
+    @Test // slow gateway - a connection waiting on it does not hold up another connection on the same loop
+    public void slowGatewayHoldsUpOnlyItsConnection() throws Exception {
+        //setup (Given)
+        CountDownLatch paying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TicketPaymentService gateway = mock(TicketPaymentService.class);
+        doAnswer(invocation -> {
+            paying.countDown();
+            release.await();
+            return null;
+        }).when(gateway).makePayment(eq(666L), anyInt());
+        try (PurchaseServer single = new PurchaseServer(new TicketServiceImpl(gateway, new LatencySeatReservationService(0)),
+                new InetSocketAddress("127.0.0.1", 0), 1);
+                SocketChannel slow = SocketChannel.open(single.getAddress());
+                SocketChannel fast = SocketChannel.open(single.getAddress())) {
+            ByteBuffer one = ByteBuffer.allocate(64);
+            request.wrapForEncode(one, 0).accountId(666).adults(1);
+            slow.write(one.limit(request.encodedLength()));
+            assertTrue(paying.await(5, TimeUnit.SECONDS));
+
+            //make the call (When)
+            request.wrapForEncode(one.clear(), 0).accountId(1001).adults(1);
+            fast.write(one.limit(request.encodedLength()));
+            result.wrap(readResults(fast, 1), 0);
+
+            //results (Then)
+            assertEquals(1001, result.accountId());
+            assertTrue(result.isSuccess());
+            release.countDown();
+            result.wrap(readResults(slow, 1), 0);
+            assertEquals(666, result.accountId());
+        }
+    }
+
+    @Test // malformed - a request the server cannot decode closes only that connection
+    public void malformedClosesConnection() throws Exception {
+        try (SocketChannel bad = SocketChannel.open(server.getAddress()); SocketChannel good = SocketChannel.open(server.getAddress())) {
+            //make the call (When)
+            bad.write(ByteBuffer.wrap(new byte[] {1, 9, 0, 20, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0}));
+            ByteBuffer ok = ByteBuffer.allocate(64);
+            request.wrapForEncode(ok, 0).accountId(1001).adults(1);
+            good.write(ok.limit(request.encodedLength()));
+
+            //results (Then)
+            assertEquals(-1, bad.read(ByteBuffer.allocate(64)));
+            result.wrap(readResults(good, 1), 0);
+            assertTrue(result.isSuccess());
+        }
+        assertEquals(1, server.getMalformed());
+    }
+
+    @Test // backpressure - a client that stops reading stops being read from, and is answered in full once it reads
+    public void backpressure() throws Exception {
+        //setup (Given)
+        int total = 400_000;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (SocketChannel channel = SocketChannel.open()) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, 4096);
+            channel.connect(server.getAddress());
+            ByteBuffer one = ByteBuffer.allocate(64);
+            request.wrapForEncode(one, 0).accountId(1001).adults(1);
+            int length = request.encodedLength();
+            ByteBuffer requests = ByteBuffer.allocate(length * total);
+            for (int i = 0; i < total; i++) requests.put(one.duplicate().limit(length));
+            requests.flip();
+
+            //make the call (When)
+            Future<?> writer = executor.submit(() -> {
+                while (requests.hasRemaining()) channel.write(requests);
+                return null;
+            });
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (server.getPauses() == 0 && System.nanoTime() < deadline) Thread.sleep(5);
+            // once the socket buffers have filled, nothing more is answered until the client reads.
+            Thread.sleep(100);
+            long answeredWhilePaused = server.getRequests();
+            Thread.sleep(50);
+
+            //results (Then)
+            assertTrue(server.getPauses() > 0);
+            assertTrue(answeredWhilePaused < total);
+            assertEquals(answeredWhilePaused, server.getRequests());
+            readResults(channel, total);
+            writer.get(10, TimeUnit.SECONDS);
+            assertEquals(total, server.getRequests());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test // load generator - reports what the server answered
+    public void loadGenerator() throws Exception {
+        //make the call (When)
+        LoadGenerator.Report report = new LoadGenerator(server.getAddress(), 4, 8).run(Duration.ofMillis(100), Duration.ofMillis(300));
+
+        //results (Then)
+        assertTrue(report.getOrders() > 0);
+        assertEquals(report.getOrders(), report.getPurchased());
+        assertEquals(report.getOrders(), report.getLatency().getCount());
+        assertTrue(report.getOrders() <= server.getRequests());
+        assertTrue(report.getLatency().getP99Nanos() >= report.getLatency().getP50Nanos());
+    }
+
+    private static ByteBuffer readResults(SocketChannel channel, int count) throws IOException {
+        return readResults(channel, count, 0);
+    }
+
+    private static ByteBuffer readResults(SocketChannel channel, int count, int keyLength) throws IOException {
+        ByteBuffer results = ByteBuffer.allocate(count * (Wire.headerLength + PurchaseResultFlyweight.blockLength + 1 + keyLength));
+        int read = 0;
+        int at = 0;
+        while (read < count) {
+            if (channel.read(results) < 0) throw new IOException("closed after " + read + " results");
+            ByteBuffer received = results.duplicate().flip();
+            for (int length; (length = Wire.frameLength(received, at)) > 0 && at + length <= received.limit(); at += length) {
+                read++;
+            }
+        }
+        return results.flip();
+    }
+}
@@ -0,0 +1,151 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.stub.ManualClock;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.ratelimit.AccountRateLimiter;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RateLimiterTest {
+
+    @Mock
+    TicketPaymentService tps;
+
+    @Mock
+    SeatReservationService srs;
+
+    ManualClock clock;
+    AccountRateLimiter limiter;
+    TicketService ts;
+
+    @Before
+    public void setUp() {
+        clock = new ManualClock(Instant.parse("2026-10-18T18:00:00Z"));
+        limiter = new AccountRateLimiter(3, 1, 1000, clock);
+        ts = TicketServiceImpl.builder().ticketPaymentService(tps).seatReservationService(srs).rateLimiter(limiter).build();
+    }
+
+    @Test // burst of 3 allowed, the 4th is rejected before payment
+    public void burstThenRejected() {
+        //make the call (When)
+        for (int i = 0; i < 3; i++) ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 1));
+        try {
+            ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 1));
+            fail("4th purchase should be rate limited");
+        } catch (InvalidPurchaseException e) {
+            //results (Then)
+            assertEquals(InvalidPurchaseException.Reason.RATE_LIMITED, e.getReason());
+        }
+        verify(tps, times(3)).makePayment(1001, 20);
+        assertEquals(1, limiter.getRejected());
+    }
+
+    @Test // an empty bucket refills at 1 a second
+    public void refillsOverTime() {
+        //setup (Given)
+        for (int i = 0; i < 3; i++) assertTrue(limiter.tryAcquire(1001));
+        assertFalse(limiter.tryAcquire(1001));
+
+        //make the call (When)
+        clock.advance(Duration.ofMillis(999));
+        boolean early = limiter.tryAcquire(1001);
+        clock.advance(Duration.ofMillis(1));
+        boolean onTime = limiter.tryAcquire(1001);
+
+        //results (Then)
+        assertFalse(early);
+        assertTrue(onTime);
+        assertFalse(limiter.tryAcquire(1001));
+    }
+
+    @Test // one busy account does not limit another
+    public void accountsAreIndependent() {
+        //setup (Given)
+        for (int i = 0; i < 3; i++) limiter.tryAcquire(1001);
+
+        //make the call (When)
+        boolean other = limiter.tryAcquire(2002);
+
+        //results (Then)
+        assertFalse(limiter.tryAcquire(1001));
+        assertTrue(other);
+    }
+
+    @Test // invalid orders use up the allowance too
+    public void invalidOrdersCount() {
+        //setup (Given)
+        for (int i = 0; i < 3; i++) {
+            try {
+                ts.purchaseTickets(1001, new TicketTypeRequest(Type.INFANT, 1));
+                fail("infant only order should be rejected");
+            } catch (InvalidPurchaseException expected) {
+            }
+        }
+
+        //make the call (When)
+        try {
+            ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 1));
+            fail("allowance used up by invalid orders");
+        } catch (InvalidPurchaseException e) {
+            //results (Then)
+            assertEquals(InvalidPurchaseException.Reason.RATE_LIMITED, e.getReason());
+        }
+    }
+
+    @Test // rate limited idempotent purchase is not remembered, the retry goes through once refilled
+    public void rateLimitedKeyCanBeRetried() {
+        //setup (Given)
+        for (int i = 0; i < 3; i++) limiter.tryAcquire(1001);
+        try {
+            ts.purchaseTickets("order-1", 1001, new TicketTypeRequest(Type.ADULT, 1));
+            fail("should be rate limited");
+        } catch (InvalidPurchaseException expected) {
+        }
+
+        //make the call (When)
+        clock.advance(Duration.ofSeconds(1));
+        ts.purchaseTickets("order-1", 1001, new TicketTypeRequest(Type.ADULT, 1));
+
+        //results (Then)
+        verify(tps, times(1)).makePayment(1001, 20);
+    }
+
+    @Test // far more accounts than the table holds - memory stays fixed, idle buckets are reused
+    public void tableSizeIsFixed() {
+        //setup (Given)
+        AccountRateLimiter small = new AccountRateLimiter(1, 1, 1024, clock);
+        long bytes = small.getTableBytes();
+
+        //make the call (When)
+        for (long account = 1; account <= 1_000_000; account++) {
+            assertTrue(small.tryAcquire(account));
+            if (account % 1000 == 0) clock.advance(Duration.ofMillis(1));
+        }
+
+        //results (Then)
+        assertEquals(bytes, small.getTableBytes());
+        assertTrue(small.getEvictions() > 990_000);
+        assertEquals(0, small.getRejected());
+    }
+}
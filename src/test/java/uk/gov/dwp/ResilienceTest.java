@@ -0,0 +1,300 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.dwp.stub.FaultInjectingGateway;
+import uk.gov.dwp.stub.ManualClock;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.exception.GatewayUnavailableException;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.resilience.CircuitBreaker;
+import uk.gov.dwp.uc.pairtest.resilience.ResilientGateway;
+import uk.gov.dwp.uc.pairtest.resilience.ResilientSeatReservationService;
+import uk.gov.dwp.uc.pairtest.resilience.ResilientTicketPaymentService;
+
+public class ResilienceTest {
+
+    ManualClock clock;
+    FaultInjectingGateway payments;
+    FaultInjectingGateway seats;
+    ResilientGateway paymentGateway;
+    ResilientGateway refundGateway;
+    ResilientGateway seatGateway;
+    TicketService ts;
+
+    @Before
+    public void setUp() {
+        clock = new ManualClock(Instant.parse("2026-10-18T18:00:00Z"));
+        payments = new FaultInjectingGateway();
+        seats = new FaultInjectingGateway();
+        paymentGateway = new ResilientGateway("payments", 4, Duration.ofMillis(50), new CircuitBreaker(3, Duration.ofSeconds(5), clock));
+        refundGateway = new ResilientGateway("refunds", 4, Duration.ofMillis(50), new CircuitBreaker(3, Duration.ofSeconds(5), clock));
+        seatGateway = new ResilientGateway("seats", 4, Duration.ofMillis(50), new CircuitBreaker(3, Duration.ofSeconds(5), clock));
+        ts = TicketServiceImpl.builder()
+                .ticketPaymentService(new ResilientTicketPaymentService(payments, paymentGateway, refundGateway))
+                .seatReservationService(new ResilientSeatReservationService(seats, seatGateway)).build();
+    }
+
+    @Test // 3 failures in a row open the breaker, later calls fail fast without reaching the gateway
+    public void breakerOpensAfterFailures() {
+        //setup (Given)
+        payments.failing();
+        for (int i = 0; i < 3; i++) {
+            try {
+                purchase();
+                fail("gateway error should be rethrown");
+            } catch (IllegalStateException expected) {
+            }
+        }
+
+        //make the call (When)
+        GatewayUnavailableException e = unavailable();
+
+        //results (Then)
+        assertEquals(GatewayUnavailableException.Reason.CIRCUIT_OPEN, e.getReason());
+        assertEquals("payments", e.getGateway());
+        assertEquals(3, payments.getCalls());
+        assertEquals(0, seats.getCalls());
+        assertEquals(CircuitBreaker.State.OPEN, paymentGateway.getBreaker().getState());
+    }
+
+    @Test // after the open period one probe goes through, success closes the breaker
+    public void probeClosesBreaker() {
+        //setup (Given)
+        openPaymentBreaker();
+        payments.healthy();
+
+        //make the call (When)
+        clock.advance(Duration.ofSeconds(5));
+        purchase();
+
+        //results (Then)
+        assertEquals(CircuitBreaker.State.CLOSED, paymentGateway.getBreaker().getState());
+        purchase();
+        assertEquals(5, payments.getCalls());
+    }
+
+    @Test // a failed probe opens the breaker for another period
+    public void failedProbeReopens() {
+        //setup (Given)
+        openPaymentBreaker();
+
+        //make the call (When)
+        clock.advance(Duration.ofSeconds(5));
+        try {
+            purchase();
+            fail("probe should fail");
+        } catch (IllegalStateException expected) {
+        }
+
+        //results (Then)
+        assertEquals(CircuitBreaker.State.OPEN, paymentGateway.getBreaker().getState());
+        assertEquals(GatewayUnavailableException.Reason.CIRCUIT_OPEN, unavailable().getReason());
+        assertEquals(4, payments.getCalls());
+    }
+
+    @Test // only one probe at a time while half open
+    public void singleProbeWhileHalfOpen() {
+        //setup (Given)
+        CircuitBreaker breaker = new CircuitBreaker(1, Duration.ofSeconds(5), clock);
+        breaker.tryAcquire();
+        breaker.onFailure();
+        clock.advance(Duration.ofSeconds(5));
+
+        //make the call (When)
+        boolean probe = breaker.tryAcquire();
+        boolean second = breaker.tryAcquire();
+
+        //results (Then)
+        assertTrue(probe);
+        assertEquals(false, second);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test // the caller is interrupted while the probe is in the gateway - the next call becomes the probe
+    public void interruptedProbeHandsBackSlot() throws Exception {
+        //setup (Given)
+        CircuitBreaker breaker = new CircuitBreaker(1, Duration.ofSeconds(5), clock);
+        ResilientGateway gateway = new ResilientGateway("payments", 4, Duration.ofSeconds(10), breaker);
+        breaker.tryAcquire();
+        breaker.onFailure();
+        clock.advance(Duration.ofSeconds(5));
+        payments.hung();
+        Thread caller = new Thread(() -> {
+            try {
+                gateway.call(() -> payments.makePayment(1001, 25));
+            } catch (GatewayUnavailableException expected) {
+            }
+        });
+        caller.start();
+        while (payments.getInProgress() < 1) Thread.sleep(1);
+
+        //make the call (When)
+        caller.interrupt();
+        caller.join(5000);
+
+        //results (Then)
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        payments.healthy();
+        gateway.call(() -> payments.makePayment(1001, 25));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test // sold out screenings are answers from the gateway, they never open the breaker
+    public void businessRejectionsDoNotTripBreaker() {
+        //setup (Given)
+        ResilientGateway gateway = new ResilientGateway("seats", 4, Duration.ofMillis(50), new CircuitBreaker(1, Duration.ofSeconds(5), clock));
+
+        //make the call (When)
+        for (int i = 0; i < 3; i++) {
+            try {
+                gateway.call(() -> {
+                    throw new InvalidPurchaseException(InvalidPurchaseException.Reason.SEATS_UNAVAILABLE);
+                });
+                fail("rejection should be rethrown");
+            } catch (InvalidPurchaseException expected) {
+            }
+        }
+
+        //results (Then)
+        assertEquals(CircuitBreaker.State.CLOSED, gateway.getBreaker().getState());
+    }
+
+    @Test // payments failing until their breaker opens - refunds have their own breaker and still go through
+    public void refundsNotBlockedByPaymentBreaker() {
+        //setup (Given)
+        openPaymentBreaker();
+        payments.healthy();
+        ResilientTicketPaymentService service = new ResilientTicketPaymentService(payments, paymentGateway, refundGateway);
+
+        //make the call (When)
+        service.refund(1001, 40);
+
+        //results (Then)
+        assertEquals(4, payments.getCalls());
+        assertEquals(CircuitBreaker.State.OPEN, paymentGateway.getBreaker().getState());
+        assertEquals(CircuitBreaker.State.CLOSED, refundGateway.getBreaker().getState());
+    }
+
+    @Test // hung gateway - the call is given up on at the deadline and the hung thread interrupted
+    public void deadlineBoundsHungCall() throws Exception {
+        //setup (Given)
+        payments.hung();
+
+        //make the call (When)
+        long started = System.nanoTime();
+        GatewayUnavailableException e = unavailable();
+        long took = System.nanoTime() - started;
+
+        //results (Then)
+        assertEquals(GatewayUnavailableException.Reason.DEADLINE_EXCEEDED, e.getReason());
+        assertTrue("took " + took + "ns", took < TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(1, paymentGateway.getTimedOut());
+        for (int i = 0; i < 100 && payments.getInProgress() > 0; i++) Thread.sleep(10);
+        assertEquals(0, payments.getInProgress());
+        assertEquals(0, paymentGateway.getInFlight());
+    }
+
+    @Test // 4 calls stuck in the gateway - the 5th is refused at once
+    public void bulkheadRefusesExtraCalls() throws Exception {
+        //setup (Given)
+        ResilientGateway gateway = new ResilientGateway("payments", 4, Duration.ofSeconds(10), new CircuitBreaker(100, Duration.ofSeconds(5), clock));
+        TicketService slowService = TicketServiceImpl.builder()
+                .ticketPaymentService(new ResilientTicketPaymentService(payments, gateway, refundGateway))
+                .seatReservationService(new ResilientSeatReservationService(seats, seatGateway)).build();
+        payments.slow(2, TimeUnit.SECONDS);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch started = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            executor.submit(() -> {
+                started.countDown();
+                slowService.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 1));
+            });
+        }
+        started.await();
+        while (payments.getInProgress() < 4) Thread.sleep(1);
+
+        //make the call (When)
+        try {
+            slowService.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 1));
+            fail("bulkhead should be full");
+        } catch (GatewayUnavailableException e) {
+            //results (Then)
+            assertEquals(GatewayUnavailableException.Reason.BULKHEAD_FULL, e.getReason());
+        }
+        assertEquals(4, payments.getCalls());
+        executor.shutdownNow();
+    }
+
+    @Test // payment gateway hangs under load - no purchase waits longer than the deadline, most fail fast
+    public void tailLatencyBoundedDuringOutage() throws Exception {
+        //setup (Given)
+        payments.hung();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        Future<?>[] clients = new Future<?>[8];
+        long[] slowest = new long[8];
+
+        //make the call (When)
+        for (int c = 0; c < clients.length; c++) {
+            int client = c;
+            clients[c] = executor.submit(() -> {
+                for (int i = 0; i < 250; i++) {
+                    long started = System.nanoTime();
+                    try {
+                        purchase();
+                    } catch (GatewayUnavailableException expected) {
+                    }
+                    slowest[client] = Math.max(slowest[client], System.nanoTime() - started);
+                }
+            });
+        }
+        for (Future<?> f : clients) f.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        //results (Then)
+        for (long nanos : slowest) assertTrue("slowest purchase took " + nanos + "ns", nanos < TimeUnit.MILLISECONDS.toNanos(500));
+        assertTrue(payments.getCalls() + " calls reached the gateway", payments.getCalls() <= 8);
+        assertTrue(paymentGateway.getRejected() >= 1990);
+        assertEquals(0, seats.getCalls());
+    }
+
+    private void purchase() {
+        ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 1));
+    }
+
+    private GatewayUnavailableException unavailable() {
+        try {
+            purchase();
+        } catch (GatewayUnavailableException e) {
+            return e;
+        }
+        throw new AssertionError("purchase should have been refused");
+    }
+
+    private void openPaymentBreaker() {
+        payments.failing();
+        for (int i = 0; i < 3; i++) {
+            try {
+                purchase();
+            } catch (IllegalStateException expected) {
+            }
+        }
+        assertEquals(CircuitBreaker.State.OPEN, paymentGateway.getBreaker().getState());
+    }
+}
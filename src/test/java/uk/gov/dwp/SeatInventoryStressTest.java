@@ -0,0 +1,157 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.inventory.InventorySeatReservationService;
+import uk.gov.dwp.uc.pairtest.inventory.SeatInventory;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+public class SeatInventoryStressTest {
+
+    @Rule
+    public ExpectedException exceptionRule = ExpectedException.none();
+
+    @Test // 300 threads racing for one screening, some releasing - never oversold, every seat accounted for
+    public void noOversellUnderContention() throws Exception {
+        //setup (Given)
+        int capacity = 50_000;
+        int threads = 300;
+        SeatInventory inventory = new SeatInventory(capacity, 8);
+        AtomicLong reserved = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+
+        //make the call (When)
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                int failures = 0;
+                while (failures < 20) {
+                    int seats = 1 + random.nextInt(20);
+                    if (!inventory.tryReserve(seats)) {
+                        failures++;
+                        continue;
+                    }
+                    reserved.addAndGet(seats);
+                    if (random.nextInt(10) == 0) {
+                        // a later step failed, compensate.
+                        inventory.release(seats);
+                        reserved.addAndGet(-seats);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+
+        //results (Then)
+        assertTrue("oversold: " + reserved.get(), reserved.get() <= capacity);
+        assertEquals(capacity - reserved.get(), inventory.available());
+        assertTrue("seats left unsold: " + inventory.available(), inventory.available() < 20);
+    }
+
+    @Test // more seats than remain - nothing taken
+    public void allOrNothing() {
+        SeatInventory inventory = new SeatInventory(10, 4);
+
+        assertTrue(inventory.tryReserve(7));
+        assertFalse(inventory.tryReserve(4));
+        assertEquals(3, inventory.available());
+        assertTrue(inventory.tryReserve(3));
+        assertEquals(0, inventory.available());
+    }
+
+    @Test // requests bigger than any stripe racing for exactly the seats there are - none refused
+    public void noFalseRefusalWhenStripesAreShort() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            //setup (Given)
+            SeatInventory inventory = new SeatInventory(800, 8);
+            CountDownLatch start = new CountDownLatch(1);
+            boolean[] refused = new boolean[8];
+            Thread[] workers = new Thread[8];
+
+            //make the call (When)
+            for (int t = 0; t < workers.length; t++) {
+                int worker = t;
+                workers[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    refused[worker] = !inventory.tryReserve(70) | !inventory.tryReserve(30);
+                });
+                workers[t].start();
+            }
+            start.countDown();
+            for (Thread worker : workers) worker.join();
+
+            //results (Then)
+            for (boolean r : refused) assertFalse("refused with seats available in round " + round, r);
+            assertEquals(0, inventory.available());
+        }
+    }
+
+    @Test // seats released that were never reserved - refused, the count stays at capacity
+    public void releaseAboveCapacityRefused() {
+        SeatInventory inventory = new SeatInventory(10, 4);
+        assertTrue(inventory.tryReserve(3));
+        inventory.release(3);
+
+        exceptionRule.expect(IllegalStateException.class);
+
+        try {
+            inventory.release(1);
+        } finally {
+            assertEquals(10, inventory.available());
+        }
+    }
+
+    @Test // screening full - purchase rejected with seats unavailable
+    public void fullScreeningRejected() {
+        InventorySeatReservationService srs = new InventorySeatReservationService(new SeatInventory(2),
+                mock(SeatReservationService.class));
+        srs.reserveSeat(1001, 2);
+
+        exceptionRule.expect(InvalidPurchaseException.class);
+        exceptionRule.expectMessage(InvalidPurchaseException.Reason.SEATS_UNAVAILABLE.getMessage());
+
+        srs.reserveSeat(1002, 1);
+    }
+
+    @Test // downstream reservation fails - seats go back to the screening
+    public void downstreamFailureReleasesSeats() {
+        SeatReservationService downstream = mock(SeatReservationService.class);
+        doThrow(new IllegalStateException("booking system down")).when(downstream).reserveSeat(anyLong(), anyInt());
+        SeatInventory inventory = new SeatInventory(5);
+        InventorySeatReservationService srs = new InventorySeatReservationService(inventory, downstream);
+
+        try {
+            srs.reserveSeat(1001, 3);
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals(5, inventory.available());
+    }
+}
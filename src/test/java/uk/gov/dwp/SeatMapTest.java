@@ -0,0 +1,252 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.inventory.SeatAllocation;
+import uk.gov.dwp.uc.pairtest.inventory.SeatMap;
+import uk.gov.dwp.uc.pairtest.inventory.SeatMapReservationService;
+
+public class SeatMapTest {
+
+    @Rule
+    public ExpectedException exceptionRule = ExpectedException.none();
+
+    @Test // contiguous - a group goes in the tightest free run that fits, across word boundaries
+    public void tightestContiguousBlock() {
+        //setup (Given)
+        SeatMap map = new SeatMap(1, 200);
+        // free runs left: 0-59 (60), 62-65 (4), 70-199 (130).
+        take(map, 0, 60, 2);
+        take(map, 0, 66, 4);
+
+        //make the call (When)
+        SeatAllocation four = map.allocate(4);
+        SeatAllocation five = map.allocate(5);
+        SeatAllocation hundred = map.allocate(100);
+
+        //results (Then)
+        assertEquals("SeatAllocation[row 0 seats 62-65]", four.toString());
+        assertEquals("SeatAllocation[row 0 seats 0-4]", five.toString());
+        assertEquals("SeatAllocation[row 0 seats 70-169]", hundred.toString());
+        assertTrue(map.isTaken(0, 169));
+        assertFalse(map.isTaken(0, 170));
+        assertEquals(200 - 6 - 109, map.available());
+    }
+
+    @Test // rows - the first row with a block that fits wins over an earlier row that would have to split
+    public void earliestRowThatFits() {
+        //setup (Given)
+        SeatMap map = new SeatMap(10, 12, 12);
+        take(map, 0, 4, 2);
+        take(map, 1, 0, 12);
+
+        //make the call (When)
+        SeatAllocation allocation = map.allocate(5);
+
+        //results (Then)
+        assertTrue(allocation.isContiguous());
+        assertEquals(2, allocation.getRow(0));
+        assertEquals(0, allocation.getFirstSeat(0));
+    }
+
+    @Test // no block fits - split within a row, seats as close together as they can be
+    public void splitWithinRow() {
+        //setup (Given)
+        SeatMap map = new SeatMap(1, 20);
+        // free: 0, 2, 9, 10, 12, 14, 19.
+        for (int seat = 0; seat < 20; seat++) {
+            if (seat != 0 && seat != 2 && seat != 9 && seat != 10 && seat != 12 && seat != 14 && seat != 19) take(map, 0, seat, 1);
+        }
+
+        //make the call (When)
+        SeatAllocation allocation = map.allocate(4);
+
+        //results (Then)
+        assertEquals("SeatAllocation[row 0 seats 9-10, row 0 seats 12-12, row 0 seats 14-14]", allocation.toString());
+        assertEquals(4, allocation.getSeats());
+        assertEquals(3, map.available());
+    }
+
+    @Test // no row has room - split across the fewest adjacent rows
+    public void splitAcrossAdjacentRows() {
+        //setup (Given)
+        SeatMap map = new SeatMap(4, 6);
+        take(map, 0, 0, 5);
+        take(map, 1, 0, 3);
+        take(map, 2, 0, 2);
+        take(map, 3, 0, 6);
+
+        //make the call (When)
+        SeatAllocation allocation = map.allocate(7);
+
+        //results (Then)
+        assertEquals("SeatAllocation[row 1 seats 3-5, row 2 seats 2-5]", allocation.toString());
+        assertEquals(1, map.available());
+        assertNull(map.allocate(2));
+        assertEquals(1, map.available());
+    }
+
+    @Test // release - seats can be allocated again, releasing twice is refused
+    public void release() {
+        //setup (Given)
+        SeatMap map = new SeatMap(2, 70);
+        SeatAllocation allocation = map.allocate(140);
+
+        //make the call (When)
+        map.release(allocation);
+
+        //results (Then)
+        assertEquals(140, map.available());
+        SeatAllocation again = map.allocate(140);
+        assertEquals(allocation, again);
+        map.release(again);
+
+        exceptionRule.expect(IllegalStateException.class);
+        map.release(again);
+    }
+
+    @Test // a stale allocation released again after its seats went to another buyer - the new buyer keeps them
+    public void staleReleaseKeepsNewOwnersSeats() {
+        //setup (Given)
+        SeatMap map = new SeatMap(1, 10);
+        SeatAllocation first = map.allocate(4);
+        map.release(first);
+        SeatAllocation second = map.allocate(4);
+
+        //make the call (When)
+        try {
+            map.release(first);
+            fail("a released allocation cannot be released again");
+        } catch (IllegalStateException expected) {
+        }
+
+        //results (Then)
+        assertEquals(first, second);
+        assertEquals(6, map.available());
+        for (int seat = 0; seat < 4; seat++) assertTrue(map.isTaken(0, second.getFirstSeat(0) + seat));
+    }
+
+    @Test // 64 threads allocating and releasing on one near full auditorium - no seat ever held twice
+    public void noDoubleBookingUnderContention() throws Exception {
+        //setup (Given)
+        SeatMap map = new SeatMap(40, 130);
+        AtomicIntegerArray holders = new AtomicIntegerArray(40 * 130);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<Thread>();
+        List<SeatAllocation> kept = new ArrayList<SeatAllocation>();
+        boolean[] doubleBooked = new boolean[1];
+
+        //make the call (When)
+        for (int t = 0; t < 64; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<SeatAllocation> held = new ArrayList<SeatAllocation>();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int failures = 0; failures < 20; ) {
+                    SeatAllocation allocation = map.allocate(1 + random.nextInt(8));
+                    if (allocation == null) {
+                        failures++;
+                        continue;
+                    }
+                    if (!mark(holders, allocation, 1)) doubleBooked[0] = true;
+                    if (random.nextInt(4) == 0) {
+                        mark(holders, allocation, -1);
+                        map.release(allocation);
+                    } else {
+                        held.add(allocation);
+                    }
+                }
+                synchronized (kept) {
+                    kept.addAll(held);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+
+        //results (Then)
+        assertFalse(doubleBooked[0]);
+        int held = 0;
+        for (SeatAllocation allocation : kept) held += allocation.getSeats();
+        assertEquals(40 * 130 - held, map.available());
+        for (int row = 0; row < 40; row++) {
+            for (int seat = 0; seat < 130; seat++) assertEquals(holders.get(row * 130 + seat) == 1, map.isTaken(row, seat));
+        }
+        assertTrue("seats left unsold: " + map.available(), map.available() < 8);
+    }
+
+    @Test // reservation service - full auditorium rejected, failed downstream call gives the seats back
+    public void reservationService() {
+        //setup (Given)
+        SeatReservationService downstream = mock(SeatReservationService.class);
+        doThrow(new IllegalStateException("booking system down")).when(downstream).reserveSeat(anyLong(), anyInt());
+        SeatMap map = new SeatMap(1, 5);
+        SeatMapReservationService srs = new SeatMapReservationService(map, mock(SeatReservationService.class));
+        SeatMapReservationService failing = new SeatMapReservationService(map, downstream);
+
+        //make the call (When)
+        srs.reserveSeat(1001, 2);
+        srs.reserveSeat(1001, 1);
+        try {
+            failing.reserveSeat(1002, 2);
+        } catch (IllegalStateException expected) {
+        }
+        srs.releaseSeat(1001, 1);
+
+        //results (Then)
+        assertEquals("[SeatAllocation[row 0 seats 0-1]]", srs.getAllocations(1001).toString());
+        assertEquals(3, map.available());
+
+        exceptionRule.expect(InvalidPurchaseException.class);
+        exceptionRule.expectMessage(InvalidPurchaseException.Reason.SEATS_UNAVAILABLE.getMessage());
+
+        srs.reserveSeat(1003, 4);
+    }
+
+    // takes seats first..first+count-1 of the row by allocating the whole map and giving back the rest.
+    private static void take(SeatMap map, int row, int first, int count) {
+        List<SeatAllocation> singles = new ArrayList<SeatAllocation>();
+        for (SeatAllocation single; (single = map.allocate(1)) != null; ) singles.add(single);
+        for (SeatAllocation single : singles) {
+            int seat = single.getFirstSeat(0);
+            if (single.getRow(0) != row || seat < first || seat >= first + count) map.release(single);
+        }
+    }
+
+    private static boolean mark(AtomicIntegerArray holders, SeatAllocation allocation, int delta) {
+        boolean ok = true;
+        for (int block = 0; block < allocation.getBlocks(); block++) {
+            for (int seat = allocation.getFirstSeat(block); seat < allocation.getFirstSeat(block) + allocation.getLength(block); seat++) {
+                int now = holders.addAndGet(allocation.getRow(block) * 130 + seat, delta);
+                ok &= now == (delta > 0 ? 1 : 0);
+            }
+        }
+        return ok;
+    }
+}
@@ -0,0 +1,186 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.Test;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.ShardedTicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+
+public class ShardedTicketServiceTest {
+
+    @Test // per account - never overlapping, in submission order, while many threads submit for many accounts
+    public void perAccountOrdering() throws Exception {
+        //setup (Given)
+        RecordingGateway gateway = new RecordingGateway();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        List<Thread> submitters = new ArrayList<>();
+
+        try (ShardedTicketServiceImpl ts = new ShardedTicketServiceImpl(new TicketServiceImpl(gateway, gateway), 4, 10_000)) {
+            //make the call (When)
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                submitters.add(new Thread(() -> {
+                    // each submitter owns five accounts and cycles the adult count 1..20 so order shows in the amount.
+                    for (int n = 0; n < 500; n++) {
+                        long accountId = 1 + thread * 5 + n % 5;
+                        CompletableFuture<Void> future = ts.purchaseTickets(accountId, TicketTypeRequest.of(Type.ADULT, 1 + (n / 5) % 20));
+                        synchronized (futures) {
+                            futures.add(future);
+                        }
+                    }
+                }));
+            }
+            for (Thread submitter : submitters) submitter.start();
+            for (Thread submitter : submitters) submitter.join();
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+
+            //results (Then)
+            assertEquals(0, ts.getShards().getQueueDepth());
+            assertEquals(4000, ts.getShards().getQueueWait().getCount());
+        }
+        assertEquals(40, gateway.events.size());
+        for (Map.Entry<Long, List<Integer>> account : gateway.events.entrySet()) {
+            List<Integer> events = account.getValue();
+            assertEquals(200, events.size());
+            for (int i = 0; i < events.size(); i += 2) {
+                int adults = 1 + (i / 2) % 20;
+                assertEquals("account " + account.getKey() + " payment " + i / 2, 20 * adults, (int) events.get(i));
+                assertEquals("account " + account.getKey() + " reservation " + i / 2, -adults, (int) events.get(i + 1));
+            }
+        }
+    }
+
+    @Test // across shards - accounts on different shards purchase in parallel
+    public void parallelAcrossShards() throws Exception {
+        //setup (Given)
+        long latency = TimeUnit.MILLISECONDS.toNanos(50);
+        LatencyTicketPaymentService tps = new LatencyTicketPaymentService(latency);
+        try (ShardedTicketServiceImpl ts = new ShardedTicketServiceImpl(new TicketServiceImpl(tps, new LatencySeatReservationService(latency)), 4, 10)) {
+            long[] accounts = new long[4];
+            for (long accountId = 1, found = 0; found < 4; accountId++) {
+                if (ts.getShards().shardOf(accountId) == found) accounts[(int) found++] = accountId;
+            }
+            long start = System.nanoTime();
+
+            //make the call (When)
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[4];
+            for (int i = 0; i < 4; i++) futures[i] = ts.purchaseTickets(accounts[i], TicketTypeRequest.of(Type.ADULT, 1));
+            CompletableFuture.allOf(futures).get(10, TimeUnit.SECONDS);
+
+            //results (Then)
+            long elapsed = System.nanoTime() - start;
+            // serially this is 4 * 100ms.
+            assertTrue("took " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms", elapsed < TimeUnit.MILLISECONDS.toNanos(300));
+        }
+        assertEquals(4, tps.getPayments());
+    }
+
+    @Test // full shard - queue depth is reported and the purchase beyond capacity is rejected
+    public void queueDepthAndRejection() throws Exception {
+        //setup (Given)
+        CountDownLatch release = new CountDownLatch(1);
+        TicketPaymentService blocked = new TicketPaymentService() {
+            @Override
+            public void makePayment(long accountId, int totalAmountToPay) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void refund(long accountId, int totalAmountToRefund) {
+            }
+        };
+        try (ShardedTicketServiceImpl ts = new ShardedTicketServiceImpl(new TicketServiceImpl(blocked, new LatencySeatReservationService(0)), 1, 2)) {
+            //make the call (When)
+            List<CompletableFuture<Void>> accepted = new ArrayList<>();
+            accepted.add(ts.purchaseTickets(1001, TicketTypeRequest.of(Type.ADULT, 1)));
+            // the first purchase is running and stuck in the gateway once it has left the queue.
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (ts.getShards().getQueueDepth() > 0 && System.nanoTime() < deadline) Thread.onSpinWait();
+            for (int i = 0; i < 2; i++) accepted.add(ts.purchaseTickets(1002 + i, TicketTypeRequest.of(Type.ADULT, 1)));
+            CompletableFuture<Void> rejected = ts.purchaseTickets(1004, TicketTypeRequest.of(Type.ADULT, 1));
+
+            //results (Then)
+            try {
+                assertEquals(1, ts.getShards().getShardCount());
+                assertEquals(2, ts.getShards().getQueueDepth(0));
+                assertEquals(2, ts.getShards().getPeakQueueDepth());
+                assertEquals(1, ts.getShards().getRejected());
+                try {
+                    rejected.get();
+                    fail("expected the full shard to reject");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof RejectedExecutionException);
+                }
+            } finally {
+                release.countDown();
+            }
+            CompletableFuture.allOf(accepted.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+            assertEquals(0, ts.getShards().getQueueDepth());
+        }
+    }
+
+    @Test // default - one shard per core, queue wait of every shard reported together
+    public void defaultsToOneShardPerCore() throws Exception {
+        try (ShardedTicketServiceImpl ts = new ShardedTicketServiceImpl(new TicketServiceImpl(new LatencyTicketPaymentService(0),
+                new LatencySeatReservationService(0)), 1000)) {
+            List<CompletableFuture<Void>> purchases = new ArrayList<>();
+            for (int i = 0; i < 100; i++) purchases.add(ts.purchaseTickets(1001 + i, TicketTypeRequest.of(Type.ADULT, 1)));
+            CompletableFuture.allOf(purchases.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+
+            assertEquals(Runtime.getRuntime().availableProcessors(), ts.getShards().getShardCount());
+            assertEquals(100, ts.getShards().getQueueWait().getCount());
+        }
+    }
+
+    // records each account's payments as amounts and reservations as negative seat counts, in the order they happen.
+    private static class RecordingGateway implements TicketPaymentService, SeatReservationService {
+        final Map<Long, List<Integer>> events = new ConcurrentHashMap<>();
+
+        @Override
+        public void makePayment(long accountId, int totalAmountToPay) {
+            record(accountId, totalAmountToPay);
+        }
+
+        @Override
+        public void refund(long accountId, int totalAmountToRefund) {
+        }
+
+        @Override
+        public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+            record(accountId, -totalSeatsToAllocate);
+        }
+
+        private void record(long accountId, int event) {
+            List<Integer> account = events.computeIfAbsent(accountId, id -> new ArrayList<>());
+            // no lock: a second purchase for the account running at the same time shows up as a lost or misplaced event.
+            int size = account.size();
+            LockSupport.parkNanos(1000);
+            account.add(event);
+            if (account.size() != size + 1) throw new IllegalStateException("account " + accountId + " purchases overlapped");
+        }
+    }
+}
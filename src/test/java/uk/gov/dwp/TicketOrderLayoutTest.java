@@ -0,0 +1,126 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.FieldLayout;
+import org.openjdk.jol.info.GraphLayout;
+
+import uk.gov.dwp.uc.pairtest.domain.TicketOrder;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+
+public class TicketOrderLayoutTest {
+
+    @Rule
+    public ExpectedException exceptionRule = ExpectedException.none();
+
+    @Test // immutable - every instance field of both value classes is final
+    public void finalFields() {
+        for (Class<?> type : Arrays.asList(TicketOrder.class, TicketTypeRequest.class)) {
+            assertTrue(Modifier.isFinal(type.getModifiers()));
+            for (Field field : type.getDeclaredFields()) {
+                assertTrue(type.getSimpleName() + "." + field.getName(), Modifier.isFinal(field.getModifiers()));
+            }
+        }
+    }
+
+    @Test // flyweights - common requests are shared, others are equal but new
+    public void flyweights() {
+        assertSame(TicketTypeRequest.of(Type.ADULT, 2), TicketTypeRequest.of(Type.ADULT, 2));
+        assertSame(TicketTypeRequest.of(Type.INFANT, 0), TicketTypeRequest.of(Type.INFANT, 0));
+        assertEquals(new TicketTypeRequest(Type.CHILD, 20), TicketTypeRequest.of(Type.CHILD, 20));
+        assertEquals(TicketTypeRequest.of(Type.CHILD, 21), TicketTypeRequest.of(Type.CHILD, 21));
+        assertEquals(new TicketTypeRequest(Type.CHILD, -1), TicketTypeRequest.of(Type.CHILD, -1));
+    }
+
+    @Test // packing - counts, including negative ones, round trip through the long
+    public void packedCounts() {
+        //setup (Given)
+        TicketOrder order = TicketOrder.of(1001, TicketTypeRequest.of(Type.ADULT, 2), TicketTypeRequest.of(Type.INFANT, 1),
+                TicketTypeRequest.of(Type.ADULT, 1), new TicketTypeRequest(Type.CHILD, -4));
+
+        //results (Then)
+        assertEquals(1001, order.getAccountId());
+        assertEquals(3, order.getAdults());
+        assertEquals(-4, order.getChildren());
+        assertEquals(1, order.getInfants());
+        assertEquals(-1, order.getNumberOfSeats());
+        assertEquals(Arrays.asList(TicketTypeRequest.of(Type.ADULT, 3), new TicketTypeRequest(Type.CHILD, -4),
+                TicketTypeRequest.of(Type.INFANT, 1)), order.getTickets());
+
+        TicketOrder extremes = TicketOrder.of(-1, TicketOrder.maxTickets, TicketOrder.minTickets, 0);
+        assertEquals(TicketOrder.maxTickets, extremes.getAdults());
+        assertEquals(TicketOrder.minTickets, extremes.getChildren());
+        assertEquals(0, extremes.getInfants());
+    }
+
+    @Test // builder - same order whichever way it is built, pricing returns a copy
+    public void builder() {
+        //setup (Given)
+        TicketOrder tallied = TicketOrder.of(1001, TicketTypeRequest.of(Type.ADULT, 2), TicketTypeRequest.of(Type.CHILD, 1));
+
+        //make the call (When)
+        TicketOrder built = TicketOrder.builder(1001).adults(2).children(1).build();
+        TicketOrder priced = built.withPrice(50);
+
+        //results (Then)
+        assertEquals(tallied, built);
+        assertEquals(0, built.getPrice());
+        assertEquals(50, priced.getPrice());
+        assertEquals(TicketOrder.builder(1001).adults(2).children(1).price(50).build(), priced);
+        assertSame(priced, priced.withPrice(50));
+    }
+
+    @Test // range - a count too large to pack is rejected rather than wrapped
+    public void tooManyToPack() {
+        exceptionRule.expect(IllegalArgumentException.class);
+        exceptionRule.expectMessage("ADULT tickets must be between");
+        TicketOrder.builder(1001).add(Type.ADULT, TicketOrder.maxTickets).add(Type.ADULT, 1).build();
+    }
+
+    @Test // footprint - one object with 20 bytes of fields, a quarter or less of the list based order it replaces, whatever the header and reference sizes
+    public void footprint() {
+        //setup (Given)
+        TicketOrder order = TicketOrder.of(1001, TicketTypeRequest.of(Type.ADULT, 2), TicketTypeRequest.of(Type.CHILD, 2),
+                TicketTypeRequest.of(Type.INFANT, 1));
+        // the original order held a LinkedList of freshly allocated requests plus its own header and fields.
+        LinkedList<TicketTypeRequest> list = new LinkedList<TicketTypeRequest>(Arrays.asList(
+                new TicketTypeRequest(Type.ADULT, 2), new TicketTypeRequest(Type.CHILD, 2), new TicketTypeRequest(Type.INFANT, 1)));
+        // enum constants are shared by every order, leave them out.
+        long legacy = ClassLayout.parseClass(LegacyOrderFields.class).instanceSize() + GraphLayout.parseInstance(list).totalSize()
+                - GraphLayout.parseInstance(Type.ADULT, Type.CHILD, Type.INFANT).totalSize();
+
+        //make the call (When)
+        GraphLayout graph = GraphLayout.parseInstance(order);
+        ClassLayout layout = ClassLayout.parseClass(TicketOrder.class);
+        long fields = 0;
+        for (FieldLayout field : layout.fields()) fields += field.size();
+
+        //results (Then)
+        assertEquals(1, graph.totalCount());
+        assertEquals(layout.instanceSize(), graph.totalSize());
+        assertEquals(20, fields);
+        assertTrue("legacy order is " + legacy + " bytes, compact " + graph.totalSize(), legacy >= 4 * graph.totalSize());
+    }
+
+    // the fields of the original TicketOrder.
+    @SuppressWarnings("unused")
+    private static class LegacyOrderFields {
+        List<TicketTypeRequest> tickets;
+        long accountId;
+        int numberOfSeats;
+        int price;
+    }
+}
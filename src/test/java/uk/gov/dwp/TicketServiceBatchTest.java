@@ -0,0 +1,137 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import thirdparty.paymentgateway.BatchTicketPaymentService;
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.BatchSeatReservationService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseRequest;
+import uk.gov.dwp.uc.pairtest.domain.PurchaseResult;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TicketServiceBatchTest {
+
+    @Mock
+    TicketPaymentService tps;
+
+    @Mock
+    SeatReservationService srs;
+
+    @Mock
+    BatchTicketPaymentService btps;
+
+    @Mock
+    BatchSeatReservationService bsrs;
+
+    TicketService ts;
+
+    @Before
+    public void setUp() {
+        ts = new TicketServiceImpl(tps, srs, btps, bsrs);
+    }
+
+    @Test // 3 valid orders - one payment call and one reservation call
+    public void validOrdersCoalesced() {
+        //setup (Given)
+        List<PurchaseRequest> batch = Arrays.asList(
+                new PurchaseRequest(1001, new TicketTypeRequest(Type.ADULT, 1)),
+                new PurchaseRequest(1002, new TicketTypeRequest(Type.ADULT, 2), new TicketTypeRequest(Type.CHILD, 1)),
+                new PurchaseRequest(1003, new TicketTypeRequest(Type.ADULT, 1), new TicketTypeRequest(Type.INFANT, 1)));
+
+        //make the call (When)
+        List<PurchaseResult> results = ts.purchaseTicketsBatch(batch);
+
+        //results (Then)
+        assertEquals(3, results.size());
+        assertTrue(results.get(1).isSuccess());
+        assertEquals(50, results.get(1).getPrice());
+        assertEquals(3, results.get(1).getNumberOfSeats());
+
+        ArgumentCaptor<long[]> accounts = ArgumentCaptor.forClass(long[].class);
+        ArgumentCaptor<int[]> amounts = ArgumentCaptor.forClass(int[].class);
+        ArgumentCaptor<int[]> seats = ArgumentCaptor.forClass(int[].class);
+        InOrder order = inOrder(btps, bsrs);
+        order.verify(btps).makePayments(accounts.capture(), amounts.capture(), eq(3));
+        order.verify(bsrs).reserveSeats(any(), seats.capture(), eq(3));
+        assertEquals(1002, accounts.getValue()[1]);
+        assertEquals(20, amounts.getValue()[2]);
+        assertEquals(1, seats.getValue()[2]);
+        verifyNoInteractions(tps, srs);
+    }
+
+    @Test // 1 bad order among good ones - bad order reported, the rest still purchased
+    public void invalidOrderDoesNotSinkBatch() {
+        List<PurchaseRequest> batch = Arrays.asList(
+                new PurchaseRequest(1001, new TicketTypeRequest(Type.ADULT, 1)),
+                new PurchaseRequest(1002, new TicketTypeRequest(Type.CHILD, 1)),
+                new PurchaseRequest(0, new TicketTypeRequest(Type.ADULT, 1)),
+                new PurchaseRequest(1004, new TicketTypeRequest(Type.ADULT, 1), new TicketTypeRequest(Type.INFANT, 2)),
+                new PurchaseRequest(1005, new TicketTypeRequest(Type.ADULT, 21)),
+                new PurchaseRequest(1006, new TicketTypeRequest(Type.CHILD, 1), new TicketTypeRequest(Type.ADULT, 1)));
+
+        List<PurchaseResult> results = ts.purchaseTicketsBatch(batch);
+
+        assertTrue(results.get(0).isSuccess());
+        assertEquals(InvalidPurchaseException.Reason.NOT_AT_LEAST_ONE_ADULT, results.get(1).getFailure());
+        assertEquals(InvalidPurchaseException.Reason.INVALID_ACCOUNT_ID, results.get(2).getFailure());
+        assertEquals(InvalidPurchaseException.Reason.NOT_ENOUGH_ADULTS, results.get(3).getFailure());
+        assertEquals(InvalidPurchaseException.Reason.TOO_MANY_TICKETS, results.get(4).getFailure());
+        assertTrue(results.get(5).isSuccess());
+        assertFalse(results.get(2).isSuccess());
+
+        verify(btps, times(1)).makePayments(any(), any(), eq(2));
+        verify(bsrs, times(1)).reserveSeats(any(), any(), eq(2));
+    }
+
+    @Test // every order invalid - no gateway calls
+    public void allInvalid() {
+        List<PurchaseResult> results = ts.purchaseTicketsBatch(Collections.singletonList(
+                new PurchaseRequest(1001, new TicketTypeRequest(Type.INFANT, 1))));
+
+        assertFalse(results.get(0).isSuccess());
+        verify(btps, never()).makePayments(any(), any(), anyInt());
+        verify(bsrs, never()).reserveSeats(any(), any(), anyInt());
+    }
+
+    @Test // no batch gateways - falls back to one call per order
+    public void fallsBackToSingleGateways() {
+        ts = new TicketServiceImpl(tps, srs);
+
+        ts.purchaseTicketsBatch(Arrays.asList(
+                new PurchaseRequest(1001, new TicketTypeRequest(Type.ADULT, 1)),
+                new PurchaseRequest(1002, new TicketTypeRequest(Type.ADULT, 2))));
+
+        verify(tps, times(1)).makePayment(1001, 20);
+        verify(tps, times(1)).makePayment(1002, 40);
+        verify(srs, times(2)).reserveSeat(anyLong(), anyInt());
+    }
+}
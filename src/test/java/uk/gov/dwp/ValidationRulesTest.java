@@ -0,0 +1,231 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.validation.RuleEngine;
+import uk.gov.dwp.uc.pairtest.validation.RuleSet;
+
+public class ValidationRulesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public ExpectedException exceptionRule = ExpectedException.none();
+
+    @Test // default rules - same verdict as the original hardcoded checks for every small order
+    public void defaultMatchesHardcodedChecks() {
+        long[] accounts = {Long.MIN_VALUE, -1, 0, 1, 1001, Long.MAX_VALUE};
+        for (long account : accounts) {
+            for (int adults = 0; adults <= 22; adults++) {
+                for (int children = 0; children <= 22; children++) {
+                    for (int infants = 0; infants <= 22; infants++) {
+                        long broken = RuleSet.DEFAULT.check(account, adults, children, infants);
+                        InvalidPurchaseException.Reason expected = hardcoded(account, adults, children, infants);
+                        InvalidPurchaseException.Reason actual = broken == 0 ? null : RuleSet.DEFAULT.exception(broken, false).getReason();
+                        assertEquals(account + "/" + adults + "/" + children + "/" + infants, expected, actual);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test // default rules - same verdict as the original checks when counts are zero or negative, e.g. 1 child and -1 infants
+    public void defaultMatchesHardcodedChecksForNegativeCounts() {
+        long[] accounts = {0, 1001};
+        for (long account : accounts) {
+            for (int adults = -21; adults <= 21; adults++) {
+                for (int children = -21; children <= 21; children++) {
+                    for (int infants = -21; infants <= 21; infants++) {
+                        long broken = RuleSet.DEFAULT.check(account, adults, children, infants);
+                        InvalidPurchaseException.Reason expected = hardcoded(account, adults, children, infants);
+                        InvalidPurchaseException.Reason actual = broken == 0 ? null : RuleSet.DEFAULT.exception(broken, false).getReason();
+                        assertEquals(account + "/" + adults + "/" + children + "/" + infants, expected, actual);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test // == in a condition, only checked at exactly that count
+    public void equalityCondition() {
+        RuleSet rules = RuleSet.compile(Arrays.asList("when ADULT == 1 require INFANT <= 0 : NOT_ENOUGH_ADULTS"));
+
+        assertEquals(1, rules.check(1, 1, 0, 1));
+        assertEquals(0, rules.check(1, 2, 0, 1));
+        assertEquals(0, rules.check(1, 0, 0, 1));
+    }
+
+    @Test // venue rules - lower cap, child only screening, free text message
+    public void venueRules() {
+        RuleSet rules = RuleSet.compile(Arrays.asList(
+                "# kids' matinee: no adult needed, children only",
+                "TOTAL <= 10 : TOO_MANY_TICKETS",
+                "ADULT + INFANT <= 0 : \"Children only: this is a kids' screening\"",
+                "ACCOUNT >= 1 : INVALID_ACCOUNT_ID"));
+
+        assertEquals(0, rules.check(1001, 0, 10, 0));
+        assertEquals(1, rules.check(1001, 0, 11, 0));
+        InvalidPurchaseException e = rules.exception(rules.check(1001, 1, 2, 0), false);
+        assertEquals("Children only: this is a kids' screening", e.getMessage());
+        assertNull(e.getReason());
+    }
+
+    @Test // weighted cap and strict comparisons
+    public void strictComparisons() {
+        RuleSet rules = RuleSet.compile(Arrays.asList("2 * ADULT + CHILD < 5 : TOO_MANY_TICKETS", "when CHILD > 0 require ADULT > 0 : NOT_AT_LEAST_ONE_ADULT"));
+
+        assertEquals(0, rules.check(1, 2, 0, 0));
+        assertEquals(1, rules.check(1, 2, 1, 0));
+        assertEquals(2, rules.check(1, 0, 1, 0));
+        assertEquals(0, rules.check(1, 0, 0, 3));
+    }
+
+    @Test // account id ranges - looked up ids and ids near the ends of the range agree with the account rules alone
+    public void accountRanges() {
+        RuleSet band = RuleSet.compile(Arrays.asList("when ACCOUNT >= -5 require ACCOUNT > 5 : INVALID_ACCOUNT_ID"));
+        RuleSet upper = RuleSet.compile(Arrays.asList("ACCOUNT < 2147483647 : INVALID_ACCOUNT_ID"));
+        RuleSet two = RuleSet.compile(Arrays.asList("ACCOUNT >= 1 : INVALID_ACCOUNT_ID", "ACCOUNT <= 100 : INVALID_ACCOUNT_ID"));
+        long near = 1L << 62;
+        long[] accounts = {Long.MIN_VALUE, -near - 1, -near, -near + 1, -6, -5, 0, 5, 6, near - 1, near, Long.MAX_VALUE};
+
+        for (RuleSet rules : Arrays.asList(band, upper, two)) {
+            for (long account : accounts) {
+                assertEquals(rules + " " + account, rules.checkAccount(account) | rules.checkCounts(1, 0, 0), rules.check(account, 1, 0, 0));
+            }
+        }
+        assertEquals(1, band.check(-5, 1, 0, 0));
+        assertEquals(1, band.check(5, 1, 0, 0));
+        assertEquals(0, band.check(6, 1, 0, 0));
+        assertEquals(0, band.check(Long.MIN_VALUE, 1, 0, 0));
+        assertEquals(0, upper.check(Long.MIN_VALUE, 1, 0, 0));
+        assertEquals(1, upper.check(Integer.MAX_VALUE, 1, 0, 0));
+        assertEquals(1, upper.check(Long.MAX_VALUE, 1, 0, 0));
+        assertEquals(2, two.check(101, 1, 0, 0));
+        assertEquals(1, two.check(-near, 1, 0, 0));
+    }
+
+    @Test // all violations reported in rule order, reason of the first
+    public void allViolations() {
+        InvalidPurchaseException e = RuleSet.DEFAULT.exception(RuleSet.DEFAULT.check(0, 0, 21, 1), true);
+
+        assertEquals(InvalidPurchaseException.Reason.TOO_MANY_TICKETS, e.getReason());
+        assertEquals(InvalidPurchaseException.tooManyTickets + "; " + InvalidPurchaseException.notAtLeastOneAdult
+                + "; " + InvalidPurchaseException.notEnoughAdults + "; " + InvalidPurchaseException.invalidAccountId, e.getMessage());
+    }
+
+    @Test // rules read from a local file, the service reports every broken rule
+    public void serviceUsesRuleFile() throws Exception {
+        //setup (Given)
+        File file = folder.newFile("rules.txt");
+        Files.write(file.toPath(), Arrays.asList("TOTAL <= 4 : TOO_MANY_TICKETS", "ADULT - INFANT >= 0 : NOT_ENOUGH_ADULTS"), StandardCharsets.UTF_8);
+        RuleEngine engine = new RuleEngine(file.toPath());
+        TicketPaymentService tps = Mockito.mock(TicketPaymentService.class);
+        TicketService ts = TicketServiceImpl.builder().ticketPaymentService(tps)
+                .seatReservationService(Mockito.mock(SeatReservationService.class))
+                .ruleEngine(engine).reportAllViolations(true).build();
+
+        //make the call (When)
+        try {
+            ts.purchaseTickets(1001, new TicketTypeRequest(Type.ADULT, 1), new TicketTypeRequest(Type.INFANT, 4));
+            fail("order breaks both rules");
+        } catch (InvalidPurchaseException e) {
+            //results (Then)
+            assertEquals(InvalidPurchaseException.tooManyTickets + "; " + InvalidPurchaseException.notEnoughAdults, e.getMessage());
+        }
+
+        // a child only order is fine under these rules
+        ts.purchaseTickets(1001, new TicketTypeRequest(Type.CHILD, 2));
+        Mockito.verify(tps).makePayment(1001, 20);
+    }
+
+    @Test // bad edit picked up by watch - counted, previous rules kept
+    public void watchCountsFailedReloads() throws Exception {
+        //setup (Given)
+        File file = folder.newFile("rules.txt");
+        Files.write(file.toPath(), Arrays.asList("TOTAL <= 4 : TOO_MANY_TICKETS"), StandardCharsets.UTF_8);
+        RuleEngine engine = new RuleEngine(file.toPath());
+        Files.write(file.toPath(), Arrays.asList("TOTAL <= : TOO_MANY_TICKETS"), StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+        //make the call (When)
+        engine.watch(executor, 1, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 500 && engine.getReloadFailures() == 0; i++) Thread.sleep(10);
+        executor.shutdownNow();
+
+        //results (Then)
+        assertEquals(1, engine.getReloadFailures());
+        assertTrue(engine.getLastReloadFailure().getMessage().contains("line 1"));
+        assertEquals(1, engine.getRuleSet().check(1, 5, 0, 0));
+    }
+
+    @Test // edited rule file picked up, a bad edit keeps the previous rules
+    public void reloadsRuleFile() throws Exception {
+        File file = folder.newFile("rules.txt");
+        Files.write(file.toPath(), Arrays.asList("TOTAL <= 4 : TOO_MANY_TICKETS"), StandardCharsets.UTF_8);
+        RuleEngine engine = new RuleEngine(file.toPath());
+
+        Files.write(file.toPath(), Arrays.asList("TOTAL <= 6 : TOO_MANY_TICKETS"), StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        assertEquals(true, engine.reloadIfModified());
+        assertEquals(0, engine.getRuleSet().check(1, 6, 0, 0));
+
+        Files.write(file.toPath(), Arrays.asList("TOTAL <= : TOO_MANY_TICKETS"), StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(System.currentTimeMillis() + 2000));
+        try {
+            engine.reloadIfModified();
+            fail("bad rule should not compile");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, engine.getRuleSet().check(1, 6, 0, 0));
+    }
+
+    @Test // unknown reason names the line
+    public void unknownReason() {
+        exceptionRule.expect(IllegalArgumentException.class);
+        exceptionRule.expectMessage("Validation rule line 2: unknown reason TOO_MANY");
+        RuleSet.compile(Arrays.asList("TOTAL <= 20 : TOO_MANY_TICKETS", "TOTAL <= 20 : TOO_MANY"));
+    }
+
+    @Test // account can not be mixed with ticket counts
+    public void accountOnItsOwn() {
+        exceptionRule.expect(IllegalArgumentException.class);
+        exceptionRule.expectMessage("ACCOUNT can only be compared on its own");
+        RuleSet.compile(Arrays.asList("ACCOUNT + ADULT >= 1 : INVALID_ACCOUNT_ID"));
+    }
+
+    // the checks TicketServiceImpl made before the rules were configurable.
+    private static InvalidPurchaseException.Reason hardcoded(long accountId, int adults, int children, int infants) {
+        if (adults + children + infants > 20) return InvalidPurchaseException.Reason.TOO_MANY_TICKETS;
+        if ((children > 0 || infants > 0) && adults == 0) return InvalidPurchaseException.Reason.NOT_AT_LEAST_ONE_ADULT;
+        if (adults < infants) return InvalidPurchaseException.Reason.NOT_ENOUGH_ADULTS;
+        if (accountId < 1) return InvalidPurchaseException.Reason.INVALID_ACCOUNT_ID;
+        return null;
+    }
+}
@@ -0,0 +1,257 @@
+package uk.gov.dwp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+import uk.gov.dwp.stub.LatencySeatReservationService;
+import uk.gov.dwp.stub.LatencyTicketPaymentService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.exception.MalformedMessageException;
+import uk.gov.dwp.uc.pairtest.wire.PurchaseRequestFlyweight;
+import uk.gov.dwp.uc.pairtest.wire.PurchaseResultFlyweight;
+import uk.gov.dwp.uc.pairtest.wire.Wire;
+import uk.gov.dwp.uc.pairtest.wire.WirePurchaseHandler;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WireCodecTest {
+
+    @Mock
+    TicketPaymentService tps;
+
+    @Mock
+    SeatReservationService srs;
+
+    WirePurchaseHandler handler;
+    PurchaseRequestFlyweight request = new PurchaseRequestFlyweight();
+    PurchaseResultFlyweight result = new PurchaseResultFlyweight();
+
+    @Before
+    public void setUp() {
+        handler = new WirePurchaseHandler(TicketServiceImpl.builder().ticketPaymentService(tps).seatReservationService(srs).build());
+    }
+
+    @Test // round trip - heap, direct and little endian buffers all hold the same bytes
+    public void roundTrip() {
+        byte[] expected = null;
+        for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.allocate(64), ByteBuffer.allocateDirect(64),
+                ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN)}) {
+            //make the call (When)
+            request.wrapForEncode(buffer, 3).accountId(1L << 40).adults(2).children(-1).infants(1).key("order-1");
+            int length = request.encodedLength();
+            request.wrap(buffer.limit(3 + length), 3);
+
+            //results (Then)
+            assertEquals(3 + 24 + 1 + 7, 3 + length);
+            assertEquals(1L << 40, request.accountId());
+            assertEquals(2, request.adults());
+            assertEquals(-1, request.children());
+            assertEquals(1, request.infants());
+            assertEquals("order-1", request.key());
+            byte[] bytes = new byte[length];
+            buffer.get(3, bytes);
+            if (expected != null) assertArrayEquals(expected, bytes);
+            expected = bytes;
+        }
+    }
+
+    @Test // handler - purchases, rejects and fails with outcomes rather than exceptions
+    public void handlerOutcomes() {
+        //setup (Given)
+        ByteBuffer in = ByteBuffer.allocateDirect(256);
+        ByteBuffer out = ByteBuffer.allocateDirect(3 * WirePurchaseHandler.maxResultLength);
+        request.wrapForEncode(in, 0).accountId(1001).adults(2).children(1);
+        in.position(request.encodedLength());
+        request.wrapForEncode(in, in.position()).accountId(1001).infants(1).key("order-2");
+        in.position(in.position() + request.encodedLength());
+        request.wrapForEncode(in, in.position()).accountId(1002).adults(1);
+        in.limit(in.position() + request.encodedLength()).position(0);
+        doThrow(new IllegalStateException("gateway down")).when(tps).makePayment(1002, 20);
+
+        //make the call (When)
+        while (in.hasRemaining()) handler.handle(in, out);
+        out.flip();
+
+        //results (Then)
+        result.wrap(out, 0);
+        assertTrue(result.isSuccess());
+        assertEquals(1001, result.accountId());
+        assertEquals(3, result.seats());
+        assertEquals(50, result.price());
+        assertNull(result.key());
+
+        int at = result.encodedLength();
+        result.wrap(out, at);
+        assertFalse(result.isSuccess());
+        assertEquals(InvalidPurchaseException.Reason.NOT_AT_LEAST_ONE_ADULT, result.reason());
+        assertEquals("order-2", result.key());
+
+        at += result.encodedLength();
+        result.wrap(out, at);
+        assertEquals(PurchaseResultFlyweight.failed, result.outcome());
+        assertEquals(1002, result.accountId());
+        assertEquals(out.limit(), at + result.encodedLength());
+        verify(tps).makePayment(1001, 50);
+        verify(srs).reserveSeat(1001, 3);
+    }
+
+    @Test // idempotent - the same key over the wire pays once and answers twice
+    public void idempotentOverTheWire() {
+        //setup (Given)
+        ByteBuffer in = ByteBuffer.allocate(64);
+        ByteBuffer out = ByteBuffer.allocate(2 * WirePurchaseHandler.maxResultLength);
+
+        //make the call (When)
+        for (int i = 0; i < 2; i++) {
+            request.wrapForEncode(in.clear(), 0).accountId(1001).adults(1).key("order-1");
+            handler.handle(in.limit(request.encodedLength()), out);
+        }
+
+        //results (Then)
+        verify(tps, times(1)).makePayment(anyLong(), anyInt());
+        out.flip();
+        for (int at = 0; at < out.limit(); at += result.encodedLength()) {
+            result.wrap(out, at);
+            assertTrue(result.isSuccess());
+            assertEquals(20, result.price());
+            assertEquals("order-1", result.key());
+        }
+    }
+
+    @Test // key sent by another account is answered as a key conflict, a gateway's own IllegalArgumentException is a failure
+    public void keyConflictIsNotAGatewayFailure() {
+        //setup (Given)
+        ByteBuffer in = ByteBuffer.allocate(64);
+        ByteBuffer out = ByteBuffer.allocate(3 * WirePurchaseHandler.maxResultLength);
+        doThrow(new IllegalArgumentException("amount out of range")).when(tps).makePayment(1003, 20);
+
+        //make the call (When)
+        long[] accounts = {1001, 1002, 1003};
+        String[] keys = {"order-1", "order-1", "order-3"};
+        for (int i = 0; i < 3; i++) {
+            request.wrapForEncode(in.clear(), 0).accountId(accounts[i]).adults(1).key(keys[i]);
+            handler.handle(in.limit(request.encodedLength()), out);
+        }
+        out.flip();
+
+        //results (Then)
+        result.wrap(out, 0);
+        assertTrue(result.isSuccess());
+        int at = result.encodedLength();
+        result.wrap(out, at);
+        assertEquals(PurchaseResultFlyweight.keyConflict, result.outcome());
+        assertTrue(result.isKeyConflict());
+        assertNull(result.reason());
+        assertEquals(1002, result.accountId());
+        at += result.encodedLength();
+        result.wrap(out, at);
+        assertEquals(PurchaseResultFlyweight.failed, result.outcome());
+        assertEquals(1003, result.accountId());
+    }
+
+    @Test // versioning - a later version's longer block is read, its extra fields skipped
+    public void laterVersionIsReadable() {
+        //setup (Given)
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.put(0, (byte) (Wire.schemaVersion + 1)).put(1, (byte) PurchaseRequestFlyweight.template)
+                .putShort(2, (short) (PurchaseRequestFlyweight.blockLength + 8))
+                .putLong(4, 1001).putInt(12, 2).putInt(16, 0).putInt(20, 1).putLong(24, -1L)
+                .put(32, (byte) 3).put(33, (byte) 'k').put(34, (byte) 'e').put(35, (byte) 'y');
+
+        //make the call (When)
+        request.wrap(buffer, 0);
+
+        //results (Then)
+        assertEquals(1001, request.accountId());
+        assertEquals(2, request.adults());
+        assertEquals(1, request.infants());
+        assertEquals("key", request.key());
+        assertEquals(36, request.encodedLength());
+    }
+
+    @Test // malformed - the obvious mistakes are each named
+    public void malformed() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        request.wrapForEncode(buffer, 0).accountId(1001).adults(1).key("order-1");
+        assertMalformed(buffer.duplicate().limit(3), "truncated header");
+        assertMalformed(buffer.duplicate().limit(20), "truncated block");
+        assertMalformed(buffer.duplicate().limit(30), "truncated idempotency key");
+        assertMalformed(copy(buffer).put(0, (byte) 0), "unknown schema version 0");
+        assertMalformed(copy(buffer).put(1, (byte) PurchaseResultFlyweight.template), "expected template 1, was 2");
+        assertMalformed(copy(buffer).putShort(2, (short) 19), "block of 19 bytes, needs 20");
+        assertMalformed(copy(buffer).put(27, (byte) ' '), "idempotency key is not printable US-ASCII");
+    }
+
+    @Test // fuzz - corrupted, truncated and random frames decode or are rejected as malformed, nothing else
+    public void fuzz() {
+        //setup (Given)
+        // stub gateways, a mock would record every one of the purchases.
+        WirePurchaseHandler handler = new WirePurchaseHandler(new TicketServiceImpl(new LatencyTicketPaymentService(0),
+                new LatencySeatReservationService(0)));
+        Random random = new Random(42);
+        ByteBuffer valid = ByteBuffer.allocate(300);
+        ByteBuffer out = ByteBuffer.allocate(WirePurchaseHandler.maxResultLength);
+        int decoded = 0;
+
+        for (int i = 0; i < 200_000; i++) {
+            request.wrapForEncode(valid.clear(), 0).accountId(random.nextLong()).adults(random.nextInt(30) - 5)
+                    .children(random.nextInt(30) - 5).infants(random.nextInt(30) - 5).key(i % 2 == 0 ? null : "key-" + i);
+            ByteBuffer frame = valid.limit(request.encodedLength()).duplicate();
+            switch (random.nextInt(4)) {
+                case 0: frame.put(random.nextInt(frame.limit()), (byte) random.nextInt()); break;
+                case 1: frame.limit(random.nextInt(frame.limit() + 1)); break;
+                case 2: for (int b = 0; b < frame.limit(); b++) frame.put(b, (byte) random.nextInt()); break;
+                default: frame.put(random.nextInt(4), (byte) random.nextInt()).limit(frame.limit() - random.nextInt(2)); break;
+            }
+
+            //make the call (When)
+            try {
+                handler.handle(frame, out.clear());
+                decoded++;
+
+                //results (Then)
+                assertTrue(frame.position() <= frame.limit());
+                result.wrap(out.flip(), 0);
+                assertEquals(out.limit(), result.encodedLength());
+            } catch (MalformedMessageException e) {
+                assertEquals(0, frame.position());
+                assertEquals(0, out.position());
+            }
+        }
+        assertTrue(decoded > 0);
+    }
+
+    private void assertMalformed(ByteBuffer buffer, String message) {
+        try {
+            request.wrap(buffer, 0);
+            fail("expected " + message);
+        } catch (MalformedMessageException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        return ByteBuffer.allocate(buffer.capacity()).put(buffer.duplicate().clear()).clear();
+    }
+}
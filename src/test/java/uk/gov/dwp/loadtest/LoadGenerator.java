@@ -0,0 +1,222 @@
+package uk.gov.dwp.loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.metrics.LatencyHistogram;
+import uk.gov.dwp.uc.pairtest.server.PurchaseServer;
+import uk.gov.dwp.uc.pairtest.wire.PurchaseRequestFlyweight;
+import uk.gov.dwp.uc.pairtest.wire.PurchaseResultFlyweight;
+import uk.gov.dwp.uc.pairtest.wire.Wire;
+
+/**
+ * Drives a {@link PurchaseServer} with pipelined binary requests and reports the orders per second it sustained and
+ * the latency of each request, from writing it to reading its result.
+ *
+ * Each connection has its own thread and keeps a fixed number of requests outstanding, sending a new one as each
+ * result comes back. Results during the warmup are not counted.
+ * <pre>
+ * java -cp target/classes:target/test-classes uk.gov.dwp.loadtest.LoadGenerator [--connect host:port] [--connections 8]
+ *     [--pipeline 16] [--warmup 2] [--seconds 10]
+ * </pre>
+ * Without --connect it starts a server on loopback in the same process, one event loop per core, in front of the
+ * default gateways.
+ */
+public class LoadGenerator {
+
+    private final InetSocketAddress address;
+    private final int connections;
+    private final int pipeline;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder purchased = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile long measureFrom;
+    private volatile long stopAt;
+
+    public LoadGenerator(InetSocketAddress address, int connections, int pipeline) {
+        if (connections < 1 || pipeline < 1) throw new IllegalArgumentException("connections and pipeline must be at least 1");
+        this.address = address;
+        this.connections = connections;
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Runs for the warmup then the measured duration, and waits for every outstanding result.
+     *
+     * @throws IOException if a connection fails
+     */
+    public Report run(Duration warmup, Duration duration) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        measureFrom = start + warmup.toNanos();
+        stopAt = measureFrom + duration.toNanos();
+        List<Thread> threads = new ArrayList<Thread>();
+        IOException[] failure = new IOException[1];
+        for (int i = 0; i < connections; i++) {
+            long accountId = 1000 + i;
+            Thread thread = new Thread(() -> {
+                try {
+                    drive(accountId);
+                } catch (IOException e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                }
+            }, "load-generator-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) thread.join();
+        if (failure[0] != null) throw failure[0];
+        return new Report(connections, pipeline, duration, purchased.sum(), rejected.sum(), failed.sum(), latency.snapshot());
+    }
+
+    private void drive(long accountId) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            ByteBuffer request = ByteBuffer.allocateDirect(64);
+            PurchaseRequestFlyweight encoder = new PurchaseRequestFlyweight().wrapForEncode(request, 0);
+            encoder.accountId(accountId).adults(2).children(1).infants(1);
+            int requestLength = encoder.encodedLength();
+            ByteBuffer out = ByteBuffer.allocateDirect(requestLength * pipeline);
+            ByteBuffer in = ByteBuffer.allocateDirect(64 * 1024);
+            PurchaseResultFlyweight result = new PurchaseResultFlyweight();
+            // send times of the outstanding requests, oldest at head; results come back in the same order.
+            long[] sent = new long[pipeline];
+            int head = 0;
+            int outstanding = 0;
+            boolean sending = true;
+
+            while (sending || outstanding > 0) {
+                if (sending) {
+                    long now = System.nanoTime();
+                    sending = now < stopAt;
+                    for (; sending && outstanding < pipeline; outstanding++) {
+                        out.put(request.duplicate().limit(requestLength));
+                        sent[(head + outstanding) % pipeline] = now;
+                    }
+                    out.flip();
+                    while (out.hasRemaining()) channel.write(out);
+                    out.clear();
+                }
+                if (outstanding == 0) break;
+                if (channel.read(in) < 0) throw new IOException("server closed the connection");
+                in.flip();
+                long now = System.nanoTime();
+                int length;
+                while ((length = Wire.frameLength(in, in.position())) > 0 && in.remaining() >= length) {
+                    result.wrap(in, in.position());
+                    if (sent[head] >= measureFrom && now < stopAt) {
+                        latency.record(now - sent[head]);
+                        switch (result.outcome()) {
+                            case PurchaseResultFlyweight.purchased: purchased.increment(); break;
+                            case PurchaseResultFlyweight.failed: failed.increment(); break;
+                            default: rejected.increment(); break;
+                        }
+                    }
+                    in.position(in.position() + length);
+                    head = (head + 1) % pipeline;
+                    outstanding--;
+                }
+                in.compact();
+            }
+        }
+    }
+
+    public static final class Report {
+        private final int connections;
+        private final int pipeline;
+        private final Duration duration;
+        private final long purchased;
+        private final long rejected;
+        private final long failed;
+        private final LatencyHistogram.Snapshot latency;
+
+        Report(int connections, int pipeline, Duration duration, long purchased, long rejected, long failed, LatencyHistogram.Snapshot latency) {
+            this.connections = connections;
+            this.pipeline = pipeline;
+            this.duration = duration;
+            this.purchased = purchased;
+            this.rejected = rejected;
+            this.failed = failed;
+            this.latency = latency;
+        }
+
+        /**
+         * Results received during the measured duration, of any outcome.
+         */
+        public long getOrders() {
+            return purchased + rejected + failed;
+        }
+
+        public double getOrdersPerSecond() {
+            return getOrders() * (double) TimeUnit.SECONDS.toNanos(1) / duration.toNanos();
+        }
+
+        public long getPurchased() {
+            return purchased;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d connections x %d pipelined: %.0f orders/s (%d purchased, %d rejected, %d failed)%n"
+                    + "latency us: p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f",
+                    connections, pipeline, getOrdersPerSecond(), purchased, rejected, failed,
+                    latency.getP50Nanos() / 1e3, latency.getP99Nanos() / 1e3, latency.getP999Nanos() / 1e3, latency.getMaxNanos() / 1e3);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String connect = null;
+        int connections = 8;
+        int pipeline = 16;
+        int warmup = 2;
+        int seconds = 10;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--connect": connect = args[i + 1]; break;
+                case "--connections": connections = Integer.parseInt(args[i + 1]); break;
+                case "--pipeline": pipeline = Integer.parseInt(args[i + 1]); break;
+                case "--warmup": warmup = Integer.parseInt(args[i + 1]); break;
+                case "--seconds": seconds = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        PurchaseServer embedded = null;
+        InetSocketAddress address;
+        if (connect == null) {
+            embedded = new PurchaseServer(new TicketServiceImpl(), new InetSocketAddress("127.0.0.1", 0),
+                    Runtime.getRuntime().availableProcessors());
+            address = embedded.getAddress();
+        } else {
+            int colon = connect.lastIndexOf(':');
+            address = new InetSocketAddress(connect.substring(0, colon), Integer.parseInt(connect.substring(colon + 1)));
+        }
+        try {
+            System.out.println(new LoadGenerator(address, connections, pipeline).run(Duration.ofSeconds(warmup), Duration.ofSeconds(seconds)));
+        } finally {
+            if (embedded != null) embedded.close();
+        }
+    }
+}
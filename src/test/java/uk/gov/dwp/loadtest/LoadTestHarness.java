@@ -0,0 +1,230 @@
+package uk.gov.dwp.loadtest;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import uk.gov.dwp.uc.pairtest.TicketService;
+import uk.gov.dwp.uc.pairtest.TicketServiceImpl;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest;
+import uk.gov.dwp.uc.pairtest.domain.TicketTypeRequest.Type;
+import uk.gov.dwp.uc.pairtest.exception.InvalidPurchaseException;
+import uk.gov.dwp.uc.pairtest.metrics.LatencyHistogram;
+
+/**
+ * Replays {@link Traffic} against a {@link TicketService} from a fixed number of threads and reports the orders per
+ * second it sustained, the latency of each order and how many were rejected, by reason, or failed.
+ *
+ * Orders are sent when the traffic says they arrive, scaled by the speed, whether or not the service has kept up: an
+ * order's latency is measured from when it should have been sent, so time spent waiting for a free thread behind a
+ * slow order counts against the service rather than going unseen. At speed 0 orders are sent as fast as the threads
+ * can take them and latency is the time in the call.
+ * <pre>
+ * java -cp target/classes:target/test-classes uk.gov.dwp.loadtest.LoadTestHarness (--profile steady.profile | --traffic run.traffic
+ *     | --journal dir) [--record run.traffic] [--threads 8] [--latency-us 0] [--failures 0] [--speed 1]
+ * </pre>
+ * The service is a {@link TicketServiceImpl} in front of a {@link SimulatedGateway} for both payments and seats.
+ * --record saves the traffic replayed, so a generated or journalled run can be repeated from the file.
+ */
+public class LoadTestHarness {
+
+    private final TicketService ticketService;
+    private final int threads;
+    private final double speed;
+
+    /**
+     * @param speed how many times faster than recorded to send orders, 0 to send them as fast as possible
+     */
+    public LoadTestHarness(TicketService ticketService, int threads, double speed) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be at least 1");
+        if (speed < 0) throw new IllegalArgumentException("speed must not be negative");
+        this.ticketService = ticketService;
+        this.threads = threads;
+        this.speed = speed;
+    }
+
+    /**
+     * Sends every order in the traffic and waits for the last to finish.
+     */
+    public Report run(Traffic traffic) throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder purchased = new LongAdder();
+        LongAdder failed = new LongAdder();
+        LongAdder[] rejected = new LongAdder[InvalidPurchaseException.Reason.values().length + 1];
+        for (int i = 0; i < rejected.length; i++) rejected[i] = new LongAdder();
+        AtomicInteger next = new AtomicInteger();
+        boolean paced = speed > 0;
+        long start = System.nanoTime();
+
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                // at most one request per type, so a small array is reused instead of a list per order.
+                TicketTypeRequest[] requests = new TicketTypeRequest[3];
+                int order;
+                while ((order = next.getAndIncrement()) < traffic.size()) {
+                    long due = paced ? start + (long) (traffic.getArrivalNanos(order) / speed) : 0;
+                    if (paced) waitUntil(due);
+                    int count = 0;
+                    if (traffic.getAdults(order) != 0) requests[count++] = TicketTypeRequest.of(Type.ADULT, traffic.getAdults(order));
+                    if (traffic.getChildren(order) != 0) requests[count++] = TicketTypeRequest.of(Type.CHILD, traffic.getChildren(order));
+                    if (traffic.getInfants(order) != 0) requests[count++] = TicketTypeRequest.of(Type.INFANT, traffic.getInfants(order));
+                    TicketTypeRequest[] call = count == 3 ? requests : Arrays.copyOf(requests, count);
+
+                    long sent = System.nanoTime();
+                    try {
+                        ticketService.purchaseTickets(traffic.getAccountId(order), call);
+                        purchased.increment();
+                    } catch (InvalidPurchaseException e) {
+                        rejected[e.getReason() == null ? rejected.length - 1 : e.getReason().ordinal()].increment();
+                    } catch (RuntimeException e) {
+                        failed.increment();
+                    }
+                    latency.record(System.nanoTime() - (paced ? Math.min(due, sent) : sent));
+                }
+            }, "load-test-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) worker.join();
+        long elapsed = System.nanoTime() - start;
+
+        Map<InvalidPurchaseException.Reason, Long> reasons = new EnumMap<InvalidPurchaseException.Reason, Long>(InvalidPurchaseException.Reason.class);
+        long totalRejected = 0;
+        for (InvalidPurchaseException.Reason reason : InvalidPurchaseException.Reason.values()) {
+            long n = rejected[reason.ordinal()].sum();
+            if (n > 0) reasons.put(reason, n);
+            totalRejected += n;
+        }
+        totalRejected += rejected[rejected.length - 1].sum();
+        return new Report(threads, elapsed, purchased.sum(), totalRejected, reasons, failed.sum(), latency.snapshot());
+    }
+
+    // parks until close to the deadline, then spins the rest, parkNanos overshoots by tens of microseconds.
+    private static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > 100_000) {
+                LockSupport.parkNanos(remaining - 50_000);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    public static final class Report {
+        private final int threads;
+        private final long elapsedNanos;
+        private final long purchased;
+        private final long rejected;
+        private final Map<InvalidPurchaseException.Reason, Long> rejectedByReason;
+        private final long failed;
+        private final LatencyHistogram.Snapshot latency;
+
+        Report(int threads, long elapsedNanos, long purchased, long rejected, Map<InvalidPurchaseException.Reason, Long> rejectedByReason,
+                long failed, LatencyHistogram.Snapshot latency) {
+            this.threads = threads;
+            this.elapsedNanos = elapsedNanos;
+            this.purchased = purchased;
+            this.rejected = rejected;
+            this.rejectedByReason = rejectedByReason;
+            this.failed = failed;
+            this.latency = latency;
+        }
+
+        public long getOrders() {
+            return purchased + rejected + failed;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getOrdersPerSecond() {
+            return getOrders() * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsedNanos);
+        }
+
+        public long getPurchased() {
+            return purchased;
+        }
+
+        /**
+         * Orders the service refused with an InvalidPurchaseException, invalid orders and orders turned away alike.
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * Rejections by reason, reasons with none left out. Rejections without a reason are counted only in
+         * {@link #getRejected()}.
+         */
+        public Map<InvalidPurchaseException.Reason, Long> getRejectedByReason() {
+            return rejectedByReason;
+        }
+
+        /**
+         * Orders the service failed with any other exception, e.g. a gateway error.
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        public double getRejectionRate() {
+            return getOrders() == 0 ? 0 : (double) rejected / getOrders();
+        }
+
+        public double getErrorRate() {
+            return getOrders() == 0 ? 0 : (double) failed / getOrders();
+        }
+
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d threads: %d orders in %.2fs, %.0f orders/s (%d purchased, %d rejected %.2f%%, %d failed %.2f%%)%n"
+                    + "rejected: %s%n"
+                    + "latency us: p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f",
+                    threads, getOrders(), elapsedNanos / 1e9, getOrdersPerSecond(), purchased, rejected, 100 * getRejectionRate(),
+                    failed, 100 * getErrorRate(), rejectedByReason,
+                    latency.getP50Nanos() / 1e3, latency.getP99Nanos() / 1e3, latency.getP999Nanos() / 1e3, latency.getMaxNanos() / 1e3);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Traffic traffic = null;
+        Path record = null;
+        int threads = 8;
+        long latencyMicros = 0;
+        double failures = 0;
+        double speed = 1;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--profile": traffic = TrafficProfile.read(Paths.get(args[i + 1])).generate(); break;
+                case "--traffic": traffic = Traffic.read(Paths.get(args[i + 1])); break;
+                case "--journal": traffic = Traffic.fromJournal(Paths.get(args[i + 1])); break;
+                case "--record": record = Paths.get(args[i + 1]); break;
+                case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                case "--latency-us": latencyMicros = Long.parseLong(args[i + 1]); break;
+                case "--failures": failures = Double.parseDouble(args[i + 1]); break;
+                case "--speed": speed = Double.parseDouble(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (traffic == null) throw new IllegalArgumentException("One of --profile, --traffic or --journal is required");
+        if (record != null) traffic.write(record);
+        SimulatedGateway gateway = new SimulatedGateway(TimeUnit.MICROSECONDS.toNanos(latencyMicros), failures);
+        TicketService ticketService = new TicketServiceImpl(gateway, gateway);
+        System.out.println(new LoadTestHarness(ticketService, threads, speed).run(traffic));
+    }
+}
@@ -0,0 +1,76 @@
+package uk.gov.dwp.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+
+/**
+ * Stand-in for the payment and seat gateways during a load test: each call takes a fixed time and a given share of
+ * calls fail, so the service can be loaded as if it were talking to the real ones without a network.
+ */
+public class SimulatedGateway implements TicketPaymentService, SeatReservationService {
+
+    private final long latencyNanos;
+    private final double failureRate;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @param latencyNanos how long each call takes
+     * @param failureRate  share of calls that throw, from 0 to 1
+     */
+    public SimulatedGateway(long latencyNanos, double failureRate) {
+        if (latencyNanos < 0) throw new IllegalArgumentException("latencyNanos must not be negative");
+        if (failureRate < 0 || failureRate > 1) throw new IllegalArgumentException("failureRate must be between 0 and 1");
+        this.latencyNanos = latencyNanos;
+        this.failureRate = failureRate;
+    }
+
+    @Override
+    public void makePayment(long accountId, int totalAmountToPay) {
+        call();
+    }
+
+    @Override
+    public void refund(long accountId, int totalAmountToRefund) {
+        call();
+    }
+
+    @Override
+    public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+        call();
+    }
+
+    private void call() {
+        calls.increment();
+        pause(latencyNanos);
+        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            failures.increment();
+            throw new IllegalStateException("simulated gateway failure");
+        }
+    }
+
+    // parkNanos is too coarse for sub-50us delays, spin for those instead.
+    private static void pause(long nanos) {
+        if (nanos <= 0) return;
+        if (nanos < 50_000) {
+            long deadline = System.nanoTime() + nanos;
+            while (System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+        } else {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+}
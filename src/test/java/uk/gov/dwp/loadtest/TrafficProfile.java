@@ -0,0 +1,237 @@
+package uk.gov.dwp.loadtest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable Object
+ *
+ * Recipe for synthetic {@link Traffic}: how many orders, how fast and how bursty, what they are for and for whom. The
+ * same profile always generates the same traffic, so a run can be repeated exactly from a few lines of text.
+ *
+ * Profile lines, '#' starts a comment, anything left out keeps the default shown:
+ * <pre>
+ * seed=1                     random seed
+ * orders=100000              orders to generate
+ * rate=1000                  mean orders a second
+ * burst=1x0.0/1000           orders arrive at 1x the mean rate for 0% of every 1000ms, the rest of the time slower
+ *                            to keep the mean, e.g. 4x0.2/1000 is a burst at four times the rate for 200ms a second
+ * mix=2A1C:1                 order shapes and their weights, e.g. 1A:50,2A2C:30,2A1C1I:20
+ * invalid=0.0                share of orders made invalid, spread over the ways validation rejects an order
+ * accounts=100000            distinct account ids, numbered from 1
+ * skew=0.0                   Zipf exponent of the account ids, 0 for uniform, around 1 for a few busy accounts
+ * </pre>
+ * Arrivals within a burst or a quiet spell are a Poisson process.
+ */
+public final class TrafficProfile {
+
+    private final long seed;
+    private final int orders;
+    private final double rate;
+    private final double burstFactor;
+    private final double burstShare;
+    private final long burstPeriodMillis;
+    private final int[][] shapes;
+    private final double[] cumulativeWeights;
+    private final double invalid;
+    private final int accounts;
+    private final double skew;
+
+    private TrafficProfile(long seed, int orders, double rate, double burstFactor, double burstShare, long burstPeriodMillis,
+            int[][] shapes, double[] weights, double invalid, int accounts, double skew) {
+        this.seed = seed;
+        this.orders = orders;
+        this.rate = rate;
+        this.burstFactor = burstFactor;
+        this.burstShare = burstShare;
+        this.burstPeriodMillis = burstPeriodMillis;
+        this.shapes = shapes;
+        this.cumulativeWeights = new double[weights.length];
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) cumulativeWeights[i] = sum += weights[i];
+        for (int i = 0; i < weights.length; i++) cumulativeWeights[i] /= sum;
+        this.invalid = invalid;
+        this.accounts = accounts;
+        this.skew = skew;
+    }
+
+    public static TrafficProfile read(Path file) throws IOException {
+        return parse(Files.readAllLines(file));
+    }
+
+    public static TrafficProfile parse(List<String> lines) {
+        long seed = 1;
+        int orders = 100_000;
+        double rate = 1000;
+        double burstFactor = 1;
+        double burstShare = 0;
+        long burstPeriodMillis = 1000;
+        List<int[]> shapes = new ArrayList<int[]>();
+        List<Double> weights = new ArrayList<Double>();
+        double invalid = 0;
+        int accounts = 100_000;
+        double skew = 0;
+
+        for (int n = 0; n < lines.size(); n++) {
+            String line = lines.get(n);
+            int comment = line.indexOf('#');
+            if (comment >= 0) line = line.substring(0, comment);
+            line = line.trim();
+            if (line.isEmpty()) continue;
+
+            int equals = line.indexOf('=');
+            if (equals < 0) throw invalid(n, "expected key=value");
+            String key = line.substring(0, equals).trim();
+            String value = line.substring(equals + 1).trim();
+            switch (key) {
+                case "seed": seed = (long) number(n, value, Long.MIN_VALUE, Long.MAX_VALUE); break;
+                case "orders": orders = (int) number(n, value, 1, Integer.MAX_VALUE); break;
+                case "rate": rate = number(n, value, Double.MIN_VALUE, 1e9); break;
+                case "invalid": invalid = number(n, value, 0, 1); break;
+                case "accounts": accounts = (int) number(n, value, 1, Integer.MAX_VALUE); break;
+                case "skew": skew = number(n, value, 0, 10); break;
+                case "burst": {
+                    // factor x share / period
+                    int x = value.indexOf('x');
+                    int slash = value.indexOf('/');
+                    if (x < 0 || slash < x) throw invalid(n, "expected burst=factor x share / period ms, e.g. 4x0.2/1000");
+                    burstFactor = number(n, value.substring(0, x), 1, 1e6);
+                    burstShare = number(n, value.substring(x + 1, slash), 0, 1);
+                    burstPeriodMillis = (long) number(n, value.substring(slash + 1), 1, Long.MAX_VALUE);
+                    if (burstFactor * burstShare > 1) throw invalid(n, "a burst cannot carry more than every order");
+                    break;
+                }
+                case "mix": {
+                    shapes.clear();
+                    weights.clear();
+                    for (String entry : value.split(",")) {
+                        String[] parts = entry.trim().split(":");
+                        if (parts.length != 2) throw invalid(n, "expected mix=shape:weight,..., e.g. 2A1C:3,1A:1");
+                        shapes.add(shape(n, parts[0].trim()));
+                        weights.add(number(n, parts[1], Double.MIN_VALUE, 1e9));
+                    }
+                    break;
+                }
+                default: throw invalid(n, "unknown key " + key);
+            }
+        }
+        if (shapes.isEmpty()) {
+            shapes.add(new int[] {2, 1, 0});
+            weights.add(1.0);
+        }
+        double[] weightArray = new double[weights.size()];
+        for (int i = 0; i < weightArray.length; i++) weightArray[i] = weights.get(i);
+        return new TrafficProfile(seed, orders, rate, burstFactor, burstShare, burstPeriodMillis,
+                shapes.toArray(new int[0][]), weightArray, invalid, accounts, skew);
+    }
+
+    /**
+     * Generates the profile's orders. Calling it again gives the same traffic.
+     */
+    public Traffic generate() {
+        SplittableRandom random = new SplittableRandom(seed);
+        Traffic.Builder traffic = Traffic.builder();
+        long period = TimeUnit.MILLISECONDS.toNanos(burstPeriodMillis);
+        long burstLength = (long) (period * burstShare);
+        double burstRate = rate * burstFactor;
+        double quietRate = burstShare < 1 ? rate * (1 - burstFactor * burstShare) / (1 - burstShare) : 0;
+        double now = 0;
+        for (int i = 0; i < orders; i++) {
+            // the gap is drawn at the rate in force when the previous order arrived; a quiet spell with no orders at
+            // all is skipped to the next burst.
+            boolean inBurst = (long) now % period < burstLength;
+            double current = inBurst ? burstRate : quietRate;
+            if (current <= 0) {
+                now += period - (long) now % period;
+                current = burstRate;
+            }
+            now += -Math.log(1 - random.nextDouble()) / current * 1e9;
+
+            int[] shape = shapes[pick(random.nextDouble())];
+            long accountId = account(random.nextDouble());
+            int adults = shape[0];
+            int children = shape[1];
+            int infants = shape[2];
+            if (random.nextDouble() < invalid) {
+                // breaks one of the four rules, picked at random.
+                switch (random.nextInt(4)) {
+                    case 0: infants = adults + 1; break;
+                    case 1: adults = 0; children = Math.max(1, children); infants = 0; break;
+                    case 2: adults = 21; break;
+                    default: accountId = 0; break;
+                }
+            }
+            traffic.add((long) now, accountId, adults, children, infants);
+        }
+        return traffic.build();
+    }
+
+    private int pick(double u) {
+        for (int i = 0; i < cumulativeWeights.length - 1; i++) {
+            if (u < cumulativeWeights[i]) return i;
+        }
+        return cumulativeWeights.length - 1;
+    }
+
+    // inverse of the continuous power law's distribution, close enough to Zipf for traffic and needs no table.
+    private long account(double u) {
+        if (skew == 0) return 1 + (long) (u * accounts);
+        double rank = skew == 1
+                ? Math.pow(accounts + 1, u)
+                : Math.pow((Math.pow(accounts + 1, 1 - skew) - 1) * u + 1, 1 / (1 - skew));
+        return Math.min(accounts, Math.max(1, (long) rank));
+    }
+
+    // a shape such as "2A1C1I", the same notation as the benchmarks use.
+    private static int[] shape(int line, String shape) {
+        int[] counts = new int[3];
+        int count = 0;
+        boolean digits = false;
+        for (int i = 0; i < shape.length(); i++) {
+            char c = shape.charAt(i);
+            if (Character.isDigit(c)) {
+                count = count * 10 + (c - '0');
+                digits = true;
+                continue;
+            }
+            int type = "ACI".indexOf(c);
+            if (type < 0 || !digits) throw invalid(line, "invalid order shape " + shape);
+            counts[type] += count;
+            count = 0;
+            digits = false;
+        }
+        if (digits || shape.isEmpty()) throw invalid(line, "invalid order shape " + shape);
+        return counts;
+    }
+
+    private static double number(int line, String value, double min, double max) {
+        try {
+            double number = Double.parseDouble(value.trim());
+            if (number < min || number > max) throw invalid(line, value.trim() + " is out of range");
+            return number;
+        } catch (NumberFormatException e) {
+            throw invalid(line, value.trim() + " is not a number");
+        }
+    }
+
+    private static IllegalArgumentException invalid(int line, String message) {
+        return new IllegalArgumentException("Traffic profile line " + (line + 1) + ": " + message);
+    }
+
+    public int getOrders() {
+        return orders;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public double getInvalid() {
+        return invalid;
+    }
+}
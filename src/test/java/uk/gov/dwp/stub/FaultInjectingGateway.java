@@ -0,0 +1,85 @@
+package uk.gov.dwp.stub;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import thirdparty.paymentgateway.TicketPaymentService;
+import thirdparty.seatbooking.SeatReservationService;
+
+/**
+ * Stand-in for either gateway that can be switched at any time between healthy, slow, failing and hung.
+ * A hung call only returns when its thread is interrupted.
+ */
+public class FaultInjectingGateway implements TicketPaymentService, SeatReservationService {
+
+    public enum Mode { HEALTHY, SLOW, FAILING, HUNG }
+
+    private volatile Mode mode = Mode.HEALTHY;
+    private volatile long latencyNanos;
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger inProgress = new AtomicInteger();
+
+    public void healthy() {
+        mode = Mode.HEALTHY;
+    }
+
+    public void slow(long latency, TimeUnit unit) {
+        latencyNanos = unit.toNanos(latency);
+        mode = Mode.SLOW;
+    }
+
+    public void failing() {
+        mode = Mode.FAILING;
+    }
+
+    public void hung() {
+        mode = Mode.HUNG;
+    }
+
+    @Override
+    public void makePayment(long accountId, int totalAmountToPay) {
+        call();
+    }
+
+    @Override
+    public void refund(long accountId, int totalAmountToRefund) {
+        call();
+    }
+
+    @Override
+    public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+        call();
+    }
+
+    private void call() {
+        calls.incrementAndGet();
+        inProgress.incrementAndGet();
+        try {
+            switch (mode) {
+                case SLOW:
+                    LockSupport.parkNanos(latencyNanos);
+                    break;
+                case FAILING:
+                    throw new IllegalStateException("gateway error");
+                case HUNG:
+                    while (!Thread.currentThread().isInterrupted()) LockSupport.park(this);
+                    break;
+                default:
+            }
+        } finally {
+            inProgress.decrementAndGet();
+        }
+    }
+
+    public int getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * Calls the gateway has not returned from, hung ones included.
+     */
+    public int getInProgress() {
+        return inProgress.get();
+    }
+}
@@ -0,0 +1,22 @@
+package uk.gov.dwp.stub;
+
+import java.util.concurrent.locks.LockSupport;
+
+final class Latency {
+
+    private Latency() {
+    }
+
+    // parkNanos is too coarse for sub-50us delays, spin for those instead.
+    static void pause(long nanos) {
+        if (nanos <= 0) return;
+        if (nanos < 50_000) {
+            long deadline = System.nanoTime() + nanos;
+            while (System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+        } else {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package uk.gov.dwp.stub;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import thirdparty.seatbooking.BatchSeatReservationService;
+import thirdparty.seatbooking.SeatReservationService;
+
+/**
+ * Stand-in seat reservation service that takes a fixed amount of time per call and counts the seats it reserved.
+ * A batch call costs one round-trip, the same as a single reservation.
+ */
+public class LatencySeatReservationService implements SeatReservationService, BatchSeatReservationService {
+
+    private final long latencyNanos;
+    private final LongAdder reservations = new LongAdder();
+    private final LongAdder seats = new LongAdder();
+
+    public LatencySeatReservationService(long latencyNanos) {
+        this.latencyNanos = latencyNanos;
+    }
+
+    @Override
+    public void reserveSeat(long accountId, int totalSeatsToAllocate) {
+        Latency.pause(latencyNanos);
+        reservations.increment();
+        seats.add(totalSeatsToAllocate);
+    }
+
+    @Override
+    public void reserveSeats(long[] accountIds, int[] totalSeatsToAllocate, int count) {
+        Latency.pause(latencyNanos);
+        for (int i = 0; i < count; i++) {
+            reservations.increment();
+            seats.add(totalSeatsToAllocate[i]);
+        }
+    }
+
+    public long getReservations() {
+        return reservations.sum();
+    }
+
+    public long getSeats() {
+        return seats.sum();
+    }
+}
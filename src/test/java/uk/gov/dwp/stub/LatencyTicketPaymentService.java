@@ -0,0 +1,60 @@
+package uk.gov.dwp.stub;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import thirdparty.paymentgateway.BatchTicketPaymentService;
+import thirdparty.paymentgateway.TicketPaymentService;
+
+/**
+ * Stand-in payment gateway that takes a fixed amount of time per call and counts what it was asked to charge.
+ * A batch call costs one round-trip, the same as a single payment.
+ */
+public class LatencyTicketPaymentService implements TicketPaymentService, BatchTicketPaymentService {
+
+    private final long latencyNanos;
+    private final LongAdder payments = new LongAdder();
+    private final LongAdder amount = new LongAdder();
+    private final LongAdder refunds = new LongAdder();
+
+    public LatencyTicketPaymentService(long latencyNanos) {
+        this.latencyNanos = latencyNanos;
+    }
+
+    @Override
+    public void makePayment(long accountId, int totalAmountToPay) {
+        Latency.pause(latencyNanos);
+        payments.increment();
+        amount.add(totalAmountToPay);
+    }
+
+    @Override
+    public void makePayments(long[] accountIds, int[] totalAmountsToPay, int count) {
+        Latency.pause(latencyNanos);
+        for (int i = 0; i < count; i++) {
+            payments.increment();
+            amount.add(totalAmountsToPay[i]);
+        }
+    }
+
+    @Override
+    public void refund(long accountId, int totalAmountToRefund) {
+        Latency.pause(latencyNanos);
+        refunds.increment();
+        amount.add(-totalAmountToRefund);
+    }
+
+    public long getPayments() {
+        return payments.sum();
+    }
+
+    public long getRefunds() {
+        return refunds.sum();
+    }
+
+    /**
+     * Net amount charged, after refunds.
+     */
+    public long getAmount() {
+        return amount.sum();
+    }
+}
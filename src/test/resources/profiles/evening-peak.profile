@@ -0,0 +1,10 @@
+# Tickets going on sale: bursts at five times the mean rate for 100ms in every 500ms, schools and agencies
+# booking most of the orders, and more rejected orders from people rushing.
+seed=11
+orders=50000
+rate=5000
+burst=5x0.1/500
+mix=2A2C:30,2A:25,1A5C:15,2A1C1I:15,1A:10,4A10C:5
+invalid=0.08
+accounts=50000
+skew=1.1
@@ -0,0 +1,7 @@
+# A quiet afternoon: families and couples at a steady rate, a few mistakes.
+seed=7
+orders=20000
+rate=2000
+mix=2A:35,2A2C:25,2A1C:15,1A:15,2A1C1I:10
+invalid=0.02
+accounts=100000